@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import synoptic.algorithms.graphops.IOperation;
@@ -28,14 +29,18 @@ import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.IncrementalModelChecker;
 import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionSplitView;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
 
@@ -90,8 +95,19 @@ public class Bisimulation {
 
         while (true) {
             // Recompute the counter-examples for the unsatisfied invariants.
-            counterExampleTraces = new TemporalInvariantSet(
-                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            if (main.options.incrementalChecking) {
+                // Only re-checks the partitions affected by the splits
+                // performed in the previous iteration. The counter-examples
+                // are the shortest ones in the graph, so they may differ from
+                // the non-incremental ones (see IncrementalModelChecker).
+                IncrementalModelChecker checker = pGraph.getModelChecker();
+                checker.track(unsatisfiedInvariants);
+                counterExampleTraces = checker
+                        .getAllCounterExamples(unsatisfiedInvariants);
+            } else {
+                counterExampleTraces = new TemporalInvariantSet(
+                        unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            }
             logger.fine("Counter-examples: " + counterExampleTraces);
 
             if (counterExampleTraces == null
@@ -477,11 +493,8 @@ public class Bisimulation {
             LinkedHashSet<EventNode> successorEvents = new LinkedHashSet<EventNode>();
 
             for (EventNode m : hot) {
-                for (ITransition<EventNode> t : m
-                        .getTransitionsWithIntersectingRelations(relationSet)) {
-                    // successorEvents.addAll(m.getSuccessors(relations));
-                    successorEvents.add(t.getTarget());
-                }
+                m.addSuccessorsWithIntersectingRelations(relationSet,
+                        successorEvents);
             }
             hot = successorEvents;
         }
@@ -549,11 +562,19 @@ public class Bisimulation {
         IOperation rewindOperation = pGraph.apply(splitOp);
 
         // See if splitting resolved the violation.
-        CExamplePath<Partition> violation = TemporalInvariantSet
-                .getCounterExample(inv, pGraph);
+        CExamplePath<Partition> violation;
+        boolean incremental = AbstractMain.getInstance().options.incrementalChecking;
+        if (incremental) {
+            violation = pGraph.getModelChecker().getCounterExample(inv);
+        } else {
+            violation = TemporalInvariantSet.getCounterExample(inv, pGraph);
+        }
 
         // Undo the split (rewind) to get back the input graph.
         pGraph.apply(rewindOperation);
+        if (incremental) {
+            pGraph.getModelChecker().revertChanges();
+        }
 
         // The invariant has more violations after the split.
         if (violation != null) {
@@ -566,30 +587,80 @@ public class Bisimulation {
 
     /**
      * Performs the splitOp on the pGraph and then checks if there is a
-     * violation of invariant inv in a specific subgraph of pGraph starting at
-     * startPart and ending at endPart. This is accomplished by localized model
-     * checking which starts at startPart (rather than the initial node) and
-     * stops at endPart (rather than the terminal node).
+     * violation of the constrained invariant of counterexampleTrace in the
+     * subgraph of pGraph where the counter-example's violation was found,
+     * i.e., between the partitions at its violationStart and violationEnd
+     * indices. This is accomplished by localized model checking which starts
+     * at the violation start partition (rather than the initial node) and
+     * stops at the violation end partition (rather than the terminal node).
      * 
-     * @param inv
-     *            The invariant to check for satisfiability after the splitOp.
+     * @param counterexampleTrace
+     *            The counter-example path of the constrained invariant.
      * @param pGraph
      *            The partition graph to apply to the splitOp to.
-     * @param startPart
-     *            The partition on which to start model checking
-     * @param endPart
-     *            The partition on which to end model checking
      * @param splitOp
      *            The split operation to apply to pGraph
-     * @return true if the split makes the subgraph between startPart and
-     *         endPart satisfy the invariant, and false otherwise.
+     * @return true if the split makes the subgraph between the violation start
+     *         and end partitions satisfy the invariant, and false otherwise.
      */
     private static boolean splitSatisfiesInvariantLocally(
-            ITemporalInvariant inv, PartitionGraph pGraph, Partition startPart,
-            Partition endPart, PartitionMultiSplit splitOp) {
+            CExamplePath<Partition> counterexampleTrace, PartitionGraph pGraph,
+            PartitionMultiSplit splitOp) {
+
+        List<Partition> path = counterexampleTrace.path;
+        int violationStart = counterexampleTrace.violationStart;
+        int violationEnd = counterexampleTrace.violationEnd;
+        if (violationStart < 0 || violationEnd <= violationStart
+                || violationEnd >= path.size()) {
+            return false;
+        }
+
+        // Perform the split.
+        IOperation rewindOperation = pGraph.apply(splitOp);
+
+        // The partitions that enter, start, and end the violation subgraph
+        // may have been split, in which case we check from/to all of their
+        // parts.
+        Set<Partition> entryParts = new LinkedHashSet<Partition>();
+        if (violationStart > 0) {
+            entryParts = getPartitionsAfterSplit(path.get(violationStart - 1),
+                    splitOp);
+        }
+        Set<Partition> startParts = getPartitionsAfterSplit(
+                path.get(violationStart), splitOp);
+        Set<Partition> endParts = getPartitionsAfterSplit(
+                path.get(violationEnd), splitOp);
+
+        boolean violated = FsmModelChecker.hasCounterExampleBetween(
+                (TempConstrainedInvariant<?>) counterexampleTrace.invariant,
+                pGraph, entryParts, startParts, endParts);
+
+        // Undo the split (rewind) to get back the input graph.
+        pGraph.apply(rewindOperation);
+        if (AbstractMain.getInstance().options.incrementalChecking) {
+            pGraph.getModelChecker().revertChanges();
+        }
 
-        // TODO: Implement this.
-        return false;
+        return !violated;
+    }
+
+    /**
+     * Returns the partitions that hold the events of partition part after
+     * splitOp has been applied.
+     */
+    private static Set<Partition> getPartitionsAfterSplit(Partition part,
+            PartitionMultiSplit splitOp) {
+        Set<Partition> parts = new LinkedHashSet<Partition>();
+        if (part != splitOp.getPartition()) {
+            parts.add(part);
+            return parts;
+        }
+        for (Set<EventNode> events : splitOp.getPartitioning()) {
+            if (!events.isEmpty()) {
+                parts.add(events.iterator().next().getParent());
+            }
+        }
+        return parts;
     }
 
     /**
@@ -615,8 +686,12 @@ public class Bisimulation {
             HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
             Set<ITemporalInvariant> newlySatisfiedInvariants) {
 
+        if (AbstractMain.getInstance().options.numThreads > 1) {
+            return getInvSatisfyingSplitsInParallel(counterexampleTraces,
+                    pGraph, splitsToDoByPartition, newlySatisfiedInvariants);
+        }
+
         IOperation arbitrarySplit = null;
-        AbstractMain main = AbstractMain.getInstance();
 
         // TODO: we are considering counter-example traces in an arbitrary
         // order. This heuristic should be turned into a customizable strategy.
@@ -624,140 +699,279 @@ public class Bisimulation {
             // logger.fine("Considering counterexample: "
             // + counterexampleTrace.toString());
 
-            // The invariant that we will attempt to satisfy globally with a
-            // single split.
-            ITemporalInvariant inv = counterexampleTrace.invariant;
-
             // Skip to next counter-example if we have previously recorded a
             // split that satisfies the invariant corresponding to this
             // counter-example (and which therefore satisfies this
             // counter-example, too).
-            if (newlySatisfiedInvariants.contains(inv)) {
+            if (newlySatisfiedInvariants.contains(counterexampleTrace.invariant)) {
                 continue;
             }
 
             // Get the possible splits that might resolve this counter-example.
-            List<PartitionSplit> candidateSplits = getSplits(
+            List<PartitionSplit> candidateSplits = getCandidateSplits(
                     counterexampleTrace, pGraph);
 
-            // Permute the list of candidates.
-            Collections.shuffle(candidateSplits, main.random);
-
             // Save an arbitrary split to return to caller, if we haven't saved
             // one already.
             if (arbitrarySplit == null && !candidateSplits.isEmpty()) {
                 arbitrarySplit = candidateSplits.get(0);
             }
 
-            // A split that satisfies the invariant locally (within the subgraph
-            // where the violation was found) but not globally (in the entire
-            // partition graph). Only applied if a globally-satisfying split is
-            // not found
-            PartitionMultiSplit locallySatisfyingSplit = null;
-
-            // logger.fine("candidateSplits are: " +
-            // candidateSplits.toString());
-
-            // Find a single split in candidateSplits that makes the
-            // invariant corresponding to the counter-example true in the
-            // entire graph.
-            //
-            // a. If no such split exists, then continue to the next
-            // counter-example.
-            //
-            // b. If such a split exists, integrate it into whatever splits we
-            // might have found earlier (for previous counter-examples).
-            //
-            for (PartitionSplit candidateSplit : candidateSplits) {
-                if (main.options.performExtraChecks) {
-                    // getSplits() should never generate invalid splits.
-                    if (!candidateSplit.isValid()) {
-                        throw new InternalSynopticException(
-                                "getSplits() generated an invalid split.");
-                    }
+            resolveCounterExample(counterexampleTrace, candidateSplits, pGraph,
+                    splitsToDoByPartition, newlySatisfiedInvariants);
+        }
+        return arbitrarySplit;
+    }
+
+    /**
+     * Parallel version of getInvSatisfyingSplits, which returns the same
+     * result for the same random seed. The counter-examples are processed in
+     * batches that contain at most one counter-example per invariant. The
+     * candidate splits for the counter-examples of a batch are generated and
+     * permuted up front, in the same order as in the serial version. Then, the
+     * candidate splits of unconstrained invariants are model checked
+     * concurrently, each against a read-only {@code PartitionSplitView} of
+     * pGraph. Finally, the results are incorporated into splitsToDoByPartition
+     * in counter-example order. Constrained invariants are checked serially in
+     * this last step, as their model checkers require the actual partitions of
+     * a split graph. As in the serial version, a counter-example is skipped
+     * only if a split for an earlier counter-example satisfies its invariant.
+     */
+    private static IOperation getInvSatisfyingSplitsInParallel(
+            List<CExamplePath<Partition>> counterexampleTraces,
+            final PartitionGraph pGraph,
+            HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
+            Set<ITemporalInvariant> newlySatisfiedInvariants) {
+
+        IOperation arbitrarySplit = null;
+
+        int batchStart = 0;
+        while (batchStart < counterexampleTraces.size()) {
+            // Generate the candidate splits for each counter-example of the
+            // batch, which ends before the next counter-example for an
+            // invariant that is already in the batch: whether that
+            // counter-example is skipped depends on the splits found for the
+            // batch.
+            Set<ITemporalInvariant> batchInvariants = new HashSet<ITemporalInvariant>();
+            List<List<PartitionSplit>> candidateSplitsByTrace = new ArrayList<List<PartitionSplit>>();
+            int batchEnd = batchStart;
+            while (batchEnd < counterexampleTraces.size()
+                    && batchInvariants.add(counterexampleTraces.get(batchEnd).invariant)) {
+                CExamplePath<Partition> counterexampleTrace = counterexampleTraces
+                        .get(batchEnd);
+                batchEnd++;
+                if (newlySatisfiedInvariants
+                        .contains(counterexampleTrace.invariant)) {
+                    candidateSplitsByTrace.add(null);
+                    continue;
                 }
+                List<PartitionSplit> candidateSplits = getCandidateSplits(
+                        counterexampleTrace, pGraph);
+                if (arbitrarySplit == null && !candidateSplits.isEmpty()) {
+                    arbitrarySplit = candidateSplits.get(0);
+                }
+                candidateSplitsByTrace.add(candidateSplits);
+            }
 
-                PartitionMultiSplit splitOp = new PartitionMultiSplit(
-                        candidateSplit);
-                Partition partitionBeingSplit = candidateSplit.getPartition();
-
-                // TODO: we check satisfiability of each split _independently_.
-                // This means that we are looking for very rare splits that
-                // satisfy _different_ invariants individually. A more realistic
-                // search would (1) apply each split that satisfies an
-                // invariant, and (2) continue searching for more such splits on
-                // the _mutated_ pGraph.
-
-                if (splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
-                    // If we already have a split for that partition,
-                    // incorporate the new split into it.
-                    if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
-                        splitsToDoByPartition.get(partitionBeingSplit)
-                                .incorporate(splitOp);
-                        logger.fine("Incorporating new split by partition: "
-                                + splitOp.toString());
-                    } else {
-                        // Otherwise, record this split as the only one for this
-                        // partition
-                        splitsToDoByPartition.put(partitionBeingSplit, splitOp);
-                        logger.fine("New split by partition: "
-                                + splitOp.toString());
+            // Concurrently find the first candidate split that satisfies each
+            // unconstrained invariant. The partition graph must not be
+            // modified until all of these tasks complete.
+            final Map<Partition, Set<Partition>> adjacency = pGraph
+                    .getAdjacencySnapshot();
+            List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+            List<Integer> taskIndices = new ArrayList<Integer>();
+            for (int i = 0; i < candidateSplitsByTrace.size(); i++) {
+                final ITemporalInvariant inv = counterexampleTraces
+                        .get(batchStart + i).invariant;
+                final List<PartitionSplit> candidateSplits = candidateSplitsByTrace
+                        .get(i);
+                if (candidateSplits == null
+                        || inv instanceof TempConstrainedInvariant<?>) {
+                    continue;
+                }
+                taskIndices.add(i);
+                tasks.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        for (int j = 0; j < candidateSplits.size(); j++) {
+                            PartitionSplitView view = new PartitionSplitView(
+                                    pGraph, adjacency, new PartitionMultiSplit(
+                                            candidateSplits.get(j)));
+                            if (FsmModelChecker.getCounterExample(
+                                    (BinaryInvariant) inv, view) == null) {
+                                return j;
+                            }
+                        }
+                        return -1;
                     }
+                });
+            }
+            List<Integer> satisfyingIndices = AbstractMain.getInstance()
+                    .invokeAll(tasks);
 
-                    // Remember that we can resolve this invariant
-                    // violation.
-                    newlySatisfiedInvariants.add(inv);
-                    // Found the split that completely satisfies the
-                    // invariant, no need to consider other splits.
-                    break;
+            Map<Integer, Integer> satisfyingIndexByTrace = new HashMap<Integer, Integer>();
+            for (int t = 0; t < taskIndices.size(); t++) {
+                satisfyingIndexByTrace.put(taskIndices.get(t),
+                        satisfyingIndices.get(t));
+            }
 
+            // Incorporate the splits in counter-example order.
+            for (int i = 0; i < candidateSplitsByTrace.size(); i++) {
+                CExamplePath<Partition> counterexampleTrace = counterexampleTraces
+                        .get(batchStart + i);
+                List<PartitionSplit> candidateSplits = candidateSplitsByTrace
+                        .get(i);
+                if (candidateSplits == null) {
+                    continue;
                 }
 
-                // Check if split satisfies the invariant locally (specifically
-                // in the subgraph where the violation was found)
-                else if (locallySatisfyingSplit == null
-                        && inv instanceof TempConstrainedInvariant<?>) {
-
-                    // Get start and end of violation subgraph
-                    Partition startPart = counterexampleTrace.path
-                            .get(counterexampleTrace.violationStart);
-                    Partition endPart = counterexampleTrace.path
-                            .get(counterexampleTrace.violationEnd);
-
-                    // Store the split if the invariant is locally satisfied
-                    if (splitSatisfiesInvariantLocally(inv, pGraph, startPart,
-                            endPart, splitOp)) {
-                        locallySatisfyingSplit = splitOp;
-                    }
+                Integer satisfyingIndex = satisfyingIndexByTrace.get(i);
+                if (satisfyingIndex == null) {
+                    // A constrained invariant.
+                    resolveCounterExample(counterexampleTrace,
+                            candidateSplits, pGraph, splitsToDoByPartition,
+                            newlySatisfiedInvariants);
+                } else if (satisfyingIndex >= 0) {
+                    recordSplit(
+                            new PartitionMultiSplit(candidateSplits
+                                    .get(satisfyingIndex)),
+                            splitsToDoByPartition, false);
+                    newlySatisfiedInvariants
+                            .add(counterexampleTrace.invariant);
                 }
             }
+            batchStart = batchEnd;
+        }
+        return arbitrarySplit;
+    }
+
+    /**
+     * Returns the candidate splits that might resolve counterexampleTrace,
+     * permuted deterministically for the same random seed.
+     */
+    private static List<PartitionSplit> getCandidateSplits(
+            CExamplePath<Partition> counterexampleTrace, PartitionGraph pGraph) {
+        AbstractMain main = AbstractMain.getInstance();
 
-            // If we didn't find a globally-satisfying split but did find a
-            // locally-satisfying one, record it
-            if (locallySatisfyingSplit != null) {
-
-                // Get partition to be split
-                Partition partitionBeingSplit = locallySatisfyingSplit
-                        .getPartition();
-
-                // If we already have a split for that partition, incorporate
-                // the new split into it.
-                if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
-                    splitsToDoByPartition.get(partitionBeingSplit).incorporate(
-                            locallySatisfyingSplit);
-                    logger.fine("Incorporating new locally-satisfying split by partition: "
-                            + locallySatisfyingSplit.toString());
-                } else {
-                    // Otherwise, record this split as the only one for this
-                    // partition
-                    splitsToDoByPartition.put(partitionBeingSplit,
-                            locallySatisfyingSplit);
-                    logger.fine("New split by partition: "
-                            + locallySatisfyingSplit.toString());
+        List<PartitionSplit> candidateSplits = getSplits(counterexampleTrace,
+                pGraph);
+
+        // Permute the list of candidates.
+        Collections.shuffle(candidateSplits, main.random);
+
+        if (main.options.performExtraChecks) {
+            for (PartitionSplit candidateSplit : candidateSplits) {
+                // getSplits() should never generate invalid splits.
+                if (!candidateSplit.isValid()) {
+                    throw new InternalSynopticException(
+                            "getSplits() generated an invalid split.");
                 }
             }
         }
-        return arbitrarySplit;
+        return candidateSplits;
+    }
+
+    /**
+     * Looks for a split in candidateSplits that resolves counterexampleTrace,
+     * and records it in splitsToDoByPartition if one is found.
+     * 
+     * @param counterexampleTrace
+     *            The counter-example to resolve.
+     * @param candidateSplits
+     *            The candidate splits for the counter-example, in the order in
+     *            which they should be considered.
+     * @param pGraph
+     * @param splitsToDoByPartition
+     * @param newlySatisfiedInvariants
+     */
+    private static void resolveCounterExample(
+            CExamplePath<Partition> counterexampleTrace,
+            List<PartitionSplit> candidateSplits, PartitionGraph pGraph,
+            HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
+            Set<ITemporalInvariant> newlySatisfiedInvariants) {
+
+        // The invariant that we will attempt to satisfy globally with a
+        // single split.
+        ITemporalInvariant inv = counterexampleTrace.invariant;
+
+        // Whether splits of a constrained invariant are first checked within
+        // the subgraph where the violation was found, which is much cheaper
+        // than checking the entire partition graph.
+        boolean checkLocally = inv instanceof TempConstrainedInvariant<?>
+                && AbstractMain.getInstance().options.localSplitChecking;
+
+        // logger.fine("candidateSplits are: " +
+        // candidateSplits.toString());
+
+        // Find a single split in candidateSplits that makes the
+        // invariant corresponding to the counter-example true in the
+        // entire graph.
+        //
+        // a. If no such split exists, then continue to the next
+        // counter-example.
+        //
+        // b. If such a split exists, integrate it into whatever splits we
+        // might have found earlier (for previous counter-examples).
+        //
+        for (PartitionSplit candidateSplit : candidateSplits) {
+            PartitionMultiSplit splitOp = new PartitionMultiSplit(
+                    candidateSplit);
+
+            // TODO: we check satisfiability of each split _independently_.
+            // This means that we are looking for very rare splits that
+            // satisfy _different_ invariants individually. A more realistic
+            // search would (1) apply each split that satisfies an
+            // invariant, and (2) continue searching for more such splits on
+            // the _mutated_ pGraph.
+
+            // A split that satisfies the invariant locally resolves this
+            // counter-example, so we use it without checking the entire
+            // graph. Other violations of the invariant, if any, are resolved
+            // by later refinement steps.
+            if (checkLocally
+                    && splitSatisfiesInvariantLocally(counterexampleTrace,
+                            pGraph, splitOp)) {
+                recordSplit(splitOp, splitsToDoByPartition, true);
+                return;
+            }
+
+            // The local check is conservative: a split that leaves a
+            // violation in the subgraph may still satisfy the invariant in
+            // the entire graph, as the subgraph includes paths that are not
+            // part of any complete path of the graph.
+            if (splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
+                recordSplit(splitOp, splitsToDoByPartition, false);
+
+                // Remember that we can resolve this invariant
+                // violation.
+                newlySatisfiedInvariants.add(inv);
+                // Found the split that completely satisfies the
+                // invariant, no need to consider other splits.
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records splitOp in splitsToDoByPartition. If we already have a split for
+     * the same partition, the new split is incorporated into it.
+     */
+    private static void recordSplit(PartitionMultiSplit splitOp,
+            HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
+            boolean locallySatisfying) {
+        Partition partitionBeingSplit = splitOp.getPartition();
+
+        if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
+            splitsToDoByPartition.get(partitionBeingSplit).incorporate(splitOp);
+            logger.fine("Incorporating new "
+                    + (locallySatisfying ? "locally-satisfying " : "")
+                    + "split by partition: " + splitOp.toString());
+        } else {
+            // Otherwise, record this split as the only one for this
+            // partition
+            splitsToDoByPartition.put(partitionBeingSplit, splitOp);
+            logger.fine("New split by partition: " + splitOp.toString());
+        }
     }
 
     /**
@@ -782,6 +996,9 @@ public class Bisimulation {
         Map<Partition, Set<Partition>> mergeBlacklist = new LinkedHashMap<Partition, Set<Partition>>();
 
         AbstractMain syn = AbstractMain.getInstance();
+        if (syn.options.incrementalChecking && invariants != null) {
+            pGraph.getModelChecker().track(invariants.getSet());
+        }
         while (true) {
             if (syn.options.dumpIntermediateStages) {
                 syn.exportNonInitialGraph(
@@ -804,10 +1021,12 @@ public class Bisimulation {
 
     /**
      * Attempts to merge partitions that are k-equivalent, while respecting
-     * invariants. Tries all pairs of partitions from pGraph, except for those
+     * invariants. Partitions are bucketed by their k-tail signature, and only
+     * pairs of partitions from the same bucket are tried, except for those
      * that are in the mergeBlacklist (these have been attempted previously and
-     * are known to violate invariants). Returns true if at least one merge was
-     * performed, otherwise returns false.
+     * are known to violate invariants). Every merge that maintains the
+     * invariants is kept, so a single call may perform several merges. Returns
+     * true if at least one merge was performed, otherwise returns false.
      * 
      * @param pGraph
      * @param mergeBlacklist
@@ -818,86 +1037,141 @@ public class Bisimulation {
     private static boolean mergePartitions(PartitionGraph pGraph,
             Map<Partition, Set<Partition>> mergeBlacklist,
             TemporalInvariantSet invariants, int k) {
-        ArrayList<Partition> partitions = new ArrayList<Partition>();
-        partitions.addAll(pGraph.getNodes());
-
-        // Attempt to merge all pairs of partitions in the current graph.
-        for (Partition p : partitions) {
-            for (Partition q : partitions) {
-                // 1. Can't merge a partition with itself
-                if (p == q) {
-                    continue;
-                }
+        // Two partitions are k-equivalent iff they have the same k-tail
+        // fingerprint, so k-equivalent partitions end up in the same bucket.
+        Map<Partition, Integer> fingerprints = KTails.getKTailFingerprints(
+                pGraph.getNodes(), k);
+        Map<Integer, List<Partition>> buckets = new LinkedHashMap<Integer, List<Partition>>();
+        for (Partition p : pGraph.getNodes()) {
+            Integer signature = fingerprints.get(p);
+            List<Partition> bucket = buckets.get(signature);
+            if (bucket == null) {
+                bucket = new ArrayList<Partition>();
+                buckets.put(signature, bucket);
+            }
+            bucket.add(p);
+        }
 
-                logger.fine("Attempting to merge: " + p + "(hash: "
-                        + p.hashCode() + ") + " + q + "(hash: " + q.hashCode()
-                        + ")");
+        boolean incremental = AbstractMain.getInstance().options.incrementalChecking
+                && invariants != null;
+        boolean merged = false;
 
-                // 2. Only merge partitions that are k-equivalent
-                if (!KTails.kEquals(p, q, k)) {
-                    logger.fine("Partitions are not k-equivalent(k=" + k + ")");
+        // Attempt to merge all pairs of partitions within each bucket.
+        for (List<Partition> bucket : buckets.values()) {
+            for (int i = 0; i < bucket.size(); i++) {
+                Partition p = bucket.get(i);
+                // 1. Skip partitions that were merged away in this round
+                if (!pGraph.getNodes().contains(p)) {
                     continue;
                 }
 
-                // 3. Ignore partition pairs that were previously tried (are
-                // in blacklist)
-                if ((mergeBlacklist.containsKey(p) && mergeBlacklist.get(p)
-                        .contains(q))
-                        || (mergeBlacklist.containsKey(q) && mergeBlacklist
-                                .get(q).contains(p))) {
-                    logger.fine("Partitions are in the merge blacklist.");
-                    continue;
-                }
-
-                Set<Partition> parts = new LinkedHashSet<Partition>();
-                parts.addAll(pGraph.getNodes());
-                IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
-                        q));
-
-                CExamplePath<Partition> cExample = null;
-
-                if (invariants != null) {
-                    cExample = invariants.getFirstCounterExample(pGraph);
-                }
+                for (int j = i + 1; j < bucket.size(); j++) {
+                    Partition q = bucket.get(j);
+                    if (!pGraph.getNodes().contains(q)) {
+                        continue;
+                    }
 
-                if (cExample != null) {
-                    // The merge created a violation. Remember this pair of
-                    // partitions so that we don't try it again.
-                    logger.fine("Merge violates invariant: "
-                            + cExample.toString());
+                    logger.fine("Attempting to merge: " + p + "(hash: "
+                            + p.hashCode() + ") + " + q + "(hash: "
+                            + q.hashCode() + ")");
 
-                    if (!mergeBlacklist.containsKey(p)) {
-                        mergeBlacklist.put(p, new LinkedHashSet<Partition>());
+                    // 2. Ignore partition pairs that were previously tried (are
+                    // in blacklist)
+                    if (mergeBlacklist.containsKey(p)
+                            && mergeBlacklist.get(p).contains(q)) {
+                        logger.fine("Partitions are in the merge blacklist.");
+                        continue;
                     }
-                    mergeBlacklist.get(p).add(q);
 
-                    // Undo the merge.
-                    pGraph.apply(rewindOperation);
+                    // 3. The buckets were computed before this round's merges,
+                    // which may have changed the k-strings of p and q
+                    if (merged && k > 1 && !KTails.kEquals(p, q, k)) {
+                        logger.fine("Partitions are not k-equivalent(k=" + k
+                                + ")");
+                        continue;
+                    }
 
+                    Set<Partition> parts = null;
                     if (AbstractMain.getInstance().options.performExtraChecks) {
-                        pGraph.checkSanity();
+                        parts = new LinkedHashSet<Partition>(pGraph.getNodes());
                     }
-
-                    // We cannot change the partition sets because we are
-                    // iterating over the partitions. Therefore, check that
-                    // the resulting partition set is the same as the
-                    // original partition set.
-                    if (!(parts.containsAll(pGraph.getNodes()) && pGraph
-                            .getNodes().containsAll(parts))) {
-                        throw new InternalSynopticException(
-                                "partition set changed due to rewind: "
-                                        + rewindOperation);
+                    IOperation rewindOperation = pGraph
+                            .apply(new PartitionMerge(p, q));
+
+                    CExamplePath<Partition> cExample = null;
+                    if (incremental) {
+                        cExample = pGraph.getModelChecker()
+                                .getFirstCounterExample(invariants);
+                    } else if (invariants != null) {
+                        cExample = invariants.getFirstCounterExample(pGraph);
                     }
 
-                } else {
-                    logger.fine("Merge of partitions " + p.getEType()
-                            + " nodes maintains invs, accepted.");
-                    return true;
+                    if (cExample != null) {
+                        // The merge created a violation. Remember this pair of
+                        // partitions so that we don't try it again.
+                        logger.fine("Merge violates invariant: "
+                                + cExample.toString());
+                        blacklistMerge(mergeBlacklist, p, q);
+
+                        // Undo the merge.
+                        pGraph.apply(rewindOperation);
+                        if (incremental) {
+                            pGraph.getModelChecker().revertChanges();
+                        }
+
+                        if (parts != null) {
+                            pGraph.checkSanity();
+
+                            // Check that the resulting partition set is the
+                            // same as the original partition set.
+                            if (!(parts.containsAll(pGraph.getNodes()) && pGraph
+                                    .getNodes().containsAll(parts))) {
+                                throw new InternalSynopticException(
+                                        "partition set changed due to rewind: "
+                                                + rewindOperation);
+                            }
+                        }
+
+                    } else {
+                        logger.fine("Merge of partitions " + p.getEType()
+                                + " nodes maintains invs, accepted.");
+                        if (incremental) {
+                            pGraph.getModelChecker().commitChanges();
+                        }
+
+                        // Merging only adds paths to the graph, so any
+                        // partition that violated invariants when merged with
+                        // q will also violate them when merged with p.
+                        Set<Partition> qBlacklist = mergeBlacklist.remove(q);
+                        if (qBlacklist != null) {
+                            for (Partition r : qBlacklist) {
+                                mergeBlacklist.get(r).remove(q);
+                                blacklistMerge(mergeBlacklist, p, r);
+                            }
+                        }
+                        merged = true;
+                    }
                 }
             }
         }
 
-        // Unable to find any k-equivalent partitions; we're done.
-        return false;
+        return merged;
+    }
+
+    /**
+     * Records in mergeBlacklist that merging partitions p and q violates
+     * invariants. The blacklist is symmetric.
+     */
+    private static void blacklistMerge(
+            Map<Partition, Set<Partition>> mergeBlacklist, Partition p,
+            Partition q) {
+        if (!mergeBlacklist.containsKey(p)) {
+            mergeBlacklist.put(p, new LinkedHashSet<Partition>());
+        }
+        mergeBlacklist.get(p).add(q);
+        if (!mergeBlacklist.containsKey(q)) {
+            mergeBlacklist.put(q, new LinkedHashSet<Partition>());
+        }
+        mergeBlacklist.get(q).add(p);
     }
 }
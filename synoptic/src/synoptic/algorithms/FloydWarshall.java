@@ -1,8 +1,9 @@
 package synoptic.algorithms;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -12,95 +13,115 @@ import synoptic.model.interfaces.IGraph;
 public class FloydWarshall {
     /**
      * Warshall's Algorithm.
-     * 
+     *
      * <pre>
      * NOTE: this algorithm ignores special event types
      * (e.g., initial/terminal types).
      * </pre>
+     *
+     * The nodes are assigned ids trace by trace, so that the reachability rows
+     * of the nodes of a trace only span the ids of that trace. The closure is
+     * then computed in reverse topological order: once all of the children of
+     * a node m have been processed, the row of m is the union of the children
+     * and their rows, which is computed a word at a time. Nodes on or after
+     * cycles, which have no topological order, are first processed until a
+     * fixed point is reached.
      */
     public static TransitiveClosure warshallAlg(IGraph<EventNode> graph,
             Set<String> relations) {
-        Set<EventNode> allNodes = graph.getNodes();
-
         TransitiveClosure transClosure = new TransitiveClosure(relations);
-        Map<EventNode, Set<EventNode>> tc = transClosure.getTC();
-
-        // Maps a node to its parents in the transitive closure.
-        HashMap<EventNode, HashSet<EventNode>> tcParents = new HashMap<EventNode, HashSet<EventNode>>();
 
-        for (EventNode m : allNodes) {
+        // Group the nodes by trace, so that the nodes of a trace get
+        // consecutive ids.
+        Map<Integer, List<EventNode>> traceIdToNodes = new LinkedHashMap<Integer, List<EventNode>>();
+        for (EventNode m : graph.getNodes()) {
             if (m.getEType().isSpecialEventType()) {
                 continue;
             }
+            List<EventNode> traceNodes = traceIdToNodes.get(m.getTraceID());
+            if (traceNodes == null) {
+                traceNodes = new ArrayList<EventNode>();
+                traceIdToNodes.put(m.getTraceID(), traceNodes);
+            }
+            traceNodes.add(m);
+        }
 
-            /**
-             * Iterate through all children of m and for each child do 2 things:
-             * 
-             * <pre>
-             * 1. create a tc link between m and child and add m to tcParents[child]
-             * 2. create a tc link between m and every node n to which child is already
-             *    linked to in tc and add m to tcParents[n]
-             * </pre>
-             */
-            for (EventNode child : m.getAllSuccessors()) {
+        List<EventNode> nodes = new ArrayList<EventNode>();
+        for (List<EventNode> traceNodes : traceIdToNodes.values()) {
+            for (EventNode m : traceNodes) {
+                transClosure.getId(m);
+                nodes.add(m);
+            }
+        }
+        int numNodes = nodes.size();
+
+        // The ids of the (non-special) children of every node, and the number
+        // of (non-special) parents of every node.
+        int[][] children = new int[numNodes][];
+        int[] numParents = new int[numNodes];
+        int[] scratch = new int[16];
+        for (int i = 0; i < numNodes; i++) {
+            int numChildren = 0;
+            for (EventNode child : nodes.get(i).getAllSuccessors()) {
                 // ////////////////
                 // Ignore initial/terminal child events:
                 if (child.getEType().isSpecialEventType()) {
                     continue;
                 }
                 // ///////////////
-
-                // Create new tc map for node m.
-                if (!tc.containsKey(m)) {
-                    tc.put(m, new LinkedHashSet<EventNode>());
+                if (numChildren == scratch.length) {
+                    scratch = Arrays.copyOf(scratch, numChildren * 2);
                 }
-
-                if (!tcParents.containsKey(child)) {
-                    tcParents.put(child, new HashSet<EventNode>());
+                int c = transClosure.getId(child);
+                scratch[numChildren++] = c;
+                if (c < numNodes) {
+                    numParents[c]++;
                 }
+            }
+            children[i] = Arrays.copyOf(scratch, numChildren);
+        }
 
-                // Link m to c
-                tc.get(m).add(child);
-                tcParents.get(child).add(m);
-
-                // Link m to all nodes that c is linked to in tc
-                if (tc.containsKey(child)) {
-                    // m can reach nodes the child can reach transitively:
-                    tc.get(m).addAll(tc.get(child));
-                    // nodes that child can reach have m as a tc parent:
-                    for (EventNode n : tc.get(child)) {
-                        if (!tcParents.containsKey(n)) {
-                            tcParents.put(n, new HashSet<EventNode>());
-                        }
-                        tcParents.get(n).add(m);
-                    }
+        // Compute a topological order of the nodes (Kahn's algorithm).
+        int[] topoOrder = new int[numNodes];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (numParents[i] == 0) {
+                topoOrder[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int m = topoOrder[head++];
+            for (int c : children[m]) {
+                if (c < numNodes && --numParents[c] == 0) {
+                    topoOrder[tail++] = c;
                 }
             }
+        }
 
-            /**
-             * Now that we're done compiling the downward transitive closure of
-             * m, its time to push that information to m's parent nodes. For
-             * each tc parent p of m we do 2 things:
-             * 
-             * <pre>
-             * 1. For each node n in tc of m, add tc link between p and n
-             * 2. For each node n in tc of m, add p to tcParents[n]
-             * </pre>
-             */
-            if (tcParents.containsKey(m) && tc.containsKey(m)) {
-                for (EventNode p : tcParents.get(m)) {
-                    // P has a tc entry because its already part of
-                    // tcParents of m (so we've already processed it)
-                    // previously.
-                    tc.get(p).addAll(tc.get(m));
-                    for (EventNode n : tc.get(m)) {
-                        // n has a tcParents entry because m is a tc parent
-                        // of n and it must have been set above.
-                        tcParents.get(n).add(p);
+        if (tail < numNodes) {
+            // The remaining nodes are on or after a cycle, so they only reach
+            // other remaining nodes. Their closures have to be complete before
+            // the closures of their (ordered) parents are built below.
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int m = 0; m < numNodes; m++) {
+                    if (numParents[m] > 0
+                            && transClosure.addSuccessors(m, children[m],
+                                    children[m].length)) {
+                        changed = true;
                     }
                 }
             }
         }
+
+        // Build up the closure of every node from the closures of its
+        // children, which precede it in the reverse topological order.
+        for (int k = tail - 1; k >= 0; k--) {
+            int m = topoOrder[k];
+            transClosure.addSuccessors(m, children[m], children[m].length);
+        }
         return transClosure;
     }
 }
@@ -1,7 +1,8 @@
 package synoptic.algorithms;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -50,84 +51,34 @@ public class KTails {
         // Keeps track of the merges that we want to perform.
         Set<PartitionMultiMerge> merges = new LinkedHashSet<PartitionMultiMerge>();
 
-        // List of all partitions -- needed for ordering partitions in the loops
-        // below.
-        List<Partition> partitions = new ArrayList<Partition>(pGraph.getNodes());
-
-        // Partitions that belong to a merge.
-        List<Partition> mergedPartitions = new ArrayList<Partition>();
-
-        // Maps a partition to the set of strings of length <= k reachable from
-        // the partition.
-        // TODO: this is inefficient, ideally we would Map sets of strings to
-        // partitions with those sets!
-        Map<Partition, Set<List<EventType>>> kStringsMap = new LinkedHashMap<Partition, Set<List<EventType>>>();
-
-        // int remaining = partitions.size();
-        // Build the kStringsMap
-        logger.fine("Pre-computing [node -> ktail set] map");
-        for (Partition P : partitions) {
-            // logger.info("Remaining kTails pre-mining = " + remaining);
-            // remaining -= 1;
-
-            Set<List<EventType>> ret = getNodeKStrings(P, k);
-            kStringsMap.put(P, ret);
+        logger.fine("Computing k-tail fingerprints.");
+        Map<Partition, Integer> fingerprints = getKTailFingerprints(
+                pGraph.getNodes(), k);
+
+        // Maps a fingerprint to the partitions with that fingerprint, in the
+        // order in which the partitions appear in pGraph.
+        Map<Integer, List<Partition>> kEquivalenceClasses = new LinkedHashMap<Integer, List<Partition>>();
+        for (Partition P : pGraph.getNodes()) {
+            Integer fingerprint = fingerprints.get(P);
+            List<Partition> kEquivalent = kEquivalenceClasses.get(fingerprint);
+            if (kEquivalent == null) {
+                kEquivalent = new ArrayList<Partition>();
+                kEquivalenceClasses.put(fingerprint, kEquivalent);
+            }
+            kEquivalent.add(P);
         }
 
-        logger.fine("Pre-computed map: " + kStringsMap.toString());
-
-        // remaining = partitions.size();
         logger.fine("Finding sets of nodes that are k-equivalent.");
-        for (int i = 0; i < partitions.size(); i++) {
-            // logger.info("Remaining kTails n^2 checking = " + remaining);
-            // remaining -= 1;
-            Partition Pi = partitions.get(i);
-
-            // Skip partition Pi if it has already been merged previously.
-            // Since k-equivalence is transitive, this merge already contains
-            // all the k-equivalent partitions.
-            if (mergedPartitions.contains(Pi)) {
+        for (List<Partition> kEquivalent : kEquivalenceClasses.values()) {
+            if (kEquivalent.size() < 2) {
                 continue;
             }
-
-            // m will track all partitions to be merged with Pi.
-            PartitionMultiMerge m = null;
-
-            Set<List<EventType>> PiKStrings = kStringsMap.get(Pi);
-
-            // Can't merge a partition with itself. So skip i=j. Also, merging
-            // is commutative so if we've tried merge(p1,p2), then we don't have
-            // to try/check merge(p2,p1). So skip j < i.
-            for (int j = i + 1; j < partitions.size(); j++) {
-                Partition Pj = partitions.get(j);
-                // If we merged p1 and p2 previously, and now we are merging
-                // p2 and p3, then p3 _must_ be in the p1+p2 partition, since we
-                // must have already compared the ktails of p1 and p3
-                // previously.
-                if (mergedPartitions.contains(Pj)) {
-                    continue;
-                }
-
-                Set<List<EventType>> PjKStrings = kStringsMap.get(Pj);
-                if (!PiKStrings.equals(PjKStrings)) {
-                    continue;
-                }
-
-                logger.fine("Merging " + Pi + " and " + Pj);
-
-                if (m == null) {
-                    List<Partition> list = new ArrayList<Partition>();
-                    list.add(Pj);
-                    m = new PartitionMultiMerge(Pi, list);
-                    merges.add(m);
-                } else {
-                    m.addToMerge(Pj);
-                }
-
-                // We don't need to add Pi to mergedPartitions, since we
-                // will never come back to it in the check above.
-                mergedPartitions.add(Pj);
-            }
+            // Merge all partitions into the first one.
+            Partition Pi = kEquivalent.get(0);
+            List<Partition> list = new ArrayList<Partition>(kEquivalent.subList(
+                    1, kEquivalent.size()));
+            logger.fine("Merging " + Pi + " and " + list);
+            merges.add(new PartitionMultiMerge(Pi, list));
         }
 
         logger.fine("Applying merges.");
@@ -154,81 +105,164 @@ public class KTails {
             return false;
         }
 
-        Set<List<EventType>> n1Strings = getNodeKStrings(n1, k);
-        Set<List<EventType>> n2Strings = getNodeKStrings(n2, k);
-        if (n1Strings.equals(n2Strings)) {
-            return true;
-        }
-        return false;
+        List<NodeType> nodes = new ArrayList<NodeType>();
+        nodes.add(n1);
+        nodes.add(n2);
+        Map<NodeType, Integer> fingerprints = getKTailFingerprints(nodes, k);
+        return fingerprints.get(n1).equals(fingerprints.get(n2));
     }
 
     /**
+     * Computes a k-tail fingerprint for each of the nodes. Two nodes have the
+     * same fingerprint iff they are k-equivalent, i.e., iff the same set of
+     * strings of length <= k can be constructed by starting at either node.
+     * Fingerprints are only comparable within the result of a single call.
+     * 
+     * @param nodes
+     *            the nodes to fingerprint
      * @param k
-     * @param P
-     * @return
+     *            the k parameter for k-equality
+     * @return a map from each node to its fingerprint
      */
-    private static <NodeType extends INode<NodeType>> Set<List<EventType>> getNodeKStrings(
-            NodeType P, int k) {
-        assert (k >= 0);
-
-        if (k == 0) {
-            return Collections.emptySet();
-        }
-
-        Set<List<EventType>> prefixes = new LinkedHashSet<List<EventType>>();
-        List<EventType> prefix = new ArrayList<EventType>();
-        prefix.add(P.getEType());
-        prefixes.add(prefix);
+    public static <NodeType extends INode<NodeType>> Map<NodeType, Integer> getKTailFingerprints(
+            Iterable<NodeType> nodes, int k) {
+        assert (k > 0);
 
-        Set<List<EventType>> ret = new LinkedHashSet<List<EventType>>();
-        ret.addAll(prefixes);
-        for (NodeType child : P.getAllSuccessors()) {
-            // note: prefixes cannot mutate during this loop.
-            ret.addAll(getNodeKStringHelper(child, k - 1, prefixes));
+        KTailTries<NodeType> tries = new KTailTries<NodeType>();
+        Map<NodeType, Integer> fingerprints = new LinkedHashMap<NodeType, Integer>();
+        for (NodeType node : nodes) {
+            fingerprints.put(node, tries.getTrie(node, k));
         }
-        return ret;
+        return fingerprints;
     }
 
     /**
-     * Helper for getNodeKString. Returns a set of lists of EventTypes, which
-     * represents a set of strings that are of length <= k and which can be
-     * constructed by starting at P.
-     * 
-     * @param P
-     * @param k
-     * @param parentPrefixes
-     *            : cannot be modified.
-     * @return
+     * Interns the tries of the k-strings of nodes. The set of strings of length
+     * <= k that can be constructed by starting at a node is prefix-closed, so
+     * it is fully described by a trie of depth k. Each distinct trie is
+     * assigned a unique id, so two nodes are k-equivalent iff their tries have
+     * the same id. The trie of a node at depth k is built from the tries of
+     * its successors at depth k - 1, which are memoized and shared between all
+     * of the predecessors of the successor.
      */
-    private static <NodeType extends INode<NodeType>> Set<List<EventType>> getNodeKStringHelper(
-            NodeType P, int k, Set<List<EventType>> parentPrefixes) {
-        assert (k >= 0);
+    private static class KTailTries<NodeType extends INode<NodeType>> {
+        /**
+         * The root of a trie: an event type, along with the ids of its child
+         * tries, keyed by their root event type.
+         */
+        private static class Trie {
+            final EventType eType;
+            final Map<EventType, Integer> children;
+
+            Trie(EventType eType, Map<EventType, Integer> children) {
+                this.eType = eType;
+                this.children = children;
+            }
+
+            @Override
+            public int hashCode() {
+                return 31 * eType.hashCode() + children.hashCode();
+            }
 
-        if (k == 0) {
-            return Collections.emptySet();
+            @Override
+            public boolean equals(Object other) {
+                if (!(other instanceof Trie)) {
+                    return false;
+                }
+                Trie trie = (Trie) other;
+                return eType.equals(trie.eType)
+                        && children.equals(trie.children);
+            }
         }
 
-        Set<List<EventType>> newPrefixes = new LinkedHashSet<List<EventType>>();
+        /** Interned tries, indexed by id. */
+        private final List<Trie> tries = new ArrayList<Trie>();
+
+        /** Maps each interned trie to its id. */
+        private final Map<Trie, Integer> ids = new HashMap<Trie, Integer>();
+
+        /** The trie ids of nodes, indexed by depth - 1. */
+        private final Map<NodeType, Integer[]> nodeTries = new HashMap<NodeType, Integer[]>();
+
+        /** The id of the union of two tries, keyed by both trie ids. */
+        private final Map<Long, Integer> unions = new HashMap<Long, Integer>();
+
+        /**
+         * Returns the id of the trie of strings of length <= k that can be
+         * constructed by starting at node.
+         */
+        int getTrie(NodeType node, int k) {
+            Integer[] byDepth = nodeTries.get(node);
+            if (byDepth == null) {
+                byDepth = new Integer[k];
+                nodeTries.put(node, byDepth);
+            } else if (byDepth.length < k) {
+                byDepth = Arrays.copyOf(byDepth, k);
+                nodeTries.put(node, byDepth);
+            }
+            if (byDepth[k - 1] != null) {
+                return byDepth[k - 1];
+            }
 
-        for (List<EventType> prefix : parentPrefixes) {
-            // Have to copy the prefix into newPrefixes, completely!
-            List<EventType> prefixCopy = new ArrayList<EventType>();
-            prefixCopy.addAll(prefix);
-            prefixCopy.add(P.getEType());
-            newPrefixes.add(prefixCopy);
+            Map<EventType, Integer> children = new HashMap<EventType, Integer>();
+            if (k > 1) {
+                for (NodeType child : node.getAllSuccessors()) {
+                    addChild(children, getTrie(child, k - 1));
+                }
+            }
+            int id = intern(new Trie(node.getEType(), children));
+            byDepth[k - 1] = id;
+            return id;
         }
 
-        if (k == 1) {
-            return newPrefixes;
+        /**
+         * Adds the child trie with the given id to children, taking the union
+         * with the existing child that has the same root event type, if any.
+         */
+        private void addChild(Map<EventType, Integer> children, int childId) {
+            EventType eType = tries.get(childId).eType;
+            Integer existing = children.get(eType);
+            if (existing == null) {
+                children.put(eType, childId);
+            } else {
+                children.put(eType, union(existing, childId));
+            }
         }
 
-        // We always return at least the new prefixes we've constructed.
-        Set<List<EventType>> ret = newPrefixes;
-        for (NodeType child : P.getAllSuccessors()) {
-            ret.addAll(getNodeKStringHelper(child, k - 1, newPrefixes));
+        /**
+         * Returns the id of the union of two tries with the same root event
+         * type.
+         */
+        private int union(int id1, int id2) {
+            if (id1 == id2) {
+                return id1;
+            }
+            long key = ((long) Math.min(id1, id2) << 32) | Math.max(id1, id2);
+            Integer id = unions.get(key);
+            if (id != null) {
+                return id;
+            }
+
+            Trie trie1 = tries.get(id1);
+            Map<EventType, Integer> children = new HashMap<EventType, Integer>(
+                    trie1.children);
+            for (Integer childId : tries.get(id2).children.values()) {
+                addChild(children, childId);
+            }
+            id = intern(new Trie(trie1.eType, children));
+            unions.put(key, id);
+            return id;
         }
 
-        return ret;
+        /** Returns the id of trie, assigning it a new id if necessary. */
+        private int intern(Trie trie) {
+            Integer id = ids.get(trie);
+            if (id == null) {
+                id = tries.size();
+                tries.add(trie);
+                ids.put(trie, id);
+            }
+            return id;
+        }
     }
-
 }
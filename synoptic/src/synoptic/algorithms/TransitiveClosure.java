@@ -1,7 +1,11 @@
 package synoptic.algorithms;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,13 +14,31 @@ import synoptic.model.EventNode;
 /**
  * Computes and maintains the transitive closure. Code based on
  * http://www.cs.princeton.edu/courses/archive/fall05/cos226/lectures
- * /digraph.pdf
+ * /digraph.pdf <br />
+ * <br />
+ * Nodes are assigned dense integer ids in the order in which they are first
+ * recorded, and the nodes reachable from a node are stored as a bitset row of
+ * ids. A row is a long[] that only spans the words between the lowest and the
+ * highest ids that it contains, so as long as the ids of the nodes of a trace
+ * are close to each other (e.g., they are recorded trace by trace), the closure
+ * of a log takes space quadratic in the trace lengths, rather than in the log
+ * length.
  */
 public class TransitiveClosure {
-    // Reachability map.
-    // If y is reachable from x then tc.get(x).contains(y) == true,
-    // otherwise tc.get(x).contains(y) == false
-    Map<EventNode, Set<EventNode>> tc = new LinkedHashMap<EventNode, Set<EventNode>>();
+    /** Maps each recorded node to its id. */
+    private final Map<EventNode, Integer> ids = new HashMap<EventNode, Integer>();
+
+    /** The recorded nodes, indexed by id. */
+    private final List<EventNode> nodes = new ArrayList<EventNode>();
+
+    // Reachability rows, indexed by id.
+    // If y is reachable from x then bit id(y) is set in the row of x: that is,
+    // rows[id(x)][(id(y) >>> 6) - rowOffsets[id(x)]] has bit (id(y) & 63) set.
+    // The row of a node that reaches no nodes is null.
+    private long[][] rows = new long[16][];
+
+    /** The index of the word at which each row starts. */
+    private int[] rowOffsets = new int[16];
 
     private final Set<String> relations;
 
@@ -24,7 +46,7 @@ public class TransitiveClosure {
      * Create the transitive closure of {@code graph} for the Relation
      * {@code relation} using one of two algorithms -- an iterative Warshall's
      * algorithm or the recursive older algorithm.
-     * 
+     *
      * @param graph
      *            the graph
      * @param relation
@@ -36,10 +58,138 @@ public class TransitiveClosure {
         this.relations = relation;
     }
 
+    /**
+     * Returns the id of node n, assigning it the next id if necessary.
+     */
+    int getId(EventNode n) {
+        Integer id = ids.get(n);
+        if (id != null) {
+            return id;
+        }
+
+        id = nodes.size();
+        ids.put(n, id);
+        nodes.add(n);
+        if (id == rows.length) {
+            rows = Arrays.copyOf(rows, id * 2);
+            rowOffsets = Arrays.copyOf(rowOffsets, id * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of node n, or -1 if n has not been recorded.
+     */
+    private int findId(EventNode n) {
+        Integer id = ids.get(n);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Whether the node with id j is reachable from the node with id i.
+     */
+    private boolean isReachable(int i, int j) {
+        long[] row = rows[i];
+        if (row == null) {
+            return false;
+        }
+        int word = (j >>> 6) - rowOffsets[i];
+        if (word < 0 || word >= row.length) {
+            return false;
+        }
+        return (row[word] & (1L << j)) != 0;
+    }
+
+    /**
+     * Makes sure that the row of the node with id i spans the words
+     * lowWord..highWord, and returns the row.
+     */
+    private long[] ensureRowSpans(int i, int lowWord, int highWord) {
+        long[] row = rows[i];
+        if (row == null) {
+            row = new long[highWord - lowWord + 1];
+            rows[i] = row;
+            rowOffsets[i] = lowWord;
+            return row;
+        }
+
+        int offset = rowOffsets[i];
+        if (lowWord >= offset && highWord < offset + row.length) {
+            return row;
+        }
+
+        int newOffset = Math.min(lowWord, offset);
+        int newEnd = Math.max(highWord, offset + row.length - 1);
+        long[] newRow = new long[newEnd - newOffset + 1];
+        System.arraycopy(row, 0, newRow, offset - newOffset, row.length);
+        rows[i] = newRow;
+        rowOffsets[i] = newOffset;
+        return newRow;
+    }
+
+    /**
+     * Records that the nodes with ids succs[0..numSuccs) are reachable from
+     * the node with id i, along with all of the nodes that are reachable from
+     * them. The rows are combined a word at a time.
+     *
+     * @return whether any node became reachable from the node with id i
+     */
+    boolean addSuccessors(int i, int[] succs, int numSuccs) {
+        if (numSuccs == 0) {
+            return false;
+        }
+
+        // Size the row once, to span the successors and their rows.
+        int lowWord = Integer.MAX_VALUE;
+        int highWord = -1;
+        for (int k = 0; k < numSuccs; k++) {
+            int s = succs[k];
+            lowWord = Math.min(lowWord, s >>> 6);
+            highWord = Math.max(highWord, s >>> 6);
+            long[] succRow = rows[s];
+            if (succRow != null) {
+                lowWord = Math.min(lowWord, rowOffsets[s]);
+                highWord = Math.max(highWord, rowOffsets[s] + succRow.length
+                        - 1);
+            }
+        }
+        long[] row = ensureRowSpans(i, lowWord, highWord);
+        int offset = rowOffsets[i];
+
+        boolean changed = false;
+        for (int k = 0; k < numSuccs; k++) {
+            int s = succs[k];
+            int word = (s >>> 6) - offset;
+            long bit = 1L << s;
+            if ((row[word] & bit) == 0) {
+                row[word] |= bit;
+                changed = true;
+            }
+
+            // Self-loops in cyclic graphs may make row and succRow the same.
+            long[] succRow = rows[s];
+            if (succRow == null || succRow == row) {
+                continue;
+            }
+            int shift = rowOffsets[s] - offset;
+            for (int w = 0; w < succRow.length; w++) {
+                long merged = row[w + shift] | succRow[w];
+                if (merged != row[w + shift]) {
+                    row[w + shift] = merged;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
     /**
      * Check whether there is an edge in the transitive closure between
      * {@code m} and {@code n}.
-     * 
+     *
      * @param m
      *            a node
      * @param n
@@ -47,21 +197,35 @@ public class TransitiveClosure {
      * @return true if {@code m} can reach {@code n}
      */
     public boolean isReachable(EventNode m, EventNode n) {
-        Set<EventNode> i = tc.get(m);
-        if (i == null) {
+        int i = findId(m);
+        if (i == -1) {
             return false;
         }
-        return i.contains(n);
+        int j = findId(n);
+        if (j == -1) {
+            return false;
+        }
+        return isReachable(i, j);
     }
 
-    // WARNING: Assumes that 'into' has a non-null entry in tc.
+    /**
+     * Records that every node reachable from {@code from} is also reachable
+     * from {@code into}.
+     */
     public void mergeReachables(EventNode from, EventNode into) {
-        Set<EventNode> srcSet = tc.get(from);
+        int i = findId(from);
+        if (i == -1 || rows[i] == null) {
+            return;
+        }
 
-        if (srcSet != null) {
-            Set<EventNode> destSet = tc.get(into);
-            assert destSet != null;
-            destSet.addAll(srcSet);
+        long[] srcRow = rows[i];
+        int srcOffset = rowOffsets[i];
+        int j = getId(into);
+        long[] destRow = ensureRowSpans(j, srcOffset, srcOffset
+                + srcRow.length - 1);
+        int shift = srcOffset - rowOffsets[j];
+        for (int w = 0; w < srcRow.length; w++) {
+            destRow[w + shift] |= srcRow[w];
         }
     }
 
@@ -69,29 +233,63 @@ public class TransitiveClosure {
      * Records the fact that m can transitively reach n.
      */
     public void recordTransitiveReachability(EventNode m, EventNode n) {
-        Set<EventNode> r;
-        if (!tc.containsKey(m)) {
-            r = new LinkedHashSet<EventNode>();
-            tc.put(m, r);
-        } else {
-            r = tc.get(m);
-        }
-        r.add(n);
+        int i = getId(m);
+        int j = getId(n);
+        long[] row = ensureRowSpans(i, j >>> 6, j >>> 6);
+        row[(j >>> 6) - rowOffsets[i]] |= 1L << j;
+    }
+
+    /**
+     * Records the fact that each node in chain can transitively reach all of
+     * the nodes that follow it in chain.
+     */
+    public void recordChainReachability(List<EventNode> chain) {
+        int size = chain.size();
+        int[] chainIds = new int[size];
+        for (int k = 0; k < size; k++) {
+            chainIds[k] = getId(chain.get(k));
+        }
+
+        // Every node reaches the next node, and everything that the next node
+        // reaches.
+        int[] next = new int[1];
+        for (int k = size - 2; k >= 0; k--) {
+            next[0] = chainIds[k + 1];
+            addSuccessors(chainIds[k], next, 1);
+        }
     }
 
     /**
-     * Returns the set of nodes that are reachable from a source node
-     * 
+     * Returns the set of nodes that are reachable from a source node, or null
+     * if no nodes are reachable from it. The set is a copy, in the order in
+     * which the nodes were recorded.
+     *
      * @param source
      *            the node from which the reachability closure is computed.
      */
     public Set<EventNode> getReachableNodes(EventNode source) {
-        return tc.get(source);
+        int i = findId(source);
+        if (i == -1 || rows[i] == null) {
+            return null;
+        }
+
+        Set<EventNode> reachables = new LinkedHashSet<EventNode>();
+        long[] row = rows[i];
+        int base = rowOffsets[i] << 6;
+        for (int w = 0; w < row.length; w++) {
+            long word = row[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                reachables.add(nodes.get(base + (w << 6) + bit));
+                word &= word - 1;
+            }
+        }
+        return reachables;
     }
 
     /**
      * Equality for transitive closure
-     * 
+     *
      * @param other
      * @return if {@code o} describes the same relation is {@code this}
      */
@@ -99,22 +297,22 @@ public class TransitiveClosure {
         if (!this.relations.equals(other.relations)) {
             return false;
         }
+        return other.isContainedIn(this) && isContainedIn(other);
+    }
 
-        for (EventNode u : other.tc.keySet()) {
-            for (EventNode v : other.tc.get(u)) {
-                // v is reachable from u in other.tc, check that same is true
-                // for this.tc:
-                if (!isReachable(u, v)) {
-                    return false;
-                }
+    /**
+     * Whether every pair of nodes in this closure is also in other.
+     */
+    private boolean isContainedIn(TransitiveClosure other) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Set<EventNode> reachables = getReachableNodes(nodes.get(i));
+            if (reachables == null) {
+                continue;
             }
-        }
-
-        for (EventNode u : tc.keySet()) {
-            for (EventNode v : tc.get(u)) {
-                // v is reachable from u in this.tc, check that same is true for
-                // other.tc:
-                if (!other.isReachable(u, v)) {
+            for (EventNode v : reachables) {
+                // v is reachable from u in this.tc, check that same is true
+                // for other.tc:
+                if (!other.isReachable(nodes.get(i), v)) {
                     return false;
                 }
             }
@@ -123,13 +321,24 @@ public class TransitiveClosure {
     }
 
     public String toString() {
-        return tc.toString();
+        return getTC().toString();
     }
 
     /**
+     * Returns the closure as a map from each node that can reach some node to
+     * the set of nodes that it can reach. The map is a copy that is built on
+     * every call, so this should be avoided for large closures.
+     *
      * @return tc
      */
     public Map<EventNode, Set<EventNode>> getTC() {
+        Map<EventNode, Set<EventNode>> tc = new LinkedHashMap<EventNode, Set<EventNode>>();
+        for (EventNode n : nodes) {
+            Set<EventNode> reachables = getReachableNodes(n);
+            if (reachables != null) {
+                tc.put(n, reachables);
+            }
+        }
         return tc;
     }
 
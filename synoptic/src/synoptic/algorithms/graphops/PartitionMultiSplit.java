@@ -1,8 +1,10 @@
 package synoptic.algorithms.graphops;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import synoptic.main.AbstractMain;
@@ -121,6 +123,17 @@ public class PartitionMultiSplit implements IOperation {
         return partition;
     }
 
+    /**
+     * Returns the sets of events that the partition will be split into. The
+     * first set is the one that remains in the partition once the split is
+     * committed.
+     * 
+     * @return an unmodifiable view of the partitioning
+     */
+    public List<Set<EventNode>> getPartitioning() {
+        return Collections.unmodifiableList(partitioning);
+    }
+
     /**
      * Incorporates a partition multi split.
      * 
@@ -159,10 +159,16 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         try {
             List<CExamplePath<T>> paths = null;
 
-            paths = new ArrayList<CExamplePath<T>>();
+            // Check all of the invariants in one traversal of the graph.
+            List<BinaryInvariant> binaryInvariants = new ArrayList<BinaryInvariant>(
+                    invariants.size());
             for (ITemporalInvariant tinv : invariants) {
-                CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                        (BinaryInvariant) tinv, graph);
+                binaryInvariants.add((BinaryInvariant) tinv);
+            }
+
+            paths = new ArrayList<CExamplePath<T>>();
+            for (CExamplePath<T> path : FsmModelChecker.getCounterExamples(
+                    binaryInvariants, graph)) {
                 if (path != null) {
                     paths.add(path);
                 }
@@ -60,7 +60,7 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
     public void transition(T input) {
         BitSet isA = getInputInvariantsDependencies(0, input);
         BitSet isB = getInputInvariantsDependencies(1, input);
-        BitSet neither = nor(isA, isB, count);
+        BitSet neither = norScratch(isA, isB);
         BitSet s1 = sets.get(0);
         BitSet s2 = sets.get(1);
 
@@ -59,6 +59,14 @@ public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         wasB = extend(x, wasB);
     }
 
+    @Override
+    public void transitionFrom(TracingStateSet<T> source, T x) {
+        AFbyTracingSet<T> casted = (AFbyTracingSet<T>) source;
+        wasA = casted.wasA;
+        wasB = casted.wasB;
+        transition(x);
+    }
+
     @Override
     public HistoryNode<T> failpath() {
         return wasA;
@@ -49,8 +49,9 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void setInitial(T input) {
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
+        // Inputs cloned since they become the (mutable) state vectors.
+        BitSet isA = getInputCopy(0, input);
+        BitSet isB = getInputCopy(1, input);
         BitSet neither = nor(isA, isB, count);
         sets.set(0, neither);
         sets.set(1, isA);
@@ -59,10 +60,10 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void transition(T input) {
-        // Inputs cloned so that they can be mutated.
-        BitSet isA = getInputCopy(0, input);
-        BitSet isB = getInputCopy(1, input);
-        BitSet neither = nor(isA, isB, count);
+        // Inputs copied into scratch vectors so that they can be mutated.
+        BitSet isA = getInputScratch(0, input);
+        BitSet isB = getInputScratch(1, input);
+        BitSet neither = norScratch(isA, isB);
         BitSet s1 = sets.get(0);
         BitSet s2 = sets.get(1);
         BitSet s3 = sets.get(2);
@@ -61,6 +61,15 @@ public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         firstB = extend(x, firstB);
     }
 
+    @Override
+    public void transitionFrom(TracingStateSet<T> source, T x) {
+        APTracingSet<T> casted = (APTracingSet<T>) source;
+        neitherSeen = casted.neitherSeen;
+        firstA = casted.firstA;
+        firstB = casted.firstB;
+        transition(x);
+    }
+
     @Override
     public HistoryNode<T> failpath() {
         return firstB;
@@ -0,0 +1,455 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * <p>
+ * Finds the counter-examples of many invariants in a single traversal of a
+ * graph, instead of running a tracing state set over the graph once for each
+ * invariant.
+ * </p>
+ * <p>
+ * Unconstrained invariants (AFby, AP, NFby and IntrBy) are simulated with the
+ * bitset FSMs of FsmStateSet, one bit per invariant. The graph is traversed
+ * breadth first, and each path in the traversal carries the state of every
+ * invariant along it as state vectors. All of the invariants that are carried
+ * by a path share the HistoryNode of that path, so a path is recorded once no
+ * matter how many invariants it is a counter-example for. A state of an
+ * invariant at a node is only carried by the first path that reaches it, which
+ * makes the first path that reaches a failure state at a terminal node a
+ * shortest counter-example. At that point the invariant is done, and it is not
+ * carried any further.
+ * </p>
+ * <p>
+ * Constrained invariants are checked by ConstrainedTracingSets. Their histories
+ * carry the running time of each invariant, so they cannot be shared between
+ * invariants. And since a ConstrainedTracingSet keeps one time per state, its
+ * result depends on the order in which states are propagated. So each of them
+ * is propagated with its own worklist, in the same order as in
+ * FsmModelChecker.getCounterExample(), which gives the same counter-examples.
+ * They share the indexing of the nodes and their successors, which
+ * getCounterExample() computes anew for every invariant.
+ * </p>
+ * 
+ * @see FsmModelChecker#getCounterExamples(List, IGraph)
+ */
+public class BitSetTracingChecker<Node extends INode<Node>> {
+    /**
+     * A path of the traversal, together with the states of the unconstrained
+     * invariants that it was the first to reach at its last node.
+     */
+    private static class TracedPath<Node extends INode<Node>> {
+        final int nodeId;
+        final HistoryNode<Node> history;
+        // Indexed by FSMs and then by state, null where no state was reached.
+        final BitSet[][] states;
+
+        TracedPath(int nodeId, HistoryNode<Node> history, BitSet[][] states) {
+            this.nodeId = nodeId;
+            this.history = history;
+            this.states = states;
+        }
+    }
+
+    private final IGraph<Node> graph;
+    private final List<Node> nodes;
+    private final Map<Node, Integer> nodeIds;
+    private final int[][] adjacentIds;
+    private final List<Integer> terminalIds = new ArrayList<Integer>();
+
+    private final List<BinaryInvariant> invariants;
+    private final List<CExamplePath<Node>> counterExamples;
+    private int numUnresolved = 0;
+
+    // The FSMs of each kind of unconstrained invariant, the index into
+    // invariants of the invariant of each bit, the bits whose invariants are
+    // done, and the states of each bit which have been reached at each node.
+    private final List<FsmStateSet<Node>> fsms = new ArrayList<FsmStateSet<Node>>();
+    private final List<List<Integer>> fsmInvIds = new ArrayList<List<Integer>>();
+    private final List<BitSet> fsmResolved = new ArrayList<BitSet>();
+    private final List<BitSet[][]> fsmVisited = new ArrayList<BitSet[][]>();
+
+    // The index into invariants of each constrained invariant, and the
+    // initial tracing set that checks it.
+    private final List<Integer> constrainedInvIds = new ArrayList<Integer>();
+    private final List<ConstrainedTracingSet<Node>> constrainedInitials = new ArrayList<ConstrainedTracingSet<Node>>();
+
+    public BitSetTracingChecker(List<BinaryInvariant> invariants,
+            IGraph<Node> graph) {
+        this.graph = graph;
+        this.invariants = invariants;
+
+        nodes = new ArrayList<Node>(graph.getNodes());
+        int numNodes = nodes.size();
+        nodeIds = new HashMap<Node, Integer>(numNodes * 2);
+        for (int i = 0; i < numNodes; i++) {
+            nodeIds.put(nodes.get(i), i);
+            if (nodes.get(i).isTerminal()) {
+                terminalIds.add(i);
+            }
+        }
+        adjacentIds = new int[numNodes][];
+
+        counterExamples = new ArrayList<CExamplePath<Node>>(invariants.size());
+        for (int i = 0; i < invariants.size(); i++) {
+            counterExamples.add(null);
+        }
+
+        // Sort the invariants by the way in which they are checked.
+        List<List<BinaryInvariant>> fsmInvs = new ArrayList<List<BinaryInvariant>>();
+        for (int i = 0; i < 4; i++) {
+            fsmInvs.add(new ArrayList<BinaryInvariant>());
+            fsmInvIds.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < invariants.size(); i++) {
+            BinaryInvariant inv = invariants.get(i);
+            int fsm = fsmIndex(inv);
+            if (fsm >= 0) {
+                fsmInvs.get(fsm).add(inv);
+                fsmInvIds.get(fsm).add(i);
+                numUnresolved++;
+                continue;
+            }
+
+            ConstrainedTracingSet<Node> initial = null;
+            if (inv.getClass().equals(TempConstrainedInvariant.class)) {
+                initial = FsmModelChecker
+                        .newConstrainedTracingSet((TempConstrainedInvariant<?>) inv);
+            }
+            if (initial != null) {
+                constrainedInvIds.add(i);
+                constrainedInitials.add(initial);
+            } else {
+                // No FSM checks this invariant along with the others.
+                counterExamples.set(i,
+                        FsmModelChecker.getCounterExample(inv, graph));
+            }
+        }
+
+        for (int i = 0; i < fsmInvs.size(); i++) {
+            List<BinaryInvariant> invs = fsmInvs.get(i);
+            if (invs.isEmpty()) {
+                continue;
+            }
+            FsmStateSet<Node> fsm;
+            if (i == 0) {
+                fsm = new AFbyInvFsms<Node>(invs);
+            } else if (i == 1) {
+                fsm = new APInvFsms<Node>(invs);
+            } else if (i == 2) {
+                fsm = new NFbyInvFsms<Node>(invs);
+            } else {
+                fsm = new IntrByInvFsms<Node>(invs);
+            }
+            fsms.add(fsm);
+            fsmResolved.add(new BitSet());
+            fsmVisited.add(new BitSet[numNodes][]);
+        }
+        for (int i = fsmInvIds.size() - 1; i >= 0; i--) {
+            if (fsmInvIds.get(i).isEmpty()) {
+                fsmInvIds.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the bitset FSMs that check inv, or -1 if inv is not
+     * checked by bitset FSMs.
+     */
+    private static int fsmIndex(BinaryInvariant inv) {
+        Class<?> invClass = inv.getClass();
+        if (invClass.equals(AlwaysFollowedInvariant.class)) {
+            return 0;
+        } else if (invClass.equals(AlwaysPrecedesInvariant.class)) {
+            return 1;
+        } else if (invClass.equals(NeverFollowedInvariant.class)) {
+            return 2;
+        } else if (invClass.equals(InterruptedByInvariant.class)) {
+            return 3;
+        }
+        return -1;
+    }
+
+    /**
+     * Traverses the graph and returns the counter-example of each invariant,
+     * in the order of the invariants, with null for the invariants that hold.
+     */
+    public List<CExamplePath<Node>> run() {
+        Node initial = graph.getDummyInitialNode();
+        int initialId = nodeIds.get(initial);
+
+        // The paths of the current level of the traversal.
+        List<TracedPath<Node>> paths = new ArrayList<TracedPath<Node>>();
+
+        if (!fsms.isEmpty()) {
+            HistoryNode<Node> history = new HistoryNode<Node>(initial, null, 1);
+            BitSet[][] states = new BitSet[fsms.size()][];
+            for (int f = 0; f < fsms.size(); f++) {
+                FsmStateSet<Node> fsm = fsms.get(f);
+                fsm.setInitial(initial);
+                BitSet all = new BitSet();
+                all.set(0, fsmInvIds.get(f).size());
+                states[f] = visit(f, initialId, all);
+                if (initial.isTerminal()) {
+                    resolveFailed(f, states[f], history);
+                }
+            }
+            paths.add(new TracedPath<Node>(initialId, history, states));
+        }
+
+        while (numUnresolved > 0 && !paths.isEmpty()) {
+            List<TracedPath<Node>> nextPaths = new ArrayList<TracedPath<Node>>();
+            for (TracedPath<Node> path : paths) {
+                extend(path, nextPaths);
+            }
+            paths = nextPaths;
+        }
+
+        for (int i = 0; i < constrainedInitials.size(); i++) {
+            checkConstrained(i);
+        }
+
+        return counterExamples;
+    }
+
+    /**
+     * Returns the ids of the successors of a node.
+     */
+    private int[] getAdjacentIds(int nodeId) {
+        int[] targetIds = adjacentIds[nodeId];
+        if (targetIds == null) {
+            Set<Node> adjacentNodes = graph.getAdjacentNodes(nodes.get(nodeId));
+            targetIds = new int[adjacentNodes.size()];
+            int i = 0;
+            for (Node target : adjacentNodes) {
+                targetIds[i++] = nodeIds.get(target);
+            }
+            adjacentIds[nodeId] = targetIds;
+        }
+        return targetIds;
+    }
+
+    /**
+     * Extends path by each of the successors of its node, adding the extended
+     * paths which reach new states to nextPaths.
+     */
+    private void extend(TracedPath<Node> path, List<TracedPath<Node>> nextPaths) {
+        // The invariants carried by this path, for each of the FSMs.
+        BitSet[] carried = new BitSet[fsms.size()];
+        for (int f = 0; f < fsms.size(); f++) {
+            if (path.states[f] != null) {
+                carried[f] = new BitSet();
+                for (BitSet state : path.states[f]) {
+                    if (state != null) {
+                        carried[f].or(state);
+                    }
+                }
+            }
+        }
+
+        for (int targetId : getAdjacentIds(path.nodeId)) {
+            Node target = nodes.get(targetId);
+            HistoryNode<Node> history = null;
+            BitSet[][] states = null;
+
+            for (int f = 0; f < fsms.size(); f++) {
+                if (carried[f] == null) {
+                    continue;
+                }
+                FsmStateSet<Node> fsm = fsms.get(f);
+                BitSet[] source = path.states[f];
+                for (int s = 0; s < fsm.sets.size(); s++) {
+                    BitSet set = fsm.sets.get(s);
+                    set.clear();
+                    if (source[s] != null) {
+                        set.or(source[s]);
+                    }
+                }
+                fsm.transition(target);
+
+                BitSet[] reached = visit(f, targetId, carried[f]);
+                if (reached == null) {
+                    continue;
+                }
+                // All of the invariants reaching new states at target share
+                // the history of this extension.
+                if (history == null) {
+                    history = new HistoryNode<Node>(target, path.history,
+                            path.history.count + 1);
+                    states = new BitSet[fsms.size()][];
+                }
+                states[f] = reached;
+                if (target.isTerminal()) {
+                    resolveFailed(f, reached, history);
+                }
+            }
+
+            if (states != null) {
+                nextPaths.add(new TracedPath<Node>(targetId, history, states));
+            }
+        }
+    }
+
+    /**
+     * Restricts the current states of the f'th FSMs to the invariants in
+     * carried which are not yet done, and marks the states among these which
+     * have not been reached at nodeId before as reached. Returns these states,
+     * or null if there are none.
+     */
+    private BitSet[] visit(int f, int nodeId, BitSet carried) {
+        FsmStateSet<Node> fsm = fsms.get(f);
+        int numStates = fsm.sets.size();
+        BitSet[] visited = fsmVisited.get(f)[nodeId];
+        if (visited == null) {
+            visited = new BitSet[numStates];
+            for (int s = 0; s < numStates; s++) {
+                visited[s] = new BitSet();
+            }
+            fsmVisited.get(f)[nodeId] = visited;
+        }
+
+        BitSet[] reached = null;
+        for (int s = 0; s < numStates; s++) {
+            BitSet state = (BitSet) fsm.sets.get(s).clone();
+            state.and(carried);
+            state.andNot(fsmResolved.get(f));
+            state.andNot(visited[s]);
+            if (!state.isEmpty()) {
+                if (reached == null) {
+                    reached = new BitSet[numStates];
+                }
+                reached[s] = state;
+                visited[s].or(state);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Records history, which ends at a terminal node, as the counter-example
+     * of each of the invariants of the f'th FSMs that just reached a failure
+     * state there.
+     */
+    private void resolveFailed(int f, BitSet[] reached, HistoryNode<Node> history) {
+        if (reached == null) {
+            return;
+        }
+        BitSet failed = fsms.get(f).whichFail();
+        BitSet reachedAny = new BitSet();
+        for (BitSet state : reached) {
+            if (state != null) {
+                reachedAny.or(state);
+            }
+        }
+        failed.and(reachedAny);
+
+        for (int i = failed.nextSetBit(0); i >= 0; i = failed.nextSetBit(i + 1)) {
+            int invId = fsmInvIds.get(f).get(i);
+            counterExamples.set(invId,
+                    history.toCounterexample(invariants.get(invId)));
+            fsmResolved.get(f).set(i);
+            numUnresolved--;
+        }
+    }
+
+    /**
+     * Model checks the i'th constrained invariant like
+     * FsmModelChecker.getCounterExample() does, and records the shortest
+     * failure path at a terminal node as its counter-example.
+     */
+    private void checkConstrained(int i) {
+        ConstrainedTracingSet<Node> initial = constrainedInitials.get(i);
+        int numNodes = nodes.size();
+
+        // Maps a node id to a set of states, null until the node is reached.
+        List<ConstrainedTracingSet<Node>> states = new ArrayList<ConstrainedTracingSet<Node>>(
+                numNodes);
+        for (int j = 0; j < numNodes; j++) {
+            states.add(null);
+        }
+
+        // A queue of node ids that we should process, kept as a ring buffer.
+        int[] workList = new int[numNodes];
+        int head = 0;
+        int size = 0;
+        BitSet inWorkList = new BitSet(numNodes);
+
+        Node node = graph.getDummyInitialNode();
+        int nodeId = nodeIds.get(node);
+        workList[0] = nodeId;
+        size = 1;
+        inWorkList.set(nodeId);
+        ConstrainedTracingSet<Node> initialStates = initial.copy();
+        initialStates.setInitial(node);
+        states.set(nodeId, initialStates);
+
+        ConstrainedTracingSet<Node> updatesToTargetStates = initial.copy();
+
+        search:
+        while (size > 0) {
+            nodeId = workList[head];
+            head = (head + 1) % numNodes;
+            size--;
+            inWorkList.clear(nodeId);
+            ConstrainedTracingSet<Node> current = states.get(nodeId);
+
+            for (int targetId : getAdjacentIds(nodeId)) {
+                Node target = nodes.get(targetId);
+                ConstrainedTracingSet<Node> oldTargetStates = states
+                        .get(targetId);
+                if (oldTargetStates == null) {
+                    oldTargetStates = initial.copy();
+                    states.set(targetId, oldTargetStates);
+                }
+                updatesToTargetStates.transitionFrom(current, target);
+
+                // Evaluate isSubset _before_ the merge.
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+                if (oldTargetStates.isFail() && target.isTerminal()) {
+                    break search;
+                }
+
+                if (!isSubset && !inWorkList.get(targetId)) {
+                    workList[(head + size) % numNodes] = targetId;
+                    size++;
+                    inWorkList.set(targetId);
+                }
+            }
+        }
+
+        HistoryNode<Node> shortestPath = null;
+        for (int terminalId : terminalIds) {
+            if (states.get(terminalId) == null) {
+                continue;
+            }
+            HistoryNode<Node> path = states.get(terminalId).failpath();
+            if (path != null
+                    && (shortestPath == null || shortestPath.count > path.count)) {
+                shortestPath = path;
+            }
+        }
+
+        if (shortestPath != null) {
+            int invId = constrainedInvIds.get(i);
+            counterExamples.set(invId,
+                    shortestPath.toCounterexample(invariants.get(invId)));
+        }
+    }
+}
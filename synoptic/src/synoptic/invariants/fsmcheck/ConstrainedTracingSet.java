@@ -207,6 +207,25 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         previous = input;
     }
 
+    /**
+     * Places this tracing state set in its start state at input, which unlike
+     * in setInitial() need not be the INITIAL node. Used to model check a part
+     * of a graph that starts somewhere in the middle of the graph.
+     * 
+     * @param input
+     *            The node to start at
+     */
+    public void setStart(T input) {
+        ConstrainedHistoryNode<T> newHistory = new ConstrainedHistoryNode<T>(
+                input, tBound.getZeroResource());
+
+        // Always start on State0
+        states.set(0, newHistory);
+
+        // This node is our new previous node (for future transitions)
+        previous = input;
+    }
+
     /**
      * Returns true if this ConstrainedTracingSet is of an upper-bound time
      * constraint type, false otherwise
@@ -243,31 +262,21 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
             isB = true;
         }
 
-        // Get all time deltas from the transition between "previous" and
-        // "input" nodes
-        Set<ITransition<EventNode>> evTransitions = null;
-        if (previous != null) {
-            // Get transitions
-            evTransitions = ((Partition) previous)
-                    .getEventTransitionsWithExactRelations((Partition) input,
-                            relation);
-
-            // Transitions should not be empty or null
-            if (evTransitions == null || evTransitions.size() == 0) {
-                throw new InternalSynopticException(
-                        "Model-checker transitioned along non-existent edge");
-            }
-        }
-
         boolean isUpper = isUpperBoundType();
 
-        // Get transition(s) with min (if lower constraint) or max (if upper
-        // constraint) time delta
+        // Get the event transition(s) between "previous" and "input" nodes
+        // with min (if lower constraint) or max (if upper constraint) time
+        // delta
         List<ITransition<EventNode>> minMaxTrans = null;
-        if (isUpper) {
-            minMaxTrans = getMaxTransitions(evTransitions);
-        } else {
-            minMaxTrans = getMinTransitions(evTransitions);
+        if (previous != null) {
+            minMaxTrans = ((Partition) previous).getMinMaxEventTransitions(
+                    (Partition) input, relation, isUpper);
+        }
+
+        // Transitions should not be empty or null
+        if (minMaxTrans == null || minMaxTrans.isEmpty()) {
+            throw new InternalSynopticException(
+                    "Model-checker transitioned along non-existent edge");
         }
 
         // Store min/max time for convenience
@@ -320,93 +329,15 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
             List<ITransition<EventNode>> transitions, boolean isA, boolean isB,
             List<Boolean> outOfBound, List<ConstrainedHistoryNode<T>> sOld);
 
-    /**
-     * Get the event transition(s) with the smallest time delta
-     * 
-     * @param transitions
-     *            The event transitions
-     * @return Smallest time delta transitions
-     */
-    private List<ITransition<EventNode>> getMinTransitions(
-            Set<ITransition<EventNode>> transitions) {
-        return getMinMaxTransitions(transitions, false);
-    }
-
-    /**
-     * Get the event transition(s) with the largest time delta
-     * 
-     * @param transitions
-     *            The event transitions
-     * @return Largest time delta transitions
-     */
-    private List<ITransition<EventNode>> getMaxTransitions(
-            Set<ITransition<EventNode>> transitions) {
-        return getMinMaxTransitions(transitions, true);
-    }
-
-    /**
-     * Get transition(s) with min or max time delta
-     */
-    private List<ITransition<EventNode>> getMinMaxTransitions(
-            Set<ITransition<EventNode>> transitions, boolean findMax) {
-
-        // Min/max transitions to be returned
-        List<ITransition<EventNode>> minMaxTransitions = new ArrayList<ITransition<EventNode>>();
-
-        // Find and store transitions with min or max time delta
-        for (ITransition<EventNode> curTrans : transitions) {
-
-            // Check if there is no min/max yet
-            if (minMaxTransitions.isEmpty()
-                    || minMaxTransitions.get(0).getTimeDelta() == null) {
-
-                minMaxTransitions.clear();
-                minMaxTransitions.add(curTrans);
-
-            } else {
-
-                // Compare current transition's time with min/max time
-                AbstractResource curTime = curTrans.getTimeDelta();
-                AbstractResource minMaxTime = minMaxTransitions.get(0).getTimeDelta();
-                int timeComparison = curTime.compareTo(minMaxTime);
-
-                // Finding MAX time delta
-                if (findMax) {
-                    // Current time is less than max: ignore
-                    if (timeComparison < 0) {
-                        continue;
-                    }
-                    // Current time ties the max: add to list
-                    else if (timeComparison == 0) {
-                        minMaxTransitions.add(curTrans);
-                    }
-                    // Current time is more than max: replace list
-                    else {
-                        minMaxTransitions.clear();
-                        minMaxTransitions.add(curTrans);
-                    }
-                }
-
-                // Finding MIN time delta
-                else {
-                    // Current time is less than min: replace list
-                    if (timeComparison < 0) {
-                        minMaxTransitions.clear();
-                        minMaxTransitions.add(curTrans);
-                    }
-                    // Current time ties the min: add to list
-                    else if (timeComparison == 0) {
-                        minMaxTransitions.add(curTrans);
-                    }
-                    // Current time is more than min: ignore
-                    else {
-                        continue;
-                    }
-                }
-            }
-        }
-
-        return minMaxTransitions;
+    @Override
+    public void transitionFrom(TracingStateSet<T> source, T input) {
+        ConstrainedTracingSet<T> casted = (ConstrainedTracingSet<T>) source;
+        states.clear();
+        states.addAll(casted.states);
+        tRunning.clear();
+        tRunning.addAll(casted.tRunning);
+        previous = casted.previous;
+        transition(input);
     }
 
     @Override
@@ -2,6 +2,8 @@ package synoptic.invariants.fsmcheck;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -51,21 +53,44 @@ public class FsmModelChecker {
             IStateSet<Node, StateSet> initial, IGraph<Node> graph,
             boolean earlyExit) {
 
-        // A queue of nodes that we should process.
-        Queue<Node> workList = new LinkedList<Node>();
+        // Index the nodes, so that states and worklist membership can be kept
+        // in arrays.
+        List<Node> nodes = new ArrayList<Node>(graph.getNodes());
+        int numNodes = nodes.size();
+        Map<Node, Integer> nodeIds = new HashMap<Node, Integer>(numNodes * 2);
+        for (int i = 0; i < numNodes; i++) {
+            nodeIds.put(nodes.get(i), i);
+        }
 
-        // Maps a node to a set of states.
-        Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
+        // Maps a node id to a set of states.
+        List<StateSet> states = new ArrayList<StateSet>(numNodes);
 
-        // Populate the state map with initial states.
-        for (Node node : graph.getNodes()) {
-            states.put(node, initial.copy());
+        // Populate the state list with initial states.
+        for (int i = 0; i < numNodes; i++) {
+            states.add(initial.copy());
         }
 
+        // Ids of the nodes adjacent to each node, computed when the node is
+        // first processed.
+        int[][] adjacentIds = new int[numNodes][];
+
+        // A queue of node ids that we should process, kept as a ring buffer.
+        // A node is in the queue at most once, so numNodes entries suffice.
+        int[] workList = new int[numNodes];
+        int head = 0;
+        int size = 0;
+        BitSet inWorkList = new BitSet(numNodes);
+
         // Add initial node to the worklist.
         Node node = graph.getDummyInitialNode();
-        workList.add(node);
-        states.get(node).setInitial(node);
+        int nodeId = nodeIds.get(node);
+        workList[0] = nodeId;
+        size = 1;
+        inWorkList.set(nodeId);
+        states.get(nodeId).setInitial(node);
+
+        // Reused to hold the states transitioned along each edge.
+        StateSet updatesToTargetStates = initial.copy();
 
         // Actual model checking step - takes an item off the worklist, and
         // transitions the state found at that node, using the labels of all
@@ -75,15 +100,30 @@ public class FsmModelChecker {
         // change. Therefore, only in the case where it's not a subset is the
         // merge performed and the destination node added to the worklist
         // (the changed states need to be propagated).
-        while (!workList.isEmpty()) {
-            node = workList.remove();
-            StateSet current = states.get(node);
+        while (size > 0) {
+            nodeId = workList[head];
+            head = (head + 1) % numNodes;
+            size--;
+            inWorkList.clear(nodeId);
+            StateSet current = states.get(nodeId);
+
+            int[] targetIds = adjacentIds[nodeId];
+            if (targetIds == null) {
+                Set<Node> adjacentNodes = graph.getAdjacentNodes(nodes
+                        .get(nodeId));
+                targetIds = new int[adjacentNodes.size()];
+                int i = 0;
+                for (Node target : adjacentNodes) {
+                    targetIds[i++] = nodeIds.get(target);
+                }
+                adjacentIds[nodeId] = targetIds;
+            }
 
             // Process all the nodes that are adjacent to the current node.
-            for (Node target : graph.getAdjacentNodes(node)) {
-                StateSet oldTargetStates = states.get(target);
-                StateSet updatesToTargetStates = current.copy();
-                updatesToTargetStates.transition(target);
+            for (int targetId : targetIds) {
+                Node target = nodes.get(targetId);
+                StateSet oldTargetStates = states.get(targetId);
+                updatesToTargetStates.transitionFrom(current, target);
 
                 // Evaluate isSubset _before_ the merge.
                 boolean isSubset = updatesToTargetStates
@@ -91,19 +131,33 @@ public class FsmModelChecker {
                 oldTargetStates.mergeWith(updatesToTargetStates);
                 if (earlyExit && oldTargetStates.isFail()
                         && target.isTerminal()) {
-                    return states;
+                    return toStateMap(nodes, states);
                 }
 
                 // If updatesToTargetStates is subset of targetStates, then NOT
                 // re-exploring the graph starting from the current node
                 // prevents infinitely traversing loops
-                if (!isSubset && !workList.contains(target)) {
-                    workList.add(target);
+                if (!isSubset && !inWorkList.get(targetId)) {
+                    workList[(head + size) % numNodes] = targetId;
+                    size++;
+                    inWorkList.set(targetId);
                 }
             }
         }
 
-        return states;
+        return toStateMap(nodes, states);
+    }
+
+    /**
+     * Maps each of the nodes to the state set at the same index of states.
+     */
+    private static <Node, StateSet> Map<Node, StateSet> toStateMap(
+            List<Node> nodes, List<StateSet> states) {
+        Map<Node, StateSet> result = new LinkedHashMap<Node, StateSet>();
+        for (int i = 0; i < nodes.size(); i++) {
+            result.put(nodes.get(i), states.get(i));
+        }
+        return result;
     }
 
     // Helper which invokes runChecker given an fsm state set, and process the
@@ -170,23 +224,16 @@ public class FsmModelChecker {
     }
 
     /**
-     * Runs invariant-checking finite state machines over the synoptic.model
-     * graph, while keeping history paths which justify any particular state.
-     * This allows us to report counterexample paths, where a failure state is
-     * reached on a final node.
+     * Returns a new tracing state set that checks invariant, or null if there
+     * is no tracing state set for this kind of invariant.
      * 
      * @param invariant
-     *            The invariant to test.
-     * @return The shortest counterexample path for this invariant.
+     *            The invariant to check.
      */
     @SuppressWarnings("unchecked")
-    public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
-            BinaryInvariant invariant, IGraph<Node> graph) {
-
+    public static <Node extends INode<Node>> TracingStateSet<Node> newTracingStateSet(
+            BinaryInvariant invariant) {
         TracingStateSet<Node> stateset = null;
-        if (invariant == null) {
-            return null;
-        }
         Class<BinaryInvariant> invClass = (Class<BinaryInvariant>) invariant
                 .getClass();
         if (invClass.equals(AlwaysFollowedInvariant.class)) {
@@ -198,57 +245,76 @@ public class FsmModelChecker {
         } else if (invClass.equals(InterruptedByInvariant.class)) {
             stateset = new IntrByTracingSet<Node>(invariant);
         } else if (invClass.equals(TempConstrainedInvariant.class)) {
+            stateset = newConstrainedTracingSet(
+                    (TempConstrainedInvariant<?>) invariant);
+        }
+        return stateset;
+    }
 
-            BinaryInvariant constInvInv = ((TempConstrainedInvariant<?>) invariant)
-                    .getInv();
-            IThresholdConstraint constInvConst = ((TempConstrainedInvariant<?>) invariant)
-                    .getConstraint();
+    /**
+     * Returns a new tracing state set that checks the constrained invariant,
+     * or null if there is no tracing state set for this kind of invariant.
+     * 
+     * @param invariant
+     *            The constrained invariant to check.
+     */
+    public static <Node extends INode<Node>> ConstrainedTracingSet<Node> newConstrainedTracingSet(
+            TempConstrainedInvariant<?> invariant) {
+        ConstrainedTracingSet<Node> stateset = null;
+        BinaryInvariant constInvInv = invariant.getInv();
+        IThresholdConstraint constInvConst = invariant.getConstraint();
 
-            if (constInvInv instanceof AlwaysFollowedInvariant) {
-                // AFby Upper
-                if (constInvConst instanceof UpperBoundConstraint) {
-                    stateset = new AFbyUpperTracingSet<Node>(invariant);
-                }
-                // AFby Lower
-                else if (constInvConst instanceof LowerBoundConstraint) {
-                    stateset = new AFbyLowerTracingSet<Node>(invariant);
-                }
-            } else if (constInvInv instanceof AlwaysPrecedesInvariant) {
-                // AP Upper
-                if (constInvConst instanceof UpperBoundConstraint) {
-                    stateset = new APUpperTracingSet<Node>(invariant);
-                }
-                // AP Lower
-                else if (constInvConst instanceof LowerBoundConstraint) {
-                    stateset = new APLowerTracingSet<Node>(invariant);
-                }
-            } else if (constInvInv instanceof InterruptedByInvariant) {
-                // IntrBy Upper
-                if (constInvConst instanceof UpperBoundConstraint) {
-                    stateset = new IntrByUpperTracingSet<Node>(invariant);
-                }
-                // IntrBy Lower
-                else if (constInvConst instanceof LowerBoundConstraint) {
-                    stateset = new IntrByLowerTracingSet<Node>(invariant);
-                }
+        if (constInvInv instanceof AlwaysFollowedInvariant) {
+            // AFby Upper
+            if (constInvConst instanceof UpperBoundConstraint) {
+                stateset = new AFbyUpperTracingSet<Node>(invariant);
+            }
+            // AFby Lower
+            else if (constInvConst instanceof LowerBoundConstraint) {
+                stateset = new AFbyLowerTracingSet<Node>(invariant);
+            }
+        } else if (constInvInv instanceof AlwaysPrecedesInvariant) {
+            // AP Upper
+            if (constInvConst instanceof UpperBoundConstraint) {
+                stateset = new APUpperTracingSet<Node>(invariant);
+            }
+            // AP Lower
+            else if (constInvConst instanceof LowerBoundConstraint) {
+                stateset = new APLowerTracingSet<Node>(invariant);
+            }
+        } else if (constInvInv instanceof InterruptedByInvariant) {
+            // IntrBy Upper
+            if (constInvConst instanceof UpperBoundConstraint) {
+                stateset = new IntrByUpperTracingSet<Node>(invariant);
+            }
+            // IntrBy Lower
+            else if (constInvConst instanceof LowerBoundConstraint) {
+                stateset = new IntrByLowerTracingSet<Node>(invariant);
             }
         }
+        return stateset;
+    }
 
-        // Return the shortest path, ending on a final node, which causes the
-        // invariant to fail.
+    /**
+     * Returns the shortest counterexample path for invariant that ends at a
+     * terminal node, given the tracing state sets associated with the nodes
+     * of a graph. Returns null if no terminal node is in a failing state.
+     * 
+     * @param invariant
+     *            The invariant that the state sets check.
+     * @param states
+     *            The associations between node and state set.
+     */
+    public static <Node extends INode<Node>> CExamplePath<Node> getShortestCounterExample(
+            BinaryInvariant invariant,
+            Iterable<Entry<Node, TracingStateSet<Node>>> states) {
         HistoryNode<Node> shortestPath = null;
-        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
-                graph, true).entrySet();
-        for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
+        for (Entry<Node, TracingStateSet<Node>> e : states) {
             TracingStateSet<Node> stateSet = e.getValue();
             Node node = e.getKey();
 
             HistoryNode<Node> path = stateSet.failpath();
 
-            // 1. We must have ended up at the terminal node.
-            // 2. Invariant is not satisfied, so we have a history path for it.
-            // 3. If we had counter-example path in the past, that path is
-            // longer (because we want the shortest).
             if (node.isTerminal()
                     && path != null
                     && (shortestPath == null || shortestPath.count > path.count)) {
@@ -256,11 +322,187 @@ public class FsmModelChecker {
             }
         }
 
-        // Convert to RelationPath
         if (shortestPath == null) {
             return null;
         }
 
         return shortestPath.toCounterexample(invariant);
     }
+
+    /**
+     * Model checks a constrained invariant on the part of the graph between
+     * startNodes and endNodes, rather than between the initial and terminal
+     * nodes. The tracing state sets start in their start state at each of the
+     * entryNodes, and are transitioned into their successors in startNodes.
+     * From there, states are only propagated along nodes that lie on a path
+     * from startNodes to endNodes, and are not propagated past endNodes.
+     * 
+     * @param invariant
+     *            The constrained invariant to test.
+     * @param graph
+     *            The graph to analyze.
+     * @param entryNodes
+     *            The nodes from which the checked part of the graph is
+     *            entered. If empty, startNodes must contain only the initial
+     *            node.
+     * @param startNodes
+     *            The nodes at which the checked part of the graph starts.
+     * @param endNodes
+     *            The nodes at which the checked part of the graph ends.
+     * @return true if a failure state is reached at one of endNodes.
+     */
+    public static <Node extends INode<Node>> boolean hasCounterExampleBetween(
+            TempConstrainedInvariant<?> invariant, IGraph<Node> graph,
+            Set<Node> entryNodes, Set<Node> startNodes, Set<Node> endNodes) {
+
+        // Find the nodes reachable from startNodes without passing through
+        // endNodes, and the predecessors of each of them within this set.
+        Map<Node, Set<Node>> predecessors = new HashMap<Node, Set<Node>>();
+        Queue<Node> toVisit = new LinkedList<Node>();
+        for (Node node : startNodes) {
+            if (!predecessors.containsKey(node)) {
+                predecessors.put(node, new HashSet<Node>());
+                toVisit.add(node);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.remove();
+            if (endNodes.contains(node)) {
+                continue;
+            }
+            for (Node succ : graph.getAdjacentNodes(node)) {
+                Set<Node> succPreds = predecessors.get(succ);
+                if (succPreds == null) {
+                    succPreds = new HashSet<Node>();
+                    predecessors.put(succ, succPreds);
+                    toVisit.add(succ);
+                }
+                succPreds.add(node);
+            }
+        }
+
+        // Restrict these to the nodes from which endNodes can be reached.
+        Set<Node> region = new HashSet<Node>();
+        for (Node node : endNodes) {
+            if (predecessors.containsKey(node) && region.add(node)) {
+                toVisit.add(node);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            for (Node pred : predecessors.get(toVisit.remove())) {
+                if (region.add(pred)) {
+                    toVisit.add(pred);
+                }
+            }
+        }
+        if (region.isEmpty()) {
+            return false;
+        }
+
+        // Seed the start nodes.
+        Map<Node, TracingStateSet<Node>> states = new HashMap<Node, TracingStateSet<Node>>();
+        ConstrainedTracingSet<Node> initial = newConstrainedTracingSet(invariant);
+        Queue<Node> workList = new LinkedList<Node>();
+        Set<Node> inWorkList = new HashSet<Node>();
+        for (Node node : region) {
+            states.put(node, initial.copy());
+        }
+        if (entryNodes.isEmpty()) {
+            for (Node node : startNodes) {
+                if (region.contains(node)) {
+                    states.get(node).setInitial(node);
+                    workList.add(node);
+                    inWorkList.add(node);
+                }
+            }
+        }
+        for (Node entry : entryNodes) {
+            for (Node node : graph.getAdjacentNodes(entry)) {
+                if (!startNodes.contains(node) || !region.contains(node)) {
+                    continue;
+                }
+                ConstrainedTracingSet<Node> entered = initial.copy();
+                entered.setStart(entry);
+                entered.transition(node);
+                states.get(node).mergeWith(entered);
+                if (inWorkList.add(node)) {
+                    workList.add(node);
+                }
+            }
+        }
+
+        // Propagate states within the region.
+        TracingStateSet<Node> updatesToTargetStates = initial.copy();
+        while (!workList.isEmpty()) {
+            Node node = workList.remove();
+            inWorkList.remove(node);
+            if (endNodes.contains(node)) {
+                continue;
+            }
+            TracingStateSet<Node> current = states.get(node);
+
+            for (Node target : graph.getAdjacentNodes(node)) {
+                TracingStateSet<Node> oldTargetStates = states.get(target);
+                if (oldTargetStates == null) {
+                    continue;
+                }
+                updatesToTargetStates.transitionFrom(current, target);
+
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+
+                if (!isSubset && inWorkList.add(target)) {
+                    workList.add(target);
+                }
+            }
+        }
+
+        for (Node node : endNodes) {
+            TracingStateSet<Node> stateSet = states.get(node);
+            if (stateSet != null && stateSet.isFail()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs invariant-checking finite state machines over the synoptic.model
+     * graph, while keeping history paths which justify any particular state.
+     * This allows us to report counterexample paths, where a failure state is
+     * reached on a final node.
+     * 
+     * @param invariant
+     *            The invariant to test.
+     * @return The shortest counterexample path for this invariant.
+     */
+    public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
+            BinaryInvariant invariant, IGraph<Node> graph) {
+
+        if (invariant == null) {
+            return null;
+        }
+        TracingStateSet<Node> stateset = newTracingStateSet(invariant);
+
+        return getShortestCounterExample(invariant,
+                runChecker(stateset, graph, true).entrySet());
+    }
+
+    /**
+     * Finds the counterexample paths of many invariants in a single traversal
+     * of the graph, instead of running getCounterExample() for each of them.
+     * The search for each invariant stops at its first counterexample, which
+     * is a shortest one for the unconstrained invariants.
+     * 
+     * @param invariants
+     *            The invariants to test.
+     * @return The counterexample path of each of the invariants, in order, or
+     *         null for the invariants that hold.
+     * @see BitSetTracingChecker
+     */
+    public static <Node extends INode<Node>> List<CExamplePath<Node>> getCounterExamples(
+            List<BinaryInvariant> invariants, IGraph<Node> graph) {
+        return new BitSetTracingChecker<Node>(invariants, graph).run();
+    }
 }
@@ -1,7 +1,5 @@
 package synoptic.invariants.fsmcheck;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
@@ -54,7 +52,7 @@ import synoptic.util.InternalSynopticException;
  * @see NFbyInvFsms
  */
 public abstract class FsmStateSet<T extends INode<T>> implements
-        IStateSet<T, FsmStateSet<T>> {
+        IStateSet<T, FsmStateSet<T>>, Cloneable {
     protected List<BitSet> sets;
     protected int count;
 
@@ -81,6 +79,13 @@ public abstract class FsmStateSet<T extends INode<T>> implements
      */
     protected List<Map<EventType, BitSet>> invariantsMap;
 
+    /**
+     * Scratch vectors which transition() fills with its inputs and
+     * intermediate results, instead of allocating new ones for every
+     * transition. Copies of this stateset get their own.
+     */
+    private BitSet[] scratch = newScratch();
+
     /**
      * Initializes the bitsets, and assigns the input mapping, based on the
      * passed synoptic.invariants. NOTE: this assumes that all of the passed
@@ -130,6 +135,17 @@ public abstract class FsmStateSet<T extends INode<T>> implements
      */
     public abstract BitSet whichPermanentFail();
 
+    @Override
+    public void transitionFrom(FsmStateSet<T> source, T input) {
+        assert source.invariantsMap == invariantsMap;
+        for (int i = 0; i < sets.size(); i++) {
+            BitSet set = sets.get(i);
+            set.clear();
+            set.or(source.sets.get(i));
+        }
+        transition(input);
+    }
+
     /**
      * Merges this stateset with another, by ORing all of the state vectors.
      * Exceptions are thrown if - statesets have different sizes - statesets
@@ -164,19 +180,21 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         assert other.invariantsMap == invariantsMap;
         for (int j = 0; j < sets.size(); j++) {
             BitSet thisSet = sets.get(j);
-            BitSet s = (BitSet) thisSet.clone();
-            s.and(other.sets.get(j));
-            s.xor(thisSet); // (intersection != this) == 0 for subset
-            if (!s.isEmpty()) {
-                return false;
+            BitSet otherSet = other.sets.get(j);
+            // Every onebit in thisSet must also be set in otherSet.
+            for (int i = thisSet.nextSetBit(0); i >= 0; i = thisSet
+                    .nextSetBit(i + 1)) {
+                if (!otherSet.get(i)) {
+                    return false;
+                }
             }
         }
         return true;
     }
 
     /**
-     * Clones this set of states, using reflection to ascertain the actual type
-     * to construct.
+     * Clones this set of states. The state vectors are copied, while the
+     * (immutable) input mapping is shared.
      * 
      * @see java.lang.Object#clone()
      */
@@ -184,33 +202,18 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     @SuppressWarnings("unchecked")
     public FsmStateSet<T> copy() {
         FsmStateSet<T> result;
-
-        Constructor<?> cons = null;
-        for (Constructor<?> c : this.getClass().getConstructors()) {
-            Class<?>[] params = c.getParameterTypes();
-            if (params.length == 1 && params[0].toString().equals("int")) {
-                cons = c;
-            }
-        }
         try {
-            result = (FsmStateSet<T>) cons.newInstance(sets.size());
-        } catch (IllegalArgumentException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InstantiationException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (IllegalAccessException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InvocationTargetException e) {
+            result = (FsmStateSet<T>) clone();
+        } catch (CloneNotSupportedException e) {
             throw InternalSynopticException.wrap(e);
         }
 
-        result.count = count;
         ArrayList<BitSet> newSets = new ArrayList<BitSet>();
         for (int i = 0; i < sets.size(); i++) {
             newSets.add((BitSet) sets.get(i).clone());
         }
         result.sets = newSets;
-        result.invariantsMap = invariantsMap;
+        result.scratch = newScratch();
         return result;
     }
 
@@ -272,6 +275,46 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         return (BitSet) result.clone();
     }
 
+    /**
+     * Clears the i'th scratch vector (0, 1 or 2) and returns it. The inputs
+     * and nor scratch helpers below also use these vectors, so a transition
+     * must not use a scratch vector for two things at once.
+     */
+    protected BitSet getScratch(int i) {
+        BitSet result = scratch[i];
+        result.clear();
+        return result;
+    }
+
+    /**
+     * Like getInputCopy(), but fills the ix'th scratch vector with the input
+     * instead of cloning it.
+     */
+    protected BitSet getInputScratch(int ix, T input) {
+        BitSet result = getScratch(ix);
+        BitSet inputSet = invariantsMap.get(ix).get(input.getEType());
+        if (inputSet != null) {
+            result.or(inputSet);
+        }
+        return result;
+    }
+
+    /**
+     * Like nor(), but fills the third scratch vector with the result instead
+     * of allocating it.
+     */
+    protected BitSet norScratch(BitSet a, BitSet b) {
+        BitSet result = getScratch(2);
+        result.or(a);
+        result.or(b);
+        result.flip(0, count);
+        return result;
+    }
+
+    private static BitSet[] newScratch() {
+        return new BitSet[] { new BitSet(), new BitSet(), new BitSet() };
+    }
+
     /**
      * Helper to perform nor, for (neither = input[0] nor input[1]) A B result 0
      * 0 1 0 1 0 1 0 0 1 1 0
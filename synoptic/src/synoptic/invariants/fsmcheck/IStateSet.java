@@ -16,6 +16,19 @@ public interface IStateSet<T, StateSetType> {
      */
     void transition(T input);
 
+    /**
+     * Mutates the StateSet to the states that could be inhabited after the
+     * given input is provided to source. Equivalent to {@code copy()} of source
+     * followed by {@code transition(input)}, but reuses this StateSet instead
+     * of allocating a new one.
+     * 
+     * @param source
+     *            The StateSet to transition from, which is not modified.
+     * @param input
+     *            The input event to transition the FSM.
+     */
+    void transitionFrom(StateSetType source, T input);
+
     /**
      * Merges this stateset with another, such that all states inhabited by
      * 'other' will also now be inhabited by this.
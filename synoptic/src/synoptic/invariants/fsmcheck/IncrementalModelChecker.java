@@ -0,0 +1,333 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * A model checker for a partition graph that keeps the fixpoint state sets of
+ * a tracked set of invariants between checks. The partition graph notifies the
+ * checker of every partition whose transitions change due to a split or a
+ * merge. A state set only depends on the paths that lead to its partition, so
+ * on the next check only the partitions reachable from the changed partitions
+ * are re-checked, starting from the (unchanged) state sets of their
+ * predecessors. <br />
+ * <br />
+ * Changes to the graph are pending until either commitChanges() is called,
+ * which makes the current graph the base for future checks, or
+ * revertChanges() is called after the changes have been undone (e.g., after
+ * rewinding a trial split or merge). While changes are pending, checks
+ * compute the state sets of the affected partitions without modifying the
+ * stored ones. <br />
+ * <br />
+ * The stored state sets are those of the fixpoint, since an incremental check
+ * starts from the state sets of the unaffected partitions, which must be
+ * final. So a counter-example returned by this checker is the shortest one in
+ * the graph, whereas FsmModelChecker.getCounterExample() stops at the first
+ * failing terminal partition and may return a longer one. Both find a
+ * counter-example for exactly the same invariants, and either is a valid
+ * input to refinement, but refinement with incremental checking may perform
+ * different splits and so arrive at a different model.
+ */
+public class IncrementalModelChecker {
+    /** The graph being checked. */
+    private final PartitionGraph pGraph;
+
+    /**
+     * Fixpoint state sets of the tracked invariants in the base graph, i.e.,
+     * without the pending changes.
+     */
+    private final Map<BinaryInvariant, Map<Partition, TracingStateSet<Partition>>> baseStates = new LinkedHashMap<BinaryInvariant, Map<Partition, TracingStateSet<Partition>>>();
+
+    /** Partitions whose transitions have changed since the base graph. */
+    private final Set<Partition> changedPartitions = new LinkedHashSet<Partition>();
+
+    /**
+     * Partitions whose state sets depend on the pending changes. Computed
+     * lazily, and reset whenever a partition changes.
+     */
+    private Set<Partition> affectedPartitions = null;
+
+    /**
+     * Creates a checker for pGraph. Use {@code pGraph.getModelChecker()}
+     * instead, which makes sure that the graph notifies the checker of
+     * changes.
+     */
+    public IncrementalModelChecker(PartitionGraph pGraph) {
+        this.pGraph = pGraph;
+    }
+
+    /**
+     * Records that the transitions into or out of partition p have changed.
+     */
+    public void partitionChanged(Partition p) {
+        changedPartitions.add(p);
+        affectedPartitions = null;
+    }
+
+    /**
+     * Makes the current graph the base for future checks, updating the stored
+     * state sets of all tracked invariants.
+     */
+    public void commitChanges() {
+        if (changedPartitions.isEmpty()) {
+            return;
+        }
+
+        Set<Partition> affected = getAffectedPartitions();
+        for (Entry<BinaryInvariant, Map<Partition, TracingStateSet<Partition>>> entry : baseStates
+                .entrySet()) {
+            Map<Partition, TracingStateSet<Partition>> states = entry
+                    .getValue();
+            states.putAll(recheck(entry.getKey(), states, affected));
+            // Drop the state sets of partitions that were removed.
+            for (Partition p : changedPartitions) {
+                if (!pGraph.getNodes().contains(p)) {
+                    states.remove(p);
+                }
+            }
+        }
+        changedPartitions.clear();
+        affectedPartitions = null;
+    }
+
+    /**
+     * Discards the pending changes. Must only be called once the changes have
+     * been undone, so that the graph is identical to the base graph.
+     */
+    public void revertChanges() {
+        changedPartitions.clear();
+        affectedPartitions = null;
+    }
+
+    /**
+     * Commits any pending changes and then makes invariants the set of
+     * tracked invariants. Stored state sets of other invariants are dropped,
+     * and state sets for new invariants are computed on the current graph.
+     * Checks of invariants that are not tracked are not incremental.
+     *
+     * @param invariants
+     *            the invariants to track
+     */
+    public void track(Collection<? extends ITemporalInvariant> invariants) {
+        commitChanges();
+
+        Set<BinaryInvariant> toTrack = new LinkedHashSet<BinaryInvariant>();
+        for (ITemporalInvariant inv : invariants) {
+            toTrack.add((BinaryInvariant) inv);
+        }
+        baseStates.keySet().retainAll(toTrack);
+
+        for (BinaryInvariant inv : toTrack) {
+            if (baseStates.containsKey(inv)) {
+                continue;
+            }
+            TracingStateSet<Partition> initial = FsmModelChecker
+                    .newTracingStateSet(inv);
+            Map<Partition, TracingStateSet<Partition>> states = FsmModelChecker
+                    .runChecker(initial, pGraph, false);
+            baseStates.put(inv, states);
+        }
+    }
+
+    /**
+     * Returns the shortest counter-example for invariant in the current
+     * graph, or null if the graph satisfies the invariant. Unlike
+     * FsmModelChecker.getCounterExample(), this is the shortest
+     * counter-example of the fixpoint (see the class comment), unless the
+     * invariant is not tracked.
+     */
+    public CExamplePath<Partition> getCounterExample(ITemporalInvariant inv) {
+        BinaryInvariant invariant = (BinaryInvariant) inv;
+        Map<Partition, TracingStateSet<Partition>> states = baseStates
+                .get(invariant);
+        if (states == null) {
+            return FsmModelChecker.getCounterExample(invariant, pGraph);
+        }
+
+        if (changedPartitions.isEmpty()) {
+            return FsmModelChecker.getShortestCounterExample(invariant,
+                    states.entrySet());
+        }
+
+        // Overlay the re-checked state sets on the base ones.
+        Map<Partition, TracingStateSet<Partition>> rechecked = recheck(
+                invariant, states, getAffectedPartitions());
+        Map<Partition, TracingStateSet<Partition>> current = new LinkedHashMap<Partition, TracingStateSet<Partition>>();
+        for (Partition p : pGraph.getNodes()) {
+            TracingStateSet<Partition> stateSet = rechecked.get(p);
+            if (stateSet == null) {
+                stateSet = states.get(p);
+            }
+            current.put(p, stateSet);
+        }
+        return FsmModelChecker.getShortestCounterExample(invariant,
+                current.entrySet());
+    }
+
+    /**
+     * Returns the first counter-example found in the current graph for any of
+     * the invariants, or null if the graph satisfies all of them.
+     */
+    public CExamplePath<Partition> getFirstCounterExample(
+            Iterable<ITemporalInvariant> invariants) {
+        for (ITemporalInvariant inv : invariants) {
+            CExamplePath<Partition> path = getCounterExample(inv);
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a counter-example for each of the invariants that the current
+     * graph violates, sorted by increasing path length, or null if the graph
+     * satisfies all of the invariants.
+     */
+    public List<CExamplePath<Partition>> getAllCounterExamples(
+            Iterable<ITemporalInvariant> invariants) {
+        List<CExamplePath<Partition>> paths = new ArrayList<CExamplePath<Partition>>();
+        for (ITemporalInvariant inv : invariants) {
+            CExamplePath<Partition> path = getCounterExample(inv);
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+
+        if (paths.size() == 0) {
+            return null;
+        }
+
+        Collections.sort(paths, new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                return Integer.valueOf(o1.path.size()).compareTo(
+                        o2.path.size());
+            }
+        });
+        return paths;
+    }
+
+    /**
+     * Returns the partitions in the current graph that are reachable from a
+     * changed partition, and whose state sets may therefore differ from the
+     * base ones.
+     */
+    private Set<Partition> getAffectedPartitions() {
+        if (affectedPartitions != null) {
+            return affectedPartitions;
+        }
+
+        affectedPartitions = new HashSet<Partition>();
+        Queue<Partition> toVisit = new LinkedList<Partition>();
+        for (Partition p : changedPartitions) {
+            if (pGraph.getNodes().contains(p) && affectedPartitions.add(p)) {
+                toVisit.add(p);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            Partition p = toVisit.remove();
+            for (Partition succ : pGraph.getAdjacentNodes(p)) {
+                if (affectedPartitions.add(succ)) {
+                    toVisit.add(succ);
+                }
+            }
+        }
+        return affectedPartitions;
+    }
+
+    /**
+     * Computes the fixpoint state sets of the affected partitions in the
+     * current graph. The state sets of all other partitions are taken from
+     * baseStates, and are not modified.
+     *
+     * @return the state sets of the affected partitions
+     */
+    private Map<Partition, TracingStateSet<Partition>> recheck(
+            BinaryInvariant invariant,
+            Map<Partition, TracingStateSet<Partition>> baseStates,
+            Set<Partition> affected) {
+        Map<Partition, TracingStateSet<Partition>> states = new HashMap<Partition, TracingStateSet<Partition>>();
+        if (affected.isEmpty()) {
+            return states;
+        }
+
+        TracingStateSet<Partition> initial = FsmModelChecker
+                .newTracingStateSet(invariant);
+        Queue<Partition> workList = new LinkedList<Partition>();
+        Set<Partition> inWorkList = new HashSet<Partition>();
+
+        for (Partition p : pGraph.getNodes()) {
+            if (affected.contains(p)) {
+                states.put(p, initial.copy());
+                continue;
+            }
+            // Unaffected partitions with transitions into the affected ones
+            // seed the re-check.
+            for (Partition succ : pGraph.getAdjacentNodes(p)) {
+                if (affected.contains(succ)) {
+                    workList.add(p);
+                    inWorkList.add(p);
+                    break;
+                }
+            }
+        }
+
+        Partition initialNode = pGraph.getDummyInitialNode();
+        if (affected.contains(initialNode)) {
+            states.get(initialNode).setInitial(initialNode);
+            workList.add(initialNode);
+            inWorkList.add(initialNode);
+        }
+
+        // Reused to hold the states transitioned along each edge.
+        TracingStateSet<Partition> updatesToTargetStates = initial.copy();
+        while (!workList.isEmpty()) {
+            Partition node = workList.remove();
+            inWorkList.remove(node);
+            TracingStateSet<Partition> current = states.get(node);
+            if (current == null) {
+                current = baseStates.get(node);
+            }
+
+            for (Partition target : pGraph.getAdjacentNodes(node)) {
+                // Only affected partitions can change: every successor of an
+                // affected partition is itself affected.
+                TracingStateSet<Partition> oldTargetStates = states
+                        .get(target);
+                if (oldTargetStates == null) {
+                    continue;
+                }
+                updatesToTargetStates.transitionFrom(current, target);
+
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+
+                if (!isSubset && inWorkList.add(target)) {
+                    workList.add(target);
+                }
+            }
+        }
+        return states;
+    }
+}
@@ -56,6 +56,15 @@ public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         aSeenMoreThanOnce = extend(x, aSeenMoreThanOnce);
     }
 
+    @Override
+    public void transitionFrom(TracingStateSet<T> source, T x) {
+        IntrByTracingSet<T> casted = (IntrByTracingSet<T>) source;
+        aNotSeen = casted.aNotSeen;
+        aSeenOnce = casted.aSeenOnce;
+        aSeenMoreThanOnce = casted.aSeenMoreThanOnce;
+        transition(x);
+    }
+
     @Override
     public HistoryNode<T> failpath() {
         return aSeenMoreThanOnce;
@@ -70,11 +70,13 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
         // var = expression in terms of original values
 
-        BitSet t = (BitSet) s2.clone();
+        BitSet t = getScratch(2);
+        t.or(s2);
         t.and(isB); // t = s2 & isB
         s3.or(t); // s3 = s3 | (s2 & isB)
 
-        t = (BitSet) s1.clone();
+        t = getScratch(2);
+        t.or(s1);
         t.and(isA); // t = s1 & isA
         s2.andNot(isB); // s2 = s2 & !isB
         s2.or(t); // s2 = (s1 & isA) | (s2 & !isB)
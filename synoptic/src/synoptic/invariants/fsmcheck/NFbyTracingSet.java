@@ -64,6 +64,15 @@ public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         bSeenAfter = extend(x, bSeenAfter);
     }
 
+    @Override
+    public void transitionFrom(TracingStateSet<T> source, T x) {
+        NFbyTracingSet<T> casted = (NFbyTracingSet<T>) source;
+        aNotSeen = casted.aNotSeen;
+        aSeen = casted.aSeen;
+        bSeenAfter = casted.bSeenAfter;
+        transition(x);
+    }
+
     @Override
     public HistoryNode<T> failpath() {
         return bSeenAfter;
@@ -1,10 +1,10 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -12,10 +12,10 @@ import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.main.AbstractMain;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
-import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IRelationPath;
 
 /**
@@ -27,7 +27,8 @@ import synoptic.model.interfaces.IRelationPath;
  * on partition sizes. A more detailed complexity break-down is given below. <br/>
  * <br/>
  * This algorithm has lower space usage than the transitive-closure-based
- * algorithms.
+ * algorithms. The relation paths are walked in parallel when
+ * options.numThreads is larger than 1.
  */
 public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         ITOInvariantMiner {
@@ -94,24 +95,9 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             String relation, boolean multipleRelations, boolean supportCount) {
 
-        // TODO: we can set the initial capacity of the following HashMaps more
-        // optimally, e.g. (N / 0.75) + 1 where N is the total number of event
-        // types. See:
-        // http://stackoverflow.com/questions/434989/hashmap-intialization-parameters-load-initialcapacity
+        // Stores generated RelationPaths, in trace order
+        List<IRelationPath> relationPaths = new ArrayList<IRelationPath>();
 
-        // Stores generated RelationPaths
-        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
-
-        // Tracks event counts globally -- across all traces.
-        Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
-
-        /*
-         * Build the set of all event types in the RelationPaths. We will use
-         * this set to pre-seed the various maps below. Also, since we're
-         * iterating over all nodes, we might as well count up the total counts
-         * of instances for each event type.
-         */
-        Set<EventType> eTypes = new LinkedHashSet<EventType>();
         for (Trace trace : g.getTraces()) {
 
             if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
@@ -131,138 +117,43 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
 
         }
 
-        for (IRelationPath relationPath : relationPaths) {
-            eTypes.addAll(relationPath.getSeen());
-            Map<EventType, Integer> relationPathEventCounts = relationPath
-                    .getEventCounts();
-            for (EventType eventType : relationPathEventCounts.keySet()) {
-                int count = relationPathEventCounts.get(eventType);
-
-                if (gEventCnts.containsKey(eventType)) {
-                    count += gEventCnts.get(eventType);
-                }
-
-                gEventCnts.put(eventType, count);
-            }
-        }
-
-        // Tracks followed-by counts.
-        Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks precedence counts.
-        Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks interrupted-by counts.
-        Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
-
-        // Initialize the event-type contents of the maps that persist
-        // across traces (global counts maps).
-        for (EventType e : eTypes) {
-            Map<EventType, Integer> mapF = new LinkedHashMap<EventType, Integer>();
-            Map<EventType, Integer> mapP = new LinkedHashMap<EventType, Integer>();
-            gFollowedByCnts.put(e, mapF);
-            gPrecedesCnts.put(e, mapP);
-            for (EventType e2 : eTypes) {
-                mapF.put(e2, 0);
-                mapP.put(e2, 0);
-            }
-        }
-
-        // Tracks which events were observed across all RelationPaths.
-        Set<EventType> AlwaysFollowsINITIALSet = null;
-
         /*
-         * Iterates over each RelationPath in the graph and aggregates the
-         * individual Occurrences, Follows, and Precedes counts.
+         * Walks each RelationPath in the graph and aggregates the individual
+         * Occurrences, Follows, Precedes and InterruptedBy counts, and the
+         * events that were observed across all RelationPaths, into count
+         * matrices indexed by event type ids. The paths are split into one
+         * contiguous chunk per worker thread, the chunks are counted
+         * independently, and the chunk counts are then merged in chunk order.
          */
-        for (IRelationPath relationPath : relationPaths) {
-
-            /*
-             * Adds the Precedes count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathPrecedesCounts = relationPath
-                    .getPrecedesCounts();
-            addCounts(relationPathPrecedesCounts, gPrecedesCnts);
-
-            /*
-             * Adds the FollowedBy count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathFollowedByCounts = relationPath
-                    .getFollowedByCounts();
-            addCounts(relationPathFollowedByCounts, gFollowedByCnts);
-
-            /*
-             * Updates the graph global InterruptedBy counts with the
-             * RelationPath counts
-             */
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts = relationPath
-                    .getPossibleInterrupts();
-            intersectInterrupts(relationPathPossibleInterrupts,
-                    gPossibleInterrupts);
-
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this RelationPath.
-            Set<EventType> relationPathSeen = relationPath.getSeen();
-            if (AlwaysFollowsINITIALSet == null) {
-                // This is the first RelationPath we are processing.
-                AlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        relationPathSeen);
-            } else {
-                AlwaysFollowsINITIALSet.retainAll(relationPathSeen);
-            }
-
-            // At this point, we've completed all counts computation for the
-            // current RelationPath.
+        AbstractMain main = AbstractMain.getInstance();
+        int numPaths = relationPaths.size();
+        int numChunks = Math.max(1,
+                Math.min(main.options.numThreads, numPaths));
+        List<Callable<WalkCounts>> tasks = new ArrayList<Callable<WalkCounts>>(
+                numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            final List<IRelationPath> chunk = relationPaths.subList(c
+                    * numPaths / numChunks, (c + 1) * numPaths / numChunks);
+            tasks.add(new Callable<WalkCounts>() {
+                @Override
+                public WalkCounts call() {
+                    WalkCounts chunkCounts = new WalkCounts();
+                    for (IRelationPath relationPath : chunk) {
+                        chunkCounts.add(relationPath);
+                    }
+                    return chunkCounts;
+                }
+            });
         }
 
-        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts,
-                gPossibleInterrupts, null, AlwaysFollowsINITIALSet,
-                multipleRelations, supportCount));
-    }
-
-    /**
-     * Prune and update global possible InterruptedBy invariant counts by
-     * retaining only those that are valid in this RelationPath and updating
-     * their counts
-     */
-    private static void intersectInterrupts(
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts,
-            Map<EventType, Set<EventType>> gPossibleInterrupts) {
-        for (EventType et : relationPathPossibleInterrupts.keySet()) {
-            if (gPossibleInterrupts.containsKey(et)) {
-                gPossibleInterrupts.get(et).retainAll(
-                        relationPathPossibleInterrupts.get(et));
-            } else {
-                gPossibleInterrupts.put(et,
-                        relationPathPossibleInterrupts.get(et));
-            }
+        List<WalkCounts> chunkCounts = main.invokeAll(tasks);
+        WalkCounts counts = chunkCounts.get(0);
+        for (int c = 1; c < numChunks; c++) {
+            counts.add(chunkCounts.get(c));
         }
-    }
-
-    /**
-     * Adds the values from src into dst where the input maps have the form
-     * XCounts[a][b] = count
-     * 
-     * @param src
-     * @param dst
-     */
-    private static void addCounts(Map<EventType, Map<EventType, Integer>> src,
-            Map<EventType, Map<EventType, Integer>> dst) {
 
-        for (EventType a : src.keySet()) {
-            Map<EventType, Integer> srcBValues = src.get(a);
-            Map<EventType, Integer> dstBValues = dst.get(a);
-            for (EventType b : srcBValues.keySet()) {
-                int count = srcBValues.get(b);
-                if (dstBValues.containsKey(b)) {
-                    count += dstBValues.get(b);
-                }
-                dstBValues.put(b, count);
-            }
-        }
+        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
+                relation, counts, null, multipleRelations, supportCount));
     }
 
     @Override
@@ -1,7 +1,12 @@
 package synoptic.invariants.miners;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -16,13 +21,11 @@ import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.constraints.UpperBoundConstraint;
 import synoptic.main.AbstractMain;
 import synoptic.model.ChainsTraceGraph;
-import synoptic.model.EventNode;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IRelationPath;
 import synoptic.util.Pair;
-import synoptic.util.resource.AbstractResource;
 
 /**
  * <p>
@@ -38,23 +41,31 @@ import synoptic.util.resource.AbstractResource;
  * <p>
  * Uses other totally ordered invariant miners to first mine the unconstrained
  * invariants (if not given these explicitly). Mines constraints for these
- * unconstrained invariants by walking the trace directly. Walking the trace
- * consists of traversing the log for every constrained AFby, AP, and IntrBy
- * invariant. Each traversal finds a lower bound and upper bound constraint for
- * an unconstrained invariant. Two constrained invariants are then created (for
- * lower bound and upper bound) and added in the resulting constrained invariant
- * set.
+ * unconstrained invariants by walking the trace directly. The relation paths of
+ * the traces are built once, and each path is walked once to find the lower
+ * bound and upper bound constraints of all of the AFby, AP, and IntrBy
+ * invariants (see {@link TimeDeltaBounds}). The paths are walked in parallel.
+ * Two constrained invariants are then created (for lower bound and upper bound)
+ * for each unconstrained invariant and added in the resulting constrained
+ * invariant set.
  * </p>
  */
 public class ConstrainedInvMiner extends InvariantMiner {
 
     // Stores generated RelationPaths
-    private final Set<IRelationPath> relationPaths;
+    private final List<IRelationPath> relationPaths;
     // The set of constrained invariants that we will be returning.
     private TemporalInvariantSet constrainedInvs;
 
+    // The event type pairs whose time delta bounds are mined (a&b, or a&a for
+    // IntrBy), mapped to their index in bounds.
+    private final Map<Pair<EventType, EventType>, Integer> pairIndices;
+    // The time delta bounds of the pairs over all relation paths.
+    private TimeDeltaBounds bounds;
+
     public ConstrainedInvMiner() {
-        this.relationPaths = new HashSet<IRelationPath>();
+        this.relationPaths = new ArrayList<IRelationPath>();
+        this.pairIndices = new LinkedHashMap<Pair<EventType, EventType>, Integer>();
     }
 
     /**
@@ -103,8 +114,12 @@ public class ConstrainedInvMiner extends InvariantMiner {
         // generated constrained invariants.
         this.constrainedInvs = new TemporalInvariantSet();
 
+        // Build the relation paths of every relation once.
+        Set<String> relations = new LinkedHashSet<String>();
         for (ITemporalInvariant inv : invs.getSet()) {
-            String relation = inv.getRelation();
+            relations.add(inv.getRelation());
+        }
+        for (String relation : relations) {
             boolean isTimeRelation = relation.equals(Event.defTimeRelationStr);
 
             // Loop through the traces.
@@ -126,6 +141,20 @@ public class ConstrainedInvMiner extends InvariantMiner {
             }
         }
 
+        // Collect the event type pairs of the invariants that can be
+        // constrained, and walk the paths once to compute their bounds.
+        for (ITemporalInvariant inv : invs.getSet()) {
+            if (inv instanceof AlwaysFollowedInvariant
+                    || inv instanceof AlwaysPrecedesInvariant
+                    || inv instanceof InterruptedByInvariant) {
+                Pair<EventType, EventType> pair = getBoundsPair((BinaryInvariant) inv);
+                if (pair != null && !pairIndices.containsKey(pair)) {
+                    pairIndices.put(pair, pairIndices.size());
+                }
+            }
+        }
+        computeBounds();
+
         for (ITemporalInvariant inv : invs.getSet()) {
             if (inv instanceof NeverFollowedInvariant) {
                 constrainedInvs.add(inv);
@@ -139,45 +168,100 @@ public class ConstrainedInvMiner extends InvariantMiner {
         }
 
         relationPaths.clear();
+        pairIndices.clear();
+        bounds = null;
         return constrainedInvs;
     }
 
     /**
-     * Walks each relation path to compute a lower and upper bound constraint
-     * for the given invariant. Augments the given invariant with the two
-     * constraints and returns them within a TemporalInvariantSet.
-     * 
-     * @param inv
-     *            the invariant that is being augmented with constraints
+     * Returns the event type pair whose time deltas bound the given invariant,
+     * or null if its bounds cannot be computed.
      */
-    public void computeInvariants(BinaryInvariant inv) {
-
-        assert (inv instanceof AlwaysFollowedInvariant
-                || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant);
-
+    private static Pair<EventType, EventType> getBoundsPair(BinaryInvariant inv) {
         EventType a = inv.getFirst();
         EventType b = inv.getSecond();
 
         // If invariant contains INITIAL node, we can't compute bound
         // constraints.
         if (a.isInitialEventType()) {
-            return;
+            return null;
         }
 
-        // constraints.left represents lower bound constraint.
-        // constraints.right represents upper bound constraint.
-        Pair<IThresholdConstraint, IThresholdConstraint> constraints;
-
         if (inv instanceof InterruptedByInvariant) {
             // IntrBy's constraints are between a&a, not a&b
-            constraints = computeUpperLowerConstraints(a, a, true);
-        } else {
-            constraints = computeUpperLowerConstraints(a, b, false);
+            return new Pair<EventType, EventType>(a, a);
         }
+        return new Pair<EventType, EventType>(a, b);
+    }
+
+    /**
+     * Walks each relation path once to compute the time delta bounds of all of
+     * the pairs in pairIndices. The paths are split into one contiguous chunk
+     * per worker thread, and the bounds of the chunks are then merged.
+     */
+    private void computeBounds() {
+        List<Pair<EventType, EventType>> pairs = new ArrayList<Pair<EventType, EventType>>(
+                pairIndices.keySet());
+        final TimeDeltaBounds emptyBounds = new TimeDeltaBounds(pairs);
+
+        AbstractMain main = AbstractMain.getInstance();
+        int numPaths = relationPaths.size();
+        int numChunks = Math.max(1,
+                Math.min(main.options.numThreads, numPaths));
+        List<Callable<TimeDeltaBounds>> tasks = new ArrayList<Callable<TimeDeltaBounds>>(
+                numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            final List<IRelationPath> chunk = relationPaths.subList(c
+                    * numPaths / numChunks, (c + 1) * numPaths / numChunks);
+            tasks.add(new Callable<TimeDeltaBounds>() {
+                @Override
+                public TimeDeltaBounds call() {
+                    TimeDeltaBounds chunkBounds = new TimeDeltaBounds(
+                            emptyBounds);
+                    for (IRelationPath relationPath : chunk) {
+                        chunkBounds.add(relationPath);
+                    }
+                    return chunkBounds;
+                }
+            });
+        }
+
+        bounds = emptyBounds;
+        for (TimeDeltaBounds chunkBounds : main.invokeAll(tasks)) {
+            bounds.add(chunkBounds);
+        }
+    }
+
+    /**
+     * Augments the given invariant with the lower and upper bound constraints
+     * that were computed for it from the relation paths, and adds the two
+     * constrained invariants to the constrained invariant set.
+     * 
+     * @param inv
+     *            the invariant that is being augmented with constraints
+     */
+    public void computeInvariants(BinaryInvariant inv) {
+
+        assert (inv instanceof AlwaysFollowedInvariant
+                || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant);
+
+        Pair<EventType, EventType> pair = getBoundsPair(inv);
+        if (pair == null) {
+            return;
+        }
+
+        // The lower bound is the minimal delta between a pair (a,b) of
+        // events in any path, and the upper bound is the maximal one.
+        int p = pairIndices.get(pair);
+        IThresholdConstraint l = new LowerBoundConstraint(
+                bounds.getLowerBound(p));
+        IThresholdConstraint u = new UpperBoundConstraint(
+                bounds.getUpperBound(p));
 
         // Create two TempConstrainedInvariant objects using the lower bound and
         // upper bound computed.
-        augmentInvariant(inv, constraints);
+        augmentInvariant(inv,
+                new Pair<IThresholdConstraint, IThresholdConstraint>(l, u));
     }
 
     // Helper method for creating a lower and upper constrained invariant and
@@ -194,113 +278,4 @@ public class ConstrainedInvMiner extends InvariantMiner {
         constrainedInvs.add(lowerConstrInv);
         constrainedInvs.add(upperConstrInv);
     }
-
-    /**
-     * Walks each relationPath and checks for nodes either of EventType a or b.
-     * Uses ITime values of these nodes to update and compute a lower and upper
-     * bound constraint for an invariant with predicates a and b. The algorithm
-     * for computing the bounds is as follows: For every type 'a' in each path,
-     * walk all subsequent nodes and retrieve the delta to this node (if 'a' or
-     * 'b' pair). For lower bound, take the minimal value of all deltas, and the
-     * max value for the upper bound. Returns the computed lower and upper bound
-     * constraints as a pair. The left is the lower bound constraint and the
-     * right is the upper bound constraint. This method provides an additional
-     * param to the overloaded computeConstraints method: The IntrBy varies as
-     * it must compute lower bounds between two a's. The upper bound is also
-     * computed that way, but can reuse the original implementation. TODO:
-     * refactor this at some point
-     * 
-     * @param a
-     *            first invariant predicate
-     * @param b
-     *            second invariant predicate
-     * @param betweenFirstAndFirstPredicate
-     *            If the invariant's bounds are calculated between two instances
-     *            of the first predicate (between a&a) instead of between an
-     *            instance of the first predicate and an instance of the second
-     *            predicate (between a&b). This currently only applies to
-     *            IntrBy.
-     * @return IThresholdConstraint pair where the left represents the lower
-     *         bound constraint and the right represents the upper bound
-     *         constraint
-     */
-    private Pair<IThresholdConstraint, IThresholdConstraint> computeUpperLowerConstraints(
-            EventType a, EventType b, boolean betweenFirstAndFirstPredicate) {
-
-        AbstractResource lowerBound = null;
-        AbstractResource upperBound = null;
-
-        // For each relationPath.
-        // Go through each node in path.
-        // Find nodes that match event types for invariant.
-        // Find upperBound.
-        // Find lowerBound
-        // create ConstrainedInvariants.
-        for (IRelationPath relationPath : relationPaths) {
-            EventNode start = relationPath.getFirstNode();
-            EventNode end = relationPath.getLastNode();
-
-            EventNode curr = start;
-
-            // Iterate over each node in path
-            while (true) {
-                // Reached ending node in path.
-                if (curr.equals(end)) {
-                    break;
-                }
-
-                // Current node we're at as we walk the trace.
-                assert (curr.getAllTransitions().size() == 1);
-                EventNode next = curr.getAllTransitions().get(0).getTarget();
-
-                // for each node (of type a, else there will be no bound), walk
-                // every subsequent node and check bounds
-                while (curr.getEType().equals(a)) {
-                    // Found (a,a) pair, compute constraints (IntrBy)
-                    if (next.getEType().equals(a)
-                            && betweenFirstAndFirstPredicate) {
-                        AbstractResource delta = next.getTime().computeDelta(
-                                curr.getTime());
-                        if (lowerBound == null || delta.lessThan(lowerBound)) {
-                            lowerBound = delta;
-                        }
-
-                        if (upperBound == null || upperBound.lessThan(delta)) {
-                            upperBound = delta;
-                        }
-                    }
-
-                    // Found (a,b) pair, compute constraints
-                    if (next.getEType().equals(b)
-                            && !betweenFirstAndFirstPredicate) {
-                        AbstractResource delta = next.getTime().computeDelta(
-                                curr.getTime());
-                        if (lowerBound == null || delta.lessThan(lowerBound)) {
-                            lowerBound = delta;
-                        }
-
-                        if (upperBound == null || upperBound.lessThan(delta)) {
-                            upperBound = delta;
-                        }
-                    }
-
-                    // Reached ending node in path.
-                    if (next.equals(end)) {
-                        break;
-                    }
-
-                    assert (next.getAllTransitions().size() == 1);
-                    next = next.getAllTransitions().get(0).getTarget();
-                }
-
-                assert (curr.getAllTransitions().size() == 1);
-                curr = curr.getAllTransitions().get(0).getTarget();
-            }
-        }
-
-        IThresholdConstraint l = new LowerBoundConstraint(lowerBound);
-        IThresholdConstraint u = new UpperBoundConstraint(upperBound);
-
-        return new Pair<IThresholdConstraint, IThresholdConstraint>(l, u);
-    }
 }
@@ -1,5 +1,6 @@
 package synoptic.invariants.miners;
 
+import java.util.BitSet;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -14,7 +15,6 @@ import synoptic.invariants.birelational.APBiRelationInvariant;
 import synoptic.invariants.birelational.NFBiRelationInvariant;
 import synoptic.invariants.concurrency.AlwaysConcurrentInvariant;
 import synoptic.invariants.concurrency.NeverConcurrentInvariant;
-import synoptic.model.ChainRelationPath;
 import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -61,24 +61,54 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
             Map<EventType, Set<EventType>> gEventCoOccurrences,
             Set<EventType> AlwaysFollowsINITIALSet, boolean multipleRelations,
             boolean supportCount) {
+        WalkCounts counts = WalkCounts.fromMaps(gEventCnts, gFollowedByCnts,
+                gPrecedesCnts, gPossibleInterrupts, AlwaysFollowsINITIALSet);
+        return extractPathInvariantsFromWalkCounts(relation, counts,
+                gEventCoOccurrences, multipleRelations, supportCount);
+    }
+
+    /**
+     * Builds a set of local invariants from the count matrices in counts. See
+     * {@link #extractPathInvariantsFromWalkCounts(String, Map, Map, Map, Map, Map, Set, boolean, boolean)}
+     * for the observations the invariants are based on. Invariants are
+     * generated for the pairs of event types in the order of their ids.
+     * 
+     * @param relation
+     * @param counts
+     * @param gEventCoOccurrences
+     * @return
+     */
+    protected Set<ITemporalInvariant> extractPathInvariantsFromWalkCounts(
+            String relation, WalkCounts counts,
+            Map<EventType, Set<EventType>> gEventCoOccurrences,
+            boolean multipleRelations, boolean supportCount) {
 
         Set<ITemporalInvariant> invariants = new LinkedHashSet<ITemporalInvariant>();
 
-        for (EventType e1 : gEventCnts.keySet()) {
-            for (EventType e2 : gEventCnts.keySet()) {
+        int numETypes = counts.getNumEventTypes();
+        for (int a = 0; a < numETypes; a++) {
+            EventType e1 = counts.getEventType(a);
+            int e1Cnt = counts.getEventCount(a);
+            BitSet e1Interrupts = counts.getPossibleInterrupts(a);
+
+            for (int b = 0; b < numETypes; b++) {
+                EventType e2 = counts.getEventType(b);
+                int e2Cnt = counts.getEventCount(b);
+                int e1FbyE2 = counts.getFollowedByCount(a, b);
 
-                if (neverFollowedBy(gFollowedByCnts, e1, e2)) {
+                if (e1FbyE2 == 0) {
+                    // e1 was never followed by e2, therefore e1 NFby e2.
                     // Online filtering of subsumed invariants:
                     if (gEventCoOccurrences == null
-                            || !alwaysConcurrentWith(gFollowedByCnts,
-                                    gEventCoOccurrences, e1, e2)) {
+                            || counts.getFollowedByCount(b, a) != 0
+                            || !coOccurred(gEventCoOccurrences, e1, e2)) {
                         if (multipleRelations) {
                             NFBiRelationInvariant invariant = new NFBiRelationInvariant(
                                     e1, e2, relation, Event.defTimeRelationStr);
                             if (supportCount) {
                                 invariant
                                         .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
+                                                e1Cnt));
                             }
                             invariants.add(invariant);
                         } else {
@@ -88,21 +118,22 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                             if (supportCount) {
                                 invariant
                                         .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
+                                                e1Cnt));
                             }
                             invariants.add(invariant);
                         }
                     }
                 }
 
-                if (alwaysFollowedBy(gEventCnts, gFollowedByCnts, e1, e2)) {
+                if (e1FbyE2 == e1Cnt) {
+                    // #F(e1->e2) == #e1 therefore e1 AFby e2
                     if (multipleRelations) {
 
                         AFBiRelationInvariant invariant = new AFBiRelationInvariant(
                                 e1, e2, relation, Event.defTimeRelationStr);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
+                                    e1Cnt));
                         }
                         invariants.add(invariant);
 
@@ -111,19 +142,20 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                                 e1, e2, relation);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
+                                    e1Cnt));
                         }
                         invariants.add(invariant);
                     }
                 }
 
-                if (alwaysPrecedes(gEventCnts, gPrecedesCnts, e1, e2)) {
+                if (counts.getPrecedesCount(a, b) == e2Cnt) {
+                    // #P(e1->e2) == #e2 therefore e1 AP e2
                     if (multipleRelations) {
                         APBiRelationInvariant invariant = new APBiRelationInvariant(
                                 e1, e2, relation, Event.defTimeRelationStr);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
+                                    e2Cnt));
                         }
                         invariants.add(invariant);
                     } else {
@@ -131,21 +163,20 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                                 e1, e2, relation);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
+                                    e2Cnt));
                         }
                         invariants.add(invariant);
                     }
                 }
 
-                if (interruptedBy(gPossibleInterrupts, e1, e2)) {
+                if (e1Interrupts != null && e1Interrupts.get(b)) {
                     if (multipleRelations) {
                         throw new NotImplementedException();
                     }
                     InterruptedByInvariant invariant = new InterruptedByInvariant(
                             e1, e2, relation);
                     if (supportCount) {
-                        invariant.setStatistics(new InvariantStatistics(
-                                gEventCnts.get(e1)));
+                        invariant.setStatistics(new InvariantStatistics(e1Cnt));
                     }
                     invariants.add(invariant);
                 }
@@ -154,14 +185,20 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
 
         // Determine all the INITIAL AFby x invariants to represent
         // "eventually x"
-        for (EventType label : AlwaysFollowsINITIALSet) {
+        BitSet alwaysFollowsInitial = counts.getAlwaysFollowsInitial();
+        if (alwaysFollowsInitial == null) {
+            return invariants;
+        }
+        for (int a = alwaysFollowsInitial.nextSetBit(0); a >= 0; a = alwaysFollowsInitial
+                .nextSetBit(a + 1)) {
+            EventType label = counts.getEventType(a);
             if (multipleRelations) {
                 AFBiRelationInvariant invariant = new AFBiRelationInvariant(
                         StringEventType.newInitialStringEventType(), label,
                         relation);
                 if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
+                    invariant.setStatistics(new InvariantStatistics(counts
+                            .getEventCount(a)));
                 }
                 invariants.add(invariant);
             } else {
@@ -169,8 +206,8 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                         StringEventType.newInitialStringEventType(), label,
                         relation);
                 if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
+                    invariant.setStatistics(new InvariantStatistics(counts
+                            .getEventCount(a)));
                 }
                 invariants.add(invariant);
             }
@@ -179,27 +216,16 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     }
 
     /**
-     * Returns true if and only if <code>e1</code> gets interrupted by
-     * <code>e2</code>.
-     * 
-     * @param gPossibleInterrupts
-     *            pre-calculated map of possible IntrBy invariants (see e.g.,
-     *            {@link ChainRelationPath#getPossibleInterrupts()}
-     * @param e1
-     *            event which gets interrupted
-     * @param e2
-     *            interrupter event
-     * @return true if and only if <code>e1</code> gets interrupted by
-     *         <code>e2</code>
+     * Returns true if and only if <code>e1</code> and <code>e2</code> ever
+     * co-appeared in the same trace.
      */
-    protected boolean interruptedBy(
-            Map<EventType, Set<EventType>> gPossibleInterrupts, EventType e1,
+    private static boolean coOccurred(
+            Map<EventType, Set<EventType>> gEventCoOccurrences, EventType e1,
             EventType e2) {
-        if (gPossibleInterrupts != null && gPossibleInterrupts.containsKey(e1)
-                && gPossibleInterrupts.get(e1).contains(e2)) {
-            return true;
-        }
-        return false;
+        return (gEventCoOccurrences.containsKey(e1) && gEventCoOccurrences
+                .get(e1).contains(e2))
+                || (gEventCoOccurrences.containsKey(e2) && gEventCoOccurrences
+                        .get(e2).contains(e1));
     }
 
     protected boolean alwaysPrecedes(Map<EventType, Integer> gEventCnts,
@@ -213,17 +239,6 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         return false;
     }
 
-    protected boolean neverFollowedBy(
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
-            EventType e1, EventType e2) {
-        if (gFollowedByCnts.get(e1).get(e2) == 0) {
-            // label1 was never followed by label2, therefore label1
-            // NFby label2 (i.e. #_F(label1->label2) == 0)
-            return true;
-        }
-        return false;
-    }
-
     protected boolean alwaysFollowedBy(Map<EventType, Integer> gEventCnts,
             Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
             EventType e1, EventType e2) {
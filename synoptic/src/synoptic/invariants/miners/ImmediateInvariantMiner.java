@@ -56,7 +56,7 @@ public class ImmediateInvariantMiner {
                     canFollow.put(first, new HashSet<EventType>());
                 }
                 canFollow.get(first).add(second);
-                if (cur.getAllTransitions().size() == 0) {
+                if (cur.getNumTransitions() == 0) {
 
                     // Add terminal event to the canFollow set
                     if (!canFollow.containsKey(second)) {
@@ -98,12 +98,12 @@ public class KTailInvariantMiner implements ITOInvariantMiner {
             int count = 1;
             eventWindow.add(initNode.getEType());
 
-            while (curNode.getAllTransitions().size() != 0 && count <= kVal) {
+            while (curNode.getNumTransitions() != 0 && count <= kVal) {
 
                 // NOTE: this invariant miner only works for totally
                 // ordered traces, so each node must have no more than 1
                 // out-going transition.
-                if (curNode.getAllTransitions().size() != 1) {
+                if (curNode.getNumTransitions() != 1) {
                     throw new InternalSynopticException(
                             "KTailInvariantMiner does not work on partially ordered traces.");
                 }
@@ -128,7 +128,7 @@ public class KTailInvariantMiner implements ITOInvariantMiner {
                 }
                 Set<EventType> followingEvents = tails.get(eventWindow);
                 followingEvents.add(curNode.getEType());
-                if (curNode.getAllTransitions().size() == 0) {
+                if (curNode.getNumTransitions() == 0) {
                     break;
                 }
 
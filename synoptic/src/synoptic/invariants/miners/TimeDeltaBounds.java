@@ -0,0 +1,200 @@
+package synoptic.invariants.miners;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.EventNode;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IRelationPath;
+import synoptic.util.Pair;
+import synoptic.util.resource.AbstractResource;
+
+/**
+ * Aggregates the lower and upper bounds of the time deltas of a list of
+ * (first, second) event type pairs over a set of relation paths. A delta of a
+ * pair is the time of an instance of the second event type minus the time of an
+ * earlier instance of the first event type in the same path. <br />
+ * <br />
+ * Each path is walked once, for all of the pairs. The walk keeps the earliest
+ * and the latest times of the instances of every first event type that it has
+ * passed, indexed by event type id. The smallest delta of an instance of a
+ * second event type is its time minus the latest time of the first event type,
+ * and the largest is its time minus the earliest time.
+ */
+public class TimeDeltaBounds {
+    /** Maps each event type of the pairs to its id. */
+    private final Map<EventType, Integer> eTypeIds;
+    /** The id of the first event type of each pair. */
+    private final int[] firstIds;
+    /** The pairs whose second event type is the event type with each id. */
+    private final int[][] pairsBySecond;
+    /** Whether the event type with each id is the first of some pair. */
+    private final boolean[] isFirst;
+
+    /** The bounds of each pair, or null if the pair has no deltas. */
+    private final AbstractResource[] lowerBounds;
+    private final AbstractResource[] upperBounds;
+
+    // The earliest and latest times of each first event type in the path that
+    // is being walked, and the ids of the event types that have them.
+    private final AbstractResource[] minTimes;
+    private final AbstractResource[] maxTimes;
+    private final int[] seenFirstIds;
+    private int numSeenFirstIds = 0;
+
+    /**
+     * Creates empty bounds for pairs, which are identified by their index in
+     * the list.
+     */
+    public TimeDeltaBounds(List<Pair<EventType, EventType>> pairs) {
+        eTypeIds = new HashMap<EventType, Integer>();
+        int numPairs = pairs.size();
+        firstIds = new int[numPairs];
+        int[] secondIds = new int[numPairs];
+        for (int p = 0; p < numPairs; p++) {
+            firstIds[p] = getId(pairs.get(p).getLeft());
+            secondIds[p] = getId(pairs.get(p).getRight());
+        }
+
+        int numETypes = eTypeIds.size();
+        isFirst = new boolean[numETypes];
+        int[] numPairsBySecond = new int[numETypes];
+        for (int p = 0; p < numPairs; p++) {
+            isFirst[firstIds[p]] = true;
+            numPairsBySecond[secondIds[p]]++;
+        }
+        pairsBySecond = new int[numETypes][];
+        for (int e = 0; e < numETypes; e++) {
+            pairsBySecond[e] = new int[numPairsBySecond[e]];
+            numPairsBySecond[e] = 0;
+        }
+        for (int p = 0; p < numPairs; p++) {
+            pairsBySecond[secondIds[p]][numPairsBySecond[secondIds[p]]++] = p;
+        }
+
+        lowerBounds = new AbstractResource[numPairs];
+        upperBounds = new AbstractResource[numPairs];
+        minTimes = new AbstractResource[numETypes];
+        maxTimes = new AbstractResource[numETypes];
+        seenFirstIds = new int[numETypes];
+    }
+
+    /**
+     * Creates empty bounds for the same pairs as other.
+     */
+    public TimeDeltaBounds(TimeDeltaBounds other) {
+        eTypeIds = other.eTypeIds;
+        firstIds = other.firstIds;
+        pairsBySecond = other.pairsBySecond;
+        isFirst = other.isFirst;
+        lowerBounds = new AbstractResource[firstIds.length];
+        upperBounds = new AbstractResource[firstIds.length];
+        minTimes = new AbstractResource[isFirst.length];
+        maxTimes = new AbstractResource[isFirst.length];
+        seenFirstIds = new int[isFirst.length];
+    }
+
+    private int getId(EventType eType) {
+        Integer id = eTypeIds.get(eType);
+        if (id == null) {
+            id = eTypeIds.size();
+            eTypeIds.put(eType, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the lower bound of the deltas of the pair with index p, or null
+     * if the pair has no deltas.
+     */
+    public AbstractResource getLowerBound(int p) {
+        return lowerBounds[p];
+    }
+
+    /**
+     * Returns the upper bound of the deltas of the pair with index p, or null
+     * if the pair has no deltas.
+     */
+    public AbstractResource getUpperBound(int p) {
+        return upperBounds[p];
+    }
+
+    /**
+     * Adds the deltas of the pairs in relationPath to the bounds.
+     */
+    public void add(IRelationPath relationPath) {
+        EventNode end = relationPath.getLastNode();
+        EventNode curr = relationPath.getFirstNode();
+        while (true) {
+            Integer id = eTypeIds.get(curr.getEType());
+            if (id != null) {
+                addEvent(id, curr.getTime());
+            }
+
+            // Reached ending node in path.
+            if (curr.equals(end)) {
+                break;
+            }
+            assert (curr.getNumTransitions() == 1);
+            curr = curr.getSuccessor(0);
+        }
+
+        for (int i = 0; i < numSeenFirstIds; i++) {
+            minTimes[seenFirstIds[i]] = null;
+            maxTimes[seenFirstIds[i]] = null;
+        }
+        numSeenFirstIds = 0;
+    }
+
+    /**
+     * Adds the deltas of an instance (with the given time) of the event type
+     * with id e to the bounds of the pairs whose second event type it is, and
+     * then records its time.
+     */
+    private void addEvent(int e, AbstractResource time) {
+        for (int p : pairsBySecond[e]) {
+            int first = firstIds[p];
+            if (maxTimes[first] != null) {
+                addDeltas(p, time.computeDelta(maxTimes[first]),
+                        time.computeDelta(minTimes[first]));
+            }
+        }
+
+        if (!isFirst[e]) {
+            return;
+        }
+        if (maxTimes[e] == null) {
+            seenFirstIds[numSeenFirstIds++] = e;
+            minTimes[e] = time;
+            maxTimes[e] = time;
+        } else if (time.lessThan(minTimes[e])) {
+            minTimes[e] = time;
+        } else if (maxTimes[e].lessThan(time)) {
+            maxTimes[e] = time;
+        }
+    }
+
+    private void addDeltas(int p, AbstractResource minDelta,
+            AbstractResource maxDelta) {
+        if (lowerBounds[p] == null || minDelta.lessThan(lowerBounds[p])) {
+            lowerBounds[p] = minDelta;
+        }
+        if (upperBounds[p] == null || upperBounds[p].lessThan(maxDelta)) {
+            upperBounds[p] = maxDelta;
+        }
+    }
+
+    /**
+     * Adds the bounds of other, which were created for the same pairs, to
+     * these bounds.
+     */
+    public void add(TimeDeltaBounds other) {
+        assert firstIds == other.firstIds;
+        for (int p = 0; p < firstIds.length; p++) {
+            if (other.lowerBounds[p] != null) {
+                addDeltas(p, other.lowerBounds[p], other.upperBounds[p]);
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.ChainRelationPath;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IRelationPath;
+
+/**
+ * Aggregates the event, followed-by and precedes counts, and the possible
+ * InterruptedBy invariants, of a set of relation paths. Event types are
+ * interned to dense integer ids in the order in which they are first
+ * encountered, and the counts are stored in flat int matrices indexed by these
+ * ids: the count of the pair (a, b) is at index a * capacity + b. The possible
+ * interrupters of an event type are stored as a bitset of ids. <br />
+ * <br />
+ * These are the structures that
+ * {@link CountingInvariantMiner#extractPathInvariantsFromWalkCounts(String, WalkCounts, Map, boolean, boolean)}
+ * reads the invariants from.
+ */
+public class WalkCounts {
+    /** The interned event types, indexed by id. */
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+    /** Maps each interned event type to its id. */
+    private final Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+
+    /** Number of rows (and columns) allocated in the count matrices. */
+    private int capacity = 0;
+    /** Number of instances of each event type, across all paths. */
+    private int[] eventCnts = new int[0];
+    /** Global followed-by counts: #F(a->b) is at a * capacity + b. */
+    private int[] followedByCnts = new int[0];
+    /** Global precedes counts: #P(a->b) is at a * capacity + b. */
+    private int[] precedesCnts = new int[0];
+    /**
+     * Event types that interrupt an event type in every path in which it
+     * appears more than once. Null if no path contains the event type twice.
+     */
+    private BitSet[] possibleInterrupts = new BitSet[0];
+    /**
+     * Event types that appear in every path, or null if no paths have been
+     * added.
+     */
+    private BitSet alwaysFollowsInitial = null;
+
+    /**
+     * Creates the counts from the map-based global counts of a miner. Event
+     * types are assigned ids in the iteration order of gEventCnts, and
+     * entries for event types that are not in gEventCnts are ignored.
+     */
+    static WalkCounts fromMaps(Map<EventType, Integer> gEventCnts,
+            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
+            Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
+            Map<EventType, Set<EventType>> gPossibleInterrupts,
+            Set<EventType> AlwaysFollowsINITIALSet) {
+        WalkCounts counts = new WalkCounts();
+        for (Map.Entry<EventType, Integer> entry : gEventCnts.entrySet()) {
+            int a = counts.getId(entry.getKey());
+            counts.eventCnts[a] = entry.getValue();
+        }
+        counts.addCounts(gFollowedByCnts, counts.followedByCnts);
+        counts.addCounts(gPrecedesCnts, counts.precedesCnts);
+        if (gPossibleInterrupts != null) {
+            for (Map.Entry<EventType, Set<EventType>> entry : gPossibleInterrupts
+                    .entrySet()) {
+                Integer a = counts.eTypeIds.get(entry.getKey());
+                if (a == null) {
+                    continue;
+                }
+                counts.possibleInterrupts[a] = counts.toBitSet(entry
+                        .getValue());
+            }
+        }
+        if (AlwaysFollowsINITIALSet != null) {
+            counts.alwaysFollowsInitial = counts
+                    .toBitSet(AlwaysFollowsINITIALSet);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the id of event type e, interning it if necessary.
+     */
+    public int getId(EventType e) {
+        Integer id = eTypeIds.get(e);
+        if (id != null) {
+            return id;
+        }
+
+        id = eTypes.size();
+        eTypes.add(e);
+        eTypeIds.put(e, id);
+        if (id == capacity) {
+            grow(Math.max(8, capacity * 2));
+        }
+        return id;
+    }
+
+    private void grow(int newCapacity) {
+        eventCnts = Arrays.copyOf(eventCnts, newCapacity);
+        possibleInterrupts = Arrays.copyOf(possibleInterrupts, newCapacity);
+        followedByCnts = growMatrix(followedByCnts, newCapacity);
+        precedesCnts = growMatrix(precedesCnts, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private int[] growMatrix(int[] matrix, int newCapacity) {
+        int[] result = new int[newCapacity * newCapacity];
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(matrix, row * capacity, result, row
+                    * newCapacity, capacity);
+        }
+        return result;
+    }
+
+    /** Returns the number of interned event types. */
+    public int getNumEventTypes() {
+        return eTypes.size();
+    }
+
+    /** Returns the event type with the given id. */
+    public EventType getEventType(int id) {
+        return eTypes.get(id);
+    }
+
+    /** Returns #a, the number of instances of the event type with id a. */
+    public int getEventCount(int a) {
+        return eventCnts[a];
+    }
+
+    /** Returns #F(a->b). */
+    public int getFollowedByCount(int a, int b) {
+        return followedByCnts[a * capacity + b];
+    }
+
+    /** Returns #P(a->b). */
+    public int getPrecedesCount(int a, int b) {
+        return precedesCnts[a * capacity + b];
+    }
+
+    /**
+     * Returns the ids of the event types that may interrupt the event type with
+     * id a, or null if there are none. Must not be modified.
+     */
+    public BitSet getPossibleInterrupts(int a) {
+        return possibleInterrupts[a];
+    }
+
+    /**
+     * Returns the ids of the event types that appear in every added path, or
+     * null if no paths have been added. Must not be modified.
+     */
+    public BitSet getAlwaysFollowsInitial() {
+        return alwaysFollowsInitial;
+    }
+
+    /**
+     * Adds the counts of relationPath to the global counts.
+     */
+    public void add(IRelationPath relationPath) {
+        if (relationPath instanceof ChainRelationPath) {
+            add((ChainRelationPath) relationPath);
+            return;
+        }
+
+        // Intern all of the path's event types first, as interning may grow
+        // the matrices.
+        BitSet seen = new BitSet();
+        for (EventType e : relationPath.getSeen()) {
+            seen.set(getId(e));
+        }
+
+        for (Map.Entry<EventType, Integer> entry : relationPath
+                .getEventCounts().entrySet()) {
+            eventCnts[eTypeIds.get(entry.getKey())] += entry.getValue();
+        }
+        addCounts(relationPath.getFollowedByCounts(), followedByCnts);
+        addCounts(relationPath.getPrecedesCounts(), precedesCnts);
+        for (Map.Entry<EventType, Set<EventType>> entry : relationPath
+                .getPossibleInterrupts().entrySet()) {
+            intersectInterrupts(eTypeIds.get(entry.getKey()),
+                    toBitSet(entry.getValue()));
+        }
+        intersectSeen(seen);
+    }
+
+    /**
+     * Adds the counts of relationPath, reading them directly from its count
+     * matrices.
+     */
+    private void add(ChainRelationPath relationPath) {
+        List<EventType> pathETypes = relationPath.getEventTypes();
+        int numETypes = pathETypes.size();
+
+        // Maps the path's event type ids to our ids. Interning may grow the
+        // matrices, so this has to happen before they are updated.
+        int[] ids = new int[numETypes];
+        BitSet seen = new BitSet();
+        for (int i = 0; i < numETypes; i++) {
+            ids[i] = getId(pathETypes.get(i));
+            seen.set(ids[i]);
+        }
+
+        for (int i = 0; i < numETypes; i++) {
+            int a = ids[i];
+            eventCnts[a] += relationPath.getEventCount(i);
+            int row = a * capacity;
+            for (int j = 0; j < numETypes; j++) {
+                followedByCnts[row + ids[j]] += relationPath
+                        .getFollowedByCount(i, j);
+                precedesCnts[row + ids[j]] += relationPath.getPrecedesCount(
+                        i, j);
+            }
+
+            BitSet pathInterrupts = relationPath.getPossibleInterrupts(i);
+            if (pathInterrupts != null) {
+                intersectInterrupts(a, translate(pathInterrupts, ids));
+            }
+        }
+        intersectSeen(seen);
+    }
+
+    /**
+     * Adds the counts of other, which were aggregated from a disjoint set of
+     * paths, to these counts. The result is the same as if all of the paths
+     * of other had been added to these counts, so merging is associative. The
+     * event types of other that are not yet interned are interned in the order
+     * of their ids in other.
+     */
+    public void add(WalkCounts other) {
+        int numETypes = other.getNumEventTypes();
+        int[] ids = new int[numETypes];
+        for (int i = 0; i < numETypes; i++) {
+            ids[i] = getId(other.getEventType(i));
+        }
+
+        for (int i = 0; i < numETypes; i++) {
+            int a = ids[i];
+            eventCnts[a] += other.getEventCount(i);
+            int row = a * capacity;
+            for (int j = 0; j < numETypes; j++) {
+                followedByCnts[row + ids[j]] += other.getFollowedByCount(i, j);
+                precedesCnts[row + ids[j]] += other.getPrecedesCount(i, j);
+            }
+
+            BitSet otherInterrupts = other.getPossibleInterrupts(i);
+            if (otherInterrupts != null) {
+                intersectInterrupts(a, translate(otherInterrupts, ids));
+            }
+        }
+
+        if (other.alwaysFollowsInitial != null) {
+            intersectSeen(translate(other.alwaysFollowsInitial, ids));
+        }
+    }
+
+    /**
+     * Returns a new bitset of the ids[i] for which bit i is set in bits.
+     */
+    private static BitSet translate(BitSet bits, int[] ids) {
+        BitSet result = new BitSet();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.set(ids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the values of src, which has the form XCounts[a][b] = count, into
+     * the matrix dst. Entries for event types that are not interned are
+     * ignored.
+     */
+    private void addCounts(Map<EventType, Map<EventType, Integer>> src,
+            int[] dst) {
+        for (Map.Entry<EventType, Map<EventType, Integer>> entry : src
+                .entrySet()) {
+            Integer a = eTypeIds.get(entry.getKey());
+            if (a == null) {
+                continue;
+            }
+            for (Map.Entry<EventType, Integer> bEntry : entry.getValue()
+                    .entrySet()) {
+                Integer b = eTypeIds.get(bEntry.getKey());
+                if (b != null) {
+                    dst[a * capacity + b] += bEntry.getValue();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the interned event types in eTypeSet.
+     */
+    private BitSet toBitSet(Set<EventType> eTypeSet) {
+        BitSet result = new BitSet();
+        for (EventType e : eTypeSet) {
+            Integer id = eTypeIds.get(e);
+            if (id != null) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prunes the possible interrupters of a by retaining only those that also
+     * interrupt a in the path being added.
+     */
+    private void intersectInterrupts(int a, BitSet interrupts) {
+        if (possibleInterrupts[a] == null) {
+            possibleInterrupts[a] = interrupts;
+        } else {
+            possibleInterrupts[a].and(interrupts);
+        }
+    }
+
+    /**
+     * Updates the event types that appear in every path by intersecting them
+     * with those seen in the path being added.
+     */
+    private void intersectSeen(BitSet seen) {
+        if (alwaysFollowsInitial == null) {
+            // This is the first path we are processing.
+            alwaysFollowsInitial = seen;
+        } else {
+            alwaysFollowsInitial.and(seen);
+        }
+    }
+}
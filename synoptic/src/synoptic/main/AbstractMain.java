@@ -14,6 +14,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -42,9 +46,9 @@ import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Trace;
-import synoptic.model.Transition;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
+import synoptic.model.event.LogFile;
 import synoptic.model.export.DotExportFormatter;
 import synoptic.model.export.GmlExportFormatter;
 import synoptic.model.export.GraphExportFormatter;
@@ -54,9 +58,11 @@ import synoptic.model.export.LtsExporter;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.IRelationPath;
+import synoptic.model.state.SynDaikonizer;
 import synoptic.model.testgeneration.AbstractTestCase;
 import synoptic.tests.SynopticLibTest;
 import synoptic.util.BriefLogFormatter;
+import synoptic.util.InternalSynopticException;
 import synoptic.util.SynopticJar;
 import synoptic.util.resource.AbstractResource;
 
@@ -95,6 +101,18 @@ public abstract class AbstractMain {
      */
     public static Options plumeOpts = null;
 
+    /**
+     * Pool of worker threads shared by all stages that run in parallel. Created
+     * lazily, and only if options.numThreads is larger than 1.
+     */
+    private ForkJoinPool workerPool = null;
+
+    /**
+     * The log files of the parsed events, which are closed at the end of
+     * runSynoptic().
+     */
+    private final List<LogFile> logFiles = new ArrayList<LogFile>();
+
     /**
      * Return the singleton instance of AbstractMain, first asserting that the
      * instance isn't null.
@@ -185,6 +203,71 @@ public abstract class AbstractMain {
         return graphExportFormatter;
     }
 
+    /**
+     * Returns the shared pool of worker threads, creating it on first use. The
+     * pool has options.numThreads threads.
+     */
+    public synchronized ForkJoinPool getWorkerPool() {
+        if (workerPool == null) {
+            workerPool = new ForkJoinPool(Math.max(1, options.numThreads));
+        }
+        return workerPool;
+    }
+
+    /**
+     * Shuts down the worker pool, if it has been created. A later stage that
+     * runs in parallel creates a new pool.
+     */
+    public synchronized void shutdownWorkerPool() {
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+    }
+
+    /**
+     * Executes tasks and returns their results in the order of the tasks list.
+     * The tasks are run on the worker pool when options.numThreads is larger
+     * than 1, and one after another in the calling thread otherwise. Tasks
+     * must not depend on each other, or on the order in which they are run.
+     * 
+     * @param tasks
+     *            the independent tasks to execute
+     * @return the results of the tasks, in the order of tasks
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (options.numThreads <= 1 || tasks.size() <= 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+
+            for (Future<T> future : getWorkerPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw InternalSynopticException.wrap((Exception) cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw InternalSynopticException.wrap(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        }
+        return results;
+    }
+
     protected static long loggerInfoStart(String msg) {
         logger.info(msg);
         return System.currentTimeMillis();
@@ -443,6 +526,56 @@ public abstract class AbstractMain {
         return parsedEvents;
     }
 
+    /**
+     * Parses all the log filenames into a chains trace graph, without building
+     * the list of all parsed events. If the partitions are by file (and,
+     * optionally, separator -- see TraceParser.partitionsByFile()), the trace
+     * of each partition is added to the graph as soon as it is complete, so
+     * the parser only holds the events and relations of one trace at a time.
+     * Otherwise, the traces are added once all of the files have been parsed.
+     * 
+     * @param parser
+     *            a parser for a totally ordered log
+     * @param logFilenames
+     * @return the trace graph of the parsed events
+     * @throws Exception
+     */
+    static public ChainsTraceGraph parseIntoChainsTraceGraph(TraceParser parser, List<String> logFilenames)
+            throws Exception {
+        long startTime = loggerInfoStart("Parsing input files into traces..");
+
+        List<File> files = new ArrayList<File>();
+        for (String fileArg : logFilenames) {
+            logger.fine("\tprocessing fileArg: " + fileArg);
+            File[] argFiles = getFiles(fileArg);
+            if (argFiles.length == 0) {
+                throw new ParseException(
+                        "The set of input files is empty. Please specify a set of existing files to parse.");
+            }
+            files.addAll(Arrays.asList(argFiles));
+        }
+
+        // A file that is listed twice contributes to the same partitions twice,
+        // so its traces are only complete at the end.
+        Set<String> paths = new HashSet<String>();
+        boolean addTracesWhileParsing = parser.partitionsByFile();
+        for (File file : files) {
+            if (!paths.add(file.getAbsolutePath())) {
+                addTracesWhileParsing = false;
+            }
+        }
+
+        ChainsTraceGraph traceGraph = new ChainsTraceGraph();
+        for (File file : files) {
+            logger.fine("\tcalling parseTraceFileInto with file: " + file.getAbsolutePath());
+            parser.parseTraceFileInto(file, traceGraph, addTracesWhileParsing);
+        }
+        parser.addTracesTo(traceGraph);
+        loggerInfoEnd("Parsing into traces took ", startTime);
+
+        return traceGraph;
+    }
+
     static public ChainsTraceGraph genChainsTraceGraph(TraceParser parser, List<EventNode> parsedEvents)
             throws ParseException {
         long startTime = loggerInfoStart("Generating inter-event temporal relation...");
@@ -692,10 +825,18 @@ public abstract class AbstractMain {
         TraceParser parser = new TraceParser(options.regExps,
                 AbstractOptions.partitionRegExp,
                 AbstractOptions.separatorRegExp, options.dateFormat);
-        List<EventNode> parsedEvents;
+        // Totally ordered logs are parsed directly into a trace graph.
+        ChainsTraceGraph traceGraph = null;
+        List<EventNode> parsedEvents = null;
         try {
-            parsedEvents = parseEvents(parser,
-                    AbstractOptions.plumeOpts.logFilenames);
+            if (parser.logTimeTypeIsTotallyOrdered()) {
+                traceGraph = parseIntoChainsTraceGraph(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            } else {
+                parsedEvents = parseEvents(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            }
+            logFiles.addAll(parser.getLogFiles());
         } catch (ParseException e) {
             logger.severe(
                     "Caught ParseException -- unable to continue, exiting. Try cmd line option:\n\t"
@@ -712,21 +853,19 @@ public abstract class AbstractMain {
         }
 
         // PO Logs are processed differently.
-        if (!parser.logTimeTypeIsTotallyOrdered()) {
+        if (traceGraph == null) {
             logger.warning(
                     "Partially ordered log input detected. Only mining invariants since refinement/coarsening is not yet supported.");
             processPOLog(parser, parsedEvents);
             return null;
         }
 
-        if (parsedEvents.size() == 0) {
+        if (traceGraph.getNumTraces() == 0) {
             logger.severe(
                     "Did not parse any events from the input log files. Stopping.");
             return null;
         }
 
-        // //////////////////
-        ChainsTraceGraph traceGraph = genChainsTraceGraph(parser, parsedEvents);
         return traceGraph;
     }
 
@@ -757,7 +896,7 @@ public abstract class AbstractMain {
 
             // Find the min and max absolute time of any event in this trace
             EventNode cur = relationPath.getFirstNode();
-            while (!cur.getAllTransitions().isEmpty()) {
+            while (cur.getNumTransitions() != 0) {
                 if (maxTime == null || maxTime.lessThan(cur.getTime())) {
                     maxTime = cur.getTime();
                 }
@@ -766,7 +905,7 @@ public abstract class AbstractMain {
                 }
 
                 // Get the next event in this trace
-                cur = cur.getTransitionsWithIntersectingRelations(traceGraph.getRelations()).get(0).getTarget();
+                cur = cur.getFirstSuccessorWithIntersectingRelations(traceGraph.getRelations());
             }
 
             AbstractResource rangeTime = null;
@@ -783,30 +922,17 @@ public abstract class AbstractMain {
             // Normalize absolute time of each of this trace's events by
             // subtracting the min and dividing by the range
             cur = relationPath.getFirstNode();
-            while (!cur.getAllTransitions().isEmpty()) {
+            while (cur.getNumTransitions() != 0) {
                 cur.getEvent().setTime(cur.getTime().computeDelta(minTime).normalize(rangeTime));
 
                 // Get the next event in this trace
-                cur = cur.getTransitionsWithIntersectingRelations(traceGraph.getRelations()).get(0).getTarget();
+                cur = cur.getFirstSuccessorWithIntersectingRelations(traceGraph.getRelations());
             }
         }
 
-        // Update transition time deltas to match new normalized event times
-        for (EventNode event : traceGraph.getNodes()) {
-            for (Transition<EventNode> trans : event.getAllTransitions()) {
-
-                // Get normalized times of the transition's source and target
-                // events
-                AbstractResource srcTime = trans.getSource().getTime();
-                AbstractResource targetTime = trans.getTarget().getTime();
-
-                // Compute and store normalized transition time delta
-                if (targetTime != null) {
-                    AbstractResource delta = targetTime.computeDelta(srcTime);
-                    trans.setTimeDelta(delta);
-                }
-            }
-        }
+        // The time deltas of the transitions between events are computed from
+        // the event times whenever the transitions are requested, so they now
+        // match the normalized times.
     }
 
     /**
@@ -857,7 +983,24 @@ public abstract class AbstractMain {
         // unsatisfied in the result
 
         // export the resulting graph
-        exportGraph(pGraph);
+        try {
+            exportGraph(pGraph);
+        } finally {
+            // Exporting is the last use of the cached state invariants and of
+            // the log lines.
+            SynDaikonizer.clearCachedInvariants();
+            closeLogFiles();
+        }
+    }
+
+    /**
+     * Closes the log files of the parsed events. Reading a log line after
+     * this reopens its file.
+     */
+    public void closeLogFiles() {
+        for (LogFile logFile : logFiles) {
+            logFile.close();
+        }
     }
 
     /**
@@ -878,11 +1021,14 @@ public abstract class AbstractMain {
             // if test generation is enabled, export all bounded, predicted
             // abstract tests
             if (options.testGeneration) {
-                Set<AbstractTestCase> testSuite = SynopticTestGeneration.deriveAbstractTests(pGraph);
+                // The tests are exported as they are derived, rather than
+                // all derived first.
+                Iterator<AbstractTestCase> testSuite = SynopticTestGeneration.deriveAbstractTests(pGraph,
+                        options.maxAbstractTests, options.maxAbstractTestLength);
                 int testID = 0;
-                for (AbstractTestCase testCase : testSuite) {
+                while (testSuite.hasNext()) {
                     String baseFilename = AbstractOptions.outputPathPrefix + "-test" + testID;
-                    exportNonInitialGraph(baseFilename, testCase);
+                    exportNonInitialGraph(baseFilename, testSuite.next());
                     testID++;
                 }
             }
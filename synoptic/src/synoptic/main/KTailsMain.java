@@ -67,6 +67,8 @@ public class KTailsMain extends AbstractMain {
             throw e;
         } catch (Exception e) {
             throw InternalSynopticException.wrap(e);
+        } finally {
+            mainInstance.shutdownWorkerPool();
         }
     }
 
@@ -54,6 +54,8 @@ public class PerfumeMain extends AbstractMain {
             throw e;
         } catch (Exception e) {
             throw InternalSynopticException.wrap(e);
+        } finally {
+            mainInstance.shutdownWorkerPool();
         }
     }
 
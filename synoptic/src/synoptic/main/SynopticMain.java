@@ -52,6 +52,8 @@ public class SynopticMain extends AbstractMain {
             throw e;
         } catch (Exception e) {
             throw InternalSynopticException.wrap(e);
+        } finally {
+            mainInstance.shutdownWorkerPool();
         }
     }
 
@@ -1,5 +1,6 @@
 package synoptic.main;
 
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -31,14 +32,47 @@ public class SynopticTestGeneration {
      */
     public static Set<AbstractTestCase> deriveAbstractTests(PartitionGraph model) {
         Set<AbstractTestCase> testSuite = new LinkedHashSet<AbstractTestCase>();
-        Set<List<Partition>> paths = model.getAllBoundedPredictedPaths();
-        for (List<Partition> path : paths) {
-            AbstractTestCase testCase = convertPathToAbstractTest(path);
-            testSuite.add(testCase);
+        Iterator<AbstractTestCase> testCases = deriveAbstractTests(model, 0, 0);
+        while (testCases.hasNext()) {
+            testSuite.add(testCases.next());
         }
         return testSuite;
     }
 
+    /**
+     * Derives abstract test cases from a given model lazily: each test case is
+     * derived from the next path of the model when it is requested, so that
+     * test cases can be exported as they are derived.
+     * 
+     * @param maxTests
+     *            the maximum number of test cases, or 0 for no limit
+     * @param maxLength
+     *            the maximum number of actions in a test case, or 0 for no
+     *            limit
+     * @return an iterator over the abstract test cases derived from model.
+     */
+    public static Iterator<AbstractTestCase> deriveAbstractTests(
+            PartitionGraph model, int maxTests, int maxLength) {
+        final Iterator<List<Partition>> paths = model.getBoundedPredictedPaths(
+                maxTests, maxLength);
+        return new Iterator<AbstractTestCase>() {
+            @Override
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            @Override
+            public AbstractTestCase next() {
+                return convertPathToAbstractTest(paths.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     /**
      * Converts a path in the model to its corresponding abstract test case.
      * 
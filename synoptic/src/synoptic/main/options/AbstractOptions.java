@@ -63,6 +63,12 @@ public class AbstractOptions {
     static final String testGenerationStr = "-t Enable abstract test generation";
     public boolean testGeneration = false;
 
+    static final String maxAbstractTestsStr = "Maximum number of abstract tests to generate (0 for no limit)";
+    public int maxAbstractTests = 0;
+
+    static final String maxAbstractTestLengthStr = "Maximum number of events in a generated abstract test, including INITIAL and TERMINAL (0 for no limit)";
+    public int maxAbstractTestLength = 0;
+
     static final String supportCountThresholdStr = "filter all invariants that have support values greater than the threshold";
     public int supportCountThreshold = 0;
 
@@ -72,6 +78,15 @@ public class AbstractOptions {
     static final String ignoreNFbyInvsStr = "Ignore NFby invariants";
     public boolean ignoreNFbyInvs = false;
 
+    static final String numThreadsStr = "Number of worker threads to use in the stages that can run in parallel (1 runs everything serially)";
+    public int numThreads = 1;
+
+    static final String incrementalCheckingStr = "Reuse model checking results between refinement and coarsening steps, and only re-check the part of the model affected by each split or merge";
+    public boolean incrementalChecking = false;
+
+    static final String localSplitCheckingStr = "When no split resolves a constrained invariant's violation in the entire model, apply a split that resolves it in the part of the model where it was found";
+    public boolean localSplitChecking = true;
+
     // Extended Perfume option
     static final String termOnIntermediateModelStr = "-t Terminate on intermediate model output";
     public boolean termOnIntermediateModel = false;
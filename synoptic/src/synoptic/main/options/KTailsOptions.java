@@ -92,6 +92,20 @@ public class KTailsOptions extends Options {
     @Option(AbstractOptions.randomSeedStr)
     public Long randomSeed = null;
 
+    /**
+     * Number of worker threads to use in the stages that support parallel
+     * execution. The default of 1 runs every stage serially.
+     */
+    @Option(AbstractOptions.numThreadsStr)
+    public int numThreads = 1;
+
+    /**
+     * Reuse model checking state between refinement and coarsening steps, and
+     * only re-check the partitions affected by each split or merge.
+     */
+    @Option(AbstractOptions.incrementalCheckingStr)
+    public boolean incrementalChecking = false;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -426,6 +440,8 @@ public class KTailsOptions extends Options {
         absOpts.supportCountThreshold = supportCountThreshold;
         absOpts.ignoreIntrByInvs = ignoreIntrByInvs;
         absOpts.ignoreNFbyInvs = ignoreNFbyInvs;
+        absOpts.numThreads = numThreads;
+        absOpts.incrementalChecking = incrementalChecking;
         // absOpts.k = k;
 
         // Parser options
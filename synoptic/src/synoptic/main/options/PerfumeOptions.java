@@ -98,6 +98,28 @@ public class PerfumeOptions extends Options {
     @Option(AbstractOptions.ignoreNFbyInvsStr)
     public boolean ignoreNFbyInvs = false;
 
+    /**
+     * Number of worker threads to use in the stages that support parallel
+     * execution. The default of 1 runs every stage serially.
+     */
+    @Option(AbstractOptions.numThreadsStr)
+    public int numThreads = 1;
+
+    /**
+     * Reuse model checking state between refinement and coarsening steps, and
+     * only re-check the partitions affected by each split or merge.
+     */
+    @Option(AbstractOptions.incrementalCheckingStr)
+    public boolean incrementalChecking = false;
+
+    /**
+     * When no split resolves a constrained invariant's violation in the entire
+     * model, apply a split that resolves it between the partitions where the
+     * violation was found.
+     */
+    @Option(AbstractOptions.localSplitCheckingStr)
+    public boolean localSplitChecking = true;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -502,6 +524,9 @@ public class PerfumeOptions extends Options {
         absOpts.testGeneration = testGeneration;
         absOpts.ignoreIntrByInvs = ignoreIntrByInvs;
         absOpts.ignoreNFbyInvs = ignoreNFbyInvs;
+        absOpts.numThreads = numThreads;
+        absOpts.incrementalChecking = incrementalChecking;
+        absOpts.localSplitChecking = localSplitChecking;
 
         // Parser options
 
@@ -92,6 +92,19 @@ public class SynopticOptions extends Options {
     @Option(value = AbstractOptions.testGenerationStr, aliases = { "-test-generation" })
     public boolean testGeneration = false;
 
+    /**
+     * Maximum number of abstract tests to generate. 0 means no limit.
+     */
+    @Option(AbstractOptions.maxAbstractTestsStr)
+    public int maxAbstractTests = 0;
+
+    /**
+     * Maximum number of events (including INITIAL and TERMINAL) in a
+     * generated abstract test. 0 means no limit.
+     */
+    @Option(AbstractOptions.maxAbstractTestLengthStr)
+    public int maxAbstractTestLength = 0;
+
     /**
      * Filter all invariants that have support values greater than the threshold
      */
@@ -111,6 +124,20 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.ignoreNFbyInvsStr)
     public boolean ignoreNFbyInvs = false;
 
+    /**
+     * Number of worker threads to use in the stages that support parallel
+     * execution. The default of 1 runs every stage serially.
+     */
+    @Option(AbstractOptions.numThreadsStr)
+    public int numThreads = 1;
+
+    /**
+     * Reuse model checking state between refinement and coarsening steps, and
+     * only re-check the partitions affected by each split or merge.
+     */
+    @Option(AbstractOptions.incrementalCheckingStr)
+    public boolean incrementalChecking = false;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -505,9 +532,13 @@ public class SynopticOptions extends Options {
         absOpts.multipleRelations = multipleRelations;
         absOpts.stateProcessing = stateProcessing;
         absOpts.testGeneration = testGeneration;
+        absOpts.maxAbstractTests = maxAbstractTests;
+        absOpts.maxAbstractTestLength = maxAbstractTestLength;
         absOpts.supportCountThreshold = supportCountThreshold;
         absOpts.ignoreIntrByInvs = ignoreIntrByInvs;
         absOpts.ignoreNFbyInvs = ignoreNFbyInvs;
+        absOpts.numThreads = numThreads;
+        absOpts.incrementalChecking = incrementalChecking;
 
         // Parser options
 
@@ -0,0 +1,159 @@
+package synoptic.main.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+import synoptic.model.event.LogFile;
+
+/**
+ * Reads the lines of a log in the same way as BufferedReader.readLine(): lines
+ * are terminated by '\n', '\r' or "\r\n". When the log is read from a log
+ * file, the byte offset and length of each line in the file are recorded, so
+ * that events can read their lines back from the file instead of holding on
+ * to them.
+ */
+class LogLineReader {
+    /** The reader of a log that is not read from a log file. */
+    private final BufferedReader reader;
+
+    /** The stream of the log file, and the file itself. */
+    private final InputStream in;
+    private final LogFile logFile;
+
+    private final byte[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    /** The offset in the file of buf[0]. */
+    private long bufOffset = 0;
+    /** Whether the last line was terminated by a '\r'. */
+    private boolean skipLF = false;
+
+    /** The bytes of the line being read. */
+    private byte[] line;
+
+    private long lineOffset;
+    private int lineLength;
+
+    /**
+     * Creates a reader for a log that is not read from a log file.
+     */
+    LogLineReader(Reader reader) {
+        this.reader = new BufferedReader(reader);
+        this.in = null;
+        this.logFile = null;
+        this.buf = null;
+    }
+
+    /**
+     * Creates a reader for the log file logFile, which is read from in.
+     */
+    LogLineReader(InputStream in, LogFile logFile) {
+        this.reader = null;
+        this.in = in;
+        this.logFile = logFile;
+        this.buf = new byte[1 << 16];
+        this.line = new byte[256];
+    }
+
+    /**
+     * Returns the log file that is being read, or null if the log is not read
+     * from a log file.
+     */
+    LogFile getLogFile() {
+        return logFile;
+    }
+
+    /** Returns the byte offset in the log file of the last line read. */
+    long getLineOffset() {
+        return lineOffset;
+    }
+
+    /** Returns the length in bytes of the last line read. */
+    int getLineLength() {
+        return lineLength;
+    }
+
+    /**
+     * Returns the next line, without its terminator, or null at the end of the
+     * log.
+     */
+    String readLine() throws IOException {
+        if (reader != null) {
+            return reader.readLine();
+        }
+
+        int length = 0;
+        boolean started = false;
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (!started) {
+                    return null;
+                }
+                return endLine(length);
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (buf[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            if (!started) {
+                started = true;
+                lineOffset = bufOffset + pos;
+            }
+
+            // Copy the bytes up to the terminator, or the end of the buffer.
+            int start = pos;
+            while (pos < limit && buf[pos] != '\n' && buf[pos] != '\r') {
+                pos++;
+            }
+            int count = pos - start;
+            if (length + count > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length
+                        + count));
+            }
+            System.arraycopy(buf, start, line, length, count);
+            length += count;
+
+            if (pos < limit) {
+                skipLF = buf[pos] == '\r';
+                pos++;
+                return endLine(length);
+            }
+        }
+    }
+
+    private String endLine(int length) {
+        lineLength = length;
+        return new String(line, 0, length, logFile.getCharset());
+    }
+
+    /**
+     * Reads the next bytes of the file into buf.
+     *
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        bufOffset += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buf);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        } else {
+            in.close();
+        }
+    }
+}
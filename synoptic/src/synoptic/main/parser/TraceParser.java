@@ -1,24 +1,25 @@
 package synoptic.main.parser;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -28,18 +29,21 @@ import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.Options;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
+import synoptic.model.DirectPOSuccessors;
 import synoptic.model.EventNode;
 import synoptic.model.Relation;
 import synoptic.model.TraceGraph;
 import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
+import synoptic.model.event.LogFile;
 import synoptic.model.event.StringEventType;
 import synoptic.model.state.State;
 import synoptic.util.InternalSynopticException;
 import synoptic.util.matching.NamedMatcher;
 import synoptic.util.matching.NamedPattern;
 import synoptic.util.matching.NamedSubstitution;
+import synoptic.util.matching.PatternDispatcher;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.DTotalResource;
 import synoptic.util.resource.EqualVectorTimestampsException;
@@ -64,6 +68,8 @@ public class TraceParser {
     private final Map<String, Integer> partitionNameToTraceID;
 
     private NamedSubstitution filter;
+    // The partitions mapping that filter was created from.
+    private String partitionsMap = "";
 
     // Partitioning based on filter expressions -- maps a unique partition
     // string to a set of parsed events corresponding to that partition.
@@ -87,6 +93,20 @@ public class TraceParser {
     // Pattern used to parse dates
     private SimpleDateFormat dateFormatter = null;
 
+    // Dispatches lines to the regular expressions in parsers. Created at the
+    // start of every parse, as expressions may be added between parses.
+    private PatternDispatcher dispatcher = null;
+
+    // The named groups (and context and constant fields) of the line being
+    // parsed.
+    private final Map<String, String> matchedGroups = new LinkedHashMap<String, String>();
+
+    /**
+     * Number of consecutive lines that a worker matches at a time, when lines
+     * are parsed in parallel.
+     */
+    private static final int linesPerMatchChunk = 1024;
+
     // All line-matching regexps will be checked to include either of the
     // following
     // groups, but not both.
@@ -139,9 +159,34 @@ public class TraceParser {
     // Used to convert delta values into absolute values when the flag is set
     private AbstractResource lastTime;
 
+    // Vector times of the trace being parsed, by their clocks. Identical vector
+    // times (e.g., at the start of different traces) are shared by all of the
+    // events that have them. Only set while parseTrace() runs.
+    private Map<Clocks, VectorTime> vectorTimes = null;
+
+    // The log files that events parsed by this parser read their lines from.
+    private final List<LogFile> logFiles = new ArrayList<LogFile>();
+
+    // The graph that parseTrace() adds the parsed events to, instead of
+    // returning them, and whether it also adds the trace of each partition to
+    // the graph as soon as the partition is complete. Only set while
+    // parseTraceFileInto() runs.
+    private ChainsTraceGraph streamGraph = null;
+    private boolean streamTraces = false;
+
+    // The number of traces and events that parseTrace() has added to
+    // streamGraph so far.
+    private int numStreamedTraces;
+    private int numStreamedEvents;
+
     private static final String dummyEtypeLabel = "dummy-etype-for-line-with-state"
             .intern();
 
+    // The time relation of every event. Relations are immutable, so all
+    // events share this instance.
+    private static final Relation timeRelation = new Relation("time-relation",
+            Event.defTimeRelationStr, false);
+
     /**
      * Returns an un-parameterized trace parser.
      */
@@ -223,6 +268,15 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Returns the log files that the events parsed by this parser read their
+     * lines back from (see Event.getLine()). The caller closes these once it
+     * no longer needs the lines.
+     */
+    public List<LogFile> getLogFiles() {
+        return logFiles;
+    }
+
     /**
      * Returns whether or not the time type used to parse the log(s) has a
      * canonical total order or not.
@@ -581,6 +635,7 @@ public class TraceParser {
      */
     public void setPartitionsMap(String f) {
         filter = new NamedSubstitution(f);
+        partitionsMap = f;
     }
 
     /**
@@ -603,8 +658,17 @@ public class TraceParser {
         try {
             fileName = file.getAbsolutePath();
             FileInputStream fstream = new FileInputStream(file);
-            InputStreamReader fileReader = new InputStreamReader(fstream);
-            return parseTrace(fileReader, fileName, linesToRead);
+            Charset charset = Charset.defaultCharset();
+            LogLineReader reader;
+            if (LogFile.isLineAddressable(charset)) {
+                // Events read their lines back from the file when needed.
+                LogFile logFile = new LogFile(fileName, charset);
+                logFiles.add(logFile);
+                reader = new LogLineReader(fstream, logFile);
+            } else {
+                reader = new LogLineReader(new InputStreamReader(fstream));
+            }
+            return parseTrace(reader, fileName, linesToRead);
         } catch (IOException e) {
             String error = "Error while attempting to read log file ["
                     + fileName + "]: " + e.getMessage();
@@ -613,6 +677,50 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Parses a trace file into graph, without building the list of its events.
+     * If addTraces is true, the trace of each partition is added to graph as
+     * soon as the partition is complete -- i.e., once the first event of the
+     * next partition (e.g., below a separator line) has been parsed, or the
+     * file ends -- and the partition and the relations of its events are then
+     * dropped from the parser, so the parser only holds the events of one
+     * trace at a time. This requires partitionsByFile(), and that file has not
+     * been parsed before. Otherwise, the traces are left for addTracesTo().
+     * 
+     * @param file
+     *            File to read and then parse.
+     * @param graph
+     *            the graph to add the parsed events (and traces) to
+     * @param addTraces
+     *            whether to add the trace of each partition to graph as soon
+     *            as the partition is complete
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public void parseTraceFileInto(File file, ChainsTraceGraph graph,
+            boolean addTraces) throws ParseException,
+            InternalSynopticException {
+        assert logTimeTypeIsTotallyOrdered();
+        assert !addTraces || partitionsByFile();
+
+        streamGraph = graph;
+        // A line that fails to parse is recovered into a partition that is
+        // shared by all of the files, so partitions are not contiguous.
+        streamTraces = addTraces
+                && !AbstractMain.getInstance().options.recoverFromParseErrors;
+        try {
+            parseTraceFile(file, -1);
+        } finally {
+            streamGraph = null;
+            streamTraces = false;
+        }
+        if (addTraces) {
+            addTracesTo(graph);
+        }
+    }
+
     /**
      * Parses a string containing a log into a list of log events.
      * 
@@ -639,7 +747,8 @@ public class TraceParser {
         }
         StringReader stringReader = new StringReader(trace);
         try {
-            return parseTrace(stringReader, traceName, linesToRead);
+            return parseTrace(new LogLineReader(stringReader), traceName,
+                    linesToRead);
         } catch (IOException e) {
             String error = "Error while reading string [" + traceName + "]: "
                     + e.getMessage();
@@ -649,9 +758,9 @@ public class TraceParser {
     }
 
     /**
-     * Parses strings generated by traceReader as event instances.
+     * Parses strings generated by br as event instances.
      * 
-     * @param traceReader
+     * @param br
      *            reader generated lines to parse.
      * @param linesToRead
      *            Bound on the number of lines to read. Negatives indicate
@@ -664,10 +773,10 @@ public class TraceParser {
      * @throws InternalSynopticException
      *             when Synoptic code is the problem
      */
-    private ArrayList<EventNode> parseTrace(Reader traceReader,
+    private ArrayList<EventNode> parseTrace(LogLineReader br,
             String traceName, int linesToRead) throws ParseException,
             IOException, InternalSynopticException {
-        BufferedReader br = new BufferedReader(traceReader);
+        dispatcher = new PatternDispatcher(parsers);
 
         // Initialize incrementor context.
         Map<String, Integer> context = new LinkedHashMap<String, Integer>();
@@ -686,21 +795,42 @@ public class TraceParser {
         }
 
         lastTime = null;
+        vectorTimes = new HashMap<Clocks, VectorTime>();
+        numStreamedTraces = 0;
+        numStreamedEvents = 0;
 
-        int lineNum = 0;
-        // Process each line in sequence.
-        while ((strLine = br.readLine()) != null) {
-            if (results.size() == linesToRead) {
-                break;
-            }
-            lineNum++;
-            EventNode node = parseLine(strLine, tName, context, lineNum);
-            if (node == null) {
-                continue;
+        if (AbstractMain.getInstance().options.numThreads > 1) {
+            parseLinesInParallel(br, tName, context, linesToRead, results);
+        } else {
+            int lineNum = 0;
+            // Process each line in sequence.
+            while ((strLine = br.readLine()) != null) {
+                if (results.size() == linesToRead) {
+                    break;
+                }
+                lineNum++;
+                EventNode node = parseLine(strLine, tName, context, lineNum);
+                if (node == null) {
+                    continue;
+                }
+                setLineLocation(node, br.getLogFile(), br.getLineOffset(),
+                        br.getLineLength());
+                addParsedNode(node, results);
             }
-            results.add(node);
         }
         br.close();
+        vectorTimes = null;
+
+        if (streamGraph != null) {
+            // Add the events of the last partition, which are complete now.
+            int numTraces = numStreamedTraces + partitions.size();
+            int numEvents = numStreamedEvents + results.size();
+            addStreamedNodes(results, -1);
+            logger.info("Successfully parsed " + numTraces
+                    + " traces, containing a total of " + numEvents
+                    + " events from [" + tName + "]");
+            return results;
+        }
         // TODO: this is a hacky solution, should refactor the parseTrace and
         // parseLine methods so that State is separated from EventNode.
         // At this point, each node in results either represents an event or
@@ -810,6 +940,142 @@ public class TraceParser {
         return results;
     }
 
+    /**
+     * If logFile is not null, makes the event of node read its log line back
+     * from logFile when needed, instead of holding on to it.
+     */
+    private static void setLineLocation(EventNode node, LogFile logFile,
+            long offset, int length) {
+        if (logFile != null) {
+            node.getEvent().setLineLocation(logFile, offset, length);
+        }
+    }
+
+    /**
+     * Parses the lines generated by br in the same way as the serial loop in
+     * parseTrace, but matches the lines against the regular expressions on the
+     * worker pool. Lines are read in batches, and the lines of a batch are
+     * split into contiguous chunks that are matched concurrently. Everything
+     * that depends on the order of the lines (incrementors, time deltas, trace
+     * ids, partitions, relations) is then applied one line after another, in
+     * log order, so the results are identical to those of the serial loop.
+     */
+    private void parseLinesInParallel(LogLineReader br, String tName,
+            Map<String, Integer> context, int linesToRead,
+            List<EventNode> results) throws ParseException, IOException,
+            InternalSynopticException {
+        AbstractMain main = AbstractMain.getInstance();
+        int numChunks = main.options.numThreads;
+        int batchSize = numChunks * linesPerMatchChunk;
+        long[] lineOffsets = new long[batchSize];
+        int[] lineLengths = new int[batchSize];
+        int lineNum = 0;
+
+        while (true) {
+            final List<String> lines = new ArrayList<String>(batchSize);
+            String strLine;
+            while (lines.size() < batchSize
+                    && (strLine = br.readLine()) != null) {
+                lineOffsets[lines.size()] = br.getLineOffset();
+                lineLengths[lines.size()] = br.getLineLength();
+                lines.add(strLine);
+            }
+            if (lines.isEmpty()) {
+                return;
+            }
+
+            List<Callable<LineMatch[]>> tasks = new ArrayList<Callable<LineMatch[]>>();
+            for (int start = 0; start < lines.size(); start += linesPerMatchChunk) {
+                final int chunkStart = start;
+                final int chunkEnd = Math.min(start + linesPerMatchChunk,
+                        lines.size());
+                tasks.add(new Callable<LineMatch[]>() {
+                    @Override
+                    public LineMatch[] call() {
+                        LineMatch[] matches = new LineMatch[chunkEnd
+                                - chunkStart];
+                        for (int k = chunkStart; k < chunkEnd; k++) {
+                            matches[k - chunkStart] = matchLine(lines.get(k), 0);
+                        }
+                        return matches;
+                    }
+                });
+            }
+
+            int k = 0;
+            for (LineMatch[] matches : main.invokeAll(tasks)) {
+                for (LineMatch match : matches) {
+                    if (results.size() == linesToRead) {
+                        return;
+                    }
+                    lineNum++;
+                    EventNode node = parseLine(lines.get(k), match, tName,
+                            context, lineNum);
+                    if (node != null) {
+                        setLineLocation(node, br.getLogFile(), lineOffsets[k],
+                                lineLengths[k]);
+                        addParsedNode(node, results);
+                    }
+                    k++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds node to the parsed nodes in results. If the trace of each partition
+     * is streamed to streamGraph, and node starts a new partition, the nodes
+     * in results belong to a partition that is complete, which is first added
+     * to streamGraph.
+     */
+    private void addParsedNode(EventNode node, List<EventNode> results)
+            throws ParseException {
+        if (streamTraces && !results.isEmpty()
+                && results.get(0).getTraceID() != node.getTraceID()) {
+            addStreamedNodes(results, node.getTraceID());
+        }
+        results.add(node);
+    }
+
+    /**
+     * Adds the parsed nodes in results (which are cleared) to streamGraph. If
+     * streamTraces, the trace of every partition other than the one with trace
+     * id openTraceID is then complete, and is added to streamGraph and dropped
+     * from the parser.
+     * 
+     * @throws ParseException
+     */
+    private void addStreamedNodes(List<EventNode> results, int openTraceID)
+            throws ParseException {
+        if (AbstractMain.getInstance().options.stateProcessing) {
+            mergeStatesWithEventNodes(results);
+        }
+        for (EventNode event : results) {
+            streamGraph.add(event);
+        }
+        numStreamedEvents += results.size();
+        results.clear();
+        if (!streamTraces) {
+            return;
+        }
+
+        Iterator<Map.Entry<String, ArrayList<EventNode>>> it = partitions
+                .entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ArrayList<EventNode>> partition = it.next();
+            if (partitionNameToTraceID.get(partition.getKey()) == openTraceID) {
+                continue;
+            }
+            List<EventNode> events = partition.getValue();
+            streamGraph.addTrace(events, allEventRelations);
+            for (EventNode event : events) {
+                allEventRelations.remove(event);
+            }
+            it.remove();
+            numStreamedTraces++;
+        }
+    }
+
     /**
      * Merge each state node in results with its surrounding event nodes of the
      * same traceID.
@@ -863,6 +1129,47 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Returns the vector time that timeStr represents, which is shared with
+     * all of the other events of the trace being parsed that have the same
+     * clocks.
+     */
+    private VectorTime internVectorTime(String timeStr) {
+        Clocks clocks = new Clocks(VectorTime.parseClocks(timeStr));
+        VectorTime vtime = vectorTimes.get(clocks);
+        if (vtime == null) {
+            vtime = VectorTime.fromClocks(clocks.clocks);
+            vectorTimes.put(clocks, vtime);
+        }
+        return vtime;
+    }
+
+    /**
+     * The clocks of a parsed vector time, compared by value. Vector times are
+     * not used as keys directly, since VectorTime.equals() throws for vectors
+     * of different lengths.
+     */
+    private static final class Clocks {
+        final int[] clocks;
+        final int hash;
+
+        Clocks(int[] clocks) {
+            this.clocks = clocks;
+            this.hash = Arrays.hashCode(clocks);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Clocks
+                    && Arrays.equals(clocks, ((Clocks) other).clocks);
+        }
+    }
+
     /**
      * Builds a generic string to describe a location of an error on a line in
      * some input file.
@@ -884,29 +1191,76 @@ public class TraceParser {
         return ret;
     }
 
+    /**
+     * The result of matching a line against the regular expressions: the index
+     * of the first expression that matched the line, and the values of its
+     * groups, in the order of dispatcher.getGroupNames(parserIndex).
+     */
+    private static final class LineMatch {
+        final int parserIndex;
+        final String[] groupValues;
+
+        LineMatch(int parserIndex, String[] groupValues) {
+            this.parserIndex = parserIndex;
+            this.groupValues = groupValues;
+        }
+    }
+
+    /**
+     * Matches line against the regular expressions, starting with the one at
+     * index firstParser. This does not depend on (or modify) any parser state,
+     * so lines can be matched concurrently.
+     * 
+     * @return the first match, or null if no expression matches the line
+     */
+    private LineMatch matchLine(String line, int firstParser) {
+        int i = dispatcher.match(line, firstParser);
+        if (i == -1) {
+            return null;
+        }
+        NamedMatcher matcher = dispatcher.getMatcher(i);
+        String[] groupValues = new String[matcher.groupCount()];
+        for (int g = 0; g < groupValues.length; g++) {
+            groupValues[g] = matcher.group(g + 1);
+        }
+        return new LineMatch(i, groupValues);
+    }
+
     /**
      * Parse an individual line.
      */
     private EventNode parseLine(String line, String fileName,
             Map<String, Integer> context, int lineNum) throws ParseException,
             InternalSynopticException {
+        return parseLine(line, matchLine(line, 0), fileName, context, lineNum);
+    }
+
+    /**
+     * Parse an individual line, given the first expression that matches it.
+     */
+    private EventNode parseLine(String line, LineMatch match, String fileName,
+            Map<String, Integer> context, int lineNum) throws ParseException,
+            InternalSynopticException {
 
         Event event = null;
         AbstractResource nextTime = null;
 
         AbstractMain main = AbstractMain.getInstance();
 
-        for (int i = 0; i < parsers.size(); i++) {
-            NamedMatcher matcher = parsers.get(i).matcher(line);
-            if (!matcher.matches()) {
-                continue;
+        // A line whose time field cannot be parsed moves on to the next
+        // expression that matches it.
+        for (; match != null; match = matchLine(line, match.parserIndex + 1)) {
+            int i = match.parserIndex;
+
+            Map<String, NamedSubstitution> cs = constantFields.get(i);
+            // The groups map is reused from line to line.
+            Map<String, String> matched = matchedGroups;
+            matched.clear();
+            String[] groupNames = dispatcher.getGroupNames(i);
+            for (int g = 0; g < match.groupValues.length; g++) {
+                matched.put(groupNames[g], match.groupValues[g]);
             }
 
-            @SuppressWarnings("unchecked")
-            Map<String, NamedSubstitution> cs = (Map<String, NamedSubstitution>) constantFields
-                    .get(i).clone();
-            Map<String, String> matched = matcher.toMatchResult().namedGroups();
-
             // Perform pre-increments.
             for (Map.Entry<String, Boolean> inc : incrementors.get(i)
                     .entrySet()) {
@@ -1063,7 +1417,7 @@ public class TraceParser {
                             || selectedTimeGroup.equals("DTIME")) {
                         nextTime = new DTotalResource(timeField.trim());
                     } else if (selectedTimeGroup.equals("VTIME")) {
-                        nextTime = new VectorTime(timeField.trim());
+                        nextTime = internVectorTime(timeField.trim());
                     } else if (selectedTimeGroup.equals("DATETIME")) {
                         if (dateFormatter == null) {
                             String error = "Date formatter is not initialized with a format, cannot continue";
@@ -1155,8 +1509,6 @@ public class TraceParser {
             }
             event.setTime(nextTime);
 
-            Relation timeRelation = new Relation("time-relation",
-                    Event.defTimeRelationStr, false);
             eventRelations.add(timeRelation);
 
             String partitionName = filter.substitute(eventStringArgs);
@@ -1302,6 +1654,40 @@ public class TraceParser {
         return graph;
     }
 
+    /**
+     * Whether every partition holds the events of a single log file, so that
+     * the traces of a file are complete once the file has been parsed.
+     */
+    public boolean partitionsByFile() {
+        return partitionsMap.equals(AbstractOptions.partitionRegExpDefault)
+                && AbstractOptions.partitionRegExp
+                        .equals(AbstractOptions.partitionRegExpDefault);
+    }
+
+    /**
+     * Adds the traces of all of the partitions that have been parsed so far
+     * to graph, and then drops them (and the relations of their events) from
+     * the parser. Events that are parsed later into a partition with the same
+     * name start a new trace with the same trace id, so this should only be
+     * called once the partitions are complete: e.g., after the last log file
+     * has been parsed or, if partitionsByFile(), after each log file. The
+     * events themselves must already have been added to graph.
+     * 
+     * @param graph
+     *            the graph to add the traces to
+     * @throws ParseException
+     *             if two events in a trace have identical timestamps
+     */
+    public void addTracesTo(ChainsTraceGraph graph) throws ParseException {
+        assert logTimeTypeIsTotallyOrdered();
+
+        for (ArrayList<EventNode> events : partitions.values()) {
+            graph.addTrace(events, allEventRelations);
+        }
+        partitions.clear();
+        allEventRelations.clear();
+    }
+
     /**
      * Given a list of log events that can be only partially ordered,
      * manipulates the builder to construct the corresponding trace graph.
@@ -1320,29 +1706,31 @@ public class TraceParser {
         // Maintains nodes without predecessors.
         Set<EventNode> noPredecessor = new LinkedHashSet<EventNode>(allEvents);
 
-        Set<EventNode> directSuccessors;
         for (String partition : partitions.keySet()) {
             List<EventNode> group = partitions.get(partition);
 
-            for (EventNode e1 : group) {
+            // In the partially ordered case there may be multiple direct
+            // successors.
+            DirectPOSuccessors poSuccessors;
+            try {
+                poSuccessors = new DirectPOSuccessors(group);
+            } catch (EqualVectorTimestampsException e) {
+                String error = "Found two events with identical timestamps: (1) "
+                        + e.e1.toString() + " (2) " + e.e2.toString();
+                logger.severe(error);
+                throw new ParseException(error);
 
-                // In the partially ordered case there may be multiple direct
-                // successors.
-                try {
-                    directSuccessors = EventNode.getDirectPOSuccessors(e1,
-                            group);
-                } catch (EqualVectorTimestampsException e) {
-                    String error = "Found two events with identical timestamps: (1) "
-                            + e.e1.toString() + " (2) " + e.e2.toString();
-                    logger.severe(error);
-                    throw new ParseException(error);
+            } catch (NotComparableVectorsException e) {
+                String error = "Found two events with different length vector timestamps: (1) "
+                        + e.e1.toString() + " (2) " + e.e2.toString();
+                logger.severe(error);
+                throw new ParseException(error);
+            }
 
-                } catch (NotComparableVectorsException e) {
-                    String error = "Found two events with different length vector timestamps: (1) "
-                            + e.e1.toString() + " (2) " + e.e2.toString();
-                    logger.severe(error);
-                    throw new ParseException(error);
-                }
+            for (int i = 0; i < group.size(); i++) {
+                EventNode e1 = group.get(i);
+                List<EventNode> directSuccessors = poSuccessors
+                        .getDirectSuccessors(i);
 
                 if (directSuccessors.size() == 0) {
                     // Tag messages without successor as terminal.
@@ -1,9 +1,12 @@
 package synoptic.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,27 +32,36 @@ public class ChainRelationPath implements IRelationPath {
      */
     private boolean counted;
 
-    /** The set of nodes seen prior to some point in the trace. */
-    private Set<EventType> seen;
+    /**
+     * The event types in the path, in the order of their first occurrence. The
+     * counts below identify an event type by its index in this list.
+     */
+    private final List<EventType> eTypes;
+    /** Maps each event type in eTypes to its index. */
+    private final Map<EventType, Integer> eTypeIds;
+
+    /** Number of rows (and columns) allocated in the count matrices. */
+    private int capacity;
     /** Maintains the current event count in the path. */
-    private Map<EventType, Integer> eventCounts;
+    private int[] eventCounts;
     /**
      * Maintains the current FollowedBy count for the path.
-     * followedByCounts[a][b] = count iff the number of a's that appeared before
-     * this b is count.
+     * followedByCounts[a * capacity + b] = count iff the number of a's that
+     * appeared before this b is count.
      */
-    private Map<EventType, Map<EventType, Integer>> followedByCounts;
+    private int[] followedByCounts;
     /**
-     * Maintains the current precedes count for the path. precedesCounts[a][b] =
-     * count iff the number of b's that appeared after this a is count.
+     * Maintains the current precedes count for the path.
+     * precedesCounts[a * capacity + b] = count iff the number of b's that
+     * appeared after this a is count.
      */
-    private Map<EventType, Map<EventType, Integer>> precedesCounts;
+    private int[] precedesCounts;
 
     /**
      * Maintains for every event type the types that interrupts it across every
-     * relation path.
+     * relation path. Null for event types that appear at most once.
      */
-    private LinkedHashMap<EventType, Set<EventType>> possibleInterrupts;
+    private BitSet[] possibleInterrupts;
 
     /**
      * @param eNode
@@ -65,16 +77,58 @@ public class ChainRelationPath implements IRelationPath {
         this.eFinal = eFinal;
         this.relation = relation;
         this.counted = false;
-        this.seen = new HashSet<EventType>();
-        this.eventCounts = new LinkedHashMap<EventType, Integer>();
-        this.followedByCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        this.precedesCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        this.possibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+        this.eTypes = new ArrayList<EventType>();
+        this.eTypeIds = new HashMap<EventType, Integer>();
+        this.capacity = 0;
+        this.eventCounts = new int[0];
+        this.followedByCounts = new int[0];
+        this.precedesCounts = new int[0];
+        this.possibleInterrupts = new BitSet[0];
+    }
+
+    /**
+     * Returns the index of event type e, adding it to eTypes and growing the
+     * count matrices if necessary.
+     */
+    private int getId(EventType e) {
+        Integer id = eTypeIds.get(e);
+        if (id != null) {
+            return id;
+        }
+
+        id = eTypes.size();
+        eTypes.add(e);
+        eTypeIds.put(e, id);
+        if (id == capacity) {
+            int newCapacity = Math.max(8, capacity * 2);
+            eventCounts = Arrays.copyOf(eventCounts, newCapacity);
+            possibleInterrupts = Arrays.copyOf(possibleInterrupts,
+                    newCapacity);
+            followedByCounts = growMatrix(followedByCounts, capacity,
+                    newCapacity);
+            precedesCounts = growMatrix(precedesCounts, capacity, newCapacity);
+            capacity = newCapacity;
+        }
+        return id;
+    }
+
+    /**
+     * Copies a square matrix with capacity rows into a new one with
+     * newCapacity rows.
+     */
+    private static int[] growMatrix(int[] matrix, int capacity,
+            int newCapacity) {
+        int[] result = new int[newCapacity * newCapacity];
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(matrix, row * capacity, result, row
+                    * newCapacity, capacity);
+        }
+        return result;
     }
 
     /**
      * Assumes tracegraph is already constructed. Walks over the tracegraph that
-     * eNode is part of to populate seen, eventcounts, followedByCounts,
+     * eNode is part of to populate eventcounts, followedByCounts,
      * precedesCounts and possibleInterrupts. Throws an error if a node has
      * multiple transitions for a single relation (i.e., not a totally ordered
      * relation path).
@@ -84,8 +138,14 @@ public class ChainRelationPath implements IRelationPath {
             return;
         }
 
-        // Used for IntrBy, which needs to record order
-        LinkedList<EventType> history = new LinkedList<EventType>();
+        // Used for IntrBy, which needs to record order: the ids of the event
+        // types in the path so far, and the position of the last occurrence of
+        // each event type in history.
+        int[] history = new int[16];
+        int historySize = 0;
+        int[] lastPosition = new int[0];
+        // Reused to collect the types in between two occurrences of a type.
+        BitSet typesInBetween = new BitSet();
 
         Set<String> relationSet = new HashSet<String>();
         relationSet.add(relation);
@@ -120,81 +180,53 @@ public class ChainRelationPath implements IRelationPath {
             // The current event is 'b', and all prior events are 'a' --
             // this notation indicates that an 'a' always occur prior to a
             // 'b' in the path.
-            EventType b = curNode.getEType();
-
-            // Update the precedes counts based on the a events that
-            // preceded the current b event in this path.
-            for (EventType a : seen) {
-                Map<EventType, Integer> bValues;
-                if (!precedesCounts.containsKey(a)) {
-                    precedesCounts.put(a,
-                            new LinkedHashMap<EventType, Integer>());
-                }
-
-                bValues = precedesCounts.get(a);
-
-                if (!bValues.containsKey(b)) {
-                    bValues.put(b, 0);
-                }
-
-                bValues.put(b, bValues.get(b) + 1);
-
+            int b = getId(curNode.getEType());
+            if (lastPosition.length < capacity) {
+                lastPosition = Arrays.copyOf(lastPosition, capacity);
             }
 
-            // Update the followed by counts for this path: the number of a
-            // FollowedBy b at this point in this trace is exactly the
-            // number of a's that we've seen so far.
-            for (EventType a : seen) {
-                Map<EventType, Integer> bValues;
-
-                if (!followedByCounts.containsKey(a)) {
-                    followedByCounts.put(a,
-                            new LinkedHashMap<EventType, Integer>());
+            // Update the precedes counts based on the a events that
+            // preceded the current b event in this path, and the followed by
+            // counts for this path: the number of a FollowedBy b at this
+            // point in this trace is exactly the number of a's that we've
+            // seen so far.
+            for (int a = 0; a < eTypes.size(); a++) {
+                if (eventCounts[a] == 0) {
+                    continue;
                 }
-
-                bValues = followedByCounts.get(a);
-
-                bValues.put(b, eventCounts.get(a));
+                precedesCounts[a * capacity + b]++;
+                followedByCounts[a * capacity + b] = eventCounts[a];
             }
 
             // For the InterruptedBy invariant, event type b must have occurred
             // at least once beforehand
-            if (eventCounts.get(b) != null) {
-                Set<EventType> typesInBetween = new HashSet<EventType>();
-
+            if (eventCounts[b] != 0) {
                 // All event types in between b and the last occurrence of b are
                 // possible IntrBy invariants
-                for (EventType a : history) {
-                    if (a.equals(b)) {
-                        break;
-                    }
-
-                    typesInBetween.add(a);
+                typesInBetween.clear();
+                for (int i = lastPosition[b] + 1; i < historySize; i++) {
+                    typesInBetween.set(history[i]);
                 }
 
                 // The recently found typesInBetween get intersected with the
                 // already found typesInBetween of earlier pairs of b, until
                 // there are only Interrupted by invariants which hold for all
                 // pairs of b.
-
-                if (!possibleInterrupts.containsKey(b)) {
-                    possibleInterrupts.put(b, new HashSet<EventType>(
-                            typesInBetween));
+                if (possibleInterrupts[b] == null) {
+                    possibleInterrupts[b] = (BitSet) typesInBetween.clone();
                 } else {
-                    possibleInterrupts.get(b).retainAll(typesInBetween);
+                    possibleInterrupts[b].and(typesInBetween);
                 }
             }
 
-            seen.add(b);
-
-            history.addFirst(b);
+            if (historySize == history.length) {
+                history = Arrays.copyOf(history, historySize * 2);
+            }
+            lastPosition[b] = historySize;
+            history[historySize++] = b;
 
             // Update the trace event counts.
-            if (!eventCounts.containsKey(b)) {
-                eventCounts.put(b, 1);
-            } else {
-                eventCounts.put(b, eventCounts.get(b) + 1);
-            }
+            eventCounts[b]++;
 
             // Move on to the next node in the trace.
             List<? extends ITransition<EventNode>> searchTransitions = curNode
@@ -214,14 +246,64 @@ public class ChainRelationPath implements IRelationPath {
         counted = true;
     }
 
+    /**
+     * Returns the event types in this path, in the order of their first
+     * occurrence. The index of an event type in this list identifies it in
+     * getEventCount(), getFollowedByCount(), getPrecedesCount() and
+     * getPossibleInterrupts(int).
+     */
+    public List<EventType> getEventTypes() {
+        count();
+        return Collections.unmodifiableList(eTypes);
+    }
+
+    /**
+     * Returns the number of occurrences of the event type with index a.
+     */
+    public int getEventCount(int a) {
+        count();
+        return eventCounts[a];
+    }
+
+    /**
+     * Returns the number of a's that appeared before the last b, where a and b
+     * are event type indices.
+     */
+    public int getFollowedByCount(int a, int b) {
+        count();
+        return followedByCounts[a * capacity + b];
+    }
+
+    /**
+     * Returns the number of b's that appeared after some a, where a and b are
+     * event type indices.
+     */
+    public int getPrecedesCount(int a, int b) {
+        count();
+        return precedesCounts[a * capacity + b];
+    }
+
+    /**
+     * Returns the indices of the event types that interrupt the event type
+     * with index a, or null if a appears at most once. Must not be modified.
+     */
+    public BitSet getPossibleInterrupts(int a) {
+        count();
+        return possibleInterrupts[a];
+    }
+
     public Set<EventType> getSeen() {
         count();
-        return Collections.unmodifiableSet(seen);
+        return Collections.unmodifiableSet(new HashSet<EventType>(eTypes));
     }
 
     public Map<EventType, Integer> getEventCounts() {
         count();
-        return Collections.unmodifiableMap(eventCounts);
+        Map<EventType, Integer> result = new LinkedHashMap<EventType, Integer>();
+        for (int a = 0; a < eTypes.size(); a++) {
+            result.put(eTypes.get(a), eventCounts[a]);
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     /**
@@ -230,8 +312,7 @@ public class ChainRelationPath implements IRelationPath {
      */
     public Map<EventType, Map<EventType, Integer>> getFollowedByCounts() {
         count();
-        // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(followedByCounts);
+        return Collections.unmodifiableMap(toMap(followedByCounts));
     }
 
     /**
@@ -240,8 +321,7 @@ public class ChainRelationPath implements IRelationPath {
      */
     public Map<EventType, Map<EventType, Integer>> getPrecedesCounts() {
         count();
-        // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(precedesCounts);
+        return Collections.unmodifiableMap(toMap(precedesCounts));
     }
 
     /**
@@ -249,8 +329,44 @@ public class ChainRelationPath implements IRelationPath {
      */
     public Map<EventType, Set<EventType>> getPossibleInterrupts() {
         count();
-        // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(possibleInterrupts);
+        Map<EventType, Set<EventType>> result = new LinkedHashMap<EventType, Set<EventType>>();
+        for (int a = 0; a < eTypes.size(); a++) {
+            BitSet interrupts = possibleInterrupts[a];
+            if (interrupts == null) {
+                continue;
+            }
+            Set<EventType> bs = new HashSet<EventType>();
+            for (int b = interrupts.nextSetBit(0); b >= 0; b = interrupts
+                    .nextSetBit(b + 1)) {
+                bs.add(eTypes.get(b));
+            }
+            result.put(eTypes.get(a), bs);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Converts a count matrix into a Map<a, Map<b, count>>, which only
+     * contains the pairs that occurred in the path (i.e., that have a non-zero
+     * count).
+     */
+    private Map<EventType, Map<EventType, Integer>> toMap(int[] matrix) {
+        Map<EventType, Map<EventType, Integer>> result = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        for (int a = 0; a < eTypes.size(); a++) {
+            Map<EventType, Integer> bValues = null;
+            for (int b = 0; b < eTypes.size(); b++) {
+                int count = matrix[a * capacity + b];
+                if (count == 0) {
+                    continue;
+                }
+                if (bValues == null) {
+                    bValues = new LinkedHashMap<EventType, Integer>();
+                    result.put(eTypes.get(a), bValues);
+                }
+                bValues.put(eTypes.get(b), count);
+            }
+        }
+        return result;
     }
 
     public EventNode getFirstNode() {
@@ -8,7 +8,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -205,33 +204,29 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         assert relations != null;
 
         TransitiveClosure transClosure = new TransitiveClosure(relations);
-        List<EventNode> prevNodes = new LinkedList<EventNode>();
+        List<EventNode> chain = new ArrayList<EventNode>();
         for (EventNode firstNode : traceIdToInitNodes.values()) {
             EventNode curNode = firstNode;
 
             while (!curNode.isTerminal()) {
-                prevNodes.clear();
+                chain.clear();
 
                 while (curNode.getTransitionsWithExactRelations(relations)
                         .size() == 1) {
-                    for (EventNode prevNode : prevNodes) {
-                        transClosure.recordTransitiveReachability(prevNode,
-                                curNode);
-                    }
-                    prevNodes.add(curNode);
+                    chain.add(curNode);
                     curNode = curNode
                             .getTransitionsWithExactRelations(relations).get(0)
                             .getTarget();
                 }
 
                 if (!curNode.isTerminal()) {
-                    for (EventNode prevNode : prevNodes) {
-                        transClosure.recordTransitiveReachability(prevNode,
-                                curNode);
-                    }
+                    chain.add(curNode);
+                    transClosure.recordChainReachability(chain);
 
                     assert curNode.getAllSuccessors().size() == 1;
                     curNode = curNode.getAllSuccessors().iterator().next();
+                } else {
+                    transClosure.recordChainReachability(chain);
                 }
             }
         }
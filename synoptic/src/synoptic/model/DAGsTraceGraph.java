@@ -153,7 +153,6 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
     @SuppressWarnings("unused")
     private TransitiveClosure goralcikovaAlg(Set<String> relations) {
         TransitiveClosure transClosure = new TransitiveClosure(relations);
-        Map<EventNode, Set<EventNode>> tc = transClosure.getTC();
 
         List<EventNode> sortedNodes = new LinkedList<EventNode>();
 
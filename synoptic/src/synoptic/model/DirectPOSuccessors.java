@@ -0,0 +1,401 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.event.DistEventType;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.EqualVectorTimestampsException;
+import synoptic.util.resource.NotComparableVectorsException;
+import synoptic.util.resource.VectorTime;
+import synoptic.util.resource.WrongTimeTypeException;
+
+/**
+ * Finds the direct successors of all of the events of a partially ordered
+ * trace, with the same results as calling EventNode.getDirectPOSuccessors() for
+ * every event, and sets the process-local successors of the events in the same
+ * way. <br />
+ * <br />
+ * The events are first split into chains of totally ordered events. The events
+ * of process j are those with the smallest clock sum among the events that
+ * have each value of clock j, ordered by clock j. The successors of an event in
+ * a chain are a suffix of the chain, and so only the first successor in each
+ * chain can be a direct successor. With p processes, this takes O(n * p * (p +
+ * log(n))) comparisons for n events, instead of O(n^3).
+ */
+public class DirectPOSuccessors {
+    private final List<EventNode> events;
+
+    /** The time, the sum of the clocks and the pid of each event. */
+    private final VectorTime[] times;
+    private final long[] sums;
+    private final int[] pids;
+
+    /** The chains of event indices, each in increasing time order. */
+    private final List<int[]> chains = new ArrayList<int[]>();
+
+    /** Whether the event indices of each chain are increasing. */
+    private boolean[] chainIndicesIncrease;
+
+    /** The direct successors of each event, in the order of the events. */
+    private final EventNode[][] successors;
+
+    /**
+     * Finds the direct successors of events, and sets their process-local
+     * successors.
+     *
+     * @throws NotComparableVectorsException
+     *             if two events have timestamps of different lengths
+     * @throws EqualVectorTimestampsException
+     *             if two events have equal timestamps
+     */
+    public DirectPOSuccessors(List<EventNode> events) {
+        this.events = events;
+        int n = events.size();
+        times = new VectorTime[n];
+        sums = new long[n];
+        pids = new int[n];
+        successors = new EventNode[n][];
+        for (int i = 0; i < n; i++) {
+            AbstractResource time = events.get(i).getTime();
+            if (!(time instanceof VectorTime)) {
+                throw new WrongTimeTypeException();
+            }
+            times[i] = (VectorTime) time;
+            pids[i] = ((DistEventType) events.get(i).getEType()).getPid();
+        }
+        if (n == 0) {
+            return;
+        }
+
+        checkTimes();
+        buildChains();
+
+        int numChains = chains.size();
+        int[] candidates = new int[numChains];
+        int[] direct = new int[numChains];
+        for (int i = 0; i < n; i++) {
+            int numCandidates = 0;
+            for (int[] chain : chains) {
+                int first = firstSuccessor(chain, i);
+                if (first < chain.length) {
+                    candidates[numCandidates++] = chain[first];
+                }
+            }
+
+            int numDirect = 0;
+            for (int c1 = 0; c1 < numCandidates; c1++) {
+                boolean directSuccessor = true;
+                for (int c2 = 0; c2 < numCandidates; c2++) {
+                    if (c1 != c2
+                            && times[candidates[c2]]
+                                    .lessThan(times[candidates[c1]])) {
+                        directSuccessor = false;
+                        break;
+                    }
+                }
+                if (directSuccessor) {
+                    direct[numDirect++] = candidates[c1];
+                }
+            }
+
+            Arrays.sort(direct, 0, numDirect);
+            successors[i] = new EventNode[numDirect];
+            for (int d = 0; d < numDirect; d++) {
+                successors[i][d] = events.get(direct[d]);
+            }
+        }
+
+        setProcessLocalSuccessors();
+    }
+
+    /**
+     * Returns the direct successors of the event at index in the list of
+     * events, in the order of the list.
+     */
+    public List<EventNode> getDirectSuccessors(int index) {
+        return Arrays.asList(successors[index]);
+    }
+
+    /**
+     * Throws the exception that getDirectPOSuccessors() throws first, if any:
+     * the timestamp of the first event is compared with all of the others, and
+     * then the timestamp of the earliest event that has an equal timestamp is
+     * compared with the others.
+     */
+    private void checkTimes() {
+        VectorTime firstTime = times[0];
+        for (int i = 1; i < times.length; i++) {
+            if (times[i].getLength() != firstTime.getLength()) {
+                throw new NotComparableVectorsException(firstTime, times[i]);
+            }
+            if (firstTime.equals(times[i])) {
+                throw new EqualVectorTimestampsException(firstTime, times[i]);
+            }
+        }
+
+        Map<VectorTime, Integer> firstIndices = new HashMap<VectorTime, Integer>();
+        int equal1 = -1;
+        int equal2 = -1;
+        for (int i = 0; i < times.length; i++) {
+            Integer index = firstIndices.get(times[i]);
+            if (index == null) {
+                firstIndices.put(times[i], i);
+            } else if (equal1 == -1 || index < equal1) {
+                equal1 = index;
+                equal2 = i;
+            }
+        }
+        if (equal1 != -1) {
+            throw new EqualVectorTimestampsException(times[equal1],
+                    times[equal2]);
+        }
+    }
+
+    /**
+     * Splits the events into chains. A chain is split wherever its events
+     * turn out not to be ordered (e.g., because a process did not increment
+     * its clock), and events that are in none of the chains of the processes
+     * are chains of their own. Any such split is correct, though fewer chains
+     * are faster.
+     */
+    private void buildChains() {
+        int n = times.length;
+        int numClocks = times[0].getLength();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < numClocks; j++) {
+                sums[i] += times[i].getClock(j);
+            }
+        }
+
+        boolean[] inChain = new boolean[n];
+        List<Integer> chain = new ArrayList<Integer>();
+        for (int j = 0; j < numClocks; j++) {
+            // The event with the smallest clock sum, for each value of clock
+            // j.
+            Map<Integer, Integer> clockEvents = new HashMap<Integer, Integer>();
+            for (int i = 0; i < n; i++) {
+                int clock = times[i].getClock(j);
+                if (clock <= 0) {
+                    continue;
+                }
+                Integer event = clockEvents.get(clock);
+                if (event == null || sums[i] < sums[event]) {
+                    clockEvents.put(clock, i);
+                }
+            }
+            List<Integer> clocks = new ArrayList<Integer>(clockEvents.keySet());
+            Collections.sort(clocks);
+
+            for (int clock : clocks) {
+                int i = clockEvents.get(clock);
+                if (inChain[i]) {
+                    continue;
+                }
+                if (!chain.isEmpty()
+                        && !times[chain.get(chain.size() - 1)]
+                                .lessThan(times[i])) {
+                    addChain(chain);
+                }
+                chain.add(i);
+                inChain[i] = true;
+            }
+            addChain(chain);
+        }
+        for (int i = 0; i < n; i++) {
+            if (!inChain[i]) {
+                chain.add(i);
+                addChain(chain);
+            }
+        }
+
+        chainIndicesIncrease = new boolean[chains.size()];
+        for (int c = 0; c < chains.size(); c++) {
+            int[] events = chains.get(c);
+            chainIndicesIncrease[c] = true;
+            for (int k = 1; k < events.length; k++) {
+                if (events[k] < events[k - 1]) {
+                    chainIndicesIncrease[c] = false;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Adds chain to the chains, if it is not empty, and clears it. */
+    private void addChain(List<Integer> chain) {
+        if (chain.isEmpty()) {
+            return;
+        }
+        int[] events = new int[chain.size()];
+        for (int k = 0; k < events.length; k++) {
+            events[k] = chain.get(k);
+        }
+        chains.add(events);
+        chain.clear();
+    }
+
+    /**
+     * Returns the position of the first successor of event i in chain, or the
+     * length of the chain if there is none.
+     */
+    private int firstSuccessor(int[] chain, int i) {
+        int lo = 0;
+        int hi = chain.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[i].lessThan(times[chain[mid]])) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the position of the first event in chain, starting at position
+     * from, that does not precede event i.
+     */
+    private int firstNotPreceding(int[] chain, int from, int i) {
+        int lo = from;
+        int hi = chain.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[chain[mid]].lessThan(times[i])) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Sets the process-local successor of every event. This is the successor
+     * that getDirectPOSuccessors() finds by walking the successors with the
+     * same pid, in the order of the events, and keeping the one that is less
+     * than all of those that follow it. When the events with a pid are
+     * totally ordered, this is simply the next one of them.
+     */
+    private void setProcessLocalSuccessors() {
+        Map<Integer, List<Integer>> pidEvents = new LinkedHashMap<Integer, List<Integer>>();
+        for (int i = 0; i < pids.length; i++) {
+            List<Integer> pidList = pidEvents.get(pids[i]);
+            if (pidList == null) {
+                pidList = new ArrayList<Integer>();
+                pidEvents.put(pids[i], pidList);
+            }
+            pidList.add(i);
+        }
+
+        Comparator<Integer> bySum = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                if (sums[i1] != sums[i2]) {
+                    return sums[i1] < sums[i2] ? -1 : 1;
+                }
+                return i1.compareTo(i2);
+            }
+        };
+
+        for (Map.Entry<Integer, List<Integer>> entry : pidEvents.entrySet()) {
+            List<Integer> ordered = new ArrayList<Integer>(entry.getValue());
+            Collections.sort(ordered, bySum);
+            boolean totallyOrdered = true;
+            for (int k = 1; k < ordered.size(); k++) {
+                if (!times[ordered.get(k - 1)].lessThan(times[ordered.get(k)])) {
+                    totallyOrdered = false;
+                    break;
+                }
+            }
+
+            for (int k = 0; k < ordered.size(); k++) {
+                int i = ordered.get(k);
+                int succ;
+                if (totallyOrdered) {
+                    succ = k + 1 < ordered.size() ? ordered.get(k + 1) : -1;
+                } else {
+                    succ = walkProcessLocalSuccessor(i, entry.getKey());
+                }
+                events.get(i).setProcessLocalSuccessor(
+                        succ == -1 ? null : events.get(succ));
+            }
+        }
+    }
+
+    /**
+     * Walks the successors of event i that have pid in the same way as
+     * getDirectPOSuccessors(), and returns the index of the process-local
+     * successor, or -1 if there is none. Rather than visiting every successor,
+     * the walk jumps to the next successor (in the order of the events) that
+     * is less than the current one, which it finds among the successors in
+     * each chain that precede the current one.
+     */
+    private int walkProcessLocalSuccessor(int i, int pid) {
+        int[] firsts = new int[chains.size()];
+        for (int c = 0; c < firsts.length; c++) {
+            firsts[c] = firstSuccessor(chains.get(c), i);
+        }
+
+        int succ = -1;
+        while (true) {
+            int next = -1;
+            for (int c = 0; c < firsts.length; c++) {
+                int[] chain = chains.get(c);
+                int end = (succ == -1) ? chain.length : firstNotPreceding(
+                        chain, firsts[c], succ);
+                int event = firstEventAfter(c, firsts[c], end, succ, pid);
+                if (event != -1 && (next == -1 || event < next)) {
+                    next = event;
+                }
+            }
+            if (next == -1) {
+                return succ;
+            }
+            succ = next;
+        }
+    }
+
+    /**
+     * Returns the smallest event index that is greater than index, among the
+     * events with pid at positions [from, to) of chain c, or -1 if there is
+     * none.
+     */
+    private int firstEventAfter(int c, int from, int to, int index, int pid) {
+        int[] chain = chains.get(c);
+        if (chainIndicesIncrease[c]) {
+            int lo = from;
+            int hi = to;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (chain[mid] > index) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            for (int k = lo; k < to; k++) {
+                if (pids[chain[k]] == pid) {
+                    return chain[k];
+                }
+            }
+            return -1;
+        }
+
+        int event = -1;
+        for (int k = from; k < to; k++) {
+            if (chain[k] > index && pids[chain[k]] == pid
+                    && (event == -1 || chain[k] < event)) {
+                event = chain[k];
+            }
+        }
+        return event;
+    }
+}
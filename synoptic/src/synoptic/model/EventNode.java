@@ -2,12 +2,13 @@ package synoptic.model;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import synoptic.main.AbstractMain;
 import synoptic.model.event.DistEventType;
@@ -48,14 +49,23 @@ public class EventNode implements INode<EventNode> {
 	 */
 	private int traceID = 0;
 
-	List<Transition<EventNode>> transitions = new ArrayList<Transition<EventNode>>();
+	/**
+	 * Interned relation sets, keyed by their relations in iteration order.
+	 * Transitions with the same relations share a single (unmodifiable) set.
+	 */
+	private static final ConcurrentHashMap<List<String>, Set<String>> internedRelations = new ConcurrentHashMap<List<String>, Set<String>>();
 
 	/**
-	 * A map from a relation to a list of transitions that are associated with
-	 * the relation. A transition may be associated with multiple relations, and
-	 * may therefore appear in multiple sets.
+	 * The targets of the transitions from this node, and the (interned)
+	 * relations of each transition, in the order in which the transitions were
+	 * added. Only the first numTransitions entries are used. The labels of a
+	 * transition from an event node are determined by its source and target,
+	 * so Transition objects are only created on demand (e.g., by
+	 * getAllTransitions()), rather than stored.
 	 */
-	LinkedHashMap<String, Set<Transition<EventNode>>> transitionsWithRelation = new LinkedHashMap<String, Set<Transition<EventNode>>>();
+	EventNode[] targets = null;
+	Set<String>[] targetRelations = null;
+	int numTransitions = 0;
 
 	/**
 	 * The process local successor node -- node with closest larger timestamp
@@ -64,7 +74,7 @@ public class EventNode implements INode<EventNode> {
 	 */
 	private EventNode processLocalSucc = null;
 
-	private void setProcessLocalSuccessor(EventNode processLocalSucc) {
+	void setProcessLocalSuccessor(EventNode processLocalSucc) {
 		assert this.processLocalSucc == null;
 
 		this.processLocalSucc = processLocalSucc;
@@ -75,16 +85,41 @@ public class EventNode implements INode<EventNode> {
 	}
 
 	/**
-	 * Updates the transition probabilities of all the transitions emitted from
-	 * this event node. This is used when the set of transitions is somehow
-	 * changed (e.g., a new transition is added).
+	 * Returns the interned set of relations.
+	 */
+	static Set<String> internRelations(Set<String> relations) {
+		List<String> key = new ArrayList<String>(relations);
+		Set<String> interned = internedRelations.get(key);
+		if (interned == null) {
+			interned = Collections.unmodifiableSet(new LinkedHashSet<String>(
+					relations));
+			Set<String> prev = internedRelations.putIfAbsent(key, interned);
+			if (prev != null) {
+				interned = prev;
+			}
+		}
+		return interned;
+	}
+
+	/**
+	 * Creates the i'th transition from this node. Every transition of an
+	 * event node is observed once, all the transitions of a node are equally
+	 * likely, and the time delta of a transition (if performance information
+	 * is used) is the difference between the times of its target and source.
 	 */
-	private void updateTransitionProbabilities() {
-		int totalTrans = transitions.size();
-		for (Transition<EventNode> tr : transitions) {
-			double freq = (double) 1 / (double) totalTrans;
-			tr.setProbability(freq);
+	private Transition<EventNode> createTransition(int i) {
+		Transition<EventNode> transition = new Transition<EventNode>(this,
+				targets[i], targetRelations[i]);
+		EventNode dest = targets[i];
+		if (AbstractMain.getInstance().options.usePerformanceInfo) {
+			if (dest.getTime() != null) {
+				AbstractResource delta = dest.getTime().computeDelta(this.getTime());
+				transition.setTimeDelta(delta);
+			}
 		}
+		transition.setProbability((double) 1 / (double) numTransitions);
+		transition.setCount(1);
+		return transition;
 	}
 
 	public EventNode(EventNode copyFrom) {
@@ -148,7 +183,18 @@ public class EventNode implements INode<EventNode> {
 	public void addTransition(EventNode dest, Set<String> relations) {
 		assert dest != null : "Transition Target cannot be null";
 
-		addTransition(new Transition<EventNode>(this, dest, relations));
+		if (targets == null) {
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			Set<String>[] newRelations = new Set[1];
+			targets = new EventNode[1];
+			targetRelations = newRelations;
+		} else if (numTransitions == targets.length) {
+			targets = Arrays.copyOf(targets, numTransitions * 2);
+			targetRelations = Arrays.copyOf(targetRelations, numTransitions * 2);
+		}
+		targets[numTransitions] = dest;
+		targetRelations[numTransitions] = internRelations(relations);
+		numTransitions++;
 	}
 
 	/**
@@ -162,9 +208,7 @@ public class EventNode implements INode<EventNode> {
 	public void addTransition(EventNode dest, String relation) {
 		assert dest != null : "Transition Target cannot be null";
 
-		Set<String> relations = new LinkedHashSet<String>();
-		relations.add(relation);
-		addTransition(new Transition<EventNode>(this, dest, relations));
+		addTransition(dest, Collections.singleton(relation));
 	}
 
 	/**
@@ -252,31 +296,14 @@ public class EventNode implements INode<EventNode> {
 	}
 
 	/**
-	 * Adds a new transition to the event node.
+	 * Adds a new transition to the event node. Only the target and the
+	 * relations of the transition are kept: its labels are recomputed whenever
+	 * the transition is requested.
 	 */
 	public void addTransition(Transition<EventNode> transition) {
-		transitions.add(transition);
-		for (String r : transition.getRelation()) {
-			// For each relation associated with the new transition update the
-			// mapping of relations to transitions that carry those relations.
-			Set<Transition<EventNode>> ref = transitionsWithRelation.get(r);
-			if (ref == null) {
-				ref = new LinkedHashSet<Transition<EventNode>>();
-				transitionsWithRelation.put(r, ref);
-			}
-			ref.add(transition);
-		}
+		assert transition.getSource() == this;
 
-		EventNode dest = transition.getTarget();
-		if (AbstractMain.getInstance().options.usePerformanceInfo) {
-			if (dest.getTime() != null) {
-				AbstractResource delta = dest.getTime().computeDelta(this.getTime());
-				transition.setTimeDelta(delta);
-			}
-		}
-		updateTransitionProbabilities();
-		// Set the count on the newly added transition.
-		transition.setCount(1);
+		addTransition(transition.getTarget(), transition.getRelation());
 	}
 
 	public void addTransitions(Collection<Transition<EventNode>> transCollection) {
@@ -289,8 +316,33 @@ public class EventNode implements INode<EventNode> {
 		return event;
 	}
 
+	/**
+	 * Returns the relations of the transitions from this node, in the order in
+	 * which they were first added.
+	 */
 	public Set<String> getNodeRelations() {
-		return transitionsWithRelation.keySet();
+		Set<String> relations = new LinkedHashSet<String>();
+		for (int i = 0; i < numTransitions; i++) {
+			relations.addAll(targetRelations[i]);
+		}
+		return relations;
+	}
+
+	/**
+	 * Returns the number of transitions from this node.
+	 */
+	public int getNumTransitions() {
+		return numTransitions;
+	}
+
+	/**
+	 * Returns the target of the i'th transition from this node, in the order
+	 * of getAllTransitions(). Unlike that method, this does not create any
+	 * transitions.
+	 */
+	public EventNode getSuccessor(int i) {
+		assert i < numTransitions;
+		return targets[i];
 	}
 
 	/**
@@ -311,8 +363,8 @@ public class EventNode implements INode<EventNode> {
 	@Override
 	public Set<EventNode> getAllSuccessors() {
 		Set<EventNode> successors = new LinkedHashSet<EventNode>();
-		for (Transition<EventNode> e : transitions) {
-			successors.add(e.getTarget());
+		for (int i = 0; i < numTransitions; i++) {
+			successors.add(targets[i]);
 		}
 		return successors;
 	}
@@ -340,8 +392,8 @@ public class EventNode implements INode<EventNode> {
 		}
 
 		// Compare number of children.
-		int transitionCntCmp = Integer.valueOf(transitions.size()).compareTo(
-				other.transitions.size());
+		int transitionCntCmp = Integer.valueOf(numTransitions).compareTo(
+				other.numTransitions);
 		if (transitionCntCmp != 0) {
 			return transitionCntCmp;
 		}
@@ -394,69 +446,129 @@ public class EventNode implements INode<EventNode> {
 	 */
 	@Override
 	public List<? extends ITransition<EventNode>> getWeightedTransitions() {
-		return transitions;
+		return getAllTransitions();
 	}
 
+	/**
+	 * Returns a new list of the transitions from this node. The transitions
+	 * are created by this call, so changes to them (or to the list) do not
+	 * affect the node.
+	 */
 	@Override
 	public List<Transition<EventNode>> getAllTransitions() {
+		List<Transition<EventNode>> transitions = new ArrayList<Transition<EventNode>>(
+				numTransitions);
+		for (int i = 0; i < numTransitions; i++) {
+			transitions.add(createTransition(i));
+		}
 		return transitions;
 	}
 
 	@Override
 	public List<? extends ITransition<EventNode>> getTransitionsWithExactRelations(
 			Set<String> relations) {
-		Set<Transition<EventNode>> ret = null;
+		List<Transition<EventNode>> ret = null;
 		// Iterate through all transitions, adding those to ret that have
 		// exactly the input relations associated with them.
-		for (Transition<EventNode> t : transitions) {
-			if (t.getRelation().equals(relations)) {
+		for (int i = 0; i < numTransitions; i++) {
+			if (targetRelations[i].equals(relations)) {
 				if (ret == null) {
-					ret = new LinkedHashSet<Transition<EventNode>>();
+					ret = new ArrayList<Transition<EventNode>>();
 				}
-				ret.add(t);
+				ret.add(createTransition(i));
 			}
 		}
 		if (ret == null) {
 			return Collections.emptyList();
 		}
-		return new ArrayList<Transition<EventNode>>(ret);
+		return ret;
 	}
 
 	@Override
 	public List<? extends ITransition<EventNode>> getTransitionsWithSubsetRelations(
 			Set<String> relations) {
-		Set<Transition<EventNode>> ret = null;
+		List<Transition<EventNode>> ret = null;
 		// Iterate through all transitions, adding those to ret that have
 		// exactly a subset of relations associated with them.
-		for (Transition<EventNode> t : transitions) {
-			if (relations.containsAll(t.getRelation())) {
+		for (int i = 0; i < numTransitions; i++) {
+			if (relations.containsAll(targetRelations[i])) {
 				if (ret == null) {
-					ret = new LinkedHashSet<Transition<EventNode>>();
+					ret = new ArrayList<Transition<EventNode>>();
 				}
-				ret.add(t);
+				ret.add(createTransition(i));
 			}
 		}
 		if (ret == null) {
 			return Collections.emptyList();
 		}
-		return new ArrayList<Transition<EventNode>>(ret);
+		return ret;
+	}
+
+	/**
+	 * Returns the target of the first of getTransitionsWithIntersectingRelations(
+	 * relations), or null if there is no such transition. Unlike that method,
+	 * this does not create any transitions.
+	 */
+	public EventNode getFirstSuccessorWithIntersectingRelations(
+			Set<String> relations) {
+		for (String r : relations) {
+			for (int i = 0; i < numTransitions; i++) {
+				if (targetRelations[i].contains(r)) {
+					return targets[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the targets of getTransitionsWithIntersectingRelations(relations),
+	 * in the same order, to successors. Unlike that method, this does not
+	 * create any transitions.
+	 */
+	public void addSuccessorsWithIntersectingRelations(Set<String> relations,
+			Collection<EventNode> successors) {
+		if (numTransitions == 1) {
+			// The common case of a node in a chain.
+			if (!Collections.disjoint(targetRelations[0], relations)) {
+				successors.add(targets[0]);
+			}
+			return;
+		}
+		boolean[] added = new boolean[numTransitions];
+		for (String r : relations) {
+			for (int i = 0; i < numTransitions; i++) {
+				if (!added[i] && targetRelations[i].contains(r)) {
+					added[i] = true;
+					successors.add(targets[i]);
+				}
+			}
+		}
 	}
 
 	@Override
 	public List<? extends ITransition<EventNode>> getTransitionsWithIntersectingRelations(
 			Set<String> relations) {
-		Set<Transition<EventNode>> ret = null;
+		// The transitions are ordered by the first of the relations that they
+		// intersect with, and then by the order in which they were added.
+		boolean[] added = null;
+		List<Transition<EventNode>> ret = null;
 		for (String r : relations) {
-			if (transitionsWithRelation.containsKey(r)) {
-				if (ret == null) {
-					ret = new LinkedHashSet<Transition<EventNode>>();
+			for (int i = 0; i < numTransitions; i++) {
+				if ((added == null || !added[i])
+						&& targetRelations[i].contains(r)) {
+					if (ret == null) {
+						added = new boolean[numTransitions];
+						ret = new ArrayList<Transition<EventNode>>();
+					}
+					added[i] = true;
+					ret.add(createTransition(i));
 				}
-				ret.addAll(transitionsWithRelation.get(r));
 			}
 		}
 		if (ret == null) {
 			return Collections.emptyList();
 		}
-		return new ArrayList<Transition<EventNode>>(ret);
+		return ret;
 	}
 }
@@ -62,6 +62,45 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /**
+     * Cached outgoing transitions of this partition: all of them, and those
+     * with exactly a given set of relations. The caches are built on demand,
+     * and are dropped when the events of this partition change, or when the
+     * events of a partition that they lead to change (see
+     * clearTransitionCaches()). Like the rest of the partition, the caches must
+     * not be used concurrently with changes to the partition graph.
+     */
+    private List<Transition<Partition>> cachedAllTransitions = null;
+    private Map<Set<String>, List<Transition<Partition>>> cachedTransitionsByRelations = null;
+
+    /**
+     * Cached event transitions from this partition, grouped by their (exact)
+     * relations and then by the partition of their targets. Dropped along with
+     * the other transition caches.
+     */
+    private Map<Set<String>, Map<Partition, EventTransitions>> cachedEventTransitions = null;
+
+    /**
+     * The event transitions from this partition to another partition with a
+     * given set of relations, along with the ones among them with the smallest
+     * and the largest time deltas, which are computed on demand. Model
+     * checking of constrained invariants looks these up for every transition
+     * that it follows.
+     */
+    private static final class EventTransitions {
+        final List<ITransition<EventNode>> transitions = new ArrayList<ITransition<EventNode>>();
+        Set<ITransition<EventNode>> transitionsSet = null;
+        List<ITransition<EventNode>> minTransitions = null;
+        List<ITransition<EventNode>> maxTransitions = null;
+    }
+
+    /**
+     * The partitions whose cached transitions lead to this partition, and
+     * that therefore have to drop their caches when the events of this
+     * partition change.
+     */
+    private Set<Partition> cachedPredecessors = null;
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -104,11 +143,23 @@ public class Partition implements INode<Partition> {
 
         events.addAll(eNodes);
         for (final EventNode e : eNodes) {
+            movedFrom(e.getParent());
             e.setParent(this);
             // A Partition is allowed to contain only EventNode instances of the
             // same event type.
             assert eType.equals(e.getEType());
         }
+        clearTransitionCaches();
+    }
+
+    /**
+     * Drops the transition caches that are affected by an event moving from
+     * the partition oldParent (if any) to this one.
+     */
+    private void movedFrom(Partition oldParent) {
+        if (oldParent != null && oldParent != this) {
+            oldParent.clearTransitionCaches();
+        }
     }
 
     /**
@@ -123,8 +174,10 @@ public class Partition implements INode<Partition> {
         } else {
             assert eType.equals(eNode.getEType());
         }
+        movedFrom(eNode.getParent());
         eNode.setParent(this);
         events.add(eNode);
+        clearTransitionCaches();
     }
 
     /**
@@ -144,6 +197,7 @@ public class Partition implements INode<Partition> {
     public void removeEventNodes(Set<EventNode> eventNodes) {
         events.removeAll(eventNodes);
         assert events.size() > 0;
+        clearTransitionCaches();
     }
 
     /**
@@ -152,6 +206,38 @@ public class Partition implements INode<Partition> {
     public void removeAllEventNodes() {
         events.clear();
         initialized = false;
+        clearTransitionCaches();
+    }
+
+    /**
+     * Drops the cached transitions of this partition, and of the partitions
+     * with cached transitions to this partition. This must be called whenever
+     * the events of this partition change.
+     */
+    private void clearTransitionCaches() {
+        dropTransitionCaches();
+        if (cachedPredecessors != null) {
+            for (Partition p : cachedPredecessors) {
+                p.dropTransitionCaches();
+            }
+            cachedPredecessors = null;
+        }
+    }
+
+    /**
+     * Records that this partition has cached transitions to childP.
+     */
+    private void addCachedPredecessor(Partition childP) {
+        if (childP.cachedPredecessors == null) {
+            childP.cachedPredecessors = new HashSet<Partition>();
+        }
+        childP.cachedPredecessors.add(this);
+    }
+
+    private void dropTransitionCaches() {
+        cachedAllTransitions = null;
+        cachedTransitionsByRelations = null;
+        cachedEventTransitions = null;
     }
 
     /**
@@ -253,9 +339,9 @@ public class Partition implements INode<Partition> {
     private static boolean fulfillsStrong(EventNode event,
             ITransition<Partition> trans) {
 
-        for (ITransition<EventNode> t : event.getAllTransitions()) {
-            if (t.getRelation().equals(trans.getRelation())
-                    && t.getTarget().getParent().equals(trans.getTarget())) {
+        for (int i = 0; i < event.numTransitions; i++) {
+            if (event.targetRelations[i].equals(trans.getRelation())
+                    && event.targets[i].getParent().equals(trans.getTarget())) {
                 // TODO: Shouldn't this check and return true only if the
                 // condition holds for _all_ transitions t (not just some
                 // transition t) ?
@@ -286,9 +372,10 @@ public class Partition implements INode<Partition> {
 
         Set<EventNode> eventsReachableFromPrevious = new LinkedHashSet<EventNode>();
         for (EventNode prevEvent : previous.events) {
-            for (ITransition<EventNode> t : prevEvent
-                    .getTransitionsWithExactRelations(relations)) {
-                eventsReachableFromPrevious.add(t.getTarget());
+            for (int i = 0; i < prevEvent.numTransitions; i++) {
+                if (prevEvent.targetRelations[i].equals(relations)) {
+                    eventsReachableFromPrevious.add(prevEvent.targets[i]);
+                }
             }
         }
 
@@ -416,25 +503,145 @@ public class Partition implements INode<Partition> {
      */
     public Set<ITransition<EventNode>> getEventTransitionsWithExactRelations(
             Partition p, Set<String> relations) {
+        EventTransitions evTransitions = getEventTransitions(p, relations);
+        if (evTransitions == null) {
+            return Collections.emptySet();
+        }
+        if (evTransitions.transitionsSet == null) {
+            evTransitions.transitionsSet = Collections
+                    .unmodifiableSet(new LinkedHashSet<ITransition<EventNode>>(
+                            evTransitions.transitions));
+        }
+        return evTransitions.transitionsSet;
+    }
+
+    /**
+     * Get the event transition(s) with the smallest (or the largest, if
+     * findMax) time delta among the event transitions with specified
+     * relations from this partition to partition p. The result is cached.
+     * 
+     * @return an unmodifiable list of the transitions, which is empty if there
+     *         are no event transitions from this partition to p
+     */
+    public List<ITransition<EventNode>> getMinMaxEventTransitions(Partition p,
+            Set<String> relations, boolean findMax) {
+        EventTransitions evTransitions = getEventTransitions(p, relations);
+        if (evTransitions == null) {
+            return Collections.emptyList();
+        }
+        if (findMax) {
+            if (evTransitions.maxTransitions == null) {
+                evTransitions.maxTransitions = getMinMaxTransitions(
+                        evTransitions.transitions, true);
+            }
+            return evTransitions.maxTransitions;
+        }
+        if (evTransitions.minTransitions == null) {
+            evTransitions.minTransitions = getMinMaxTransitions(
+                    evTransitions.transitions, false);
+        }
+        return evTransitions.minTransitions;
+    }
+
+    /**
+     * Returns the (cached) event transitions with specified relations from
+     * this partition to partition p, or null if there are none. The event
+     * transitions with these relations to all partitions are grouped at once.
+     */
+    private EventTransitions getEventTransitions(Partition p,
+            Set<String> relations) {
+        if (cachedEventTransitions == null) {
+            cachedEventTransitions = new HashMap<Set<String>, Map<Partition, EventTransitions>>();
+        }
+        Map<Partition, EventTransitions> byTarget = cachedEventTransitions
+                .get(relations);
+        if (byTarget == null) {
+            byTarget = new HashMap<Partition, EventTransitions>();
+            for (EventNode thisEv : events) {
+                for (ITransition<EventNode> thisEvTrans : thisEv
+                        .getTransitionsWithExactRelations(relations)) {
+                    Partition childP = thisEvTrans.getTarget().getParent();
+                    EventTransitions evTransitions = byTarget.get(childP);
+                    if (evTransitions == null) {
+                        evTransitions = new EventTransitions();
+                        byTarget.put(childP, evTransitions);
+                        addCachedPredecessor(childP);
+                    }
+                    evTransitions.transitions.add(thisEvTrans);
+                }
+            }
+            cachedEventTransitions.put(EventNode.internRelations(relations),
+                    byTarget);
+        }
+        return byTarget.get(p);
+    }
 
-        // Set of event transitions to be returned
-        Set<ITransition<EventNode>> evTransitions = new HashSet<ITransition<EventNode>>();
+    /**
+     * Get transition(s) with min or max time delta
+     */
+    private static List<ITransition<EventNode>> getMinMaxTransitions(
+            List<ITransition<EventNode>> transitions, boolean findMax) {
 
-        // Consider all transitions out of this partition's events
-        for (EventNode thisEv : events) {
-            for (ITransition<EventNode> thisEvTrans : thisEv
-                    .getTransitionsWithExactRelations(relations)) {
+        // Min/max transitions to be returned
+        List<ITransition<EventNode>> minMaxTransitions = new ArrayList<ITransition<EventNode>>();
 
-                // This transition's target event is in partition p
-                if (thisEvTrans.getTarget().getParent().equals(p)) {
-                    evTransitions.add(thisEvTrans);
+        // Find and store transitions with min or max time delta
+        for (ITransition<EventNode> curTrans : transitions) {
+
+            // Check if there is no min/max yet
+            if (minMaxTransitions.isEmpty()
+                    || minMaxTransitions.get(0).getTimeDelta() == null) {
+
+                minMaxTransitions.clear();
+                minMaxTransitions.add(curTrans);
+
+            } else {
+
+                // Compare current transition's time with min/max time
+                AbstractResource curTime = curTrans.getTimeDelta();
+                AbstractResource minMaxTime = minMaxTransitions.get(0).getTimeDelta();
+                int timeComparison = curTime.compareTo(minMaxTime);
+
+                // Finding MAX time delta
+                if (findMax) {
+                    // Current time is less than max: ignore
+                    if (timeComparison < 0) {
+                        continue;
+                    }
+                    // Current time ties the max: add to list
+                    else if (timeComparison == 0) {
+                        minMaxTransitions.add(curTrans);
+                    }
+                    // Current time is more than max: replace list
+                    else {
+                        minMaxTransitions.clear();
+                        minMaxTransitions.add(curTrans);
+                    }
+                }
+
+                // Finding MIN time delta
+                else {
+                    // Current time is less than min: replace list
+                    if (timeComparison < 0) {
+                        minMaxTransitions.clear();
+                        minMaxTransitions.add(curTrans);
+                    }
+                    // Current time ties the min: add to list
+                    else if (timeComparison == 0) {
+                        minMaxTransitions.add(curTrans);
+                    }
+                    // Current time is more than min: ignore
+                    else {
+                        continue;
+                    }
                 }
             }
         }
 
-        return evTransitions;
+        return Collections.unmodifiableList(minMaxTransitions);
     }
 
+
     @Override
     public int compareTo(Partition other) {
         assert initialized;
@@ -451,10 +658,10 @@ public class Partition implements INode<Partition> {
         }
 
         // 2. Compare number of children.
-        List<? extends ITransition<Partition>> tnsThis = this
-                .getWeightedTransitions();
-        List<? extends ITransition<Partition>> tnsOther = other
-                .getWeightedTransitions();
+        List<ITransition<Partition>> tnsThis = new ArrayList<ITransition<Partition>>(
+                this.getWeightedTransitions());
+        List<ITransition<Partition>> tnsOther = new ArrayList<ITransition<Partition>>(
+                other.getWeightedTransitions());
         int childrenCmp = ((Integer) tnsThis.size()).compareTo(tnsOther.size());
         if (childrenCmp != 0) {
             return childrenCmp;
@@ -513,24 +720,45 @@ public class Partition implements INode<Partition> {
         }
     }
 
+    /**
+     * Returns the outgoing transitions of this partition: one to every
+     * partition that contains a successor of one of its events. The list is
+     * cached, and is an unmodifiable view.
+     */
     @Override
     public List<? extends ITransition<Partition>> getAllTransitions() {
-        // TODO: implement a transition cache optimization.
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
+        if (cachedAllTransitions == null) {
+            cachedAllTransitions = createTransitions(null);
+        }
+        return cachedAllTransitions;
+    }
+
+    /**
+     * Creates the outgoing transitions of this partition that correspond to
+     * event transitions with exactly the given relations, or to all event
+     * transitions if relations is null. Registers this partition as a cached
+     * predecessor of the target partitions.
+     */
+    private List<Transition<Partition>> createTransitions(Set<String> relations) {
+        Map<Partition, Transition<Partition>> transitions = new LinkedHashMap<Partition, Transition<Partition>>();
 
         for (EventNode e : events) {
-            for (ITransition<EventNode> tr : e.getAllTransitions()) {
-                Partition childP = tr.getTarget().getParent();
+            for (int i = 0; i < e.numTransitions; i++) {
+                if (relations != null && !e.targetRelations[i].equals(relations)) {
+                    continue;
+                }
+                EventNode target = e.targets[i];
+                Partition childP = target.getParent();
                 Transition<Partition> tx;
 
                 // Create the transition if it doesn't exist, or retrieve it if
                 // it does
-                if (transitions.containsKey(childP)) {
-                    tx = transitions.get(childP);
-                } else {
+                tx = transitions.get(childP);
+                if (tx == null) {
                     tx = new Transition<Partition>(this, childP,
-                            tr.getRelation());
+                            e.targetRelations[i]);
                     transitions.put(childP, tx);
+                    addCachedPredecessor(childP);
                 }
 
                 // TODO: calling updateTransitionDeltas() is a fragile kind of
@@ -538,58 +766,47 @@ public class Partition implements INode<Partition> {
                 // whenever creating a new ITransition<Partition> instance.
                 // Refactor this into a new kind of Transition constructor? Or a
                 // helper method.
-                updateTransitionDeltas(e, tr.getTarget(), tx);
+                updateTransitionDeltas(e, target, tx);
             }
         }
 
-        // Return final list of transitions
-        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
-                transitions.values());
-        return ret;
+        if (transitions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<Transition<Partition>>(
+                transitions.values()));
     }
 
     @Override
     public Set<Partition> getAllSuccessors() {
         Set<Partition> successors = new LinkedHashSet<Partition>();
         for (EventNode e : events) {
-            for (EventNode eSucc : e.getAllSuccessors()) {
-                successors.add(eSucc.getParent());
+            for (int i = 0; i < e.numTransitions; i++) {
+                successors.add(e.targets[i].getParent());
             }
         }
         return successors;
     }
 
-    // TODO: this code is very similar to getAllTransitions(), refactor it.
+    /**
+     * Returns the outgoing transitions of this partition that correspond to
+     * event transitions with exactly the given relations. The list is cached
+     * per set of relations, and is an unmodifiable view.
+     */
     @Override
     public List<? extends ITransition<Partition>> getTransitionsWithExactRelations(
             Set<String> relations) {
-
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
-
-        for (EventNode e : events) {
-            for (ITransition<EventNode> tr : e
-                    .getTransitionsWithExactRelations(relations)) {
-                Partition childP = tr.getTarget().getParent();
-                Transition<Partition> tx;
-
-                // Create the transition if it doesn't exist, or retrieve it if
-                // it does
-                if (transitions.containsKey(childP)) {
-                    tx = transitions.get(childP);
-                } else {
-                    tx = new Transition<Partition>(this, childP,
-                            tr.getRelation());
-                    transitions.put(childP, tx);
-                }
-
-                updateTransitionDeltas(e, tr.getTarget(), tx);
-            }
+        if (cachedTransitionsByRelations == null) {
+            cachedTransitionsByRelations = new HashMap<Set<String>, List<Transition<Partition>>>();
         }
-
-        // Return final list of transitions
-        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
-                transitions.values());
-        return ret;
+        List<Transition<Partition>> transitions = cachedTransitionsByRelations
+                .get(relations);
+        if (transitions == null) {
+            transitions = createTransitions(relations);
+            cachedTransitionsByRelations.put(
+                    EventNode.internRelations(relations), transitions);
+        }
+        return transitions;
     }
 
     @Override
@@ -611,12 +828,14 @@ public class Partition implements INode<Partition> {
      * which has DaikonInvariants labeled on it. NOTE: 1) This method must be
      * called only when state processing logic is enabled. 2) Since this method
      * caches transitions, it must be called only after the final model is yield
-     * (i.e., no more changes to this Partition).
+     * (i.e., no more changes to this Partition). <br />
+     * <br />
+     * The states on the event transitions are grouped by target partition in a
+     * single pass over the events, and the invariants of all of the groups are
+     * then inferred together (see SynDaikonizer.getDaikonEnterInvariants()).
      * 
      * @return transitions with Daikon invariants
-     * @throws Exception
      */
-    @SuppressWarnings("null")
     public List<? extends ITransition<Partition>> getTransitionsWithDaikonInvariants() {
         assert (AbstractMain.getInstance().options.stateProcessing);
 
@@ -624,79 +843,76 @@ public class Partition implements INode<Partition> {
             return cachedTransitionsWithInvs;
         }
 
-        for (Partition childP : getAllSuccessors()) {
-            Transition<Partition> tx = null;
-            SynDaikonizer daikonizer = new SynDaikonizer();
-
-            if (isInitial()) {
-                // This is a dummy initial partition and its dummy event node
-                // has no post-event state. Instead, we need to get
-                // pre-event states of the successor event nodes.
-                // This partition contains only a single dummy event node.
-                assert events.size() == 1;
-                EventNode dummyInitEvent = events.iterator().next();
-
-                for (ITransition<EventNode> tr : dummyInitEvent
-                        .getAllTransitions()) {
-                    // Add only states that are on transitions to childP
-                    // to daikonizer.
-                    boolean stateAdded = addStateToDaikonizer(tr, childP,
-                            daikonizer, false);
-                    // Create transition to childP iff it doesn't already exist
-                    // and tr's destination is childP.
-                    if (stateAdded && tx == null) {
-                        tx = createDaikonInvTransition(tr);
-                        cachedTransitionsWithInvs.add(tx);
-                    }
-                }
-            } else {
-                // This is NOT a dummy initial partition. Its event nodes have
-                // post-event states.
-                for (EventNode event : events) {
-                    List<Transition<EventNode>> transitions = event
-                            .getAllTransitions();
-                    // Events are totally ordered.
-                    assert transitions.size() == 1;
-                    ITransition<EventNode> tr = transitions.iterator().next();
-                    boolean stateAdded = addStateToDaikonizer(tr, childP,
-                            daikonizer, true);
-                    if (stateAdded && tx == null) {
-                        tx = createDaikonInvTransition(tr);
-                        cachedTransitionsWithInvs.add(tx);
-                    }
-                }
+        // Maps each successor partition to the transition to it, and to the
+        // states on the event transitions to it.
+        Map<Partition, Transition<Partition>> targetTransitions = new LinkedHashMap<Partition, Transition<Partition>>();
+        Map<Partition, List<State>> targetStates = new LinkedHashMap<Partition, List<State>>();
+
+        if (isInitial()) {
+            // This is a dummy initial partition and its dummy event node
+            // has no post-event state. Instead, we need to get
+            // pre-event states of the successor event nodes.
+            // This partition contains only a single dummy event node.
+            assert events.size() == 1;
+            EventNode dummyInitEvent = events.iterator().next();
+
+            for (ITransition<EventNode> tr : dummyInitEvent
+                    .getAllTransitions()) {
+                addState(tr, false, targetTransitions, targetStates);
             }
-            assert (tx != null);
-            // Generate invariants of tx.
-            DaikonInvariants daikonInvs = daikonizer.getDaikonEnterInvariants();
+        } else {
+            // This is NOT a dummy initial partition. Its event nodes have
+            // post-event states.
+            for (EventNode event : events) {
+                List<Transition<EventNode>> transitions = event
+                        .getAllTransitions();
+                // Events are totally ordered.
+                assert transitions.size() == 1;
+                addState(transitions.get(0), true, targetTransitions,
+                        targetStates);
+            }
+        }
+
+        // Generate invariants of the transitions.
+        List<DaikonInvariants> daikonInvs = SynDaikonizer
+                .getDaikonEnterInvariants(new ArrayList<List<State>>(
+                        targetStates.values()));
+        int i = 0;
+        for (Transition<Partition> tx : targetTransitions.values()) {
             // Label tx with Daikon invariants.
             tx.labels.setLabel(TransitionLabelType.DAIKON_INVARIANTS_LABEL,
-                    daikonInvs);
+                    daikonInvs.get(i++));
+            cachedTransitionsWithInvs.add(tx);
         }
         return cachedTransitionsWithInvs;
     }
 
     /**
-     * Adds a state that is on eventTrans to daikonizer iff the target of
-     * eventTrans is in targetPartition.
-     * 
-     * @return true iff the state is added to daikonizer.
-     * @throws Exception
+     * Adds the state that is on eventTrans to the states of the partition that
+     * eventTrans leads to, and creates the transition to that partition if
+     * there is none yet.
      */
-    private static boolean addStateToDaikonizer(
-            ITransition<EventNode> eventTrans, Partition targetPartition,
-            SynDaikonizer daikonizer, boolean post) {
+    private static void addState(ITransition<EventNode> eventTrans,
+            boolean post,
+            Map<Partition, Transition<Partition>> targetTransitions,
+            Map<Partition, List<State>> targetStates) {
         EventNode srcEvent = eventTrans.getSource();
         EventNode dstEvent = eventTrans.getTarget();
         Partition dstPartition = dstEvent.getParent();
 
-        if (dstPartition.compareTo(targetPartition) == 0) {
-            State state = post ? srcEvent.getPostEventState() : dstEvent
-                    .getPreEventState();
-            daikonizer.addInstance(state);
-            return true;
+        List<State> states = targetStates.get(dstPartition);
+        if (states == null) {
+            targetTransitions.put(dstPartition,
+                    createDaikonInvTransition(eventTrans));
+            states = new ArrayList<State>();
+            targetStates.put(dstPartition, states);
+        }
+        State state = post ? srcEvent.getPostEventState() : dstEvent
+                .getPreEventState();
+        // SynDaikonizer ignores null states.
+        if (state != null) {
+            states.add(state);
         }
-        return false;
     }
 
     /**
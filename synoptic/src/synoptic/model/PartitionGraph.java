@@ -18,6 +18,7 @@ import java.util.logging.Logger;
 import synoptic.algorithms.graphops.IOperation;
 import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.IncrementalModelChecker;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
@@ -68,17 +69,18 @@ public class PartitionGraph implements IGraph<Partition> {
     /** Initial trace graph. */
     private ChainsTraceGraph traceGraph;
 
+    /**
+     * Incremental model checker for this graph, which is notified of changes
+     * to partition transitions. Created on first use.
+     */
+    private IncrementalModelChecker modelChecker = null;
+
     // /////////////////////////////////////////////////////////////////////////
     // This part is for the purpose of test generation.
     /**
      * The limit of how many times a partition can appear in a path.
      */
     private static final int repeatLimit = 3;
-    /**
-     * Maps each partition to the number of times it appears in the current
-     * path.
-     */
-    private final Map<Partition, Integer> numAppearInPath = new HashMap<Partition, Integer>();
 
     // /////////////////////////////////////////////////////////////////////////
 
@@ -170,6 +172,35 @@ public class PartitionGraph implements IGraph<Partition> {
         return adjPartitions;
     }
 
+    /**
+     * Returns the incremental model checker for this graph, creating it on
+     * first use. The checker is notified of all subsequent changes to the
+     * graph.
+     */
+    public IncrementalModelChecker getModelChecker() {
+        if (modelChecker == null) {
+            modelChecker = new IncrementalModelChecker(this);
+        }
+        return modelChecker;
+    }
+
+    /**
+     * Returns a map from every partition in the graph to its set of adjacent
+     * partitions. The returned map is not updated when the graph changes, and
+     * is therefore safe to read from multiple threads while the graph is not
+     * being modified.
+     * 
+     * @return snapshot of the partition adjacency in this graph
+     */
+    public Map<Partition, Set<Partition>> getAdjacencySnapshot() {
+        Map<Partition, Set<Partition>> snapshot = new HashMap<Partition, Set<Partition>>();
+        for (Partition p : partitions) {
+            snapshot.put(p, Collections.unmodifiableSet(new LinkedHashSet<Partition>(
+                    getAdjacentNodes(p))));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
     /**
      * All messages with identical labels are mapped to the same partition.
      * 
@@ -382,6 +413,9 @@ public class PartitionGraph implements IGraph<Partition> {
 
     public void clearNodeAdjacentsCache(Partition node) {
         transitionCache.remove(node);
+        if (modelChecker != null) {
+            modelChecker.partitionChanged(node);
+        }
         // System.out.println("Cache size: " + transitionCache.size());
         for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
                 .entrySet().iterator(); pIter.hasNext();) {
@@ -395,6 +429,9 @@ public class PartitionGraph implements IGraph<Partition> {
 
     public void removeFromCache(Partition node) {
         transitionCache.remove(node);
+        if (modelChecker != null) {
+            modelChecker.partitionChanged(node);
+        }
     }
 
     public void removePartition(Partition node) {
@@ -429,75 +466,36 @@ public class PartitionGraph implements IGraph<Partition> {
      * @return traces Set<List<Partition>> containing the synthetic traces
      */
     public Set<List<Partition>> getSyntheticTraces() {
-        Set<List<Partition>> traces = getAllTraces();
-        traces.removeAll(getInitialLogTraces());
+        Set<List<Partition>> initialTraces = getInitialLogTraces();
+        Set<List<Partition>> traces = new HashSet<List<Partition>>();
+        Iterator<List<Partition>> allTraces = PartitionPathIterator
+                .allTraces(this);
+        while (allTraces.hasNext()) {
+            List<Partition> trace = allTraces.next();
+            if (!initialTraces.contains(trace)) {
+                traces.add(trace);
+            }
+        }
         return traces;
     }
 
     /**
      * Traverses the partition graph and returns a set of all possible traces.
+     * Once a trace returns to a partition that it already contains, it can
+     * only continue to partitions that it does not contain.
      * 
      * @return
+     * @see PartitionPathIterator#allTraces(PartitionGraph)
      */
     public Set<List<Partition>> getAllTraces() {
         // This will contain all the traces
         Set<List<Partition>> allTraces = new HashSet<List<Partition>>();
-        // Constructs the set of all traces
-        recursivelyAddTracesToSet(dummyInitialNode.getParent(), allTraces,
-                new ArrayList<Partition>());
-        return allTraces;
-    }
-
-    /**
-     * Helper method for {@code getAllTraces}. Recursively finds all possible
-     * paths from the partition graph and adds them to a set.
-     * 
-     * <pre>
-     * TODO: This will calculate any subset of nodes multiple times if the topmost
-     * node of said subset has multiple parent nodes. A cache should be used for
-     * these nodes to make this process more efficient.
-     * 
-     * TODO: Return a set rather than alter a pointer.
-     * 
-     * TODO: Make a proper cycle-checking algorithm.
-     * </pre>
-     * 
-     * @param pNode
-     *            The current node
-     * @param allTraces
-     *            The pointer to the set of all paths.
-     * @param prefixTrace
-     *            The path of all preceding nodes.
-     * @see findAllTraces
-     */
-    private void recursivelyAddTracesToSet(Partition pNode,
-            Set<List<Partition>> allTraces, List<Partition> prefixTrace) {
-        Set<Partition> adjPartitions = getAdjacentNodes(pNode);
-        // Check to see if the path has had a single cycle.
-        boolean isCyclic = prefixTrace.contains(pNode);
-        // Add the node to the prefix.
-        prefixTrace.add(pNode);
-        // If the node is terminal, then we have a path and it can
-        // be added to the set.
-        if (pNode.isTerminal()) {
-            List<Partition> trace = new ArrayList<Partition>();
-            trace.addAll(prefixTrace);
-            allTraces.add(trace);
-            return;
-        }
-
-        // Process all adjacent nodes.
-        for (Partition adjPNode : adjPartitions) {
-            // Negation of:
-            // "If there has been a cycle and the next
-            // node is one that has been encountered."
-            if (!isCyclic || !prefixTrace.contains(adjPNode)) {
-                recursivelyAddTracesToSet(adjPNode, allTraces, prefixTrace);
-                // Remove anything on the end after returning from the call
-                // stack.
-                prefixTrace.remove(prefixTrace.size() - 1);
-            }
+        Iterator<List<Partition>> traces = PartitionPathIterator
+                .allTraces(this);
+        while (traces.hasNext()) {
+            allTraces.add(traces.next());
         }
+        return allTraces;
     }
 
     /**
@@ -629,49 +627,28 @@ public class PartitionGraph implements IGraph<Partition> {
      * @return a set of all bounded paths in this partition graph.
      */
     public Set<List<Partition>> getAllBoundedPredictedPaths() {
-        List<Partition> currPath = new ArrayList<Partition>();
         Set<List<Partition>> pathsSoFar = new LinkedHashSet<List<Partition>>();
-        for (Partition partition : partitions) {
-            // NOTE: numAppearInPath is a hash map but Partition doesn't
-            // override
-            // hashCode(), but this is OK because every node is distinct from
-            // the rest of the nodes in graph.
-            numAppearInPath.put(partition, 0);
-        }
-        getAllBoundedPredictedPathsHelper(getDummyInitialNode(), currPath,
-                pathsSoFar);
+        Iterator<List<Partition>> paths = getBoundedPredictedPaths(0, 0);
+        while (paths.hasNext()) {
+            pathsSoFar.add(paths.next());
+        }
         return pathsSoFar;
     }
 
     /**
-     * Helper method of getAllBoundedPredictedPaths.
+     * Returns an iterator that finds the same paths as
+     * getAllBoundedPredictedPaths(), one at a time, optionally with limits on
+     * the number of paths and their length.
      * 
-     * @param p
-     *            - the partition which we are processing.
-     * @param currPath
-     *            - the path which we are constructing.
-     * @param pathsSoFar
-     *            - the paths we have constructed so far.
+     * @param maxPaths
+     *            the maximum number of paths, or 0 for no limit
+     * @param maxLength
+     *            the maximum number of partitions in a path, or 0 for no limit
      */
-    private void getAllBoundedPredictedPathsHelper(Partition p,
-            List<Partition> currPath, Set<List<Partition>> pathsSoFar) {
-        int pCount = numAppearInPath.get(p);
-        if (pCount >= repeatLimit) {
-            return;
-        }
-        pCount++;
-        numAppearInPath.put(p, pCount);
-        currPath.add(p);
-        for (Partition succ : getAdjacentNodes(p)) {
-            getAllBoundedPredictedPathsHelper(succ, currPath, pathsSoFar);
-        }
-        if (p.isTerminal() && isPredictedPath(currPath)) {
-            List<Partition> newPath = new ArrayList<Partition>(currPath);
-            pathsSoFar.add(newPath);
-        }
-        currPath.remove(currPath.size() - 1);
-        pCount--;
-        numAppearInPath.put(p, pCount);
+    public Iterator<List<Partition>> getBoundedPredictedPaths(int maxPaths,
+            int maxLength) {
+        return PartitionPathIterator.boundedPredictedPaths(this, repeatLimit,
+                maxPaths, maxLength);
     }
 
     /**
@@ -0,0 +1,197 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Enumerates paths from the initial partition to the terminal partition of a
+ * partition graph lazily, in depth-first order: each call to next() walks the
+ * graph only as far as the next path. The walk keeps an explicit stack of the
+ * partitions of the current path and of the successors of each of them that
+ * are yet to be walked, along with the number of times that each partition
+ * appears in the current path, so checking whether a partition can be added to
+ * the path takes constant time. <br />
+ * <br />
+ * The number of paths and their length can optionally be limited, since the
+ * number of paths of a cyclic graph grows exponentially with their length.
+ */
+public class PartitionPathIterator implements Iterator<List<Partition>> {
+    private final PartitionGraph graph;
+
+    /**
+     * The number of times a partition can appear in a path, or 0 if a path can
+     * only go around a cycle once (see allTraces()).
+     */
+    private final int repeatLimit;
+
+    /** Whether only predicted paths are returned. */
+    private final boolean predictedOnly;
+
+    /** The maximum number of paths and path length, or 0 for no limit. */
+    private final int maxPaths;
+    private final int maxLength;
+
+    /** Maps each partition of the graph to its index in numAppearInPath. */
+    private final Map<Partition, Integer> partitionIndices = new HashMap<Partition, Integer>();
+
+    /**
+     * The number of times the partition with each index appears in the current
+     * path.
+     */
+    private final int[] numAppearInPath;
+
+    /** The current path, and the successors of its partitions to walk. */
+    private final List<Partition> path = new ArrayList<Partition>();
+    private final List<Iterator<Partition>> successors = new ArrayList<Iterator<Partition>>();
+
+    private boolean started = false;
+    private int numPaths = 0;
+    private List<Partition> nextPath = null;
+
+    private PartitionPathIterator(PartitionGraph graph, int repeatLimit,
+            boolean predictedOnly, int maxPaths, int maxLength) {
+        this.graph = graph;
+        this.repeatLimit = repeatLimit;
+        this.predictedOnly = predictedOnly;
+        this.maxPaths = maxPaths;
+        this.maxLength = maxLength;
+
+        for (Partition partition : graph.getNodes()) {
+            partitionIndices.put(partition, partitionIndices.size());
+        }
+        numAppearInPath = new int[partitionIndices.size()];
+    }
+
+    /**
+     * Returns an iterator over the predicted paths of graph (see
+     * PartitionGraph.isPredictedPath()) in which no partition appears more than
+     * repeatLimit times.
+     *
+     * @param maxPaths
+     *            the maximum number of paths, or 0 for no limit
+     * @param maxLength
+     *            the maximum number of partitions in a path, or 0 for no limit
+     */
+    public static PartitionPathIterator boundedPredictedPaths(
+            PartitionGraph graph, int repeatLimit, int maxPaths, int maxLength) {
+        assert repeatLimit > 0;
+        return new PartitionPathIterator(graph, repeatLimit, true, maxPaths,
+                maxLength);
+    }
+
+    /**
+     * Returns an iterator over the paths of graph. Once a path returns to a
+     * partition that it already contains, it can only continue to partitions
+     * that it does not contain.
+     */
+    public static PartitionPathIterator allTraces(PartitionGraph graph) {
+        return new PartitionPathIterator(graph, 0, false, 0, 0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPath == null) {
+            nextPath = findNextPath();
+        }
+        return nextPath != null;
+    }
+
+    @Override
+    public List<Partition> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<Partition> ret = nextPath;
+        nextPath = null;
+        numPaths++;
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Walks the graph up to the next path, and returns it, or returns null if
+     * there are no more paths.
+     */
+    private List<Partition> findNextPath() {
+        if (maxPaths > 0 && numPaths >= maxPaths) {
+            return null;
+        }
+
+        if (!started) {
+            started = true;
+            Partition initial = graph.getDummyInitialNode();
+            if (canAppend(initial)) {
+                List<Partition> ret = append(initial);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+        }
+
+        while (!successors.isEmpty()) {
+            Iterator<Partition> succs = successors.get(successors.size() - 1);
+            if (!succs.hasNext()) {
+                Partition last = path.remove(path.size() - 1);
+                successors.remove(successors.size() - 1);
+                numAppearInPath[partitionIndices.get(last)]--;
+                continue;
+            }
+            Partition succ = succs.next();
+            if (canAppend(succ)) {
+                List<Partition> ret = append(succ);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the current path can be extended with p.
+     */
+    private boolean canAppend(Partition p) {
+        if (maxLength > 0 && path.size() >= maxLength) {
+            return false;
+        }
+        int numAppear = numAppearInPath[partitionIndices.get(p)];
+        if (repeatLimit > 0) {
+            return numAppear < repeatLimit;
+        }
+        // Once the path has returned to its last partition, it can only
+        // continue to partitions that it does not contain.
+        if (path.isEmpty()) {
+            return true;
+        }
+        Partition last = path.get(path.size() - 1);
+        return numAppearInPath[partitionIndices.get(last)] < 2
+                || numAppear == 0;
+    }
+
+    /**
+     * Appends p to the current path, and returns (a copy of) the path if it
+     * is a path to return.
+     */
+    private List<Partition> append(Partition p) {
+        path.add(p);
+        numAppearInPath[partitionIndices.get(p)]++;
+        if (p.isTerminal()) {
+            successors.add(Collections.<Partition> emptyList().iterator());
+            if (!predictedOnly || PartitionGraph.isPredictedPath(path)) {
+                return new ArrayList<Partition>(path);
+            }
+            return null;
+        }
+        successors.add(graph.getAdjacentNodes(p).iterator());
+        return null;
+    }
+}
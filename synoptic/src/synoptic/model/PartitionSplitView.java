@@ -0,0 +1,363 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
+
+/**
+ * A read-only view of a partition graph as it would look after a single
+ * partition multi-split is applied to it. The view never modifies the
+ * underlying graph, partitions, or event nodes, so several views of the same
+ * graph may be model checked concurrently, as long as the underlying graph
+ * itself is not modified in the meantime. A view is not thread-safe and must
+ * be confined to the thread that uses it.
+ * <p>
+ * The transitions of the nodes of the view are derived from the transitions
+ * of their events, in the same way as the transitions of partitions.
+ * </p>
+ */
+public class PartitionSplitView implements IGraph<PartitionSplitView.Node> {
+
+    /** Ways in which the relations of event transitions are matched. */
+    private static final int EXACT = 0;
+    private static final int SUBSET = 1;
+    private static final int INTERSECTING = 2;
+
+    /**
+     * A node in the view. Wraps either an unmodified partition of the
+     * underlying graph, or one of the pieces that the split partition is
+     * divided into.
+     */
+    public final class Node implements INode<Node> {
+        /** The partition of the underlying graph that this node is part of. */
+        private final Partition partition;
+
+        /**
+         * The events of this node if it is a piece of the split partition, and
+         * null otherwise.
+         */
+        private final Set<EventNode> pieceEvents;
+
+        /** Index of the piece within the split, or -1 for unsplit nodes. */
+        private final int pieceIndex;
+
+        /** The parent partition set by setParent(), if any. */
+        private Partition parent = null;
+
+        /** Lazily computed outgoing transitions of this node. */
+        private List<Transition<Node>> allTransitions = null;
+
+        private Node(Partition partition, Set<EventNode> pieceEvents,
+                int pieceIndex) {
+            this.partition = partition;
+            this.pieceEvents = pieceEvents;
+            this.pieceIndex = pieceIndex;
+        }
+
+        /**
+         * Returns the partition of the underlying graph that this node
+         * represents, or that it is a piece of.
+         */
+        public Partition getPartition() {
+            return partition;
+        }
+
+        @Override
+        public EventType getEType() {
+            return partition.getEType();
+        }
+
+        @Override
+        public Set<Node> getAllSuccessors() {
+            return getAdjacentNodes(this);
+        }
+
+        @Override
+        public boolean isTerminal() {
+            return partition.isTerminal();
+        }
+
+        @Override
+        public boolean isInitial() {
+            return partition.isInitial();
+        }
+
+        @Override
+        public Partition getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(Partition parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Returns the events of this node.
+         */
+        public Set<EventNode> getEventNodes() {
+            if (pieceEvents != null) {
+                return pieceEvents;
+            }
+            return partition.getEventNodes();
+        }
+
+        @Override
+        public List<? extends ITransition<Node>> getAllTransitions() {
+            if (allTransitions == null) {
+                allTransitions = createTransitions(null, EXACT);
+            }
+            return allTransitions;
+        }
+
+        @Override
+        public List<? extends ITransition<Node>> getTransitionsWithExactRelations(
+                Set<String> relations) {
+            return createTransitions(relations, EXACT);
+        }
+
+        @Override
+        public List<? extends ITransition<Node>> getTransitionsWithSubsetRelations(
+                Set<String> relations) {
+            return createTransitions(relations, SUBSET);
+        }
+
+        @Override
+        public List<? extends ITransition<Node>> getTransitionsWithIntersectingRelations(
+                Set<String> relations) {
+            return createTransitions(relations, INTERSECTING);
+        }
+
+        /**
+         * Creates the outgoing transitions of this node: one to every node
+         * that contains a successor of one of its events along an event
+         * transition whose relations match relations (exactly, as a subset, or
+         * by intersecting them), or along any event transition if relations is
+         * null.
+         */
+        private List<Transition<Node>> createTransitions(
+                Set<String> relations, int match) {
+            Map<Node, Transition<Node>> transitions = new LinkedHashMap<Node, Transition<Node>>();
+            for (EventNode e : getEventNodes()) {
+                for (int i = 0; i < e.numTransitions; i++) {
+                    Set<String> eRelations = e.targetRelations[i];
+                    if (relations != null) {
+                        if (match == EXACT && !eRelations.equals(relations)) {
+                            continue;
+                        }
+                        if (match == SUBSET
+                                && !relations.containsAll(eRelations)) {
+                            continue;
+                        }
+                        if (match == INTERSECTING
+                                && Collections.disjoint(eRelations, relations)) {
+                            continue;
+                        }
+                    }
+                    Node target = nodeOf(e.targets[i]);
+                    if (!transitions.containsKey(target)) {
+                        transitions.put(target, new Transition<Node>(this,
+                                target, eRelations));
+                    }
+                }
+            }
+            return new ArrayList<Transition<Node>>(transitions.values());
+        }
+
+        /**
+         * Returns the outgoing transitions of this node, each annotated with
+         * the number and the fraction of the events of this node that take it,
+         * as in Partition.getWeightedTransitions().
+         */
+        @Override
+        public List<? extends ITransition<Node>> getWeightedTransitions() {
+            List<Transition<Node>> transitions = createTransitions(null, EXACT);
+
+            Map<Node, Integer> counts = new HashMap<Node, Integer>();
+            int total = 0;
+            for (EventNode e : getEventNodes()) {
+                // The single event of the dummy initial node has a transition
+                // to the first event of every trace, and each of these
+                // transitions is counted instead of the event.
+                Set<Node> counted = new HashSet<Node>();
+                for (int i = 0; i < e.numTransitions; i++) {
+                    Node target = nodeOf(e.targets[i]);
+                    if (counted.add(target) || isInitial()) {
+                        Integer count = counts.get(target);
+                        counts.put(target, count == null ? 1 : count + 1);
+                    }
+                }
+                total += isInitial() ? e.numTransitions : 1;
+            }
+
+            for (Transition<Node> tr : transitions) {
+                int count = counts.get(tr.getTarget());
+                tr.setProbability((double) count / (double) total);
+                tr.setCount(count);
+            }
+            return transitions;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            int cmp = partition.compareTo(other.partition);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return pieceIndex - other.pieceIndex;
+        }
+
+        @Override
+        public String toString() {
+            if (pieceEvents == null) {
+                return partition.toString();
+            }
+            return partition.toString() + "#" + pieceIndex;
+        }
+    }
+
+    /** The graph that this is a view of. */
+    private final PartitionGraph pGraph;
+
+    /** Adjacency between the partitions of the underlying graph. */
+    private final Map<Partition, Set<Partition>> adjacency;
+
+    /** The partition that is split in this view. */
+    private final Partition splitPartition;
+
+    /** Nodes for all the partitions that are not split. */
+    private final Map<Partition, Node> unsplitNodes = new HashMap<Partition, Node>();
+
+    /** Maps each event in the split partition to its piece. */
+    private final Map<EventNode, Node> pieceOfEvent = new HashMap<EventNode, Node>();
+
+    /** The pieces that the split partition is divided into. */
+    private final List<Node> pieces = new ArrayList<Node>();
+
+    /** All nodes in the view. */
+    private final Set<Node> nodes = new LinkedHashSet<Node>();
+
+    /** Lazily computed adjacency between the nodes of the view. */
+    private final Map<Node, Set<Node>> nodeAdjacency = new HashMap<Node, Set<Node>>();
+
+    /**
+     * Creates a view of pGraph with split applied to it.
+     *
+     * @param pGraph
+     *            the underlying partition graph
+     * @param adjacency
+     *            adjacency of pGraph partitions, as returned by
+     *            {@code pGraph.getAdjacencySnapshot()}
+     * @param split
+     *            the split to apply in the view
+     */
+    public PartitionSplitView(PartitionGraph pGraph,
+            Map<Partition, Set<Partition>> adjacency, PartitionMultiSplit split) {
+        this.pGraph = pGraph;
+        this.adjacency = adjacency;
+        this.splitPartition = split.getPartition();
+
+        for (Partition p : pGraph.getNodes()) {
+            if (p == splitPartition) {
+                int index = 0;
+                for (Set<EventNode> events : split.getPartitioning()) {
+                    Node piece = new Node(p, events, index);
+                    index++;
+                    pieces.add(piece);
+                    nodes.add(piece);
+                    for (EventNode e : events) {
+                        pieceOfEvent.put(e, piece);
+                    }
+                }
+            } else {
+                Node node = new Node(p, null, -1);
+                unsplitNodes.put(p, node);
+                nodes.add(node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node in this view that contains the event node e.
+     */
+    private Node nodeOf(EventNode e) {
+        Partition p = e.getParent();
+        if (p == splitPartition) {
+            return pieceOfEvent.get(e);
+        }
+        return unsplitNodes.get(p);
+    }
+
+    @Override
+    public Set<Node> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        return pGraph.getRelations();
+    }
+
+    @Override
+    public Node getDummyInitialNode() {
+        return unsplitNodes.get(pGraph.getDummyInitialNode());
+    }
+
+    @Override
+    public Set<Node> getAdjacentNodes(Node node) {
+        Set<Node> adjNodes = nodeAdjacency.get(node);
+        if (adjNodes != null) {
+            return adjNodes;
+        }
+
+        adjNodes = new LinkedHashSet<Node>();
+        if (node.pieceEvents != null) {
+            // Pieces of the split partition: successors are determined by the
+            // events in the piece.
+            for (EventNode e : node.pieceEvents) {
+                for (EventNode eSucc : e.getAllSuccessors()) {
+                    adjNodes.add(nodeOf(eSucc));
+                }
+            }
+        } else {
+            for (Partition pSucc : adjacency.get(node.partition)) {
+                if (pSucc != splitPartition) {
+                    adjNodes.add(unsplitNodes.get(pSucc));
+                    continue;
+                }
+                // Only some of the pieces of the split partition may be
+                // reachable from this partition.
+                for (EventNode e : node.partition.getEventNodes()) {
+                    for (EventNode eSucc : e.getAllSuccessors()) {
+                        if (eSucc.getParent() == splitPartition) {
+                            adjNodes.add(pieceOfEvent.get(eSucc));
+                        }
+                    }
+                }
+            }
+        }
+        nodeAdjacency.put(node, adjNodes);
+        return adjNodes;
+    }
+
+    /**
+     * Adds node to the nodes of this view. The underlying graph is not
+     * modified.
+     */
+    @Override
+    public void add(Node node) {
+        nodes.add(node);
+    }
+}
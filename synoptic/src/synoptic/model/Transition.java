@@ -200,8 +200,9 @@ public class Transition<NodeType extends INode<NodeType>> implements ITransition
                 + (relations == null ? 0 : relations.hashCode());
         result = prime * result + (source == null ? 0 : source.hashCode());
         result = prime * result + (target == null ? 0 : target.hashCode());
-        // TODO: implement a custom hashCode method for TransitionLabelsMap.
-        result = prime * result + (labels == null ? 0 : labels.hashCode());
+        // The labels are left out, so that the hash code is consistent with
+        // equals() (which compares the labels by value), and does not change
+        // when the labels do.
         return result;
     }
 
@@ -37,14 +37,27 @@ public class Event {
     private AbstractResource time;
 
     /**
-     * The resources associated with this event
+     * The resources associated with this event, or null if there are none.
      */
-    private final HashMap<String, AbstractResource> resources;
+    private HashMap<String, AbstractResource> resources = null;
 
     /**
-     * The complete log line corresponding to this event.
+     * The complete log line corresponding to this event, or null if the line
+     * is read back from logFile when needed.
      */
-    private final String logLine;
+    private String logLine;
+
+    /**
+     * The log file from which the log line of this event can be read, or null
+     * if logLine holds the line.
+     */
+    private LogFile logFile = null;
+
+    /**
+     * The byte offset and length of the log line in logFile.
+     */
+    private long lineOffset;
+    private int lineLength;
 
     /**
      * The filename from where the label for this event was parsed.
@@ -72,7 +85,6 @@ public class Event {
         this.logLine = logLine;
         this.fileName = fileName;
         this.lineNum = lineNum;
-        this.resources = new HashMap<String, AbstractResource>();
     }
 
     /**
@@ -145,7 +157,8 @@ public class Event {
                 + ((fileName == null) ? 0 : fileName.hashCode());
         result = prime * result + ((eType == null) ? 0 : eType.hashCode());
         result = prime * result + lineNum;
-        result = prime * result + ((logLine == null) ? 0 : logLine.hashCode());
+        // The log line is left out, so that it does not have to be read from
+        // the log file.
         result = prime * result + ((time == null) ? 0 : time.hashCode());
         return result;
     }
@@ -179,12 +192,21 @@ public class Event {
         if (lineNum != other.lineNum) {
             return false;
         }
-        if (logLine == null) {
-            if (other.logLine != null) {
+        if (logFile != null && logFile == other.logFile) {
+            if (lineOffset != other.lineOffset
+                    || lineLength != other.lineLength) {
+                return false;
+            }
+        } else {
+            String line = getLine();
+            String otherLine = other.getLine();
+            if (line == null) {
+                if (otherLine != null) {
+                    return false;
+                }
+            } else if (!line.equals(otherLine)) {
                 return false;
             }
-        } else if (!logLine.equals(other.logLine)) {
-            return false;
         }
         if (time == null) {
             if (other.time != null) {
@@ -217,14 +239,35 @@ public class Event {
     }
 
     public AbstractResource getResource(String type) {
+        if (resources == null) {
+            return null;
+        }
         return resources.get(time);
     }
 
     public void addResource(String type, AbstractResource res) {
+        if (resources == null) {
+            resources = new HashMap<String, AbstractResource>();
+        }
         resources.put(type, res);
     }
 
+    /**
+     * Records that the log line of this event is the line with the given byte
+     * offset and length in logFile. The event then drops its copy of the line,
+     * and reads it back from logFile whenever it is needed.
+     */
+    public void setLineLocation(LogFile logFile, long offset, int length) {
+        this.logFile = logFile;
+        this.lineOffset = offset;
+        this.lineLength = length;
+        this.logLine = null;
+    }
+
     public String getLine() {
+        if (logLine == null && logFile != null) {
+            return logFile.readLine(lineOffset, lineLength);
+        }
         return logLine;
     }
 
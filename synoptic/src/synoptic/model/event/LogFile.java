@@ -0,0 +1,109 @@
+package synoptic.model.event;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import synoptic.util.InternalSynopticException;
+
+/**
+ * A log file from which events were parsed. Events that were parsed from a log
+ * file refer to their log line by its byte offset and length in the file, and
+ * the line is read back from the file only when it is needed (e.g., to display
+ * it). The file must therefore not change while such events are in use. <br />
+ * <br />
+ * The file is opened when the first line is read, and is kept open for later
+ * lines until close() is called.
+ */
+public class LogFile implements Closeable {
+    /** The path of the file. */
+    private final String path;
+
+    /** The charset with which the lines of the file are decoded. */
+    private final Charset charset;
+
+    /** The open file that lines are read from, or null if it is closed. */
+    private RandomAccessFile file = null;
+
+    /**
+     * Creates a log file whose lines are decoded with charset, which must
+     * satisfy isLineAddressable().
+     */
+    public LogFile(String path, Charset charset) {
+        assert isLineAddressable(charset);
+        this.path = path;
+        this.charset = charset;
+    }
+
+    /**
+     * Whether the lines of a file in charset can be found by their bytes
+     * alone: line terminators must be the single bytes '\r' and '\n', and these
+     * bytes must not occur inside the encoding of any other character.
+     */
+    public static boolean isLineAddressable(Charset charset) {
+        byte[] terminators = "\r\n".getBytes(charset);
+        if (terminators.length != 2 || terminators[0] != '\r'
+                || terminators[1] != '\n') {
+            return false;
+        }
+        return charset.name().equals("UTF-8")
+                || charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Reads the line with the given byte offset and length (not including the
+     * line terminator) from the file, opening the file if it is not open.
+     */
+    public synchronized String readLine(long offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (file == null) {
+                file = new RandomAccessFile(path, "r");
+            }
+            FileChannel channel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new InternalSynopticException("Log file [" + path
+                            + "] is shorter than when it was parsed");
+                }
+            }
+        } catch (IOException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Closes the file, if it is open. Reading another line opens it again.
+     */
+    @Override
+    public synchronized void close() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw InternalSynopticException.wrap(e);
+        } finally {
+            file = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
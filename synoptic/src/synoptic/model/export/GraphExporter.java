@@ -212,10 +212,12 @@ public class GraphExporter {
                 } else {
                     transitions = node.getAllTransitions();
                 }
-                // Sort the transitions for canonical output.
-                Collections.sort(transitions);
+                // Sort (a copy of) the transitions for canonical output.
+                List<ITransition<T>> sortedTransitions = new ArrayList<ITransition<T>>(
+                        transitions);
+                Collections.sort(sortedTransitions);
 
-                for (ITransition<T> trans : transitions) {
+                for (ITransition<T> trans : sortedTransitions) {
                     // If for some reason we don't have a unique identifier for
                     // the source or the target node then we skip this
                     // transition. For example, this may occur if the target is
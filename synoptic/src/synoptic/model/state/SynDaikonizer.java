@@ -1,14 +1,20 @@
 package synoptic.model.state;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import daikon.inv.Invariant;
 import daikonizer.DaikonInvariants;
 import daikonizer.DaikonVar;
 import daikonizer.Daikonizer;
 
+import synoptic.main.AbstractMain;
+
 /**
  * A wrapper class of Daikonizer. This class is used for detecting invariants
  * from all data records (i.e., States) at a particular Synoptic point.
@@ -16,6 +22,32 @@ import daikonizer.Daikonizer;
  *
  */
 public class SynDaikonizer {
+    /** The maximum number of lists of states whose invariants are cached. */
+    private static final int MAX_CACHED_INVARIANTS = 4096;
+
+    /**
+     * The invariants of lists of states that were inferred before, keyed by
+     * the states (i.e., by the contents of the partitions that the states
+     * came from), in least recently used order.
+     */
+    private static final Map<List<State>, DaikonInvariants> cachedInvariants = new LinkedHashMap<List<State>, DaikonInvariants>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<List<State>, DaikonInvariants> eldest) {
+            return size() > MAX_CACHED_INVARIANTS;
+        }
+    };
+
+    /**
+     * Daikon keeps its program points in static fields, redirects System.out
+     * while it runs and deletes its files from the working directory, so only
+     * one Daikon run can be in progress at a time.
+     */
+    private static final Object daikonLock = new Object();
+
     private List<DaikonVar> vars;
     private Daikonizer daikonizer;
     
@@ -83,9 +115,84 @@ public class SynDaikonizer {
         
         // Only run Daikon when there are state instances.
         if (daikonizer != null) {
-            printedInvs = daikonizer.genDaikonInvariants(enterInvs, exitInvs, flow, false);
+            synchronized (daikonLock) {
+                printedInvs = daikonizer.genDaikonInvariants(enterInvs,
+                        exitInvs, flow, false);
+            }
         }
         DaikonInvariants invs = new DaikonInvariants(enterInvs, printedInvs);
         return invs;
     }
+    
+    /**
+     * Drops all of the cached invariants, along with the states that they are
+     * keyed by. Called at the end of a run, so that the cache does not keep
+     * the states of one run alive for the rest of the JVM's lifetime.
+     */
+    public static void clearCachedInvariants() {
+        synchronized (cachedInvariants) {
+            cachedInvariants.clear();
+        }
+    }
+
+    /**
+     * Returns the Daikon invariants of each of the lists of states, in order.
+     * Equal lists have the same invariants, which are looked up in a cache of
+     * the invariants of lists that were inferred before. The states of the
+     * remaining lists are added to SynDaikonizers on the worker threads (see
+     * options.numThreads), though Daikon itself runs on one list at a time.
+     * 
+     * @param statesLists
+     *            lists of states, which must not be modified afterwards
+     */
+    public static List<DaikonInvariants> getDaikonEnterInvariants(
+            List<List<State>> statesLists) {
+        List<DaikonInvariants> invs = new ArrayList<DaikonInvariants>(
+                statesLists.size());
+        Map<List<State>, DaikonInvariants> inferredInvs = new LinkedHashMap<List<State>, DaikonInvariants>();
+        synchronized (cachedInvariants) {
+            for (List<State> states : statesLists) {
+                DaikonInvariants cached = cachedInvariants.get(states);
+                if (cached == null) {
+                    inferredInvs.put(states, null);
+                }
+                invs.add(cached);
+            }
+        }
+        if (inferredInvs.isEmpty()) {
+            return invs;
+        }
+
+        List<Callable<DaikonInvariants>> tasks = new ArrayList<Callable<DaikonInvariants>>(
+                inferredInvs.size());
+        for (final List<State> states : inferredInvs.keySet()) {
+            tasks.add(new Callable<DaikonInvariants>() {
+                @Override
+                public DaikonInvariants call() {
+                    SynDaikonizer daikonizer = new SynDaikonizer();
+                    for (State state : states) {
+                        daikonizer.addInstance(state);
+                    }
+                    return daikonizer.getDaikonEnterInvariants();
+                }
+            });
+        }
+        List<DaikonInvariants> results = AbstractMain.getInstance()
+                .invokeAll(tasks);
+
+        int i = 0;
+        synchronized (cachedInvariants) {
+            for (Map.Entry<List<State>, DaikonInvariants> entry : inferredInvs
+                    .entrySet()) {
+                entry.setValue(results.get(i++));
+                cachedInvariants.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (i = 0; i < invs.size(); i++) {
+            if (invs.get(i) == null) {
+                invs.set(i, inferredInvs.get(statesLists.get(i)));
+            }
+        }
+        return invs;
+    }
 }
@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.List;
 import java.util.logging.Logger;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -130,6 +131,16 @@ public abstract class SynopticLibTest {
                 new DotExportFormatter());
     }
 
+    /**
+     * Shuts down the worker pool of the Synoptic instance used by the test.
+     */
+    @After
+    public void tearDown() {
+        if (AbstractMain.instance != null) {
+            AbstractMain.instance.shutdownWorkerPool();
+        }
+    }
+
     // //////////////////////////////////////////////
     // Common routines to simplify testing.
     // //////////////////////////////////////////////
@@ -3,6 +3,7 @@ package synoptic.tests;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.rules.TestName;
@@ -262,6 +263,56 @@ public abstract class SynopticTest extends SynopticLibTest {
         return ret;
     }
 
+    /**
+     * Simulates numEvents events of numProcesses processes that exchange
+     * messages, and returns the vector time of each event, formatted as in a
+     * log (e.g., "1,0,2"), in the order in which the events occurred. The
+     * process of each event is added to pids.
+     * 
+     * @param random
+     *            The source of randomness for the simulation
+     * @param numProcesses
+     *            The number of processes
+     * @param numEvents
+     *            The number of events to generate
+     * @param pids
+     *            The list to which the process of each event is added
+     * @return The vector times of the events
+     */
+    public static List<String> genRandomVTimes(Random random,
+            int numProcesses, int numEvents, List<Integer> pids) {
+        int[][] clocks = new int[numProcesses][numProcesses];
+        List<List<int[]>> messages = new ArrayList<List<int[]>>();
+        for (int p = 0; p < numProcesses; p++) {
+            messages.add(new ArrayList<int[]>());
+        }
+
+        List<String> vtimes = new ArrayList<String>();
+        for (int n = 0; n < numEvents; n++) {
+            int p = random.nextInt(numProcesses);
+            int[] clock = clocks[p];
+            clock[p]++;
+            // Either receive a message that was sent to p, or send a message.
+            List<int[]> received = messages.get(p);
+            if (!received.isEmpty() && random.nextBoolean()) {
+                int[] sent = received.remove(random.nextInt(received.size()));
+                for (int q = 0; q < numProcesses; q++) {
+                    clock[q] = Math.max(clock[q], sent[q]);
+                }
+            } else if (random.nextBoolean()) {
+                messages.get(random.nextInt(numProcesses)).add(clock.clone());
+            }
+
+            StringBuilder vtime = new StringBuilder();
+            for (int q = 0; q < numProcesses; q++) {
+                vtime.append(q == 0 ? "" : ",").append(clock[q]);
+            }
+            vtimes.add(vtime.toString());
+            pids.add(p);
+        }
+        return vtimes;
+    }
+
     /**
      * Given a set of invariants, return a copy of the set but without IntrBy
      * invariants
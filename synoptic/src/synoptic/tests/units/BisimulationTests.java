@@ -1,15 +1,33 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.KTails;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMerge;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.IncrementalModelChecker;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
@@ -134,6 +152,269 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Returns the partitioning of events in pGraph.
+     */
+    private static Set<Set<EventNode>> getEventPartitioning(
+            PartitionGraph pGraph) {
+        Set<Set<EventNode>> partitioning = new HashSet<Set<EventNode>>();
+        for (Partition p : pGraph.getNodes()) {
+            partitioning.add(new HashSet<EventNode>(p.getEventNodes()));
+        }
+        return partitioning;
+    }
+
+    /**
+     * Test that refinement with several worker threads produces the same graph
+     * as serial refinement with the same random seed.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelRefinementMatchesSerialTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "b", "--", "c",
+                "x", "y", "d", "--", "a", "y", "x", "b", "--", "c", "y", "d",
+                "--", "a", "x", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        AbstractMain main = AbstractMain.getInstance();
+
+        main.options.numThreads = 1;
+        main.random = new Random(42);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        Set<Set<EventNode>> serialPartitioning = getEventPartitioning(pGraph);
+
+        main.options.numThreads = 4;
+        main.random = new Random(42);
+        pGraph = new PartitionGraph(inputGraph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        assertEquals(serialPartitioning, getEventPartitioning(pGraph));
+
+        // Shutting down the worker pool stops its threads, and a later
+        // parallel stage gets a new pool.
+        ForkJoinPool pool = main.getWorkerPool();
+        main.shutdownWorkerPool();
+        assertTrue(pool.isShutdown());
+        assertTrue(main.getWorkerPool() != pool);
+    }
+
+    /**
+     * Test that a refinement step with several worker threads performs the
+     * same splits as a serial step when the counter-examples include several
+     * counter-examples for the same invariant: a later counter-example is
+     * only skipped if a split for an earlier one satisfies its invariant.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelSplitStepMatchesSerialTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "b", "--", "c",
+                "x", "y", "d", "--", "a", "y", "x", "b", "--", "c", "y", "d",
+                "--", "a", "x", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        AbstractMain main = AbstractMain.getInstance();
+
+        for (int seed = 0; seed < 10; seed++) {
+            Set<Set<EventNode>> serialPartitioning = null;
+            for (int numThreads : new int[] { 1, 4 }) {
+                main.options.numThreads = numThreads;
+                main.random = new Random(seed);
+                PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                        invariants);
+
+                // Each counter-example appears twice.
+                List<CExamplePath<Partition>> cExamples = invariants
+                        .getAllCounterExamples(pGraph);
+                cExamples.addAll(invariants.getAllCounterExamples(pGraph));
+                Bisimulation.performSplits(0, pGraph, cExamples);
+
+                if (serialPartitioning == null) {
+                    serialPartitioning = getEventPartitioning(pGraph);
+                } else {
+                    assertEquals(serialPartitioning,
+                            getEventPartitioning(pGraph));
+                }
+            }
+        }
+        main.options.numThreads = 1;
+    }
+
+    /**
+     * Test that the incremental model checker agrees with a full model check
+     * after trial splits that are rewound, and that refinement and coarsening
+     * with incremental checking produce a graph that satisfies all invariants.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void incrementalCheckingTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "b", "--", "c",
+                "x", "y", "d", "--", "a", "y", "x", "b", "--", "c", "y", "d",
+                "--", "a", "x", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        IncrementalModelChecker checker = pGraph.getModelChecker();
+        checker.track(invariants.getSet());
+
+        List<CExamplePath<Partition>> cExamples = invariants
+                .getAllCounterExamples(pGraph);
+        assertTrue(cExamples != null);
+        for (CExamplePath<Partition> cExample : cExamples) {
+            for (PartitionSplit split : Bisimulation.getSplits(cExample, pGraph)) {
+                IOperation rewind = pGraph.apply(new PartitionMultiSplit(split));
+                for (ITemporalInvariant inv : invariants) {
+                    assertEquals(
+                            TemporalInvariantSet.getCounterExample(inv, pGraph) == null,
+                            checker.getCounterExample(inv) == null);
+                }
+                pGraph.apply(rewind);
+                checker.revertChanges();
+            }
+        }
+
+        AbstractMain.getInstance().options.incrementalChecking = true;
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        assertNull(invariants.getAllCounterExamples(pGraph));
+        Bisimulation.mergePartitions(pGraph);
+        assertNull(invariants.getAllCounterExamples(pGraph));
+    }
+
+    /**
+     * Test that, across trial splits, committed splits, and trial merges that
+     * are rewound, the incremental model checker finds a counter-example for
+     * the same invariants as the non-incremental one, and that its
+     * counter-examples are the shortest ones in the graph (which is where the
+     * two checkers may differ, see IncrementalModelChecker).
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void incrementalCounterExamplesTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "b", "--", "c",
+                "x", "y", "d", "--", "a", "y", "x", "b", "--", "c", "y", "d",
+                "--", "a", "x", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        IncrementalModelChecker checker = pGraph.getModelChecker();
+        checker.track(invariants.getSet());
+        assertCounterExamplesMatch(invariants, pGraph);
+
+        // Trial splits, each rewound, and then one committed split.
+        List<CExamplePath<Partition>> cExamples = invariants
+                .getAllCounterExamples(pGraph);
+        assertTrue(cExamples != null);
+        for (CExamplePath<Partition> cExample : cExamples) {
+            for (PartitionSplit split : Bisimulation.getSplits(cExample, pGraph)) {
+                IOperation rewind = pGraph.apply(new PartitionMultiSplit(split));
+                assertCounterExamplesMatch(invariants, pGraph);
+                pGraph.apply(rewind);
+                checker.revertChanges();
+                assertCounterExamplesMatch(invariants, pGraph);
+            }
+        }
+        pGraph.apply(new PartitionMultiSplit(Bisimulation.getSplits(
+                cExamples.get(0), pGraph).get(0)));
+        assertCounterExamplesMatch(invariants, pGraph);
+        checker.commitChanges();
+        assertCounterExamplesMatch(invariants, pGraph);
+
+        // Trial merges of the refined graph, each rewound.
+        AbstractMain.getInstance().options.incrementalChecking = true;
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        List<Partition> partitions = new ArrayList<Partition>(
+                pGraph.getNodes());
+        for (int i = 0; i < partitions.size(); i++) {
+            for (int j = i + 1; j < partitions.size(); j++) {
+                Partition p = partitions.get(i);
+                Partition q = partitions.get(j);
+                if (!p.getEType().equals(q.getEType())) {
+                    continue;
+                }
+                IOperation rewind = pGraph.apply(new PartitionMerge(p, q));
+                assertCounterExamplesMatch(invariants, pGraph);
+                pGraph.apply(rewind);
+                checker.revertChanges();
+                assertCounterExamplesMatch(invariants, pGraph);
+            }
+        }
+        AbstractMain.getInstance().options.incrementalChecking = false;
+    }
+
+    /**
+     * Asserts that the incremental model checker of pGraph violates exactly
+     * the same invariants as a non-incremental check, and that its
+     * counter-examples are as short as the shortest ones of a full fixpoint
+     * check.
+     */
+    private static void assertCounterExamplesMatch(
+            TemporalInvariantSet invariants, PartitionGraph pGraph) {
+        IncrementalModelChecker checker = pGraph.getModelChecker();
+        for (ITemporalInvariant inv : invariants) {
+            BinaryInvariant binv = (BinaryInvariant) inv;
+            CExamplePath<Partition> incremental = checker
+                    .getCounterExample(inv);
+            CExamplePath<Partition> earlyExit = TemporalInvariantSet
+                    .getCounterExample(inv, pGraph);
+            CExamplePath<Partition> shortest = FsmModelChecker
+                    .getShortestCounterExample(binv, FsmModelChecker
+                            .runChecker(FsmModelChecker
+                                    .<Partition> newTracingStateSet(binv),
+                                    pGraph, false).entrySet());
+
+            assertEquals(earlyExit == null, incremental == null);
+            assertEquals(shortest == null, incremental == null);
+            if (incremental != null) {
+                assertEquals(shortest.path.size(), incremental.path.size());
+                assertTrue(incremental.path.size() <= earlyExit.path.size());
+            }
+        }
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
@@ -164,6 +445,50 @@ public class BisimulationTests extends SynopticTest {
 
     // TODO: test mergePartitions on graphs where merging is possible.
 
-    // TODO: test mergePartitions with invariant preservation.
+    /**
+     * Test that coarsening preserves the invariants, and that it merges
+     * partitions until no two partitions with the same event type can be
+     * merged without violating an invariant.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void mergePartitionsPreservesInvariantsTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "b", "--", "c",
+                "x", "y", "d", "--", "a", "y", "x", "b", "--", "c", "y", "d",
+                "--", "a", "x", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        // Start from the finest partitioning, with one partition per event.
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, false,
+                invariants);
+        Bisimulation.mergePartitions(pGraph);
+        assertNull(invariants.getAllCounterExamples(pGraph));
+
+        List<Partition> partitions = new ArrayList<Partition>(
+                pGraph.getNodes());
+        for (int i = 0; i < partitions.size(); i++) {
+            for (int j = i + 1; j < partitions.size(); j++) {
+                Partition p = partitions.get(i);
+                Partition q = partitions.get(j);
+                if (!KTails.kEquals(p, q, 1)) {
+                    continue;
+                }
+                IOperation rewind = pGraph.apply(new PartitionMerge(p, q));
+                assertTrue(invariants.getFirstCounterExample(pGraph) != null);
+                pGraph.apply(rewind);
+            }
+        }
+    }
 
 }
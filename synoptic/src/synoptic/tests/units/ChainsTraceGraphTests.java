@@ -24,6 +24,7 @@ import synoptic.model.EventNode;
 import synoptic.model.Relation;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 import synoptic.util.resource.ITotalResource;
 
@@ -227,6 +228,76 @@ public class ChainsTraceGraphTests extends SynopticTest {
         allEventRelations.put(eventD, relations);
     }
 
+    /**
+     * Tests that the transitions of an event node, which are created on
+     * demand, have the expected targets, relations, and labels.
+     */
+    @Test
+    public void eventNodeTransitionsTest() {
+        AbstractMain am = AbstractMain.getInstance();
+        boolean usePerformanceInfo = am.options.usePerformanceInfo;
+        am.options.usePerformanceInfo = true;
+        try {
+            a.getEvent().setTime(new ITotalResource(1));
+            b.getEvent().setTime(new ITotalResource(3));
+            c.getEvent().setTime(new ITotalResource(6));
+
+            Set<String> tr = new LinkedHashSet<String>();
+            tr.add("t");
+            tr.add("r");
+            a.addTransition(b, "t");
+            a.addTransition(c, tr);
+            a.addTransition(d, "r");
+            b.addTransition(c, "t");
+
+            List<Transition<EventNode>> trans = a.getAllTransitions();
+            assertEquals(3, trans.size());
+            assertEquals(3, a.getNumTransitions());
+            assertTrue(trans.get(0).getTarget() == b);
+            assertTrue(trans.get(1).getTarget() == c);
+            assertTrue(trans.get(2).getTarget() == d);
+            assertEquals(tr, trans.get(1).getRelation());
+            // Transitions with the same relations share the relation set.
+            assertTrue(trans.get(0).getRelation() == b.getAllTransitions()
+                    .get(0).getRelation());
+            for (Transition<EventNode> t : trans) {
+                assertTrue(t.getSource() == a);
+                assertEquals(Integer.valueOf(1), t.getCount());
+                assertEquals(1.0 / 3, t.getProbability(), 0.0);
+            }
+            assertEquals(new ITotalResource(2), trans.get(0).getTimeDelta());
+            assertEquals(new ITotalResource(5), trans.get(1).getTimeDelta());
+            assertTrue(trans.get(2).getLabels().getTimeDelta() == null);
+
+            // Transitions that are created by different calls are equal.
+            assertEquals(trans, a.getAllTransitions());
+            Set<Transition<EventNode>> transSet = new HashSet<Transition<EventNode>>(
+                    trans);
+            assertTrue(transSet.containsAll(a.getAllTransitions()));
+
+            assertEquals(new ArrayList<String>(tr), new ArrayList<String>(
+                    a.getNodeRelations()));
+            Set<String> rt = new LinkedHashSet<String>();
+            rt.add("r");
+            rt.add("t");
+            List<EventNode> targets = new ArrayList<EventNode>();
+            for (ITransition<EventNode> t : a
+                    .getTransitionsWithIntersectingRelations(rt)) {
+                targets.add(t.getTarget());
+            }
+            assertEquals(targets.toString(), 3, targets.size());
+            assertTrue(targets.get(0) == c && targets.get(1) == d
+                    && targets.get(2) == b);
+            assertTrue(a.getFirstSuccessorWithIntersectingRelations(rt) == c);
+            assertEquals(1, a.getTransitionsWithExactRelations(tr).size());
+            assertEquals(3, a.getTransitionsWithSubsetRelations(rt).size());
+            assertTrue(d.getAllTransitions().isEmpty());
+            assertTrue(d.getFirstSuccessorWithIntersectingRelations(rt) == null);
+        } finally {
+            am.options.usePerformanceInfo = usePerformanceInfo;
+        }
+    }
+
     /**
      * Tests that the graph keeps the order if the keepOrder-flag is set.
      */
@@ -16,6 +16,7 @@ import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ConstrainedInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
@@ -447,4 +448,41 @@ public class ConstrainedInvMinerTests extends PynopticTest {
 
         assertEquals(aAFbyc_time, aAFbyb_time.incrBy(bAFbyc_time));
     }
+
+    /**
+     * Mines the bounds of several invariants from a log with several traces,
+     * whose extreme deltas are in different traces, with one and with several
+     * worker threads.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBoundsAcrossTraces() throws Exception {
+        String[] log = new String[] { "a 1.0", "b 3.0", "a 4.0", "b 10.0",
+                "--", "a 5.0", "c 6.0", "b 6.5", "--", "a 0.0", "b 20.0",
+                "c 21.0", "--", "a 2.0", "b 4.0" };
+
+        AbstractMain main = AbstractMain.getInstance();
+        for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+            main.options.numThreads = numThreads;
+            TemporalInvariantSet minedInvs = genTimeInvariants(log, false,
+                    genDTimeParser());
+            main.options.numThreads = 1;
+
+            assertEquals(new DTotalResource("1.5"),
+                    getConstrainedInv(minedInvs, "a AFby b lower")
+                            .getConstraint().getThreshold());
+            assertEquals(new DTotalResource("20.0"),
+                    getConstrainedInv(minedInvs, "a AFby b upper")
+                            .getConstraint().getThreshold());
+
+            // Only the first trace has two a's.
+            assertEquals(new DTotalResource("3.0"),
+                    getConstrainedInv(minedInvs, "a IntrBy b lower")
+                            .getConstraint().getThreshold());
+            assertEquals(new DTotalResource("3.0"),
+                    getConstrainedInv(minedInvs, "a IntrBy b upper")
+                            .getConstraint().getThreshold());
+        }
+    }
 }
@@ -1,19 +1,28 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
 import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.event.Event;
@@ -135,6 +144,66 @@ public class ConstrainedRefinementTests extends PynopticTest {
                 TracingSet.IntrByLower);
     }
 
+    /**
+     * Returns the partitions that contain events.
+     */
+    private static Set<Partition> getParents(Set<EventNode> events) {
+        Set<Partition> parents = new HashSet<Partition>();
+        for (EventNode event : events) {
+            parents.add(event.getParent());
+        }
+        return parents;
+    }
+
+    /**
+     * Check that localized model checking finds a violation only in the
+     * subgraph where it occurs, and no longer finds it once refinement has
+     * split the partitions within the violation subpath.
+     */
+    @Test
+    public void localCounterExampleTest() throws Exception {
+        // Same events as in stitchDetectionTest()
+        String[] events = { "a 0", "b 3", "c 5", "d 6", "--", "a 10", "b 11",
+                "c 14", "d 16" };
+
+        Map<Partition, TracingStateSet<Partition>> tracingSets = genConstrTracingSets(
+                events, "a AFby d upper", TracingSet.AFbyUpper);
+
+        // Get the counter-example path at partition d
+        CExamplePath<Partition> cExPath = null;
+        for (Partition part : graph.getNodes()) {
+            if (part.getEType().equals(new StringEventType("d"))) {
+                cExPath = tracingSets.get(part).failpath()
+                        .toCounterexample(inv);
+            }
+        }
+
+        // Partition graph looks like (INIT -> a -> b -> c -> d -> TERM)
+        Set<EventNode> entryEvents = new HashSet<EventNode>(cExPath.path.get(
+                cExPath.violationStart - 1).getEventNodes());
+        Set<EventNode> startEvents = new HashSet<EventNode>(cExPath.path.get(
+                cExPath.violationStart).getEventNodes());
+        Set<EventNode> cEvents = new HashSet<EventNode>(cExPath.path.get(
+                cExPath.violationEnd - 1).getEventNodes());
+        Set<EventNode> endEvents = new HashSet<EventNode>(cExPath.path.get(
+                cExPath.violationEnd).getEventNodes());
+
+        assertTrue(FsmModelChecker.hasCounterExampleBetween(inv, graph,
+                getParents(entryEvents), getParents(startEvents),
+                getParents(endEvents)));
+
+        // The violation does not end before d
+        assertFalse(FsmModelChecker.hasCounterExampleBetween(inv, graph,
+                getParents(entryEvents), getParents(startEvents),
+                getParents(cEvents)));
+
+        Bisimulation.splitUntilAllInvsSatisfied(graph);
+
+        assertFalse(FsmModelChecker.hasCounterExampleBetween(inv, graph,
+                getParents(entryEvents), getParents(startEvents),
+                getParents(endEvents)));
+    }
+
     /**
      * Check that a partition split is constructed properly
      */
@@ -328,6 +397,38 @@ public class ConstrainedRefinementTests extends PynopticTest {
         assertTrue(hasTerminal);
     }
 
+    /**
+     * Tests that checking all constrained invariants in a single traversal
+     * finds the same counter-examples as checking each of them separately.
+     */
+    @Test
+    public void batchedCounterExamplesTest() throws Exception {
+        String[] events = { "a 0", "b 3", "c 5", "d 6", "e 9", "--", "a 10",
+                "b 11", "c 14", "d 16" };
+        graph = genConstrainedPartitionGraph(events, null);
+
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant tinv : graph.getInvariants()) {
+            invs.add((BinaryInvariant) tinv);
+        }
+
+        List<CExamplePath<Partition>> batched = FsmModelChecker
+                .getCounterExamples(invs, graph);
+        assertTrue(batched.size() == invs.size());
+        int numViolated = 0;
+        for (int i = 0; i < invs.size(); i++) {
+            CExamplePath<Partition> single = FsmModelChecker
+                    .getCounterExample(invs.get(i), graph);
+            CExamplePath<Partition> path = batched.get(i);
+            assertTrue((single == null) == (path == null));
+            if (path != null) {
+                assertEquals(single.path, path.path);
+                numViolated++;
+            }
+        }
+        assertTrue(numViolated > 0);
+    }
+
     /**
      * Common code for testing refinement of graphs aimed at a specific
      * constrained invariant type
@@ -589,4 +690,75 @@ public class ConstrainedRefinementTests extends PynopticTest {
         graph = genConstrainedPartitionGraph(events, TracingSet.IntrByLower);
         Bisimulation.splitUntilAllInvsSatisfied(graph);
     }
+
+    /**
+     * Returns the event type and the (trace, time) of each event of each
+     * partition of graph, sorted.
+     */
+    private List<String> getPartitionEvents() {
+        List<String> model = new ArrayList<String>();
+        for (Partition part : graph.getNodes()) {
+            List<String> partEvents = new ArrayList<String>();
+            for (EventNode event : part.getEventNodes()) {
+                partEvents.add(event.getTraceID() + ":" + event.getTime());
+            }
+            Collections.sort(partEvents);
+            model.add(part.getEType() + " " + partEvents);
+        }
+        Collections.sort(model);
+        return model;
+    }
+
+    /**
+     * Performs one refinement step on the counter-examples of the partition
+     * graph of events, with the given localSplitChecking option and a fixed
+     * random seed, checks that the step resolves the invariant invString, and
+     * returns the refined model (see getPartitionEvents()).
+     */
+    private List<String> splitCounterExample(String[] events, String invString,
+            boolean localSplitChecking) throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.localSplitChecking = localSplitChecking;
+        main.random = new Random(main.options.randomSeed);
+
+        graph = genConstrainedPartitionGraph(events, null);
+        inv = getConstrainedInv(graph.getInvariants(), invString);
+
+        assertTrue(TemporalInvariantSet.getCounterExample(inv, graph) != null);
+        Bisimulation.performSplits(0, graph, graph.getInvariants()
+                .getAllCounterExamples(graph));
+
+        // The split must resolve the invariant in the entire graph
+        assertTrue(TemporalInvariantSet.getCounterExample(inv, graph) == null);
+        return getPartitionEvents();
+    }
+
+    /**
+     * Check that a candidate split that satisfies a constrained invariant in
+     * the entire graph is applied even when it does not pass the (more
+     * conservative) local check of the violation subgraph, so that checking
+     * splits locally does not change the refined model when such a split
+     * exists.
+     */
+    @Test
+    public void localSplitCheckingRefinementTest() throws Exception {
+        // The candidate splits that resolve the "a AFby b upper"
+        // counter-example in the entire graph do not pass the local check.
+        String[] events = { "d 5", "b 9", "--", "a 2", "a 4", "c 6", "b 8",
+                "--", "c 3", "d 6" };
+
+        // The order of the candidate splits depends on the iteration order of
+        // the partitions' events, so repeat the comparison on new graphs.
+        try {
+            for (int i = 0; i < 5; i++) {
+                List<String> withoutLocal = splitCounterExample(events,
+                        "a AFby b upper", false);
+                List<String> withLocal = splitCounterExample(events,
+                        "a AFby b upper", true);
+                assertEquals(withoutLocal, withLocal);
+            }
+        } finally {
+            AbstractMain.getInstance().options.localSplitChecking = true;
+        }
+    }
 }
@@ -1,14 +1,19 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Test;
 
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.fsmcheck.AFbyLowerTracingSet;
 import synoptic.invariants.fsmcheck.ConstrainedHistoryNode;
@@ -17,6 +22,8 @@ import synoptic.invariants.fsmcheck.TracingStateSet;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.event.Event;
+import synoptic.model.event.StringEventType;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.PynopticTest;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.ITotalResource;
@@ -353,6 +360,66 @@ public class ConstrainedTracingSetTests extends PynopticTest {
                 TracingSet.IntrByLower);
     }
 
+    /**
+     * Check that the event transitions with the min and max time deltas
+     * between two partitions are found, and are kept up to date when the
+     * partitions are split and merged
+     */
+    @Test
+    public void minMaxEventTransitionsTest() throws Exception {
+        graph = genConstrainedPartitionGraph(eventsAP, null);
+        Partition x = getPartition("x");
+        Partition y = getPartition("y");
+        Set<String> relations = Collections
+                .singleton(Event.defTimeRelationStr);
+
+        // x -> y deltas are 11 and 60
+        assertEquals(2, x.getEventTransitionsWithExactRelations(y, relations)
+                .size());
+        assertMinMaxDelta(x, y, relations, false, 11);
+        assertMinMaxDelta(x, y, relations, true, 60);
+        assertTrue(x.getMinMaxEventTransitions(getPartition("z"), relations,
+                true).isEmpty());
+
+        // Split the first x out of its partition
+        EventNode firstX = null;
+        for (EventNode e : x.getEventNodes()) {
+            if (e.getTime().equals(new ITotalResource(0))) {
+                firstX = e;
+            }
+        }
+        PartitionSplit split = new PartitionSplit(x);
+        split.addEventToSplit(firstX);
+        IOperation rewind = graph.apply(split);
+        assertMinMaxDelta(x, y, relations, false, 60);
+        assertMinMaxDelta(x, y, relations, true, 60);
+        assertMinMaxDelta(firstX.getParent(), y, relations, true, 11);
+
+        // Merge the x partitions back
+        graph.apply(rewind);
+        assertMinMaxDelta(x, y, relations, true, 60);
+        assertMinMaxDelta(x, y, relations, false, 11);
+    }
+
+    private Partition getPartition(String eType) {
+        for (Partition part : graph.getNodes()) {
+            if (part.getEType().equals(new StringEventType(eType))) {
+                return part;
+            }
+        }
+        return null;
+    }
+
+    private void assertMinMaxDelta(Partition from, Partition to,
+            Set<String> relations, boolean findMax, int delta) {
+        List<ITransition<EventNode>> minMax = from.getMinMaxEventTransitions(
+                to, relations, findMax);
+        assertEquals(1, minMax.size());
+        assertEquals(new ITotalResource(delta), minMax.get(0).getTimeDelta());
+        assertTrue(minMax.get(0).getSource().getParent() == from);
+        assertTrue(minMax.get(0).getTarget().getParent() == to);
+    }
+
     /**
      * Check that it can be correctly detected whether or not a
      * ConstraintedTracingSet inhabits a subset of the states of another, which
@@ -1,13 +1,23 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.Test;
 
 import synoptic.algorithms.FloydWarshall;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Transition;
 import synoptic.model.event.Event;
 import synoptic.model.interfaces.IGraph;
 import synoptic.tests.SynopticTest;
@@ -28,6 +38,66 @@ public class FloydWarshallTests extends SynopticTest {
         assertTrue(tc.getTC().keySet().size() == 0);
     }
 
+    /**
+     * Compares the TC of a random graph with enough nodes that the reachability
+     * rows span several words, and with a cycle in it, with the reachability
+     * computed by a depth first search from every node.
+     */
+    @Test
+    public void largeRandomGraphTest() {
+        DAGsTraceGraph g = new DAGsTraceGraph();
+        Random random = new Random(42);
+        List<EventNode> nodes = new ArrayList<EventNode>();
+        for (int i = 0; i < 200; i++) {
+            EventNode node = new EventNode(new Event("e" + (i % 7)));
+            nodes.add(node);
+            g.add(node);
+        }
+
+        // A chain through all of the nodes, along with random forward edges,
+        // and one backward edge.
+        for (int i = 0; i < nodes.size() - 1; i++) {
+            EventNode node = nodes.get(i);
+            node.addTransition(new Transition<EventNode>(node,
+                    nodes.get(i + 1), Event.defTimeRelationStr));
+            for (int j = i + 2; j < nodes.size(); j++) {
+                if (random.nextInt(50) == 0) {
+                    node.addTransition(new Transition<EventNode>(node, nodes
+                            .get(j), Event.defTimeRelationStr));
+                }
+            }
+        }
+        nodes.get(180).addTransition(
+                new Transition<EventNode>(nodes.get(180), nodes.get(160),
+                        Event.defTimeRelationStr));
+
+        TransitiveClosure tc = FloydWarshall.warshallAlg(g,
+                Event.defTimeRelationSet);
+
+        for (EventNode m : nodes) {
+            Set<EventNode> reachables = new HashSet<EventNode>();
+            List<EventNode> toVisit = new ArrayList<EventNode>();
+            toVisit.add(m);
+            while (!toVisit.isEmpty()) {
+                EventNode n = toVisit.remove(toVisit.size() - 1);
+                for (EventNode child : n.getAllSuccessors()) {
+                    if (reachables.add(child)) {
+                        toVisit.add(child);
+                    }
+                }
+            }
+
+            for (EventNode n : nodes) {
+                assertEquals(reachables.contains(n), tc.isReachable(m, n));
+            }
+            if (reachables.isEmpty()) {
+                assertNull(tc.getReachableNodes(m));
+            } else {
+                assertEquals(reachables, tc.getReachableNodes(m));
+            }
+        }
+    }
+
     /**
      * Circular case
      */
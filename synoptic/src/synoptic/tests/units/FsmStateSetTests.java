@@ -469,4 +469,74 @@ public class FsmStateSetTests extends SynopticTest {
 
         // TODO: test multiple simultaneous AP machines
     }
+
+    /**
+     * Tests that transitioning into a reused state set is equivalent to
+     * transitioning a copy, and that it does not modify the source.
+     */
+    @Test
+    public void transitionFromTest() {
+        List<BinaryInvariant> invs = new LinkedList<BinaryInvariant>();
+        invs.add(new AlwaysFollowedInvariant("a", "b",
+                Event.defTimeRelationStr));
+        invs.add(new AlwaysPrecedesInvariant("a", "b",
+                Event.defTimeRelationStr));
+        invs.add(new NeverFollowedInvariant("a", "b",
+                Event.defTimeRelationStr));
+
+        invs.add(new AlwaysFollowedInvariant("z", "a",
+                Event.defTimeRelationStr));
+        invs.add(new AlwaysPrecedesInvariant("z", "a",
+                Event.defTimeRelationStr));
+        invs.add(new NeverFollowedInvariant("z", "a",
+                Event.defTimeRelationStr));
+
+        List<FsmStateSet<EventNode>> stateSets = new LinkedList<FsmStateSet<EventNode>>();
+        stateSets.add(new AFbyInvFsms<EventNode>(getEvery(invs, 0)));
+        stateSets.add(new APInvFsms<EventNode>(getEvery(invs, 1)));
+        stateSets.add(new NFbyInvFsms<EventNode>(getEvery(invs, 2)));
+
+        EventNode[] msgs = new EventNode[] { msgA, msgB, msgZ };
+        for (FsmStateSet<EventNode> empty : stateSets) {
+            FsmStateSet<EventNode> scratch = empty.copy();
+            for (EventNode first : msgs) {
+                FsmStateSet<EventNode> source = empty.copy();
+                source.setInitial(first);
+                for (EventNode second : msgs) {
+                    FsmStateSet<EventNode> sourceCopy = source.copy();
+                    FsmStateSet<EventNode> expected = source.copy();
+                    expected.transition(second);
+
+                    scratch.transitionFrom(source, second);
+                    assertTrue(expected.equals(scratch));
+                    assertTrue(sourceCopy.equals(source));
+                    assertTrue(scratch.isSubset(expected));
+                    assertTrue(expected.isSubset(scratch));
+                }
+            }
+
+            // Merging into an initial state set must not modify the states
+            // of other initial state sets.
+            FsmStateSet<EventNode> f1 = empty.copy();
+            f1.setInitial(msgB);
+            FsmStateSet<EventNode> f2 = empty.copy();
+            f2.setInitial(msgB);
+            FsmStateSet<EventNode> f3 = empty.copy();
+            f3.setInitial(msgA);
+            f1.mergeWith(f3);
+            FsmStateSet<EventNode> f4 = empty.copy();
+            f4.setInitial(msgB);
+            assertTrue(f2.equals(f4));
+        }
+    }
+
+    // Returns every third element of list, starting at index start.
+    private static List<BinaryInvariant> getEvery(List<BinaryInvariant> list,
+            int start) {
+        List<BinaryInvariant> result = new LinkedList<BinaryInvariant>();
+        for (int i = start; i < list.size(); i += 3) {
+            result.add(list.get(i));
+        }
+        return result;
+    }
 }
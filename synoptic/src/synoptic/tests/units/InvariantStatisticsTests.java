@@ -1,10 +1,13 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,7 +16,9 @@ import org.junit.runners.Parameterized.Parameters;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -217,6 +222,48 @@ public class InvariantStatisticsTests extends SynopticTest {
         assertTrue(trueInvs.sameInvariants(minedInvs));
     }
 
+    /**
+     * Mines invariants from a randomly generated log with one and with several
+     * worker threads, and checks that the invariants and their support counts
+     * are the same.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelMiningTest() throws Exception {
+        // Event types allowed in the log, with partition string at index 0.
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e",
+                "f", "g", "h", "i", "j" };
+        String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+        ChainsTraceGraph inputGraph = genInitialLinearGraph(log);
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.numThreads = 1;
+        TemporalInvariantSet serialInvs = miner.computeInvariants(inputGraph,
+                false, true);
+        main.options.numThreads = 4;
+        TemporalInvariantSet parallelInvs = miner.computeInvariants(
+                inputGraph, false, true);
+        main.options.numThreads = 1;
+
+        assertTrue(serialInvs.sameInvariants(parallelInvs));
+        assertEquals(getSupportCounts(serialInvs),
+                getSupportCounts(parallelInvs));
+    }
+
+    /**
+     * Returns the support count of each invariant in invs.
+     */
+    private static Map<ITemporalInvariant, Integer> getSupportCounts(
+            TemporalInvariantSet invs) {
+        Map<ITemporalInvariant, Integer> supportCounts = new HashMap<ITemporalInvariant, Integer>();
+        for (ITemporalInvariant inv : invs) {
+            supportCounts.put(inv,
+                    ((BinaryInvariant) inv).getStatistics().supportCount);
+        }
+        return supportCounts;
+    }
+
     /**
      * Mines invariants from a randomly generated log and then uses both model
      * checkers to check that every mined invariant actually holds.
@@ -1,11 +1,14 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
@@ -32,12 +35,18 @@ public class KTailsTests extends SynopticTest {
         // e1 =k= e2 should imply e2 =k= e1
         assertTrue(KTails.kEquals(e1, e2, k));
         assertTrue(KTails.kEquals(e2, e1, k));
+        Map<EventNode, Integer> fingerprints = KTails.getKTailFingerprints(
+                Arrays.asList(e1, e2), k);
+        assertEquals(fingerprints.get(e1), fingerprints.get(e2));
     }
 
     private static void testNotKEqual(EventNode e1, EventNode e2, int k) {
         // e1 !=k= e2 should imply e2 !=k= e1
         assertFalse(KTails.kEquals(e1, e2, k));
         assertFalse(KTails.kEquals(e2, e1, k));
+        Map<EventNode, Integer> fingerprints = KTails.getKTailFingerprints(
+                Arrays.asList(e1, e2), k);
+        assertFalse(fingerprints.get(e1).equals(fingerprints.get(e2)));
     }
 
     // Returns a parser to simplify graph generation from string expressions.
@@ -386,6 +395,38 @@ public class KTailsTests extends SynopticTest {
         return list;
     }
 
+    /**
+     * Tests k-equivalence of nodes whose k-strings are equal, but are
+     * constructed from different numbers of successors.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void mergedSuccessorsTest() throws Exception {
+        // In g1, "a" has two "x" children, with "y" and "z" children.
+        ChainsTraceGraph g1 = new ChainsTraceGraph();
+        List<EventNode> g1Nodes = addNodesToGraph(g1, new String[] { "a", "x",
+                "x", "y", "z" });
+        g1Nodes.get(0).addTransition(g1Nodes.get(1), Event.defTimeRelationStr);
+        g1Nodes.get(0).addTransition(g1Nodes.get(2), Event.defTimeRelationStr);
+        g1Nodes.get(1).addTransition(g1Nodes.get(3), Event.defTimeRelationStr);
+        g1Nodes.get(2).addTransition(g1Nodes.get(4), Event.defTimeRelationStr);
+
+        // In g2, "a" has one "x" child, with both a "y" and a "z" child.
+        ChainsTraceGraph g2 = new ChainsTraceGraph();
+        List<EventNode> g2Nodes = addNodesToGraph(g2, new String[] { "a", "x",
+                "y", "z" });
+        g2Nodes.get(0).addTransition(g2Nodes.get(1), Event.defTimeRelationStr);
+        g2Nodes.get(1).addTransition(g2Nodes.get(2), Event.defTimeRelationStr);
+        g2Nodes.get(1).addTransition(g2Nodes.get(3), Event.defTimeRelationStr);
+
+        for (int k = 1; k < 5; k++) {
+            testKEqual(g1Nodes.get(0), g2Nodes.get(0), k);
+        }
+        testKEqual(g1Nodes.get(1), g2Nodes.get(1), 1);
+        testNotKEqual(g1Nodes.get(1), g2Nodes.get(1), 2);
+    }
+
     /**
      * Tests k-equivalence of nodes in graphs that contain cycles.
      * 
@@ -2,6 +2,7 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -16,10 +17,13 @@ import org.junit.runners.Parameterized.Parameters;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
@@ -420,6 +424,55 @@ public class ModelCheckersTests extends SynopticTest {
         testLinearGraphCExample(events, inv, true, 4);
     }
 
+    /**
+     * Tests that checking several invariants in a single traversal finds a
+     * counter-example for exactly the invariants that are violated, and that
+     * these are no longer than the ones found by checking each invariant
+     * separately.
+     * 
+     * @throws InternalSynopticException
+     * @throws ParseException
+     */
+    @Test
+    public void batchedCounterExamplesTest() throws InternalSynopticException,
+            ParseException {
+        String[] events = new String[] { "a", "x", "b", "--", "a", "y", "a",
+                "--", "x", "b", "b", "--", "y", "x", "a", "b" };
+        ChainsTraceGraph inputGraph = genInitialLinearGraph(events);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, null);
+
+        String[] types = new String[] { "a", "b", "x", "y" };
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (String first : types) {
+            for (String second : types) {
+                if (first.equals(second)) {
+                    continue;
+                }
+                invs.add(new AlwaysFollowedInvariant(first, second,
+                        Event.defTimeRelationStr));
+                invs.add(new AlwaysPrecedesInvariant(first, second,
+                        Event.defTimeRelationStr));
+                invs.add(new NeverFollowedInvariant(first, second,
+                        Event.defTimeRelationStr));
+                invs.add(new InterruptedByInvariant(first, second,
+                        Event.defTimeRelationStr));
+            }
+        }
+
+        List<CExamplePath<Partition>> batched = FsmModelChecker
+                .getCounterExamples(invs, pGraph);
+        assertTrue(batched.size() == invs.size());
+        for (int i = 0; i < invs.size(); i++) {
+            CExamplePath<Partition> single = FsmModelChecker
+                    .getCounterExample(invs.get(i), pGraph);
+            CExamplePath<Partition> path = batched.get(i);
+            assertTrue((single == null) == (path == null));
+            if (path != null) {
+                assertTrue(path.path.size() <= single.path.size());
+            }
+        }
+    }
+
     // /////////////////////////
 
     // compareViolations is not used above because the NASA and FSM checkers
@@ -5,6 +5,8 @@ import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -22,6 +24,7 @@ import synoptic.invariants.concurrency.NeverConcurrentInvariant;
 import synoptic.invariants.miners.DAGWalkingPOInvMiner;
 import synoptic.invariants.miners.IPOInvariantMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.DAGsTraceGraph;
@@ -500,6 +503,66 @@ public class POLogInvariantMiningTests extends SynopticTest {
         }
     }
 
+    /**
+     * Returns a random log of numTraces traces, in each of which three
+     * processes exchange messages. The events of each process have one of two
+     * event types.
+     */
+    private static String genRandomPOLog(Random random, int numTraces,
+            int numEvents) {
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t > 0) {
+                log.append("--\n");
+            }
+            List<Integer> pids = new ArrayList<Integer>();
+            List<String> vtimes = genRandomVTimes(random, 3, numEvents, pids);
+            for (int n = 0; n < numEvents; n++) {
+                log.append(vtimes.get(n)).append(" ").append(pids.get(n))
+                        .append(" e").append(random.nextInt(2)).append("\n");
+            }
+        }
+        return log.toString();
+    }
+
+    /**
+     * Mines the ticket reservation example and random logs with one and with
+     * several worker threads, and checks that the mined invariants (including
+     * the concurrency invariants) are the same.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void mineInParallelTest() throws Exception {
+        Random random = new Random(11);
+        List<String> logs = new ArrayList<String>();
+        logs.add(ticketReservationTrace);
+        for (int i = 0; i < 4; i++) {
+            logs.add(genRandomPOLog(random, 2 + 3 * i, 12));
+        }
+
+        AbstractMain main = AbstractMain.getInstance();
+        for (String log : logs) {
+            TraceParser parser = newTraceParser();
+            ArrayList<EventNode> parsedEvents = parser.parseTraceString(log,
+                    "random-log", -1);
+            DAGsTraceGraph inputGraph = parser
+                    .generateDirectPORelation(parsedEvents);
+
+            TemporalInvariantSet serialInvs = miner
+                    .computeInvariants(inputGraph);
+            TemporalInvariantSet parallelInvs;
+            main.options.numThreads = 4;
+            try {
+                parallelInvs = miner.computeInvariants(inputGraph);
+            } finally {
+                main.options.numThreads = 1;
+            }
+
+            assertTrue(serialInvs.sameInvariants(parallelInvs));
+        }
+    }
+
     /**
      * Tests a randomly generated trace.
      * 
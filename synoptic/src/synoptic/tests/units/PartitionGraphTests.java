@@ -4,7 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,6 +15,7 @@ import java.util.Set;
 import org.junit.Test;
 
 import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
@@ -21,10 +25,13 @@ import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionSplitView;
+import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 
 public class PartitionGraphTests extends SynopticTest {
@@ -89,10 +96,167 @@ public class PartitionGraphTests extends SynopticTest {
         assertTrue(pGraph.getNodes().size() == 3);
     }
 
+    /**
+     * Tests that the cached transitions of partitions are kept up to date as
+     * partitions are split and merged.
+     */
+    @Test
+    public void transitionCachesFollowSplitsAndMergesTest() throws Exception {
+        String[] events = new String[] { "1 a", "2 b", "3 c", "--", "1 a",
+                "2 b", "3 d", "--", "1 a", "2 c" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+
+        String traceStr = concatinateWithNewlines(events);
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(traceStr,
+                testName.getMethodName(), -1);
+        ChainsTraceGraph inputGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+
+        // Fill the caches.
+        assertCachedTransitionsMatchEvents(pGraph);
+        Partition pA = getNodeByName(pGraph, new StringEventType("a"));
+        assertTrue(pA.getAllTransitions() == pA.getAllTransitions());
+
+        // Split the second 'a' (followed by 'b d') and the second 'b' out of
+        // their partitions.
+        PartitionSplit splitA = new PartitionSplit(pA);
+        splitA.addEventToSplit(parsedEvents.get(3));
+        IOperation rewindA = pGraph.apply(splitA);
+        assertCachedTransitionsMatchEvents(pGraph);
+        Partition pB = getNodeByName(pGraph, new StringEventType("b"));
+        PartitionSplit splitB = new PartitionSplit(pB);
+        splitB.addEventToSplit(parsedEvents.get(4));
+        IOperation rewindB = pGraph.apply(splitB);
+        assertEquals(8, pGraph.getNodes().size());
+        assertCachedTransitionsMatchEvents(pGraph);
+
+        // Undo the splits.
+        pGraph.apply(rewindB);
+        assertCachedTransitionsMatchEvents(pGraph);
+        pGraph.apply(rewindA);
+        assertEquals(6, pGraph.getNodes().size());
+        assertCachedTransitionsMatchEvents(pGraph);
+    }
+
+    /**
+     * Checks that the (cached) transitions of every partition in pGraph lead
+     * to exactly the partitions of the successors of its events.
+     */
+    private void assertCachedTransitionsMatchEvents(PartitionGraph pGraph) {
+        for (Partition p : pGraph.getNodes()) {
+            Set<Partition> expected = new HashSet<Partition>();
+            for (EventNode e : p.getEventNodes()) {
+                for (EventNode succ : e.getAllSuccessors()) {
+                    expected.add(succ.getParent());
+                }
+            }
+
+            Set<Partition> targets = new HashSet<Partition>();
+            for (ITransition<Partition> t : p.getAllTransitions()) {
+                targets.add(t.getTarget());
+            }
+            assertEquals(expected, targets);
+            assertEquals(expected.size(), p.getAllTransitions().size());
+
+            targets.clear();
+            for (String r : pGraph.getRelations()) {
+                Set<String> relations = new HashSet<String>();
+                relations.add(r);
+                for (ITransition<Partition> t : p
+                        .getTransitionsWithExactRelations(relations)) {
+                    targets.add(t.getTarget());
+                }
+            }
+            assertEquals(expected, targets);
+        }
+    }
+
     // TODO: Test the multi-split operation.
 
     // TODO: Test merge operation as a primary operation (not as a rewind).
 
+    /**
+     * Returns the weighted transitions of every node of g, described by the
+     * events of the node, the events of the target of each transition, and
+     * the count of each transition.
+     */
+    private static <T extends INode<T>> Map<Set<EventNode>, Map<Set<EventNode>, Integer>> getWeightedTransitions(
+            IGraph<T> g, Map<T, Set<EventNode>> events) {
+        Map<Set<EventNode>, Map<Set<EventNode>, Integer>> transitions = new HashMap<Set<EventNode>, Map<Set<EventNode>, Integer>>();
+        for (T node : g.getNodes()) {
+            Map<Set<EventNode>, Integer> counts = new HashMap<Set<EventNode>, Integer>();
+            for (ITransition<T> t : node.getWeightedTransitions()) {
+                counts.put(events.get(t.getTarget()), t.getCount());
+            }
+            transitions.put(events.get(node), counts);
+        }
+        return transitions;
+    }
+
+    /**
+     * Tests that the transitions of the nodes of a PartitionSplitView are the
+     * same as those of the partitions of the graph once the split is applied.
+     */
+    @Test
+    public void splitViewTransitionsMatchSplitGraphTest() throws Exception {
+        String[] events = new String[] { "1 a", "2 b", "3 c", "--", "1 a",
+                "2 b", "3 d", "--", "1 a", "2 c" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+
+        String traceStr = concatinateWithNewlines(events);
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(traceStr,
+                testName.getMethodName(), -1);
+        ChainsTraceGraph inputGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+
+        // Split the second 'b' (followed by 'd') out of its partition.
+        Partition pB = getNodeByName(pGraph, new StringEventType("b"));
+        PartitionSplit split = new PartitionSplit(pB);
+        split.addEventToSplit(parsedEvents.get(4));
+        PartitionMultiSplit multiSplit = new PartitionMultiSplit(split);
+
+        PartitionSplitView view = new PartitionSplitView(pGraph,
+                pGraph.getAdjacencySnapshot(), multiSplit);
+        Map<PartitionSplitView.Node, Set<EventNode>> viewEvents = new HashMap<PartitionSplitView.Node, Set<EventNode>>();
+        Set<String> relations = Collections
+                .singleton(Event.defTimeRelationStr);
+        for (PartitionSplitView.Node node : view.getNodes()) {
+            viewEvents.put(node, node.getEventNodes());
+
+            // All of the transitions are along the time relation.
+            assertEquals(node.getAllTransitions(),
+                    node.getTransitionsWithExactRelations(relations));
+            assertEquals(node.getAllTransitions(),
+                    node.getTransitionsWithSubsetRelations(relations));
+            assertEquals(node.getAllTransitions(),
+                    node.getTransitionsWithIntersectingRelations(relations));
+            assertTrue(node.getTransitionsWithIntersectingRelations(
+                    Collections.<String> emptySet()).isEmpty());
+        }
+        Map<Set<EventNode>, Map<Set<EventNode>, Integer>> viewTransitions = getWeightedTransitions(
+                view, viewEvents);
+
+        pGraph.apply(multiSplit);
+        Map<Partition, Set<EventNode>> partitionEvents = new HashMap<Partition, Set<EventNode>>();
+        for (Partition p : pGraph.getNodes()) {
+            partitionEvents.put(p, p.getEventNodes());
+        }
+        assertEquals(getWeightedTransitions(pGraph, partitionEvents),
+                viewTransitions);
+    }
+
     private <T extends INode<T>> T getNodeByName(IGraph<T> g, EventType nodeName) {
         for (T node : g.getNodes()) {
             if (node.getEType().equals(nodeName)) {
@@ -149,6 +313,54 @@ public class PartitionGraphTests extends SynopticTest {
         }
     }
 
+    /**
+     * Checks that the bounded predicted paths of a cyclic graph are found one
+     * at a time, in the same order as by getAllBoundedPredictedPaths(), and
+     * that the limits on the number of paths and their length are respected.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void boundedPredictedPathsLimitsTest() throws Exception {
+        String[] events = new String[] { "1 0 a", "2 0 b", "3 0 a", "4 0 c",
+                "1 1 a", "2 1 c", "1 2 b", "2 2 b", "3 2 a" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<nodename>)(?<TYPE>)$");
+        parser.setPartitionsMap("\\k<nodename>");
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser, miner,
+                false);
+
+        List<List<Partition>> allPaths = new ArrayList<List<Partition>>(
+                pGraph.getAllBoundedPredictedPaths());
+        assertTrue(allPaths.size() > 10);
+
+        // Limit the number of paths.
+        List<List<Partition>> paths = new ArrayList<List<Partition>>();
+        Iterator<List<Partition>> pathsIter = pGraph.getBoundedPredictedPaths(
+                10, 0);
+        while (pathsIter.hasNext()) {
+            paths.add(pathsIter.next());
+        }
+        assertEquals(allPaths.subList(0, 10), paths);
+
+        // Limit the length of paths.
+        List<List<Partition>> shortPaths = new ArrayList<List<Partition>>();
+        for (List<Partition> path : allPaths) {
+            if (path.size() <= 6) {
+                shortPaths.add(path);
+            }
+        }
+        assertTrue(shortPaths.size() < allPaths.size());
+        paths.clear();
+        pathsIter = pGraph.getBoundedPredictedPaths(0, 6);
+        while (pathsIter.hasNext()) {
+            paths.add(pathsIter.next());
+        }
+        assertEquals(shortPaths, paths);
+    }
+
     /**
      * Make sure an exception is thrown upon passing an invalid parameter.
      * 
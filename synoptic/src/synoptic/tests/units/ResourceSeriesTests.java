@@ -2,14 +2,19 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import synoptic.tests.SynopticTest;
+import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.DTotalResource;
 import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
 import synoptic.util.resource.ResourceSeries;
 import synoptic.util.resource.WrongResourceTypeException;
 
@@ -254,4 +259,47 @@ public class ResourceSeriesTests extends SynopticTest {
 
         assertEquals(new ITotalResource(5, "key"), resources.computeMax());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the computations over a series of long values, whose mode is the
+     * first value to reach the largest count.
+     */
+    @Test
+    public void longValuesTest() {
+        ResourceSeries<LTotalResource> series = new ResourceSeries<LTotalResource>();
+        long[] values = { 7, 3000000000L, 3, 3, 7, 3000000000L, 1 };
+        for (long v : values) {
+            series.addDelta(new LTotalResource(v));
+        }
+
+        assertEquals(7, series.size());
+        // 3 is the first value to occur twice, 7 the first to occur thrice.
+        assertEquals(new LTotalResource(3), series.computeMode());
+        series.addDelta(new LTotalResource(7));
+        assertEquals(new LTotalResource(7), series.computeMode());
+
+        assertEquals(new LTotalResource(1), series.computeMin());
+        assertEquals(new LTotalResource(3000000000L), series.computeMax());
+        assertEquals(new LTotalResource(6000000028L / 8), series.computeMean());
+        // The sorted values are 1 3 3 7 7 7 3000000000 3000000000.
+        assertEquals(new LTotalResource(7), series.computeMedian());
+    }
+
+    /**
+     * Tests that a series of resources of different types keeps all of them.
+     */
+    @Test
+    public void mixedResourcesTest() {
+        ResourceSeries<AbstractResource> series = new ResourceSeries<AbstractResource>();
+        series.addDelta(new ITotalResource(1));
+        series.addDelta(new ITotalResource(2));
+        series.addDelta(new LTotalResource(3));
+
+        List<AbstractResource> deltas = series.getAllDeltas();
+        assertEquals(3, deltas.size());
+        assertEquals(new ITotalResource(1), deltas.get(0));
+        assertEquals(new ITotalResource(2), deltas.get(1));
+        assertTrue(deltas.get(2) instanceof LTotalResource);
+        assertEquals(new LTotalResource(3), deltas.get(2));
+    }
+}
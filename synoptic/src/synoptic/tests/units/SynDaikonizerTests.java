@@ -2,7 +2,9 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -12,6 +14,7 @@ import daikon.inv.binary.twoScalar.IntEqual;
 import daikon.inv.binary.twoScalar.LinearBinary;
 import daikonizer.DaikonInvariants;
 
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.model.state.State;
 import synoptic.model.state.SynDaikonizer;
@@ -114,6 +117,39 @@ public class SynDaikonizerTests extends SynopticTest {
         fail("There is no LinearBinary invariant: foo - bar + 1 = 0");
     }
     
+    /**
+     * Checks that the invariants of several lists of states are returned in
+     * order, and that equal lists share the same (cached) invariants.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void cachedEnterInvariantsTest() throws ParseException {
+        State s1 = new State("x=1,y=2");
+        State s2 = new State("x=2,y=4");
+        State s3 = new State("x=5,y=1");
+        List<List<State>> statesLists = new ArrayList<List<State>>();
+        statesLists.add(Arrays.asList(s1, s2));
+        statesLists.add(Arrays.asList(s3));
+        statesLists.add(Arrays.asList(new State("x=1,y=2"), s2));
+        statesLists.add(new ArrayList<State>());
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.numThreads = 4;
+        List<DaikonInvariants> invs = SynDaikonizer
+                .getDaikonEnterInvariants(statesLists);
+        main.options.numThreads = 1;
+
+        assertEquals(4, invs.size());
+        assertSame(invs.get(0), invs.get(2));
+        assertNotSame(invs.get(0), invs.get(1));
+        assertNotSame(invs.get(0), invs.get(3));
+
+        List<DaikonInvariants> cachedInvs = SynDaikonizer
+                .getDaikonEnterInvariants(statesLists.subList(1, 2));
+        assertSame(invs.get(1), cachedInvs.get(0));
+    }
+    
     private DaikonInvariants getDaikonInvariants(State... states) {
         SynDaikonizer daikonizer = new SynDaikonizer();
         for (State state : states) {
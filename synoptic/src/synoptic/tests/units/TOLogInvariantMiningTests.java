@@ -427,6 +427,28 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         assertTrue(trueInvs3.sameInvariants(minedInvs3));
     }
 
+    /**
+     * Tests that the miner mines the same invariants as the transitive closure
+     * miner from a random log with more event types than the initial capacity
+     * of the count matrices used by the counting miners.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void mineManyEventTypesTest() throws Exception {
+        // Event types allowed in the log, with partition string at index 0.
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e",
+                "f", "g", "h", "i", "j", "k", "l" };
+        String[] log = genRandomLog(eventTypes);
+
+        ChainsTraceGraph inputGraph = genInitialLinearGraph(log);
+        TemporalInvariantSet minedInvs = filterIntrByInvariants(miner
+                .computeInvariants(inputGraph, false, false));
+        TemporalInvariantSet trueInvs = filterIntrByInvariants(new TransitiveClosureInvMiner(
+                false).computeInvariants(inputGraph, false, false));
+        assertTrue(trueInvs.sameInvariants(minedInvs));
+    }
+
     /**
      * Mines invariants from a randomly generated log and then uses both model
      * checkers to check that every mined invariant actually holds.
@@ -6,6 +6,13 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,7 +21,9 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -24,6 +33,9 @@ import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Relation;
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
@@ -497,6 +509,126 @@ public class TraceParserTests extends SynopticTest {
         parser.generateDirectPORelation(events);
     }
 
+    /**
+     * Parse a log in which several records have the same vector time clocks,
+     * and check that these records share one VectorTime instance within a
+     * parse, but not across parses.
+     */
+    @Test
+    public void parseSharedVTimeTest() throws ParseException {
+        String traceStr = "1,1,2 a\n01,1,2 b\n2,2,2 c\n";
+        parser.addRegex("^(?<VTIME>)(?<TYPE>)$");
+        List<EventNode> events = parser.parseTraceString(traceStr, "test", -1);
+        assertTrue(events.get(0).getTime() == events.get(1).getTime());
+        assertTrue(events.get(0).getTime() != events.get(2).getTime());
+
+        List<EventNode> reparsed = parser.parseTraceString(traceStr, "test",
+                -1);
+        assertTrue(reparsed.get(0).getTime() != events.get(0).getTime());
+        assertTrue(reparsed.get(0).getTime().equals(events.get(0).getTime()));
+    }
+
+    /**
+     * Returns a random trace of numProcesses processes that exchange messages,
+     * with vector times. The lines of the trace are in the order in which the
+     * events occurred (order 0), grouped by process (order 1), or shuffled
+     * (order 2).
+     */
+    private static String randomVTimeTrace(Random random, int numProcesses,
+            int numEvents, int order) {
+        List<List<String>> processLines = new ArrayList<List<String>>();
+        for (int p = 0; p < numProcesses; p++) {
+            processLines.add(new ArrayList<String>());
+        }
+
+        List<Integer> pids = new ArrayList<Integer>();
+        List<String> vtimes = genRandomVTimes(random, numProcesses, numEvents,
+                pids);
+        List<String> lines = new ArrayList<String>();
+        for (int n = 0; n < numEvents; n++) {
+            String line = vtimes.get(n) + " e" + random.nextInt(3);
+            lines.add(line);
+            processLines.get(pids.get(n)).add(line);
+        }
+
+        if (order == 1) {
+            lines.clear();
+            for (List<String> pLines : processLines) {
+                lines.addAll(pLines);
+            }
+        } else if (order == 2) {
+            Collections.shuffle(lines, random);
+        }
+
+        StringBuilder traceStr = new StringBuilder();
+        for (String line : lines) {
+            traceStr.append(line).append("\n");
+        }
+        return traceStr.toString();
+    }
+
+    /**
+     * Checks that generateDirectPORelation() finds the same direct successors
+     * and process-local successors as EventNode.getDirectPOSuccessors(), for
+     * random traces with and without interpreted event types (pids), whose
+     * lines are in different orders.
+     */
+    @Test
+    public void generateDirectPORelationTest() throws ParseException {
+        Random random = new Random(17);
+        for (int t = 0; t < 12; t++) {
+            String traceStr = randomVTimeTrace(random, 4, 80, t % 3);
+            boolean interpret = (t / 3) % 2 == 0;
+
+            List<EventNode> events = parseVTimeTrace(traceStr, interpret,
+                    true);
+            List<EventNode> expectedEvents = parseVTimeTrace(traceStr,
+                    interpret, false);
+            for (int i = 0; i < events.size(); i++) {
+                List<Integer> expected = new ArrayList<Integer>();
+                for (EventNode succ : EventNode.getDirectPOSuccessors(
+                        expectedEvents.get(i), expectedEvents)) {
+                    expected.add(expectedEvents.indexOf(succ));
+                }
+                List<Integer> actual = new ArrayList<Integer>();
+                for (EventNode succ : events.get(i).getAllSuccessors()) {
+                    if (!succ.isTerminal()) {
+                        actual.add(events.indexOf(succ));
+                    }
+                }
+                assertEquals(expected, actual);
+
+                assertEquals(expectedEvents.indexOf(expectedEvents.get(i)
+                        .getProcessLocalSuccessor()),
+                        events.indexOf(events.get(i)
+                                .getProcessLocalSuccessor()));
+            }
+        }
+    }
+
+    /**
+     * Parses traceStr with vector times and implicit PIDs, interpreting the
+     * event types if interpret is set, and generates its PO relation if
+     * generate is set.
+     */
+    private static List<EventNode> parseVTimeTrace(String traceStr,
+            boolean interpret, boolean generate) throws ParseException {
+        TraceParser vtimeParser = new TraceParser();
+        vtimeParser.addRegex("^(?<VTIME>)(?<TYPE>)$");
+        List<EventNode> events = vtimeParser.parseTraceString(traceStr,
+                "test", -1);
+        if (interpret) {
+            for (EventNode event : events) {
+                ((DistEventType) event.getEType())
+                        .interpretEType(new ArrayList<ChannelId>());
+            }
+        }
+        if (generate) {
+            vtimeParser.generateDirectPORelation(events);
+        }
+        return events;
+    }
+
     // TODO: Check setting of constants -- e.g. (?<NODETYPE=>master)
 
     /**
@@ -1487,4 +1619,269 @@ public class TraceParserTests extends SynopticTest {
 
         AbstractOptions.inputDelta = false;
     }
+
+    /**
+     * Parses lines with regular expressions whose literals are used to skip
+     * them, and checks that every line is parsed by the first expression that
+     * matches it.
+     */
+    @Test
+    public void parseWithLiteralDispatchTest() throws ParseException {
+        parser.addRegex("^x\\.y (?<TYPE>\\w+)$");
+        parser.addRegex("^xa*b (?<TYPE>\\w+)$");
+        parser.addRegex("^(?i)abc (?<TYPE>\\w+)$");
+        parser.addRegex("^q[)|]r (?<TYPE>\\w+)$");
+        parser.addRegex("^(?<TYPE>\\w+) \\d+ end$");
+        parser.addRegex("^(?<TYPE>.+)$");
+        String traceStr = "x.y one\n" + "xzy two\n" + "xb three\n"
+                + "b four\n" + "ABC five\n" + "q|r six\n" + "q)r seven\n"
+                + "eight 42 end\n" + "nine end";
+        List<EventNode> events = parser.parseTraceString(traceStr, "test", -1);
+
+        String[] expectedTypes = new String[] { "one", "xzy two", "three",
+                "b four", "five", "six", "seven", "eight", "nine end" };
+        assertEquals(expectedTypes.length, events.size());
+        for (int i = 0; i < expectedTypes.length; i++) {
+            assertEquals(expectedTypes[i], events.get(i).getEType()
+                    .getETypeLabel());
+        }
+    }
+
+    /**
+     * Parses the same log, which is longer than a batch of lines, serially and
+     * with several threads, and checks that the events, their order, line
+     * numbers, times and trace ids are identical.
+     */
+    @Test
+    public void parallelParsingTest() throws ParseException {
+        Random rand = new Random(5);
+        StringBuilder traceStr = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            int r = rand.nextInt(20);
+            if (r == 0) {
+                traceStr.append("--\n");
+            } else if (r == 1) {
+                traceStr.append("# comment\n");
+            } else {
+                traceStr.append(rand.nextInt(100) + " p" + rand.nextInt(3)
+                        + " e" + rand.nextInt(10) + "\n");
+            }
+        }
+        AbstractOptions.inputDelta = true;
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.debugParse = false;
+
+        main.options.numThreads = 1;
+        List<EventNode> serial = parseSeparatedPartitions(traceStr.toString(),
+                -1);
+        List<EventNode> serialPrefix = parseSeparatedPartitions(
+                traceStr.toString(), 3000);
+        main.options.numThreads = 4;
+        List<EventNode> parallel = parseSeparatedPartitions(
+                traceStr.toString(), -1);
+        List<EventNode> parallelPrefix = parseSeparatedPartitions(
+                traceStr.toString(), 3000);
+        main.options.numThreads = 1;
+        AbstractOptions.inputDelta = false;
+
+        assertSameEvents(serial, parallel);
+        assertEquals(3000, serialPrefix.size());
+        assertSameEvents(serialPrefix, parallelPrefix);
+    }
+
+    private List<EventNode> parseSeparatedPartitions(String traceStr,
+            int linesToRead) throws ParseException {
+        parser = new TraceParser();
+        parser.addRegex("^#.*(?<HIDE=>true)$");
+        parser.addRegex("^(?<TIME>)(?<PROC>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        parser.setPartitionsMap("\\k<PROC>-\\k<SEPCOUNT>");
+        return parser.parseTraceString(traceStr, "test", linesToRead);
+    }
+
+    private static void assertSameEvents(List<EventNode> expected,
+            List<EventNode> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            EventNode e = expected.get(i);
+            EventNode a = actual.get(i);
+            assertEquals(e.getEType(), a.getEType());
+            assertEquals(e.getLineNum(), a.getLineNum());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getTraceID(), a.getTraceID());
+        }
+    }
+
+    /**
+     * Parses several log files into a trace graph, adding the traces of each
+     * file as soon as it has been parsed, and checks that the graph is the same
+     * as the one built from the list of all parsed events. A file that is
+     * listed twice must still contribute to a single trace.
+     */
+    @Test
+    public void parseIntoChainsTraceGraphTest() throws Exception {
+        List<String> logFilenames = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            File file = File.createTempFile("synoptic-trace", ".log");
+            file.deleteOnExit();
+            FileWriter writer = new FileWriter(file);
+            for (int j = 0; j <= i; j++) {
+                writer.write("a\nb" + j + "\nc\n");
+            }
+            writer.close();
+            logFilenames.add(file.getAbsolutePath());
+        }
+        logFilenames.add(logFilenames.get(0));
+
+        List<String> regExps = Arrays.asList("^(?<TYPE>)$");
+        for (int n = 3; n <= 4; n++) {
+            List<String> filenames = logFilenames.subList(0, n);
+            TraceParser batchParser = new TraceParser(regExps,
+                    AbstractOptions.partitionRegExpDefault, null, null);
+            List<EventNode> events = AbstractMain.parseEvents(batchParser,
+                    filenames);
+            ChainsTraceGraph expectedGraph = batchParser
+                    .generateDirectTORelation(events);
+
+            TraceParser streamParser = new TraceParser(regExps,
+                    AbstractOptions.partitionRegExpDefault, null, null);
+            ChainsTraceGraph graph = AbstractMain.parseIntoChainsTraceGraph(
+                    streamParser, filenames);
+
+            assertEquals(3, graph.getNumTraces());
+            assertEquals(n == 3 ? 20 : 23, graph.getNodes().size());
+            assertEquals(expectedGraph.getNodes().size(), graph.getNodes()
+                    .size());
+            assertTrue(expectedGraph.equalsWith(graph,
+                    new IBoolBinary<EventNode, EventNode>() {
+                        @Override
+                        public boolean eval(EventNode a, EventNode b) {
+                            return a.getEvent().equals(b.getEvent())
+                                    && a.getTraceID() == b.getTraceID();
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * Parses a log file with several separated traces into a trace graph, and
+     * checks that the trace of each partition is added to the graph as soon as
+     * the partition is complete (when only the events of the traces added so
+     * far are in the graph), and that the graph is the same as the one built
+     * from the list of all parsed events.
+     */
+    @Test
+    public void parseTraceFileIntoTest() throws Exception {
+        File file = File.createTempFile("synoptic-traces", ".log");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        for (int i = 0; i < 5; i++) {
+            writer.write("a\n");
+            for (int j = 0; j < i; j++) {
+                writer.write("b\n");
+            }
+            writer.write("c\n--\n");
+        }
+        writer.close();
+
+        List<String> regExps = Arrays.asList("^(?<TYPE>)$");
+        AbstractMain main = AbstractMain.getInstance();
+        for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+            main.options.numThreads = numThreads;
+            try {
+                TraceParser batchParser = new TraceParser(regExps,
+                        AbstractOptions.partitionRegExpDefault, "^--$", null);
+                ChainsTraceGraph expectedGraph = batchParser
+                        .generateDirectTORelation(batchParser.parseTraceFile(
+                                file, -1));
+
+                // The number of nodes in graph initially, and after the
+                // events of each trace were added.
+                final List<Integer> numNodes = new ArrayList<Integer>();
+                ChainsTraceGraph graph = new ChainsTraceGraph() {
+                    @Override
+                    public void addTrace(List<EventNode> events,
+                            Map<EventNode, Set<Relation>> eventRelations)
+                            throws ParseException {
+                        int size = numNodes.get(numNodes.size() - 1)
+                                + events.size();
+                        assertEquals(size, getNodes().size());
+                        numNodes.add(size);
+                        super.addTrace(events, eventRelations);
+                    }
+                };
+                numNodes.add(graph.getNodes().size());
+                parser = new TraceParser(regExps,
+                        AbstractOptions.partitionRegExpDefault, "^--$", null);
+                assertTrue(parser.partitionsByFile());
+                parser.parseTraceFileInto(file, graph, true);
+
+                assertEquals(6, numNodes.size());
+                assertEquals(5, graph.getNumTraces());
+                assertEquals(expectedGraph.getNodes().size(), graph
+                        .getNodes().size());
+                assertTrue(expectedGraph.equalsWith(graph,
+                        new IBoolBinary<EventNode, EventNode>() {
+                            @Override
+                            public boolean eval(EventNode a, EventNode b) {
+                                return a.getEvent().equals(b.getEvent())
+                                        && a.getTraceID() == b.getTraceID();
+                            }
+                        }));
+            } finally {
+                main.options.numThreads = 1;
+            }
+        }
+    }
+
+    /**
+     * Parses a log file with all kinds of line terminators, serially and with
+     * several threads, and checks that the events read back the same lines as
+     * a BufferedReader reads from the file, also after the file is closed.
+     */
+    @Test
+    public void parseFileLogLinesTest() throws Exception {
+        File file = File.createTempFile("synoptic-lines", ".log");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("a 1\nb\u00e9\u4e2d 2\r\nc 3\rd 4\r\n\re 5\n\nf 6"
+                .getBytes(Charset.defaultCharset()));
+        out.close();
+
+        List<String> expectedLines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file)));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                expectedLines.add(line);
+            }
+        }
+        reader.close();
+
+        AbstractMain main = AbstractMain.getInstance();
+        for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+            main.options.numThreads = numThreads;
+            parser = new TraceParser();
+            parser.addRegex("^$(?<HIDE=>true)");
+            parser.addRegex("^(?<TYPE>)(?<n>)$");
+            List<EventNode> events = parser.parseTraceFile(file, -1);
+            main.options.numThreads = 1;
+
+            assertEquals(expectedLines.size(), events.size());
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(expectedLines.get(i), events.get(i).getLine());
+                assertEquals(file.getAbsolutePath(), events.get(i)
+                        .getEvent().getFileName());
+            }
+            assertFalse(events.get(0).getEvent()
+                    .equals(events.get(1).getEvent()));
+
+            // Lines can still be read once the file has been closed.
+            assertEquals(1, parser.getLogFiles().size());
+            parser.getLogFiles().get(0).close();
+            assertEquals(expectedLines.get(1), events.get(1).getLine());
+            parser.getLogFiles().get(0).close();
+        }
+    }
 }
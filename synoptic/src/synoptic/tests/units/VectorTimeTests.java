@@ -2,6 +2,7 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -81,6 +82,21 @@ public class VectorTimeTests extends SynopticTest {
         v1.equals(v2);
     }
 
+    /**
+     * Clocks that are not small integers are compared by value.
+     */
+    @Test
+    public void equalityLargeClocksTest() {
+        AbstractResource v1, v2;
+
+        v1 = new VectorTime("1000,2,300000");
+        v2 = new VectorTime(Arrays.asList(new Integer[] { 1000, 2, 300000 }));
+        assertTrue(v1.equals(v2));
+        assertTrue(v1.hashCode() == v2.hashCode());
+        assertFalse(v1.lessThan(v2));
+        assertFalse(v1.equals(new VectorTime("1000,2,300001")));
+    }
+
     /**
      * Test the step() method.
      */
@@ -146,6 +162,36 @@ public class VectorTimeTests extends SynopticTest {
         assertFalse(v2.lessThan(v1));
     }
 
+    /**
+     * Test the compareClocks() method.
+     */
+    @Test
+    public void compareClocksTest() {
+        VectorTime v1, v2;
+        v1 = new VectorTime("1,2,3");
+        v2 = new VectorTime("1,2,4");
+        assertEquals(VectorTime.Ordering.LESS, v1.compareClocks(v2));
+        assertEquals(VectorTime.Ordering.GREATER, v2.compareClocks(v1));
+        assertEquals(VectorTime.Ordering.EQUAL,
+                v1.compareClocks(new VectorTime("1,2,3")));
+
+        v2 = new VectorTime("1,3,2");
+        assertEquals(VectorTime.Ordering.CONCURRENT, v1.compareClocks(v2));
+        assertEquals(VectorTime.Ordering.CONCURRENT, v2.compareClocks(v1));
+    }
+
+    /**
+     * Vectors of different length cannot be compared -- this throws an
+     * exception.
+     */
+    @Test(expected = NotComparableVectorsException.class)
+    public void compareClocksDiffLengthVectorsTest() {
+        VectorTime v1, v2;
+        v1 = new VectorTime("1,2,3,0");
+        v2 = new VectorTime("1,2,4");
+        v1.compareClocks(v2);
+    }
+
     /**
      * Vectors of different length cannot be compared -- this throws an
      * exception.
@@ -236,6 +282,24 @@ public class VectorTimeTests extends SynopticTest {
         assertTrue(v1.hashCode() != v2.hashCode());
     }
 
+    /**
+     * Events of different traces with identical vector times share a single
+     * VectorTime instance.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parsedVectorTimesInternedTest() throws ParseException {
+        String[] events = new String[] { "1,0 a", "1,1 b", "--", "1,0 a",
+                "0,1 b" };
+        List<EventNode> parsedEvents = parseLogEvents(events, parser);
+
+        assertSame(parsedEvents.get(0).getTime(), parsedEvents.get(2)
+                .getTime());
+        assertEquals(new VectorTime("1,1"), parsedEvents.get(1).getTime());
+        assertEquals(new VectorTime("0,1"), parsedEvents.get(3).getTime());
+    }
+
     /**
      * Test the determineIthEvent() method.
      * 
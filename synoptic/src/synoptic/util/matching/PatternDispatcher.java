@@ -0,0 +1,265 @@
+package synoptic.util.matching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first of a list of named patterns that matches an entire input
+ * string. For every pattern, the literal prefix and the longest literal that
+ * every matching string must contain are precomputed from the regular
+ * expression, so that most patterns that cannot match a string are skipped
+ * without running the regular expression. Each thread reuses its own matcher
+ * for every pattern, so a dispatcher can be shared by several threads.
+ */
+public class PatternDispatcher {
+    // Embedded flags, such as (?i) or (?x:...), change how the literals of a
+    // pattern match.
+    private static final Pattern embeddedFlags = Pattern
+            .compile("\\(\\?[idmsuxU-]+[:)]");
+
+    // Escapes that consist of a backslash and a single letter, and that do not
+    // match a literal.
+    private static final String simpleEscapes = "dDsSwWbBAGZztnrfaehHvVRX";
+
+    private final List<NamedPattern> patterns;
+
+    /** The group names of each pattern, in the order of the groups. */
+    private final String[][] groupNames;
+
+    /** The literal that each string matched by a pattern starts with. */
+    private final String[] prefixes;
+
+    /** The longest literal that each string matched by a pattern contains. */
+    private final String[] requiredLiterals;
+
+    private final ThreadLocal<NamedMatcher[]> matchers = new ThreadLocal<NamedMatcher[]>() {
+        @Override
+        protected NamedMatcher[] initialValue() {
+            return new NamedMatcher[patterns.size()];
+        }
+    };
+
+    /**
+     * Creates a dispatcher for a snapshot of patterns. Later changes to the
+     * list are not reflected in the dispatcher.
+     */
+    public PatternDispatcher(List<NamedPattern> patterns) {
+        this.patterns = new ArrayList<NamedPattern>(patterns);
+        int size = patterns.size();
+        groupNames = new String[size][];
+        prefixes = new String[size];
+        requiredLiterals = new String[size];
+        for (int i = 0; i < size; i++) {
+            NamedPattern pattern = patterns.get(i);
+            groupNames[i] = pattern.groupNames().toArray(new String[0]);
+
+            String[] literals = null;
+            if (pattern.flags() == 0) {
+                literals = findLiterals(pattern.standardPattern());
+            }
+            if (literals == null) {
+                prefixes[i] = "";
+                requiredLiterals[i] = "";
+            } else {
+                prefixes[i] = literals[0];
+                requiredLiterals[i] = literals[1];
+            }
+        }
+    }
+
+    /** Returns the number of patterns. */
+    public int size() {
+        return patterns.size();
+    }
+
+    /** Returns the group names of the i'th pattern, in group order. */
+    public String[] getGroupNames(int i) {
+        return groupNames[i];
+    }
+
+    /**
+     * Returns the index of the first pattern, starting with the one at index
+     * first, that matches the entire input, or -1 if none of them match. The
+     * groups of the match can be read from getMatcher(index), until the next
+     * call to match() from the same thread.
+     */
+    public int match(String input, int first) {
+        NamedMatcher[] threadMatchers = matchers.get();
+        for (int i = first; i < patterns.size(); i++) {
+            if (!mayMatch(i, input)) {
+                continue;
+            }
+            NamedMatcher matcher = threadMatchers[i];
+            if (matcher == null) {
+                matcher = patterns.get(i).matcher(input);
+                threadMatchers[i] = matcher;
+            } else {
+                matcher.reset(input);
+            }
+            if (matcher.matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the calling thread's matcher for the i'th pattern.
+     */
+    public NamedMatcher getMatcher(int i) {
+        return matchers.get()[i];
+    }
+
+    /**
+     * Whether the i'th pattern may match the entire input, judging by its
+     * literals only.
+     */
+    boolean mayMatch(int i, String input) {
+        if (!input.startsWith(prefixes[i])) {
+            return false;
+        }
+        String literal = requiredLiterals[i];
+        return literal == prefixes[i] || input.contains(literal);
+    }
+
+    /**
+     * Returns the literal prefix of regex and its longest literal outside of
+     * any group, which every string that regex matches in its entirety starts
+     * with and contains, respectively. Either may be empty. Returns null if
+     * regex is beyond this simple analysis, e.g., because it contains a
+     * top-level alternation.
+     */
+    static String[] findLiterals(String regex) {
+        if (embeddedFlags.matcher(regex).find()) {
+            return null;
+        }
+
+        String prefix = null;
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        boolean lastWasLiteral = false;
+        int depth = 0;
+        int n = regex.length();
+        int i = (n > 0 && regex.charAt(0) == '^') ? 1 : 0;
+
+        while (i < n) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                if (i + 1 >= n) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                i += 2;
+                if (!Character.isLetterOrDigit(escaped)) {
+                    if (depth == 0) {
+                        // An escaped metacharacter, such as \. or \(
+                        run.append(escaped);
+                        lastWasLiteral = true;
+                        continue;
+                    }
+                } else if (simpleEscapes.indexOf(escaped) < 0) {
+                    // Escapes that span more characters (e.g., \x41, \p{L},
+                    // back references or quoted sections).
+                    return null;
+                }
+            } else if (c == '[') {
+                i = skipCharClass(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                if (depth < 0) {
+                    return null;
+                }
+                i++;
+            } else if (depth > 0) {
+                // The contents of groups are not analyzed.
+                i++;
+                continue;
+            } else if (c == '|') {
+                return null;
+            } else if (c == '*' || c == '+' || c == '?' || c == '{') {
+                // The quantified literal is not required.
+                if (lastWasLiteral) {
+                    run.setLength(run.length() - 1);
+                }
+                if (c == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i < 0) {
+                        return null;
+                    }
+                }
+                i++;
+            } else if (c == '.' || c == '^' || c == '$') {
+                i++;
+            } else {
+                run.append(c);
+                lastWasLiteral = true;
+                i++;
+                continue;
+            }
+
+            // Anything but a literal ends the current run of literals.
+            if (prefix == null) {
+                prefix = run.toString();
+            }
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+            lastWasLiteral = false;
+        }
+
+        if (depth != 0) {
+            return null;
+        }
+        if (prefix == null) {
+            prefix = run.toString();
+        }
+        if (run.length() > longest.length()) {
+            longest = run.toString();
+        }
+        if (longest.equals(prefix)) {
+            longest = prefix;
+        }
+        return new String[] { prefix, longest };
+    }
+
+    /**
+     * Returns the index just past the character class that starts at index
+     * start of regex, or -1 if the class is not terminated.
+     */
+    private static int skipCharClass(String regex, int start) {
+        int n = regex.length();
+        int i = start + 1;
+        if (i < n && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < n && regex.charAt(i) == ']') {
+            // A leading ] is a literal.
+            i++;
+        }
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                i = skipCharClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+            } else if (c == ']') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+}
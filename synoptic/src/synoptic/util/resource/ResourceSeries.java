@@ -1,6 +1,7 @@
 package synoptic.util.resource;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -9,22 +10,47 @@ import java.util.Map;
 
 /**
  * Encapsulates a list of resource instances of the same type as identified by
- * the key that extend AbstractResource.
+ * the key that extend AbstractResource. <br />
+ * <br />
+ * A series of ITotalResource or LTotalResource instances (e.g., the time
+ * deltas of a transition in a log with integer times) stores just their values
+ * in a long[], and creates resource instances only for the results of the
+ * computations. A series of any other resource type, or of mixed types, stores
+ * the resource instances in a list.
  */
 public class ResourceSeries<ResourceType extends AbstractResource> implements
         Comparable<ResourceSeries<ResourceType>> {
+    /** The kinds of values that a series may store in a long[]. */
+    private static final int NO_VALUES = 0;
+    private static final int INT_VALUES = 1;
+    private static final int LONG_VALUES = 2;
+
+    /**
+     * The resources, or null while the series stores values (i.e., while
+     * valuesKind is not NO_VALUES).
+     */
     private List<ResourceType> resources;
+
+    /**
+     * The values of the resources, of the kind valuesKind, and their number.
+     * An empty series has no resources and stores no values.
+     */
+    private long[] values;
+    private int size;
+    private int valuesKind;
+
     boolean isSorted;
     private final String key;
 
     public ResourceSeries() {
-        resources = new ArrayList<ResourceType>();
-        isSorted = true;
-        key = "";
+        this("");
     }
 
     public ResourceSeries(String key) {
         resources = new ArrayList<ResourceType>();
+        values = null;
+        size = 0;
+        valuesKind = NO_VALUES;
         isSorted = true;
         this.key = key;
     }
@@ -34,16 +60,67 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     private void sort() {
         if (!isSorted) {
-            Collections.sort(resources);
+            if (valuesKind != NO_VALUES) {
+                Arrays.sort(values, 0, size);
+            } else {
+                Collections.sort(resources);
+            }
             isSorted = true;
         }
     }
 
+    /**
+     * Returns the number of resources in the series.
+     */
+    public int size() {
+        return valuesKind != NO_VALUES ? size : resources.size();
+    }
+
+    /**
+     * Creates the resource with the given value (of the kind valuesKind).
+     */
+    @SuppressWarnings("unchecked")
+    private ResourceType toResource(long value) {
+        if (valuesKind == INT_VALUES) {
+            return (ResourceType) new ITotalResource((int) value, key);
+        }
+        return (ResourceType) new LTotalResource(value, key);
+    }
+
+    /**
+     * Returns the kind of value that r can be stored as, or NO_VALUES.
+     */
+    private static int getValuesKind(AbstractResource r) {
+        if (r.getClass() == ITotalResource.class) {
+            return INT_VALUES;
+        }
+        if (r.getClass() == LTotalResource.class) {
+            return LONG_VALUES;
+        }
+        return NO_VALUES;
+    }
+
+    /**
+     * Switches the series from storing values to storing resources.
+     */
+    private void storeResources() {
+        resources = new ArrayList<ResourceType>(size);
+        for (int i = 0; i < size; i++) {
+            resources.add(toResource(values[i]));
+        }
+        values = null;
+        size = 0;
+        valuesKind = NO_VALUES;
+    }
+
     /**
      * @return mode delta resource for transition, null if transition has zero
      *         delta resources.
      */
     public ResourceType computeMode() {
+        if (valuesKind != NO_VALUES) {
+            return computeValuesMode();
+        }
 
         if (this.resources.isEmpty()) {
             return null;
@@ -72,19 +149,57 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
         return mostCommon;
     }
 
+    /**
+     * computeMode() for a series that stores values: the mode is the value
+     * that is the first to reach the largest count, in the order of the
+     * values.
+     */
+    private ResourceType computeValuesMode() {
+        // Count the occurrences of each distinct value in a sorted copy.
+        long[] distinct = Arrays.copyOf(values, size);
+        Arrays.sort(distinct);
+        int[] counts = new int[size];
+        int numDistinct = 0;
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || distinct[i] != distinct[numDistinct - 1]) {
+                distinct[numDistinct++] = distinct[i];
+            }
+            max = Math.max(max, ++counts[numDistinct - 1]);
+        }
+
+        // Find the value whose count is the first to reach max.
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < size; i++) {
+            int d = Arrays.binarySearch(distinct, 0, numDistinct, values[i]);
+            if (++counts[d] == max) {
+                return toResource(values[i]);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
     /**
      * @return median delta resource for transition, null if transition has zero
      *         delta resources.
      */
     @SuppressWarnings("unchecked")
     public ResourceType computeMedian() {
-        if (this.resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
 
         // Sort the list.
         sort();
 
+        if (valuesKind != NO_VALUES) {
+            int middle = size / 2;
+            if (size % 2 == 1) {
+                return toResource(values[middle]);
+            }
+            return mean(values[middle - 1], values[middle]);
+        }
+
         int middle = resources.size() / 2;
         if (resources.size() % 2 == 1) {
             // Odd length.
@@ -103,10 +218,22 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     @SuppressWarnings("unchecked")
     public ResourceType computeMean() {
-        if (resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
 
+        if (valuesKind != NO_VALUES) {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += values[i];
+            }
+            if (valuesKind == INT_VALUES) {
+                // Sum with the overflow of int arithmetic, like incrBy().
+                return toResource((int) sum / size);
+            }
+            return toResource(sum / size);
+        }
+
         // Create a zero valued starting point.
         ResourceType initial = (ResourceType) resources.get(0)
                 .getZeroResource();
@@ -141,8 +268,16 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
     @SuppressWarnings("unchecked")
     public ResourceType computeMed() {
         // Check for empty or size-one resource series
-        if (resources.isEmpty()) {
+        if (size() == 0) {
             return null;
+        }
+
+        if (valuesKind != NO_VALUES) {
+            int medianPos = (size - 1) / 2;
+            if (size % 2 == 0) {
+                return mean(values[medianPos], values[medianPos + 1]);
+            }
+            return toResource(values[medianPos]);
         } else if (resources.size() == 1) {
             return resources.get(0);
         }
@@ -170,10 +305,20 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     private ResourceType computeMinMax(boolean findMax) {
         // Check for empty resource series
-        if (resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
 
+        if (valuesKind != NO_VALUES) {
+            long minMax = values[0];
+            for (int i = 1; i < size; i++) {
+                if (findMax ? values[i] > minMax : values[i] < minMax) {
+                    minMax = values[i];
+                }
+            }
+            return toResource(minMax);
+        }
+
         // Start the running min/max resource with the first resource delta
         ResourceType minMaxResource = resources.get(0);
 
@@ -209,8 +354,42 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
         if (!r.key.equals(key)) {
             throw new WrongResourceTypeException(key, r);
         }
-        resources.add(r);
         isSorted = false;
+
+        int kind = getValuesKind(r);
+        if (valuesKind == NO_VALUES && kind != NO_VALUES
+                && resources.isEmpty()) {
+            // Store the values of the series, starting with this one.
+            resources = null;
+            values = new long[8];
+            valuesKind = kind;
+        } else if (valuesKind != NO_VALUES && kind != valuesKind) {
+            storeResources();
+        }
+
+        if (valuesKind == NO_VALUES) {
+            resources.add(r);
+            return;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (valuesKind == INT_VALUES) {
+            values[size++] = ((ITotalResource) r).value;
+        } else {
+            values[size++] = ((LTotalResource) r).value;
+        }
+    }
+
+    /**
+     * Returns the mean of two values (of the kind valuesKind), with the
+     * arithmetic of incrBy() and divBy().
+     */
+    private ResourceType mean(long v1, long v2) {
+        if (valuesKind == INT_VALUES) {
+            return toResource(((int) v1 + (int) v2) / 2);
+        }
+        return toResource((v1 + v2) / 2);
     }
 
     /**
@@ -226,10 +405,23 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
                 throw new WrongResourceTypeException(key, delta);
             }
         }
-        resources.addAll(deltas);
+        for (ResourceType delta : deltas) {
+            addDelta(delta);
+        }
     }
 
+    /**
+     * Returns the resources of the series. For a series that stores values,
+     * this is a new list of new resource instances.
+     */
     public List<ResourceType> getAllDeltas() {
+        if (valuesKind != NO_VALUES) {
+            List<ResourceType> deltas = new ArrayList<ResourceType>(size);
+            for (int i = 0; i < size; i++) {
+                deltas.add(toResource(values[i]));
+            }
+            return deltas;
+        }
         return resources;
     }
 
@@ -243,14 +435,25 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
 
         sort();
         o.sort();
-        cmp = ((Integer) resources.size()).compareTo(o.resources.size());
+        cmp = ((Integer) size()).compareTo(o.size());
         if (cmp != 0) {
             return cmp;
         }
 
+        if (valuesKind != NO_VALUES && valuesKind == o.valuesKind) {
+            for (int i = 0; i < size; i++) {
+                cmp = Long.compare(values[i], o.values[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        List<ResourceType> otherResources = o.getAllDeltas();
         int i = 0;
-        for (AbstractResource r : resources) {
-            cmp = r.compareTo(o.resources.get(i));
+        for (AbstractResource r : getAllDeltas()) {
+            cmp = r.compareTo(otherResources.get(i));
             if (cmp != 0) {
                 return cmp;
             }
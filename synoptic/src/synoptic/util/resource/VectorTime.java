@@ -1,8 +1,10 @@
 package synoptic.util.resource;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import synoptic.model.EventNode;
 
@@ -12,9 +14,21 @@ import synoptic.model.EventNode;
  * system is distributed, then a process is a host. Therefore, the vector
  * represents a point in time in a multiprocess (or distributed) execution. A
  * vector time is a special resource itself and has no key identifying it.
+ * Vector times are immutable, so identical ones may be shared.
  */
 public class VectorTime extends AbstractResource {
-    ArrayList<Integer> vector = new ArrayList<Integer>();
+    /**
+     * The possible orderings of two vector times, as determined by
+     * compareClocks().
+     */
+    public enum Ordering {
+        LESS, EQUAL, GREATER, CONCURRENT
+    }
+
+    private final int[] vector;
+
+    /** The hash code of the vector, computed once. */
+    private final int hash;
 
     /**
      * Determines and returns the ith event for node identified by nodeIndex in
@@ -30,7 +44,7 @@ public class VectorTime extends AbstractResource {
             if (!(etime instanceof VectorTime)) {
                 throw new WrongTimeTypeException();
             }
-            if (((VectorTime) etime).vector.get(nodeIndex) != i) {
+            if (((VectorTime) etime).vector[nodeIndex] != i) {
                 continue;
             }
             if (earliestEvent == null) {
@@ -63,24 +77,45 @@ public class VectorTime extends AbstractResource {
         if (events == null || events.size() == 0) {
             return null;
         }
-        LinkedList<List<EventNode>> map = new LinkedList<List<EventNode>>();
-
         AbstractResource e0time = events.get(0).getEvent().getTime();
         if (!(e0time instanceof VectorTime)) {
             throw new WrongTimeTypeException();
         }
 
         // The number of nodes is indicated by the length of the vector time.
-        int numNodes = ((VectorTime) e0time).vector.size();
+        int numNodes = ((VectorTime) e0time).vector.length;
+
+        // For each node, maps each i to the ith local event at the node, as
+        // determineIthEvent() determines it. These are all determined in a
+        // single pass over the events.
+        List<Map<Integer, EventNode>> ithEvents = new ArrayList<Map<Integer, EventNode>>(
+                numNodes);
+        for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
+            ithEvents.add(new HashMap<Integer, EventNode>());
+        }
+        for (EventNode e : events) {
+            AbstractResource etime = e.getEvent().getTime();
+            if (!(etime instanceof VectorTime)) {
+                throw new WrongTimeTypeException();
+            }
+            for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
+                Integer i = ((VectorTime) etime).vector[nodeIndex];
+                EventNode earliestEvent = ithEvents.get(nodeIndex).get(i);
+                if (earliestEvent == null
+                        || e.getTime().lessThan(earliestEvent.getTime())) {
+                    ithEvents.get(nodeIndex).put(i, e);
+                }
+            }
+        }
 
-        // For each node, for all i determine the ith local event at the node.
+        List<List<EventNode>> map = new ArrayList<List<EventNode>>(numNodes);
         EventNode e;
-        LinkedList<EventNode> eventList;
+        List<EventNode> eventList;
         for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
             int i = 1;
-            eventList = new LinkedList<EventNode>();
+            eventList = new ArrayList<EventNode>();
             while (true) {
-                e = determineIthEvent(nodeIndex, events, i);
+                e = ithEvents.get(nodeIndex).get(i);
                 if (e == null) {
                     // No ith event exists for nodeIndex.
                     break;
@@ -102,12 +137,7 @@ public class VectorTime extends AbstractResource {
     public VectorTime(String timeStr) throws IllegalArgumentException {
         // IB: Why is there no unique key to identify vector timestamps? Don't
         // you want these to be incomparable with other kinds of resources?
-        super("");
-        String[] times = timeStr.split(",");
-        for (String t : times) {
-            Integer i = Integer.parseInt(t);
-            vector.add(i);
-        }
+        this(parseClocks(timeStr));
     }
 
     /**
@@ -118,7 +148,11 @@ public class VectorTime extends AbstractResource {
      */
     public VectorTime(List<Integer> vector) throws IllegalArgumentException {
         super("");
-        this.vector.addAll(vector);
+        this.vector = new int[vector.size()];
+        for (int i = 0; i < this.vector.length; i++) {
+            this.vector[i] = vector.get(i);
+        }
+        hash = Arrays.hashCode(this.vector);
     }
 
     /**
@@ -128,7 +162,53 @@ public class VectorTime extends AbstractResource {
      */
     public VectorTime(Integer i) {
         super("");
-        vector.add(i);
+        vector = new int[] { i };
+        hash = Arrays.hashCode(vector);
+    }
+
+    /**
+     * Builds a VectorTime that takes ownership of vector.
+     */
+    private VectorTime(int[] vector) {
+        super("");
+        this.vector = vector;
+        hash = Arrays.hashCode(vector);
+    }
+
+    /**
+     * Returns the clocks of a vector time string that looks like "1,2,3".
+     */
+    public static int[] parseClocks(String timeStr)
+            throws IllegalArgumentException {
+        String[] times = timeStr.split(",");
+        int[] clocks = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            clocks[i] = Integer.parseInt(times[i]);
+        }
+        return clocks;
+    }
+
+    /**
+     * Builds a VectorTime from clocks, e.g., as returned by parseClocks(). The
+     * VectorTime takes ownership of clocks, which must not be modified
+     * afterwards.
+     */
+    public static VectorTime fromClocks(int[] clocks) {
+        return new VectorTime(clocks);
+    }
+
+    /**
+     * @return The number of clocks in the vector
+     */
+    public int getLength() {
+        return vector.length;
+    }
+
+    /**
+     * @return The clock at index
+     */
+    public int getClock(int index) {
+        return vector[index];
     }
 
     /*
@@ -141,38 +221,73 @@ public class VectorTime extends AbstractResource {
         if (!(t instanceof VectorTime)) {
             throw new NonComparableResourceException(this, t);
         }
-        VectorTime vTime = (VectorTime) t;
+        int[] other = ((VectorTime) t).vector;
 
         boolean foundStrictlyLess = false;
 
-        if (vector.size() != vTime.vector.size()) {
+        if (vector.length != other.length) {
             // Two vectors are only comparable if they have the same length.
             throw new NotComparableVectorsException(this, t);
         }
 
-        for (int i = 0; i < vector.size(); ++i) {
-            if (vector.get(i) < vTime.vector.get(i)) {
+        for (int i = 0; i < vector.length; ++i) {
+            if (vector[i] < other[i]) {
                 foundStrictlyLess = true;
-            } else if (vector.get(i) > vTime.vector.get(i)) {
+            } else if (vector[i] > other[i]) {
                 return false;
             }
         }
         return foundStrictlyLess;
     }
 
+    /**
+     * Determines in a single pass over the clocks whether this vector time is
+     * less than, equal to, greater than or concurrent with vTime.
+     * 
+     * @throws NotComparableVectorsException
+     *             if the vectors have different lengths
+     */
+    public Ordering compareClocks(VectorTime vTime) {
+        int[] other = vTime.vector;
+        if (vector.length != other.length) {
+            // Two vectors are only comparable if they have the same length.
+            throw new NotComparableVectorsException(this, vTime);
+        }
+
+        boolean foundLess = false;
+        boolean foundGreater = false;
+        for (int i = 0; i < vector.length; ++i) {
+            if (vector[i] < other[i]) {
+                if (foundGreater) {
+                    return Ordering.CONCURRENT;
+                }
+                foundLess = true;
+            } else if (vector[i] > other[i]) {
+                if (foundLess) {
+                    return Ordering.CONCURRENT;
+                }
+                foundGreater = true;
+            }
+        }
+        if (foundLess) {
+            return Ordering.LESS;
+        }
+        return foundGreater ? Ordering.GREATER : Ordering.EQUAL;
+    }
+
     /**
      * @return Whether or not this is a unit vector
      */
     public boolean isUnitVector() {
         boolean sawOne = false;
-        for (int i = 0; i < vector.size(); ++i) {
-            if (sawOne && vector.get(i) == 1) {
+        for (int i = 0; i < vector.length; ++i) {
+            if (sawOne && vector[i] == 1) {
                 return false;
             }
-            if (vector.get(i) == 1) {
+            if (vector[i] == 1) {
                 sawOne = true;
             }
-            if (vector.get(i) > 1) {
+            if (vector[i] > 1) {
                 return false;
             }
         }
@@ -183,7 +298,7 @@ public class VectorTime extends AbstractResource {
      * @return Whether or not the vector is of length 1
      */
     public boolean isSingular() {
-        return vector.size() == 1;
+        return vector.length == 1;
     }
 
     /**
@@ -193,9 +308,8 @@ public class VectorTime extends AbstractResource {
      * @return the newly created, incremented vtime
      */
     public VectorTime step(int index) {
-        List<Integer> vec = new ArrayList<Integer>();
-        vec.addAll(this.vector);
-        vec.set(index, vec.get(index) + 1);
+        int[] vec = vector.clone();
+        vec[index]++;
         return new VectorTime(vec);
     }
 
@@ -206,15 +320,7 @@ public class VectorTime extends AbstractResource {
      */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + (vector == null ? 0 : vector.hashCode());
-        if (vector != null) {
-            for (int i = 0; i < vector.size(); ++i) {
-                result += prime * result + vector.get(i).hashCode();
-            }
-        }
-        return result;
+        return hash;
     }
 
     /*
@@ -234,22 +340,11 @@ public class VectorTime extends AbstractResource {
             return false;
         }
         VectorTime other = (VectorTime) obj;
-        if (vector == null) {
-            if (other.vector != null) {
-                return false;
-            }
-        } else {
-            if (vector.size() != other.vector.size()) {
-                // Two vectors are only comparable if they have the same length.
-                throw new NotComparableVectorsException(this, other);
-            }
-            for (int i = 0; i < vector.size(); ++i) {
-                if (vector.get(i) != other.vector.get(i)) {
-                    return false;
-                }
-            }
+        if (vector.length != other.vector.length) {
+            // Two vectors are only comparable if they have the same length.
+            throw new NotComparableVectorsException(this, other);
         }
-        return true;
+        return hash == other.hash && Arrays.equals(vector, other.vector);
     }
 
     /*
@@ -259,7 +354,7 @@ public class VectorTime extends AbstractResource {
      */
     @Override
     public String toString() {
-        return vector.toString();
+        return Arrays.toString(vector);
     }
 
     /**
@@ -272,10 +367,7 @@ public class VectorTime extends AbstractResource {
         if (!(t instanceof VectorTime)) {
             throw new NonComparableResourceException(this, t);
         }
-        if (this.equals(t)) {
-            return 0;
-        }
-        if (this.lessThan(t)) {
+        if (compareClocks((VectorTime) t) == Ordering.LESS) {
             return -1;
         }
         return 0;
@@ -3,6 +3,7 @@ package synopticgwt.client.model;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -221,34 +222,55 @@ public class JSGraph implements MouseEventHandler<JSONode> {
 
         JSONode refinedNode = this.jsoGraph.getNode(refinedGraph
                 .getRefinedNode());
-        this.jsoGraph.removeNode(refinedGraph.getRefinedNode());
+        double refinedPosX = refinedNode.getLayoutPosX();
+        double refinedPosY = refinedNode.getLayoutPosY();
+
+        // Remove the edges and nodes that no longer exist. Removing a node
+        // also removes its edges.
+        for (GWTEdge edge : refinedGraph.getRemovedEdges()) {
+            this.jsoGraph.removeEdge(edge);
+            this.edges.remove(edge);
+        }
+        Set<GWTNode> removedNodes = new HashSet<GWTNode>();
+        for (GWTNode node : refinedGraph.getRemovedNodes()) {
+            this.jsoGraph.removeNode(node);
+            this.nodes.remove(node);
+            removedNodes.add(node);
+        }
+
+        // The removed nodes' edges are not listed in the delta, so drop them
+        // from the edges map here.
+        Iterator<GWTEdge> edgeIter = this.edges.keySet().iterator();
+        while (edgeIter.hasNext()) {
+            GWTEdge edge = edgeIter.next();
+            if (removedNodes.contains(edge.getSrc())
+                    || removedNodes.contains(edge.getDst())) {
+                edgeIter.remove();
+            }
+        }
 
         // Add any new nodes to the graph, and then
         // add any new edges to the graph. When that's all done,
         // redraw the graph.
         Set<GWTNode> newNodes = new HashSet<GWTNode>();
-        for (GWTNode node : refinedGraph.getGraph().getNodes()) {
-            if (!this.jsoGraph.containsNode(node)) {
-                newNodes.add(node);
-
-                // Add the nodes in the position where the refined node
-                // had been removed.
-                JSONode newJSONode = this.jsoGraph.addNode(node,
-                        refinedNode.getLayoutPosX(),
-                        refinedNode.getLayoutPosY());
-                newJSONode.attachRenderer();
-                newJSONode.attachEventHandler(this);
-                this.nodes.put(node, newJSONode);
-            }
+        for (GWTNode node : refinedGraph.getAddedNodes()) {
+            newNodes.add(node);
+
+            // Add the nodes in the position of the refined node.
+            JSONode newJSONode = this.jsoGraph.addNode(node, refinedPosX,
+                    refinedPosY);
+            newJSONode.attachRenderer();
+            newJSONode.attachEventHandler(this);
+            this.nodes.put(node, newJSONode);
         }
 
-        for (GWTEdge edge : refinedGraph.getGraph().getEdges()) {
-            if (newNodes.contains(edge.getSrc())
-                    || newNodes.contains(edge.getDst()))
-                this.edges.put(edge,
-                        this.jsoGraph.addEdge(edge, this.edgeLabelType));
+        for (GWTEdge edge : refinedGraph.getAddedEdges()) {
+            this.edges.put(edge,
+                    this.jsoGraph.addEdge(edge, this.edgeLabelType));
         }
 
+        // The refined node is laid out again along with the new nodes.
+        newNodes.add(refinedGraph.getRefinedNode());
         this.jsoGraph.reDraw(newNodes);
     }
 
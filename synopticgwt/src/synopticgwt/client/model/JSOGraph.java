@@ -25,6 +25,38 @@ public class JSOGraph extends JavaScriptObject {
                 .removeNode(node.@synopticgwt.shared.GWTNode::getPartitionNodeHashCode()());
     }-*/;
 
+    /**
+     * Removes the edge between the source and destination nodes of the given
+     * edge from the graph (and does nothing if it doesn't exist).
+     * 
+     * @param edge
+     *            The edge to be removed
+     */
+    public native final void removeEdge(GWTEdge edge) /*-{
+        var sourceNode = edge.@synopticgwt.shared.GWTEdge::getSrc()();
+        var source = sourceNode.@synopticgwt.shared.GWTNode::getPartitionNodeHashCodeStr()();
+        var destNode = edge.@synopticgwt.shared.GWTEdge::getDst()();
+        var dest = destNode.@synopticgwt.shared.GWTNode::getPartitionNodeHashCodeStr()();
+        for ( var i = 0; i < this.edges.length; i++) {
+            var e = this.edges[i];
+            if (e.source.id == source && e.target.id == dest) {
+                e.connection && e.connection.label.hide();
+                e.hide();
+                this.edges.splice(i, 1);
+
+                // Edges are added to both of their nodes.
+                var nodes = [ e.source, e.target ];
+                for ( var n = 0; n < nodes.length; n++) {
+                    var index = nodes[n].edges.indexOf(e);
+                    if (index >= 0) {
+                        nodes[n].edges.splice(index, 1);
+                    }
+                }
+                return;
+            }
+        }
+    }-*/;
+
     /**
      * @param node
      *            The node to be looked up within the graph.
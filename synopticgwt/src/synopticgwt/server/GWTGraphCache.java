@@ -0,0 +1,200 @@
+package synopticgwt.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.resource.AbstractResource;
+import synopticgwt.shared.GWTEdge;
+import synopticgwt.shared.GWTGraph;
+import synopticgwt.shared.GWTGraphDelta;
+import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTNode;
+
+/**
+ * Converts the partition graph of a session into GWTGraphs, and remembers the
+ * graph that was last sent to the client. The conversion of every partition
+ * (its node and its outgoing edges) is kept between calls, and is reused as
+ * long as the partition's transitions have not been recreated, i.e., as long
+ * as neither the partition nor its successors have changed. A refinement step
+ * therefore only converts the few partitions that it changed, and only sends
+ * the nodes and edges that changed to the client (as a GWTGraphDelta).
+ */
+public class GWTGraphCache {
+    /** The conversion of a partition into a GWTNode and its outgoing edges. */
+    private static final class PartitionConversion {
+        final GWTNode node;
+        /** The transitions (as cached by the partition) of the edges. */
+        final List<? extends ITransition<Partition>> transitions;
+        final List<GWTEdge> edges;
+
+        PartitionConversion(GWTNode node,
+                List<? extends ITransition<Partition>> transitions,
+                List<GWTEdge> edges) {
+            this.node = node;
+            this.transitions = transitions;
+            this.edges = edges;
+        }
+    }
+
+    /** The conversions of the partitions of the graph last sent to the client. */
+    private Map<Partition, PartitionConversion> sentConversions = new LinkedHashMap<Partition, PartitionConversion>();
+
+    public static GWTNode gwtNodeFromPartition(Partition p) {
+        return new GWTNode(p.getEType().toString(), p.hashCode());
+    }
+
+    /**
+     * Converts a partition graph into a GWTGraph, which is then considered to
+     * be the client's graph.
+     *
+     * @param partGraph
+     *            partition graph
+     * @return Equivalent GWTGraph
+     */
+    public GWTGraph toGWTGraph(PartitionGraph partGraph) {
+        sentConversions = convert(partGraph);
+
+        GWTGraph graph = new GWTGraph();
+        Set<GWTNode> nodes = new HashSet<GWTNode>();
+        for (PartitionConversion conversion : sentConversions.values()) {
+            if (nodes.add(conversion.node)) {
+                graph.addNode(conversion.node);
+            }
+            for (GWTEdge edge : conversion.edges) {
+                // Add the node to the graph so it can be connected if it
+                // doesn't exist.
+                if (nodes.add(edge.getDst())) {
+                    graph.addNode(edge.getDst());
+                }
+                graph.addEdge(edge);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Converts a partition graph, and returns the nodes and edges that changed
+     * since the client's graph. The new graph is then considered to be the
+     * client's graph.
+     *
+     * @param partGraph
+     *            partition graph
+     * @param refinedNode
+     *            the node that was refined
+     * @param unsatInvs
+     *            invariants that remain unsatisfied in partGraph
+     */
+    public GWTGraphDelta toGWTGraphDelta(PartitionGraph partGraph,
+            GWTNode refinedNode, GWTInvariantSet unsatInvs) {
+        Map<Partition, PartitionConversion> conversions = convert(partGraph);
+
+        List<GWTNode> addedNodes = new ArrayList<GWTNode>();
+        List<GWTNode> removedNodes = new ArrayList<GWTNode>();
+        List<GWTEdge> addedEdges = new ArrayList<GWTEdge>();
+        List<GWTEdge> removedEdges = new ArrayList<GWTEdge>();
+
+        for (Map.Entry<Partition, PartitionConversion> entry : sentConversions
+                .entrySet()) {
+            if (!conversions.containsKey(entry.getKey())) {
+                // The node's edges are removed along with it.
+                removedNodes.add(entry.getValue().node);
+            }
+        }
+        for (Map.Entry<Partition, PartitionConversion> entry : conversions
+                .entrySet()) {
+            PartitionConversion conversion = entry.getValue();
+            PartitionConversion sent = sentConversions.get(entry.getKey());
+            if (sent == null) {
+                addedNodes.add(conversion.node);
+                addedEdges.addAll(conversion.edges);
+            } else if (sent != conversion) {
+                for (GWTEdge edge : sent.edges) {
+                    if (!containsEdge(conversion.edges, edge)) {
+                        removedEdges.add(edge);
+                    }
+                }
+                for (GWTEdge edge : conversion.edges) {
+                    if (!containsEdge(sent.edges, edge)) {
+                        addedEdges.add(edge);
+                    }
+                }
+            }
+        }
+
+        sentConversions = conversions;
+        return new GWTGraphDelta(addedNodes, removedNodes, addedEdges,
+                removedEdges, refinedNode, unsatInvs);
+    }
+
+    /**
+     * Whether edges contains an edge that equals edge, and that has the same
+     * latency.
+     */
+    private static boolean containsEdge(List<GWTEdge> edges, GWTEdge edge) {
+        for (GWTEdge e : edges) {
+            if (e.equals(edge) && e.getLatency() == edge.getLatency()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the conversions of all of the partitions of partGraph, reusing
+     * the sent conversions of the partitions whose transitions have not been
+     * recreated since.
+     */
+    private Map<Partition, PartitionConversion> convert(PartitionGraph partGraph) {
+        Map<Partition, PartitionConversion> conversions = new LinkedHashMap<Partition, PartitionConversion>();
+        for (Partition pNode : partGraph.getNodes()) {
+            PartitionConversion conversion = sentConversions.get(pNode);
+            if (conversion == null
+                    || conversion.transitions != pNode.getAllTransitions()) {
+                conversion = convert(pNode);
+            }
+            conversions.put(pNode, conversion);
+        }
+        return conversions;
+    }
+
+    private static PartitionConversion convert(Partition pNode) {
+        GWTNode gwtPNode = gwtNodeFromPartition(pNode);
+
+        /*
+         * Get the list of adjacent nodes that have the current pNode as the
+         * source.
+         */
+        List<? extends ITransition<Partition>> adjacents = pNode
+                .getWeightedTransitions();
+
+        // For every adjacent node, calculate the likelihood of the
+        // transition, and add that to the graph's edge.
+        List<GWTEdge> edges = new ArrayList<GWTEdge>(adjacents.size());
+        for (ITransition<Partition> wTransition : adjacents) {
+            // The current adjacent partition.
+            GWTNode adjGWTPNode = gwtNodeFromPartition(wTransition.getTarget());
+
+            double transitionProb = wTransition.getProbability();
+            AbstractResource mean = wTransition.getDeltaSeries().computeMean();
+
+            GWTEdge edge;
+            if (mean == null) {
+                edge = new GWTEdge(gwtPNode, adjGWTPNode, transitionProb,
+                        wTransition.getCount());
+            } else {
+                double meanLatency = Double.parseDouble(mean.toString());
+                edge = new GWTEdge(gwtPNode, adjGWTPNode, transitionProb,
+                        wTransition.getCount(), meanLatency);
+            }
+            edges.add(edge);
+        }
+        return new PartitionConversion(gwtPNode, adjacents, edges);
+    }
+}
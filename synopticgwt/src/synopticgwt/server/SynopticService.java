@@ -45,8 +45,6 @@ import synoptic.model.PartitionGraph;
 import synoptic.model.export.DotExportFormatter;
 import synoptic.model.export.GraphExporter;
 import synoptic.model.interfaces.INode;
-import synoptic.model.interfaces.ITransition;
-import synoptic.util.resource.AbstractResource;
 import synopticgwt.client.ISynopticService;
 import synopticgwt.shared.GWTEdge;
 import synopticgwt.shared.GWTGraph;
@@ -90,13 +88,14 @@ public class SynopticService extends RemoteServiceServlet implements
     private Set<ITemporalInvariant> activeInvs;
     private List<CExamplePath<Partition>> counterExampleTraces;
     private ChainsTraceGraph traceGraph;
+    private GWTGraphCache gwtGraphCache;
     private int vID;
 
     // //////////////////////////////////////////////////////////////////////////////
     // Helper methods.
 
     private GWTNode gwtNodeFromPartition(Partition p) {
-        return new GWTNode(p.getEType().toString(), p.hashCode());
+        return GWTGraphCache.gwtNodeFromPartition(p);
     }
 
     /**
@@ -125,6 +124,8 @@ public class SynopticService extends RemoteServiceServlet implements
 
         activeInvs = new LinkedHashSet<ITemporalInvariant>();
         activeInvs.addAll(pGraph.getInvariants().getSet());
+
+        gwtGraphCache = new GWTGraphCache();
     }
 
     /**
@@ -150,6 +151,7 @@ public class SynopticService extends RemoteServiceServlet implements
         dstSession.setAttribute("activeInvs", activeInvs);
         dstSession.setAttribute("traceGraph", traceGraph);
         dstSession.setAttribute("counterExampleTraces", counterExampleTraces);
+        dstSession.setAttribute("gwtGraphCache", gwtGraphCache);
     }
 
     /**
@@ -229,76 +231,24 @@ public class SynopticService extends RemoteServiceServlet implements
         counterExampleTraces = (List<CExamplePath<Partition>>) session
                 .getAttribute("counterExampleTraces");
 
+        if (session.getAttribute("gwtGraphCache") == null) {
+            throw new Exception("session attribute 'gwtGraphCache' missing");
+        }
+        gwtGraphCache = (GWTGraphCache) session.getAttribute("gwtGraphCache");
+
         return;
     }
 
     /**
-     * Converts a partition graph into a GWTGraph
+     * Converts a partition graph into a GWTGraph, which the client is then
+     * assumed to display.
      * 
      * @param partGraph
      *            partition graph
      * @return Equivalent GWTGraph
      */
     private GWTGraph PGraphToGWTGraph(PartitionGraph partGraph) {
-        GWTGraph graph = new GWTGraph();
-
-        Set<Partition> nodeSet = partGraph.getNodes();
-        HashMap<Integer, GWTNode> nodeIds = new HashMap<Integer, GWTNode>();
-        GWTNode gwtPNode, adjGWTPNode;
-
-        // Iterate through all the nodes in the pGraph
-        for (Partition pNode : nodeSet) {
-            // Add the pNode to the GWTGraph
-            if (nodeIds.containsKey(pNode.hashCode())) {
-                gwtPNode = nodeIds.get(pNode.hashCode());
-            } else {
-                gwtPNode = gwtNodeFromPartition(pNode);
-                nodeIds.put(pNode.hashCode(), gwtPNode);
-                graph.addNode(gwtPNode);
-            }
-
-            /*
-             * Get the list of adjacent nodes that have the current pNode as the
-             * source.
-             */
-            List<? extends ITransition<Partition>> adjacents = pNode
-                    .getWeightedTransitions();
-
-            // For every adjacent node, calculate the likelihood of the
-            // transition, and add that to the graph's edge.
-            for (ITransition<Partition> wTransition : adjacents) {
-                // The current adjacent partition.
-                Partition adjPNode = wTransition.getTarget();
-
-                if (nodeIds.containsKey(adjPNode.hashCode())) {
-                    adjGWTPNode = nodeIds.get(adjPNode.hashCode());
-                } else {
-                    // Add the node to the graph so it can be connected
-                    // if it doesn't exist.
-                    adjGWTPNode = gwtNodeFromPartition(adjPNode);
-                    nodeIds.put(adjPNode.hashCode(), adjGWTPNode);
-                    graph.addNode(adjGWTPNode);
-                }
-
-                double transitionProb = wTransition.getProbability();
-                AbstractResource mean = wTransition.getDeltaSeries()
-                        .computeMean();
-
-                GWTEdge edge;
-                if (mean == null) {
-                    edge = new GWTEdge(gwtPNode, adjGWTPNode, transitionProb,
-                            wTransition.getCount());
-                } else {
-                    double meanLatency = Double.parseDouble(mean.toString());
-                    edge = new GWTEdge(gwtPNode, adjGWTPNode, transitionProb,
-                            wTransition.getCount(), meanLatency);
-                }
-
-                // Add the complete weighted edge
-                graph.addEdge(edge);
-            }
-        }
-        return graph;
+        return gwtGraphCache.toGWTGraph(partGraph);
     }
 
     /**
@@ -578,12 +528,12 @@ public class SynopticService extends RemoteServiceServlet implements
 
         GWTNode refinedNode = gwtNodeFromPartition(last.getPartition());
 
-        // Because we've created new objects on top of older objects we need to
-        // store the state explicitly.
-        storeSessionState();
+        // The other session state objects were updated in place, and only the
+        // counter-examples were created anew.
+        session.setAttribute("counterExampleTraces", counterExampleTraces);
 
-        // Return the new model.
-        return new GWTGraphDelta(PGraphToGWTGraph(pGraph), refinedNode,
+        // Return the changes to the model.
+        return gwtGraphCache.toGWTGraphDelta(pGraph, refinedNode,
                 TemporalInvariantSetToGWTInvariants(unsatInvs));
 
     }
@@ -1,15 +1,22 @@
 package synopticgwt.shared;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
- * Represents a step of model refinement.
+ * Represents a step of model refinement, as the nodes and edges that were
+ * added to and removed from the graph that the client last received. An edge
+ * whose weight, count, or latency changed is both removed and added.
  */
 public class GWTGraphDelta implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private GWTGraph graph;
+    private List<GWTNode> addedNodes;
+    private List<GWTNode> removedNodes;
+    private List<GWTEdge> addedEdges;
+    /** Does not include the edges of removed nodes, which go with them. */
+    private List<GWTEdge> removedEdges;
 
     /** ID of the node that was refined during this step. */
     private GWTNode refinedNode;
@@ -21,14 +28,31 @@ public class GWTGraphDelta implements Serializable {
         // Empty constructor to avoid SerializationException.
     }
 
-    public GWTGraphDelta(GWTGraph g, GWTNode refinedNode, GWTInvariantSet unsatInvs) {
-        this.graph = g;
+    public GWTGraphDelta(List<GWTNode> addedNodes, List<GWTNode> removedNodes,
+            List<GWTEdge> addedEdges, List<GWTEdge> removedEdges,
+            GWTNode refinedNode, GWTInvariantSet unsatInvs) {
+        this.addedNodes = addedNodes;
+        this.removedNodes = removedNodes;
+        this.addedEdges = addedEdges;
+        this.removedEdges = removedEdges;
         this.refinedNode = refinedNode;
         this.unsatInvs = unsatInvs;
     }
 
-    public GWTGraph getGraph() {
-        return graph;
+    public List<GWTNode> getAddedNodes() {
+        return addedNodes;
+    }
+
+    public List<GWTNode> getRemovedNodes() {
+        return removedNodes;
+    }
+
+    public List<GWTEdge> getAddedEdges() {
+        return addedEdges;
+    }
+
+    public List<GWTEdge> getRemovedEdges() {
+        return removedEdges;
     }
 
     public GWTNode getRefinedNode() {